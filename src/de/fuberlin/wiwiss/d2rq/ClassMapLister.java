@@ -6,7 +6,6 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -23,13 +22,13 @@ import com.hp.hpl.jena.vocabulary.RDF;
 import com.hp.hpl.jena.vocabulary.RDFS;
 
 import de.fuberlin.wiwiss.d2rq.algebra.Relation;
-import de.fuberlin.wiwiss.d2rq.algebra.RelationalOperators;
 import de.fuberlin.wiwiss.d2rq.algebra.TripleRelation;
 import de.fuberlin.wiwiss.d2rq.find.FindQuery;
 import de.fuberlin.wiwiss.d2rq.find.TripleQueryIter;
 import de.fuberlin.wiwiss.d2rq.map.Mapping;
 import de.fuberlin.wiwiss.d2rq.nodes.FixedNodeMaker;
 import de.fuberlin.wiwiss.d2rq.nodes.NodeMaker;
+import de.fuberlin.wiwiss.d2rq.nodes.URIRouter;
 import de.fuberlin.wiwiss.d2rq.vocab.SKOS;
 
 /**
@@ -45,6 +44,7 @@ public class ClassMapLister {
 
 	private Map<String,List<TripleRelation>> classMapInventoryBridges = new HashMap<String,List<TripleRelation>>();
 	private Map<String,NodeMaker> classMapNodeMakers = new HashMap<String,NodeMaker>();
+	private URIRouter<String> classMapRouter;
 
 	public ClassMapLister(Mapping mapping) {
 		this.mapping = mapping;
@@ -86,6 +86,7 @@ public class ClassMapLister {
 			}
 			this.classMapInventoryBridges.put(toClassMapName(classMap), inventoryBridges);
 		}
+		this.classMapRouter = new URIRouter<String>(classMapNodeMakers);
 	}
 
 	private String toClassMapName(Node classMap) {
@@ -117,14 +118,6 @@ public class ClassMapLister {
 		if (!resource.isURI()) {
 			return Collections.<String>emptyList();
 		}
-		List<String> results = new ArrayList<String>();
-		for (Entry<String,NodeMaker> entry: classMapNodeMakers.entrySet()) {
-			String classMapName = entry.getKey();
-			NodeMaker nodeMaker = entry.getValue();
-			if (!nodeMaker.selectNode(resource, RelationalOperators.DUMMY).equals(NodeMaker.EMPTY)) {
-				results.add(classMapName);
-			}
-		}
-		return results;
+		return classMapRouter.route(resource);
 	}
 }
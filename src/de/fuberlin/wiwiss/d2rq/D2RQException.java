@@ -99,6 +99,10 @@ public class D2RQException extends JenaException {
 	public static final int PROPERTYBRIDGE_MISSING_PREDICATESPEC = 85;
 	public static final int SQL_COLUMN_NOT_FOUND = 86;
 	public static final int STARTUP_UNKNOWN_FORMAT = 87;
+	public static final int PROPERTYBRIDGE_DUPLICATE_FULLTEXTINDEX = 88;
+	public static final int PROPERTYBRIDGE_FULLTEXTINDEX_WITHOUT_COLUMN = 89;
+	public static final int SQL_FULLTEXT_UNSUPPORTED = 90;
+	public static final int RESOURCEMAP_DUPLICATE_NODECACHESIZE = 91;
 	
 	private int code;
 	
@@ -53,20 +53,20 @@ public class ResourceDescriber {
 			}, timeout);
 		}
 		
-		FindQuery outgoing = new FindQuery(
-				Triple.create(node, Node.ANY, Node.ANY), 
-				mapping.compiledPropertyBridges(), limit, context);
+		Triple outgoingPattern = Triple.create(node, Node.ANY, Node.ANY);
+		FindQuery outgoing = new FindQuery(outgoingPattern, 
+				mapping.tripleRelationIndex(outgoingPattern), limit, context);
 		qIter.add(outgoing.iterator());
 		
 		if (!onlyOutgoing) {
-			FindQuery incoming = new FindQuery(
-					Triple.create(Node.ANY, Node.ANY, node), 
-					mapping.compiledPropertyBridges(), limit, context);
+			Triple incomingPattern = Triple.create(Node.ANY, Node.ANY, node);
+			FindQuery incoming = new FindQuery(incomingPattern, 
+					mapping.tripleRelationIndex(incomingPattern), limit, context);
 			qIter.add(incoming.iterator());
 	
-			FindQuery triples = new FindQuery(
-					Triple.create(Node.ANY, node, Node.ANY), 
-					mapping.compiledPropertyBridges(), limit, context);
+			Triple triplesPattern = Triple.create(Node.ANY, node, Node.ANY);
+			FindQuery triples = new FindQuery(triplesPattern, 
+					mapping.tripleRelationIndex(triplesPattern), limit, context);
 			qIter.add(triples.iterator());
 		}
 		result.getBulkUpdateHandler().add(TripleQueryIter.create(qIter));
@@ -68,6 +68,10 @@ public class AliasMap extends ColumnRenamer {
 		}
 	}
 	
+	public Collection<Alias> aliases() {
+		return this.byAlias.values();
+	}
+	
 	public boolean isAlias(RelationName name) {
 		return this.byAlias.containsKey(name);
 	}
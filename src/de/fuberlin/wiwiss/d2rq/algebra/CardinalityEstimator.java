@@ -0,0 +1,127 @@
+package de.fuberlin.wiwiss.d2rq.algebra;
+
+import java.util.Collections;
+import java.util.Set;
+
+import de.fuberlin.wiwiss.d2rq.dbschema.TableStatistics;
+import de.fuberlin.wiwiss.d2rq.expr.AttributeExpr;
+import de.fuberlin.wiwiss.d2rq.expr.Conjunction;
+import de.fuberlin.wiwiss.d2rq.expr.Constant;
+import de.fuberlin.wiwiss.d2rq.expr.Equality;
+import de.fuberlin.wiwiss.d2rq.expr.Expression;
+import de.fuberlin.wiwiss.d2rq.sql.ConnectedDB;
+
+/**
+ * Estimates the number of rows of a {@link Relation} from the
+ * database's {@link TableStatistics}, using the textbook formulas:
+ * the product of the table sizes, divided by the larger number of
+ * distinct values for each join, and by the number of distinct values
+ * for each column that is compared to a constant. Where the number of
+ * distinct values is unknown, joins are assumed to be on a key of the
+ * larger table, and comparisons to select a tenth of the rows. Other
+ * conditions are assumed to select a third of the rows.
+ */
+public class CardinalityEstimator {
+	private final static double EQUALITY_SELECTIVITY = 1.0 / 10;
+	private final static double DEFAULT_SELECTIVITY = 1.0 / 3;
+
+	/**
+	 * @return The estimated number of rows, or {@link TableStatistics#UNKNOWN}
+	 * 		if statistics are not available for all tables of the relation
+	 */
+	public static long estimateRows(Relation relation) {
+		if (relation.database() == null) return TableStatistics.UNKNOWN;
+		CardinalityEstimator estimator = new CardinalityEstimator(relation);
+		double rows = 1;
+		for (RelationName table: relation.tables()) {
+			TableStatistics statistics = estimator.statistics(table);
+			if (statistics == null) return TableStatistics.UNKNOWN;
+			rows *= statistics.rows();
+		}
+		for (Join join: relation.joinConditions()) {
+			rows /= Math.max(1, Math.max(
+					estimator.distinctValuesOrRows(join.attributes1().get(0)),
+					estimator.distinctValuesOrRows(join.attributes2().get(0))));
+		}
+		for (Expression conjunct: conjuncts(relation.condition())) {
+			if (conjunct.isTrue()) continue;
+			if (conjunct.isFalse()) return 0;
+			Attribute column = comparedToConstant(conjunct);
+			long distinct = column == null ? TableStatistics.UNKNOWN : estimator.distinctValues(column);
+			if (column == null) {
+				rows *= DEFAULT_SELECTIVITY;
+			} else if (distinct == TableStatistics.UNKNOWN) {
+				rows *= EQUALITY_SELECTIVITY;
+			} else {
+				rows /= Math.max(1, distinct);
+			}
+		}
+		return rows <= 0 ? 0 : Math.max(1, Math.round(rows));
+	}
+
+	/**
+	 * @return The estimated number of rows of the relation's largest
+	 * 		table, or {@link TableStatistics#UNKNOWN} if not available
+	 */
+	public static long largestTable(Relation relation) {
+		if (relation.database() == null) return TableStatistics.UNKNOWN;
+		CardinalityEstimator estimator = new CardinalityEstimator(relation);
+		long result = TableStatistics.UNKNOWN;
+		for (RelationName table: relation.tables()) {
+			TableStatistics statistics = estimator.statistics(table);
+			if (statistics != null) {
+				result = Math.max(result, statistics.rows());
+			}
+		}
+		return result;
+	}
+
+	private static Set<Expression> conjuncts(Expression condition) {
+		if (condition instanceof Conjunction) {
+			return ((Conjunction) condition).expressions();
+		}
+		return Collections.singleton(condition);
+	}
+
+	private static Attribute comparedToConstant(Expression expression) {
+		if (!(expression instanceof Equality)) return null;
+		Expression expr1 = ((Equality) expression).expr1();
+		Expression expr2 = ((Equality) expression).expr2();
+		if (expr1 instanceof AttributeExpr && expr2 instanceof Constant) {
+			return ((AttributeExpr) expr1).attribute();
+		}
+		if (expr2 instanceof AttributeExpr && expr1 instanceof Constant) {
+			return ((AttributeExpr) expr2).attribute();
+		}
+		return null;
+	}
+
+	private final ConnectedDB database;
+	private final AliasMap aliases;
+
+	private CardinalityEstimator(Relation relation) {
+		this.database = relation.database();
+		this.aliases = relation.aliases();
+	}
+
+	private TableStatistics statistics(RelationName table) {
+		return database.tableStatistics(aliases.originalOf(table));
+	}
+
+	private long distinctValues(Attribute column) {
+		TableStatistics statistics = statistics(column.relationName());
+		if (statistics == null) return TableStatistics.UNKNOWN;
+		return statistics.distinctValues(column.attributeName());
+	}
+
+	/**
+	 * @return Distinct values of the column, or the table's
+	 * 		rows if unknown, as an upper bound
+	 */
+	private long distinctValuesOrRows(Attribute column) {
+		TableStatistics statistics = statistics(column.relationName());
+		if (statistics == null) return 1;
+		long result = statistics.distinctValues(column.attributeName());
+		return result == TableStatistics.UNKNOWN ? statistics.rows() : result;
+	}
+}
@@ -25,12 +25,23 @@ import de.fuberlin.wiwiss.d2rq.expr.Expression;
  * (as {@link ProjectionSpec}s) so that bindings are generated only
  * if that clause is <code>TRUE</code>
  * 
+ * Relations with different conditions on a table that is known to be large
+ * ({@link #LARGE_TABLE_ROWS}) are not combined unless one of them has no
+ * condition. Each condition on its own can be answered from an index, but
+ * the disjunction often can't, so separate statements are cheaper.
+ * 
  * TODO: Should check if the BindingMaker already has a condition?
  * 
  * @author Richard Cyganiak (richard@cyganiak.de)
  */
 public class CompatibleRelationGroup {
 
+	/**
+	 * Estimated rows, according to {@link CardinalityEstimator}, from
+	 * which a table counts as large
+	 */
+	public final static long LARGE_TABLE_ROWS = 100000;
+
 	public static Collection<CompatibleRelationGroup> groupNodeRelations(
 			Collection<? extends NodeRelation> nodeRelations) {
 		Collection<CompatibleRelationGroup> result = new ArrayList<CompatibleRelationGroup>();
@@ -74,6 +85,10 @@ public class CompatibleRelationGroup {
 		if (!firstBaseRelation.joinConditions().equals(otherRelation.joinConditions())) {
 			return false;
 		}
+		// The ON clauses of outer joins cannot be combined
+		if (!firstBaseRelation.leftOuterJoins().isEmpty() || !otherRelation.leftOuterJoins().isEmpty()) {
+			return false;
+		}
 		Set<RelationName> firstTables = firstBaseRelation.tables();
 		Set<RelationName> secondTables = otherRelation.tables();
 		if (!firstTables.equals(secondTables)) {
@@ -85,6 +100,11 @@ public class CompatibleRelationGroup {
 				return false;
 			}
 		}
+		if (!firstBaseRelation.condition().equals(otherRelation.condition())
+				&& !firstBaseRelation.condition().isTrue() && !otherRelation.condition().isTrue()
+				&& CardinalityEstimator.largestTable(firstBaseRelation) >= LARGE_TABLE_ROWS) {
+			return false;
+		}
 		if (!firstBaseRelation.projections().equals(otherRelation.projections())) {
 			// Uniqueness doesn't matter if we project the same columns
 			if (!firstBaseRelation.isUnique() || !otherRelation.isUnique()) {
@@ -0,0 +1,100 @@
+package de.fuberlin.wiwiss.d2rq.algebra;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import de.fuberlin.wiwiss.d2rq.expr.Conjunction;
+import de.fuberlin.wiwiss.d2rq.expr.Equality;
+import de.fuberlin.wiwiss.d2rq.expr.Expression;
+
+/**
+ * The optional part of a {@link Relation}, joined to the rest of the
+ * relation with an SQL <code>LEFT OUTER JOIN</code>. If no tuple of the
+ * optional part satisfies the join condition, then its attributes
+ * are <code>NULL</code>.
+ *
+ * The tables, join conditions and conditions of the optional part go
+ * into the <code>ON</code> clause, together with the join condition
+ * that connects it to the rest of the relation. Its projections
+ * are part of the enclosing relation's projections.
+ */
+public class LeftOuterJoin {
+	private final Relation relation;
+	private final Expression joinCondition;
+
+	/**
+	 * @param relation The optional part; must not have limits or an ordering
+	 * @param joinCondition Connects the optional part to the rest of the relation
+	 */
+	public LeftOuterJoin(Relation relation, Expression joinCondition) {
+		this.relation = relation;
+		this.joinCondition = joinCondition;
+	}
+
+	public Relation relation() {
+		return relation;
+	}
+
+	public Expression joinCondition() {
+		return joinCondition;
+	}
+
+	/**
+	 * @return The complete <code>ON</code> condition, including the
+	 * 		conditions and join conditions of the optional part
+	 */
+	public Expression onCondition() {
+		Set<Expression> expressions = new HashSet<Expression>();
+		for (Join join: relation.joinConditions()) {
+			for (Attribute attribute1: join.attributes1()) {
+				expressions.add(Equality.createAttributeEquality(
+						attribute1, join.equalAttribute(attribute1)));
+			}
+		}
+		expressions.add(relation.condition());
+		expressions.add(relation.softCondition());
+		expressions.add(joinCondition);
+		return Conjunction.create(expressions);
+	}
+
+	/**
+	 * @return The tables of the optional part, in their alias forms
+	 */
+	public Set<RelationName> tables() {
+		return relation.tables();
+	}
+
+	public Set<Attribute> allKnownAttributes() {
+		Set<Attribute> result = new HashSet<Attribute>(relation.allKnownAttributes());
+		result.addAll(joinCondition.attributes());
+		return result;
+	}
+
+	/**
+	 * @return A left outer join that additionally requires the condition
+	 * 		for the optional part to match
+	 */
+	public LeftOuterJoin select(Expression condition) {
+		return new LeftOuterJoin(relation, joinCondition.and(condition));
+	}
+
+	public LeftOuterJoin renameColumns(ColumnRenamer renamer) {
+		return new LeftOuterJoin(relation.renameColumns(renamer),
+				renamer.applyTo(joinCondition));
+	}
+
+	public String toString() {
+		return "LeftOuterJoin(" + relation + " ON " + joinCondition + ")";
+	}
+
+	public boolean equals(Object other) {
+		if (!(other instanceof LeftOuterJoin)) return false;
+		LeftOuterJoin otherJoin = (LeftOuterJoin) other;
+		return relation.equals(otherJoin.relation)
+				&& joinCondition.equals(otherJoin.joinCondition);
+	}
+
+	public int hashCode() {
+		return relation.hashCode() ^ joinCondition.hashCode() ^ 482113;
+	}
+}
@@ -51,7 +51,8 @@ public class MutableRelation implements RelationalOperators {
 	            relation.isUnique(),
 	            orderSpecs,
 	            relation.limit(),
-	            relation.limitInverse());
+	            relation.limitInverse(),
+	            relation.leftOuterJoins());
 	}
 	
 	public Relation swapLimits() {
@@ -65,7 +66,8 @@ public class MutableRelation implements RelationalOperators {
 	            relation.isUnique(),
 	            relation.orderSpecs(),
 	            relation.limitInverse(),
-	            relation.limit());
+	            relation.limit(),
+	            relation.leftOuterJoins());
 	}
 	
 	public Relation project(Set<? extends ProjectionSpec> projectionSpecs) {
@@ -83,6 +85,25 @@ public class MutableRelation implements RelationalOperators {
 	            relation.isUnique(),
 	            relation.orderSpecs(),
 	            Relation.combineLimits(relation.limit(), limit),
-				relation.limitInverse());
+				relation.limitInverse(),
+				relation.leftOuterJoins());
+	}
+	
+	/**
+	 * Replaces the optional parts of the relation.
+	 */
+	public Relation leftOuterJoins(List<LeftOuterJoin> leftOuterJoins) {
+		return relation = new RelationImpl(
+				relation.database(),
+	            relation.aliases(),
+	            relation.condition(),
+	            relation.softCondition(),
+	            relation.joinConditions(),
+	            relation.projections(),
+	            relation.isUnique(),
+	            relation.orderSpecs(),
+	            relation.limit(),
+				relation.limitInverse(),
+				leftOuterJoins);
 	}
 }
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -14,7 +15,11 @@ import com.hp.hpl.jena.sparql.core.Var;
 import com.hp.hpl.jena.sparql.engine.binding.Binding;
 
 import de.fuberlin.wiwiss.d2rq.algebra.AliasMap.Alias;
+import de.fuberlin.wiwiss.d2rq.expr.Conjunction;
+import de.fuberlin.wiwiss.d2rq.expr.Disjunction;
 import de.fuberlin.wiwiss.d2rq.expr.Expression;
+import de.fuberlin.wiwiss.d2rq.expr.Negation;
+import de.fuberlin.wiwiss.d2rq.expr.NotNull;
 import de.fuberlin.wiwiss.d2rq.nodes.FixedNodeMaker;
 import de.fuberlin.wiwiss.d2rq.nodes.NodeMaker;
 
@@ -58,6 +63,40 @@ public class NodeRelation {
 		return (NodeMaker) nodeMakers.get(variables);
 	}
 
+	/**
+	 * @return The variables made only from attributes of the base relation's
+	 * 		{@link LeftOuterJoin}s. They are unbound where the optional
+	 * 		part has no matching tuple.
+	 */
+	public Set<Var> optionalVariables() {
+		if (base.leftOuterJoins().isEmpty()) return Collections.emptySet();
+		Set<Var> result = new HashSet<Var>();
+		for (Var variable: variables()) {
+			if (leftOuterJoinIndex(variable) != -1) {
+				result.add(variable);
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * @return Index of the left outer join that contains all attributes 
+	 * 		of the variable's node maker, or -1
+	 */
+	private int leftOuterJoinIndex(Var variable) {
+		Set<RelationName> tables = new HashSet<RelationName>();
+		for (ProjectionSpec projection: nodeMaker(variable).projectionSpecs()) {
+			for (Attribute attribute: projection.requiredAttributes()) {
+				tables.add(attribute.relationName());
+			}
+		}
+		if (tables.isEmpty()) return -1;
+		for (int i = 0; i < base.leftOuterJoins().size(); i++) {
+			if (base.leftOuterJoins().get(i).tables().containsAll(tables)) return i;
+		}
+		return -1;
+	}
+
 	public NodeRelation withPrefix(int index) {
 		Collection<Alias> newAliases = new ArrayList<Alias>();
 		for (RelationName tableName: baseRelation().tables()) {
@@ -71,6 +110,21 @@ public class NodeRelation {
 		return new NodeRelation(baseRelation().renameColumns(renamer), renamedNodeMakers);
 	}
 	
+	/**
+	 * Prefixes the table names if necessary, so that they don't 
+	 * clash with any of the given table names.
+	 * @see #withPrefix(int)
+	 */
+	public NodeRelation withDistinctTables(Set<RelationName> taken) {
+		NodeRelation result = this;
+		int index = 1;
+		while (!Collections.disjoint(result.baseRelation().tables(), taken)) {
+			result = withPrefix(index);
+			index++;
+		}
+		return result;
+	}
+	
 	public NodeRelation renameSingleRelation(RelationName oldName, RelationName newName) {
 		AliasMap renamer = AliasMap.create1(oldName, newName);
 		Map<Var,NodeMaker> renamedNodeMakers = new HashMap<Var,NodeMaker>();
@@ -88,28 +142,89 @@ public class NodeRelation {
 	 * dropped, and any compatible row will be extended with
 	 * FixedNodeMakers whose node is taken from the binding.
 	 * 
+	 * A row is compatible with a value for an optional variable if
+	 * the variable is unbound in the row or has the same value.
+	 * 
 	 * @param binding A binding to join with this NodeRelation
 	 * @return The joined NodeRelation
 	 */
 	public NodeRelation extendWith(Binding binding) {
+		return extendWith(binding, false);
+	}
+	
+	/**
+	 * Like {@link #extendWith(Binding)}, but a value for an optional
+	 * variable restricts only the optional part. Rows whose optional
+	 * part doesn't have the value are kept and extended with the
+	 * value. This is only correct if the variables are projected away
+	 * afterwards, as the constants of a cached query plan are.
+	 * 
+	 * @param binding Values for the constants of a query plan
+	 * @return The joined NodeRelation
+	 */
+	public NodeRelation substituteConstants(Binding binding) {
+		return extendWith(binding, true);
+	}
+	
+	private NodeRelation extendWith(Binding binding, boolean restrictOptionalPartOnly) {
 		if (binding.isEmpty()) return this;
 		MutableRelation mutator = new MutableRelation(baseRelation());
 		Map<Var,NodeMaker> columns = new HashMap<Var,NodeMaker>();
 		for (Var variable: variables()) {
 			columns.put(variable, nodeMaker(variable));
 		}
+		List<LeftOuterJoin> leftOuterJoins = new ArrayList<LeftOuterJoin>(base.leftOuterJoins());
 		for (Iterator<Var> it = binding.vars(); it.hasNext();) {
 			Var var = it.next();
 			Node value = binding.get(var);
-			if (columns.containsKey(var)) {
+			int leftOuterJoin = columns.containsKey(var) ? leftOuterJoinIndex(var) : -1;
+			if (leftOuterJoin != -1) {
+				final List<Expression> conditions = new ArrayList<Expression>();
+				NodeMaker selected = columns.get(var).selectNode(value, new RelationalOperators() {
+					public Relation select(Expression condition) {
+						conditions.add(condition);
+						return null;
+					}
+					public Relation renameColumns(ColumnRenamer renamer) { return null; }
+					public Relation project(Set<? extends ProjectionSpec> projectionSpecs) { return null; }
+				});
+				if (selected.equals(NodeMaker.EMPTY)) {
+					conditions.add(Expression.FALSE);
+				}
+				if (restrictOptionalPartOnly) {
+					leftOuterJoins.set(leftOuterJoin, 
+							leftOuterJoins.get(leftOuterJoin).select(Conjunction.create(conditions)));
+				} else {
+					// The variable is unbound if any of its columns is NULL
+					List<Expression> compatible = new ArrayList<Expression>();
+					for (ProjectionSpec column: columns.get(var).projectionSpecs()) {
+						compatible.add(new Negation(NotNull.create(column.toExpression())));
+					}
+					compatible.add(Conjunction.create(conditions));
+					mutator.select(Disjunction.create(compatible));
+				}
+				columns.put(var, new FixedNodeMaker(value, false));
+			} else if (columns.containsKey(var)) {
 				columns.put(var, columns.get(var).selectNode(value, mutator));
 			} else {
 				columns.put(var, new FixedNodeMaker(value, false));
 			}
 		}
+		if (!leftOuterJoins.equals(base.leftOuterJoins()) 
+				&& !mutator.immutableSnapshot().equals(Relation.EMPTY)) {
+			mutator.leftOuterJoins(leftOuterJoins);
+		}
 		return new NodeRelation(mutator.immutableSnapshot(), columns);
 	}
 	
+	/**
+	 * @return A NodeRelation with the same node makers over a different
+	 * 		base relation, which must provide the same attributes
+	 */
+	public NodeRelation withBaseRelation(Relation newBase) {
+		return new NodeRelation(newBase, nodeMakers);
+	}
+	
 	// TODO: This should take an ARQ Expr as argument and transform it to an Expression
 	public NodeRelation select(Expression expression) {
         MutableRelation mutator = new MutableRelation(baseRelation());
@@ -134,6 +134,15 @@ public abstract class Relation implements RelationalOperators {
 	 */
 	public abstract int limitInverse();
 
+	/**
+	 * The optional parts of the relation, in the order in which
+	 * they are joined.
+	 * @return A list of {@link LeftOuterJoin}s; empty by default
+	 */
+	public List<LeftOuterJoin> leftOuterJoins() {
+		return Collections.emptyList();
+	}
+
 	public Set<Attribute> allKnownAttributes() {
 		Set<Attribute> results = new HashSet<Attribute>();
 		results.addAll(condition().attributes());
@@ -148,6 +157,9 @@ public abstract class Relation implements RelationalOperators {
 		for (OrderSpec order: orderSpecs()) {
 			results.addAll(order.expression().attributes());
 		}
+		for (LeftOuterJoin join: leftOuterJoins()) {
+			results.addAll(join.allKnownAttributes());
+		}
 		return results;
 	}
 
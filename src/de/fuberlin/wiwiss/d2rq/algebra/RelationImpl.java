@@ -1,5 +1,7 @@
 package de.fuberlin.wiwiss.d2rq.algebra;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -18,11 +20,22 @@ public class RelationImpl extends Relation {
 	private final List<OrderSpec> orderSpecs;
 	private int limit;
 	private int limitInverse;
+	private final List<LeftOuterJoin> leftOuterJoins;
 	
 	public RelationImpl(ConnectedDB database, AliasMap aliases,
 			Expression condition, Expression softCondition,
 			Set<Join> joinConditions, Set<ProjectionSpec> projections,
 			boolean isUnique, List<OrderSpec> orderSpecs, int limit, int limitInverse) {
+		this(database, aliases, condition, softCondition, joinConditions, projections,
+				isUnique, orderSpecs, limit, limitInverse, Collections.<LeftOuterJoin>emptyList());
+	}
+	
+	public RelationImpl(ConnectedDB database, AliasMap aliases,
+			Expression condition, Expression softCondition,
+			Set<Join> joinConditions, Set<ProjectionSpec> projections,
+			boolean isUnique, List<OrderSpec> orderSpecs, int limit, int limitInverse,
+			List<LeftOuterJoin> leftOuterJoins) {
+		this.leftOuterJoins = leftOuterJoins;
 		this.database = database;
 		this.aliases = aliases;
 		this.condition = condition;
@@ -75,6 +88,10 @@ public class RelationImpl extends Relation {
 		return orderSpecs;
 	}
 
+	public List<LeftOuterJoin> leftOuterJoins() {
+		return leftOuterJoins;
+	}
+
 	public Relation select(Expression selectCondition) {
 		if (selectCondition.isTrue()) {
 			return this;
@@ -84,21 +101,26 @@ public class RelationImpl extends Relation {
 		}
 		return new RelationImpl(database, aliases, 
 				condition.and(selectCondition), softCondition, joinConditions, 
-				projections, isUnique, orderSpecs, limit, limitInverse);
+				projections, isUnique, orderSpecs, limit, limitInverse, leftOuterJoins);
 	}
 	
 	public Relation renameColumns(ColumnRenamer renames) {
+		List<LeftOuterJoin> renamedJoins = new ArrayList<LeftOuterJoin>(leftOuterJoins.size());
+		for (LeftOuterJoin join: leftOuterJoins) {
+			renamedJoins.add(join.renameColumns(renames));
+		}
 		return new RelationImpl(database, renames.applyTo(aliases),
 				renames.applyTo(condition), renames.applyTo(softCondition),
 				renames.applyToJoinSet(joinConditions),
-				renames.applyToProjectionSet(projections), isUnique, renames.applyTo(orderSpecs), limit, limitInverse);
+				renames.applyToProjectionSet(projections), isUnique, renames.applyTo(orderSpecs), limit, limitInverse,
+				renamedJoins);
 	}
 
 	public Relation project(Set<? extends ProjectionSpec> projectionSpecs) {
 		Set<ProjectionSpec> newProjections = new HashSet<ProjectionSpec>(projectionSpecs);
 		newProjections.retainAll(projections);
 		return new RelationImpl(database, aliases, condition, softCondition, joinConditions, 
-				newProjections, isUnique, orderSpecs, limit, limitInverse);
+				newProjections, isUnique, orderSpecs, limit, limitInverse, leftOuterJoins);
 	}
 	
 	public String toString() {
@@ -115,6 +137,11 @@ public class RelationImpl extends Relation {
 			result.append(joinConditions);
 			result.append("\n");
 		}
+		for (LeftOuterJoin join: leftOuterJoins) {
+			result.append("    left outer join: ");
+			result.append(join);
+			result.append("\n");
+		}
 		if (!condition.isTrue()) {
 			result.append("    condition: ");
 			result.append(condition);
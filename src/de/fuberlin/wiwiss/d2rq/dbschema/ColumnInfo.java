@@ -0,0 +1,59 @@
+package de.fuberlin.wiwiss.d2rq.dbschema;
+
+/**
+ * The metadata of a column as reported by JDBC's
+ * {@link java.sql.DatabaseMetaData#getColumns}. Kept in vendor-neutral
+ * form so that it can be cached on disk; the {@link DatabaseSchemaInspector}
+ * turns it into a vendor-specific datatype.
+ */
+public class ColumnInfo {
+	private final int dataType;
+	private final String typeName;
+	private final int size;
+	private final boolean nullable;
+
+	/**
+	 * @param dataType The type code from {@link java.sql.Types}
+	 * @param typeName The database-specific type name, in upper case
+	 * @param size The column size, or 0 if not applicable
+	 * @param nullable Whether the column allows NULL values
+	 */
+	public ColumnInfo(int dataType, String typeName, int size, boolean nullable) {
+		this.dataType = dataType;
+		this.typeName = typeName;
+		this.size = size;
+		this.nullable = nullable;
+	}
+
+	public int dataType() {
+		return dataType;
+	}
+
+	public String typeName() {
+		return typeName;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isNullable() {
+		return nullable;
+	}
+
+	public boolean equals(Object other) {
+		if (!(other instanceof ColumnInfo)) return false;
+		ColumnInfo o = (ColumnInfo) other;
+		return dataType == o.dataType && typeName.equals(o.typeName)
+				&& size == o.size && nullable == o.nullable;
+	}
+
+	public int hashCode() {
+		return typeName.hashCode() ^ dataType ^ (size << 8) ^ (nullable ? 1 : 0);
+	}
+
+	public String toString() {
+		return (size == 0 ? typeName : (typeName + "(" + size + ")")) +
+				" (" + dataType + ")" + (nullable ? " NULL" : " NOT NULL");
+	}
+}
@@ -1,14 +1,20 @@
 package de.fuberlin.wiwiss.d2rq.dbschema;
 
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.SortedMap;
 import java.util.TreeMap;
 
 import org.apache.log4j.Logger;
@@ -40,9 +46,18 @@ public class DatabaseSchemaInspector {
 	public static final int KEYS_EXPORTED = 1;
 	
 	public DatabaseSchemaInspector(ConnectedDB db) {
+		this(db, db.connection());
+	}
+
+	/**
+	 * Inspects the database through a connection other than the
+	 * database's primary connection, e.g., one leased from its pool
+	 * for use on a background thread.
+	 */
+	public DatabaseSchemaInspector(ConnectedDB db, Connection connection) {
 		this.db = db;
 		try {
-			this.schema = db.connection().getMetaData();
+			this.schema = connection.getMetaData();
 		} catch (SQLException ex) {
 			throw new D2RQException("Database exception", ex, D2RQException.D2RQ_SQLEXCEPTION);
 		}
@@ -53,6 +68,29 @@ public class DatabaseSchemaInspector {
 	 * @return The column's datatype, or <code>null</code> if unknown
 	 */
 	public DataType columnType(Attribute column) {
+		return dataType(columnInfo(column));
+	}
+	
+	/**
+	 * @return The vendor-specific datatype for a column's metadata, or <code>null</code> if unknown
+	 */
+	public DataType dataType(ColumnInfo info) {
+		DataType result = db.vendor().getDataType(info.dataType(), info.typeName(), info.size());
+		if (result == null) {
+			log.warn("Unknown datatype '" + (info.size() == 0 ? info.typeName() : (info.typeName() + "(" + info.size() + ")")) + "' (" + info.dataType() + ")");
+		}
+		return result;
+	}
+	
+	public boolean isNullable(Attribute column) {
+		return columnInfo(column).isNullable();
+	}
+	
+	/**
+	 * @return The metadata of a single column
+	 * @throws D2RQException if the column doesn't exist
+	 */
+	public ColumnInfo columnInfo(Attribute column) {
 		try {
 			ResultSet rs = this.schema.getColumns(null, column.schemaName(), 
 					column.tableName(), column.attributeName());
@@ -61,36 +99,267 @@ public class DatabaseSchemaInspector {
 					throw new D2RQException("Column " + column + " not found in database",
 							D2RQException.SQL_COLUMN_NOT_FOUND);
 				}
-				int type = rs.getInt("DATA_TYPE");
-				String name = rs.getString("TYPE_NAME").toUpperCase();
-				int size = rs.getInt("COLUMN_SIZE");
-				DataType result = db.vendor().getDataType(type, name, size);
-				if (result == null) {
-					log.warn("Unknown datatype '" + (size == 0 ? name : (name + "(" + size + ")")) + "' (" + type + ")");
+				return toColumnInfo(rs);
+			} finally {
+				rs.close();
+			}
+		} catch (SQLException ex) {
+			throw new D2RQException("Database exception", ex, D2RQException.D2RQ_SQLEXCEPTION);
+		}
+	}
+	
+	/**
+	 * Retrieves the metadata of all columns in a schema with a single
+	 * catalog query. For a <code>null</code> schema, this covers the
+	 * default schema on databases where it is known, and nothing otherwise,
+	 * as listing all schemas can be very expensive.
+	 * 
+	 * @param schemaName A schema name, or <code>null</code> for the default schema
+	 * @return Map from columns to their metadata
+	 */
+	public Map<Attribute,ColumnInfo> columnInfos(String schemaName) {
+		Map<Attribute,ColumnInfo> result = new HashMap<Attribute,ColumnInfo>();
+		if (schemaName == null && !isDefaultSchemaKnown()) return result;
+		String schemaPattern = schemaName == null ? defaultSchemaName() : schemaName;
+		try {
+			ResultSet rs = this.schema.getColumns(null, schemaPattern, null, null);
+			try {
+				while (rs.next()) {
+					RelationName table = toRelationName(
+							rs.getString("TABLE_SCHEM"), rs.getString("TABLE_NAME"));
+					result.put(new Attribute(table, rs.getString("COLUMN_NAME")), 
+							toColumnInfo(rs));
 				}
-				return result;
 			} finally {
 				rs.close();
 			}
+			return result;
 		} catch (SQLException ex) {
 			throw new D2RQException("Database exception", ex, D2RQException.D2RQ_SQLEXCEPTION);
 		}
 	}
 	
-	public boolean isNullable(Attribute column) {
+	/**
+	 * Retrieves the primary keys of all tables in a schema with a single
+	 * query. Tables without a primary key are not included. JDBC requires
+	 * a table name for {@link DatabaseMetaData#getPrimaryKeys}, so the SQL
+	 * standard's <code>INFORMATION_SCHEMA</code> is used where available,
+	 * and drivers that don't support it may not list whole schemas.
+	 * 
+	 * @param schemaName A schema name, or <code>null</code> for the default schema
+	 * @return Map from tables to their primary key column names, in key
+	 * 		order, or <code>null</code> if they can't be listed for a whole schema
+	 */
+	public Map<RelationName,List<String>> primaryKeyColumns(String schemaName) {
+		if (schemaName == null && !isDefaultSchemaKnown()) return null;
+		String schemaPattern = schemaName == null ? defaultSchemaName() : schemaName;
+		Map<RelationName,SortedMap<Integer,String>> keys = 
+			new HashMap<RelationName,SortedMap<Integer,String>>();
 		try {
-			ResultSet rs = this.schema.getColumns(null, column.schemaName(), 
-					column.tableName(), column.attributeName());
-			if (!rs.next()) {
-				throw new D2RQException("Column " + column + " not found in database",
-						D2RQException.SQL_COLUMN_NOT_FOUND);
+			ResultSet rs;
+			Statement stmt = null;
+			if (isDefaultSchemaKnown()) {
+				// MySQL reports tables without schema, like getColumns() does
+				boolean isMySQL = db.vendor() == Vendor.MySQL;
+				stmt = this.schema.getConnection().createStatement();
+				rs = stmt.executeQuery(
+						"SELECT " + (isMySQL ? "NULL" : "K.TABLE_SCHEMA") + " AS TABLE_SCHEM, " +
+						"K.TABLE_NAME, K.COLUMN_NAME, K.ORDINAL_POSITION AS KEY_SEQ " +
+						"FROM INFORMATION_SCHEMA.TABLE_CONSTRAINTS C, INFORMATION_SCHEMA.KEY_COLUMN_USAGE K " +
+						"WHERE C.CONSTRAINT_TYPE = 'PRIMARY KEY' " +
+						"AND K.CONSTRAINT_SCHEMA = C.CONSTRAINT_SCHEMA " +
+						"AND K.CONSTRAINT_NAME = C.CONSTRAINT_NAME " +
+						"AND K.TABLE_NAME = C.TABLE_NAME " +
+						"AND K.TABLE_SCHEMA = " + (schemaPattern == null ? "DATABASE()" : 
+							db.vendor().quoteStringLiteral(schemaPattern)));
+			} else {
+				rs = this.schema.getPrimaryKeys(null, schemaPattern, null);
+			}
+			try {
+				while (rs.next()) {
+					RelationName table = toRelationName(
+							rs.getString("TABLE_SCHEM"), rs.getString("TABLE_NAME"));
+					if (!keys.containsKey(table)) {
+						keys.put(table, new TreeMap<Integer,String>());
+					}
+					keys.get(table).put(rs.getInt("KEY_SEQ"), rs.getString("COLUMN_NAME"));
+				}
+			} finally {
+				rs.close();
+				if (stmt != null) stmt.close();
+			}
+		} catch (SQLException ex) {
+			log.debug("Could not list primary keys of " + 
+					(schemaName == null ? "default schema" : "schema " + schemaName) + 
+					": " + ex.getMessage());
+			return null;
+		}
+		Map<RelationName,List<String>> result = new HashMap<RelationName,List<String>>();
+		for (RelationName table: keys.keySet()) {
+			result.put(table, new ArrayList<String>(keys.get(table).values()));
+		}
+		return result;
+	}
+	
+	/**
+	 * Retrieves the unique indexes of all tables in a schema with a single
+	 * query. Tables without unique indexes are included with an empty map,
+	 * so that they need no further queries. JDBC requires
+	 * a table name for {@link DatabaseMetaData#getIndexInfo}, so the
+	 * catalog tables of the database are queried directly where D2RQ
+	 * knows them.
+	 * 
+	 * @param schemaName A schema name, or <code>null</code> for the default schema
+	 * @return Map from tables to maps from index name to list of column
+	 * 		names, or <code>null</code> if they can't be listed for a whole schema
+	 * @see #uniqueColumns(RelationName)
+	 */
+	public Map<RelationName,Map<String,List<String>>> uniqueColumns(String schemaName) {
+		if (schemaName == null && !isDefaultSchemaKnown()) return null;
+		String schemaPattern = schemaName == null ? defaultSchemaName() : schemaName;
+		String schemaLiteral = schemaPattern == null ? "DATABASE()" : 
+			db.vendor().quoteStringLiteral(schemaPattern);
+		String query;
+		if (db.vendor() == Vendor.MySQL) {
+			query = "SELECT NULL AS TABLE_SCHEM, TABLE_NAME, INDEX_NAME, COLUMN_NAME, " +
+					"SEQ_IN_INDEX AS ORDINAL_POSITION FROM INFORMATION_SCHEMA.STATISTICS " +
+					"WHERE NON_UNIQUE = 0 AND TABLE_SCHEMA = " + schemaLiteral;
+		} else if (db.vendor() == Vendor.HSQLDB) {
+			query = "SELECT TABLE_SCHEM, TABLE_NAME, INDEX_NAME, COLUMN_NAME, ORDINAL_POSITION " +
+					"FROM INFORMATION_SCHEMA.SYSTEM_INDEXINFO " +
+					"WHERE NON_UNIQUE = FALSE AND TABLE_SCHEM = " + schemaLiteral;
+		} else if (db.vendor() == Vendor.PostgreSQL) {
+			query = "SELECT N.NSPNAME AS TABLE_SCHEM, CT.RELNAME AS TABLE_NAME, " +
+					"CI.RELNAME AS INDEX_NAME, A.ATTNAME AS COLUMN_NAME, A.ATTNUM AS ORDINAL_POSITION " +
+					"FROM PG_CATALOG.PG_CLASS CT, PG_CATALOG.PG_NAMESPACE N, PG_CATALOG.PG_INDEX I, " +
+					"PG_CATALOG.PG_CLASS CI, PG_CATALOG.PG_ATTRIBUTE A " +
+					"WHERE CT.RELNAMESPACE = N.OID AND I.INDRELID = CT.OID AND I.INDEXRELID = CI.OID " +
+					"AND A.ATTRELID = CI.OID AND I.INDISUNIQUE AND N.NSPNAME = " + schemaLiteral;
+		} else {
+			return null;
+		}
+		Map<RelationName,Map<String,SortedMap<Integer,String>>> indexes = 
+			new HashMap<RelationName,Map<String,SortedMap<Integer,String>>>();
+		for (RelationName table: listTableNames(schemaPattern)) {
+			indexes.put(table, new HashMap<String,SortedMap<Integer,String>>());
+		}
+		try {
+			Statement stmt = this.schema.getConnection().createStatement();
+			try {
+				ResultSet rs = stmt.executeQuery(query);
+				while (rs.next()) {
+					RelationName table = toRelationName(
+							rs.getString("TABLE_SCHEM"), rs.getString("TABLE_NAME"));
+					String index = rs.getString("INDEX_NAME");
+					if (!indexes.containsKey(table)) {
+						indexes.put(table, new HashMap<String,SortedMap<Integer,String>>());
+					}
+					if (!indexes.get(table).containsKey(index)) {
+						indexes.get(table).put(index, new TreeMap<Integer,String>());
+					}
+					indexes.get(table).get(index).put(
+							rs.getInt("ORDINAL_POSITION"), rs.getString("COLUMN_NAME"));
+				}
+				rs.close();
+			} finally {
+				stmt.close();
+			}
+		} catch (SQLException ex) {
+			log.debug("Could not list unique indexes of " + 
+					(schemaName == null ? "default schema" : "schema " + schemaName) + 
+					": " + ex.getMessage());
+			return null;
+		}
+		Map<RelationName,Map<String,List<String>>> result = 
+			new HashMap<RelationName,Map<String,List<String>>>();
+		for (RelationName table: indexes.keySet()) {
+			Map<String,List<String>> tableIndexes = new HashMap<String,List<String>>();
+			for (String index: indexes.get(table).keySet()) {
+				tableIndexes.put(index, new ArrayList<String>(indexes.get(table).get(index).values()));
+			}
+			result.put(table, tableIndexes);
+		}
+		return result;
+	}
+	
+	/**
+	 * Bulk catalog queries for a <code>null</code> schema are restricted
+	 * to the default schema where it is known, as listing all schemas can
+	 * be very expensive.
+	 */
+	private boolean isDefaultSchemaKnown() {
+		return db.vendor() == Vendor.PostgreSQL || db.vendor() == Vendor.HSQLDB 
+				|| db.vendor() == Vendor.MySQL;
+	}
+	
+	/**
+	 * @return The name of the default schema, or <code>null</code> on MySQL,
+	 * 		where the database of the connection is used
+	 */
+	private String defaultSchemaName() {
+		if (db.vendor() == Vendor.PostgreSQL) return "public";
+		if (db.vendor() == Vendor.HSQLDB) return "PUBLIC";
+		return null;
+	}
+	
+	private ColumnInfo toColumnInfo(ResultSet rs) throws SQLException {
+		return new ColumnInfo(rs.getInt("DATA_TYPE"), 
+				rs.getString("TYPE_NAME").toUpperCase(), 
+				rs.getInt("COLUMN_SIZE"),
+				rs.getInt("NULLABLE") == DatabaseMetaData.columnNullable);
+	}
+	
+	/**
+	 * Computes a fingerprint of the database's tables, views and columns,
+	 * used to detect whether a cached copy of the schema metadata is still
+	 * current. Takes two catalog queries. Changes to indexes and keys
+	 * are not detected.
+	 * 
+	 * @return A hex-encoded digest of all table names and column metadata
+	 */
+	public String schemaFingerprint() {
+		List<RelationName> tables = listTableNames(null);
+		Collections.sort(tables);
+		List<String> columns = new ArrayList<String>();
+		try {
+			ResultSet rs = this.schema.getColumns(null, null, null, null);
+			try {
+				while (rs.next()) {
+					String schemaName = rs.getString("TABLE_SCHEM");
+					String table = rs.getString("TABLE_NAME");
+					if (db.vendor().isIgnoredTable(schemaName, table)) continue;
+					ColumnInfo info = toColumnInfo(rs);
+					columns.add(schemaName + "." + table + "." + rs.getString("COLUMN_NAME") + 
+							" " + info.dataType() + " " + info.typeName() + " " + 
+							info.size() + " " + info.isNullable());
+				}
+			} finally {
+				rs.close();
 			}
-			boolean nullable = (rs.getInt("NULLABLE") == DatabaseMetaData.columnNullable);
-			rs.close();
-			return nullable;
 		} catch (SQLException ex) {
 			throw new D2RQException("Database exception", ex, D2RQException.D2RQ_SQLEXCEPTION);
 		}
+		Collections.sort(columns);
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			for (RelationName table: tables) {
+				digest.update(table.qualifiedName().getBytes("utf-8"));
+				digest.update((byte) 0);
+			}
+			for (String column: columns) {
+				digest.update(column.getBytes("utf-8"));
+				digest.update((byte) 0);
+			}
+			StringBuffer result = new StringBuffer();
+			for (byte b: digest.digest()) {
+				result.append(Integer.toHexString((b & 0xff) | 0x100).substring(1));
+			}
+			return result.toString();
+		} catch (NoSuchAlgorithmException ex) {
+			throw new RuntimeException(ex);
+		} catch (UnsupportedEncodingException ex) {
+			throw new RuntimeException(ex);
+		}
 	}
 	
 	public boolean isZerofillColumn(Attribute column) {
@@ -217,6 +486,83 @@ public class DatabaseSchemaInspector {
 		}
 	}	
 	
+	/**
+	 * Estimates the size of a table from the statistics that the
+	 * database keeps for its query planner, as reported by
+	 * {@link DatabaseMetaData#getIndexInfo} with approximate results.
+	 * The row count comes from the table statistic row; if the driver
+	 * doesn't report one, the rows can be counted, which can take a
+	 * long time on large tables. The number of distinct
+	 * values is known for the columns of single-column indexes; it is
+	 * the row count for unique indexes, and the index cardinality for
+	 * others. Some drivers, such as PostgreSQL's, report the number of
+	 * index entries rather than distinct values there, so the figure
+	 * is an upper bound.
+	 * 
+	 * @param tableName Name of a table
+	 * @param countRows Count the rows if the driver doesn't report them?
+	 * @return Statistics for the table; the number of rows is
+	 * 		{@link TableStatistics#UNKNOWN} if not reported or counted
+	 */
+	public TableStatistics tableStatistics(RelationName tableName, boolean countRows) {
+		long rows = TableStatistics.UNKNOWN;
+		Map<String,List<String>> indexColumns = new HashMap<String,List<String>>();
+		Map<String,Long> indexCardinalities = new HashMap<String,Long>();
+		Map<String,Boolean> uniqueIndexes = new HashMap<String,Boolean>();
+		try {
+			ResultSet rs = this.schema.getIndexInfo(
+					null, schemaName(tableName), tableName(tableName), false, true);
+			while (rs.next()) {
+				long cardinality = rs.getLong("CARDINALITY");
+				if (rs.wasNull()) cardinality = TableStatistics.UNKNOWN;
+				if (rs.getShort("TYPE") == DatabaseMetaData.tableIndexStatistic) {
+					rows = cardinality;
+					continue;
+				}
+				String index = rs.getString("INDEX_NAME");
+				if (index == null) continue;
+				if (!indexColumns.containsKey(index)) {
+					indexColumns.put(index, new ArrayList<String>());
+				}
+				indexColumns.get(index).add(rs.getString("COLUMN_NAME"));
+				indexCardinalities.put(index, Long.valueOf(cardinality));
+				uniqueIndexes.put(index, Boolean.valueOf(!rs.getBoolean("NON_UNIQUE")));
+			}
+			rs.close();
+			if (rows < 0 && countRows) {
+				rows = countRows(tableName);
+			}
+		} catch (SQLException ex) {
+			throw new D2RQException("Database exception (unable to determine table statistics)", 
+					ex, D2RQException.D2RQ_SQLEXCEPTION);
+		}
+		Map<String,Long> distinctValues = new HashMap<String,Long>();
+		for (String index: indexColumns.keySet()) {
+			if (indexColumns.get(index).size() != 1) continue;
+			String column = indexColumns.get(index).get(0);
+			long distinct = uniqueIndexes.get(index).booleanValue() 
+					? rows : indexCardinalities.get(index).longValue();
+			if (distinct <= 0) continue;
+			if (distinctValues.containsKey(column)) {
+				distinct = Math.min(distinct, distinctValues.get(column).longValue());
+			}
+			distinctValues.put(column, Long.valueOf(distinct));
+		}
+		return new TableStatistics(rows, distinctValues);
+	}
+
+	private long countRows(RelationName tableName) throws SQLException {
+		Statement stmt = this.schema.getConnection().createStatement();
+		try {
+			ResultSet rs = stmt.executeQuery(
+					"SELECT COUNT(*) FROM " + db.vendor().quoteRelationName(tableName));
+			rs.next();
+			return rs.getLong(1);
+		} finally {
+			stmt.close();
+		}
+	}
+
 	/**
 	 * Returns a list of imported or exported (foreign) keys for a table.
 	 * @param tableName The table we are interested in
@@ -0,0 +1,320 @@
+package de.fuberlin.wiwiss.d2rq.dbschema;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+
+import de.fuberlin.wiwiss.d2rq.D2RQException;
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.RelationName;
+
+/**
+ * A thread-safe cache of column metadata, unique keys and primary keys.
+ * On the first lookup of a column in a schema, the metadata of all
+ * columns in that schema is loaded with a single catalog query, so that
+ * inspecting a large mapping doesn't take one round trip per column.
+ * Primary keys and unique indexes are loaded per schema in the same way
+ * where the driver supports it.
+ *
+ * The cache can be written to a file and read back on the next
+ * startup. The file records the JDBC URL and a fingerprint of the
+ * database's tables and columns, and is ignored if either has changed.
+ */
+public class SchemaCache {
+	private final static Logger log = Logger.getLogger(SchemaCache.class);
+
+	private final static String FILE_HEADER = "D2RQ schema cache";
+	private final static int FILE_VERSION = 2;
+
+	// Key for the default schema in loadedSchemas, as null keys are not allowed
+	private final static String DEFAULT_SCHEMA = "";
+
+	private final Map<String,Boolean> loadedSchemas =
+		new ConcurrentHashMap<String,Boolean>();
+	private final Map<Attribute,ColumnInfo> columns =
+		new ConcurrentHashMap<Attribute,ColumnInfo>();
+	private final Map<String,Boolean> loadedUniqueKeySchemas =
+		new ConcurrentHashMap<String,Boolean>();
+	private final Map<RelationName,Map<String,List<String>>> uniqueKeys =
+		new ConcurrentHashMap<RelationName,Map<String,List<String>>>();
+	private final Map<String,Boolean> loadedPrimaryKeySchemas =
+		new ConcurrentHashMap<String,Boolean>();
+	private final Map<RelationName,List<String>> primaryKeys =
+		new ConcurrentHashMap<RelationName,List<String>>();
+
+	/**
+	 * @return The column's metadata, from the cache or from the inspector
+	 * @throws D2RQException if the column doesn't exist
+	 */
+	public ColumnInfo columnInfo(Attribute column, DatabaseSchemaInspector inspector) {
+		ColumnInfo result = columns.get(column);
+		if (result != null) return result;
+		String schema = column.schemaName() == null ? DEFAULT_SCHEMA : column.schemaName();
+		if (loadedSchemas.put(schema, Boolean.TRUE) == null) {
+			long start = System.currentTimeMillis();
+			Map<Attribute,ColumnInfo> infos = inspector.columnInfos(column.schemaName());
+			columns.putAll(infos);
+			log.info("Loaded metadata of " + infos.size() + " columns in " +
+					(column.schemaName() == null ? "default schema" : "schema " + column.schemaName()) +
+					" (" + (System.currentTimeMillis() - start) + " ms)");
+			result = columns.get(column);
+			if (result != null) return result;
+		}
+		// Not found in bulk results, e.g., because of a different spelling
+		result = inspector.columnInfo(column);
+		columns.put(column, result);
+		return result;
+	}
+
+	/**
+	 * @return Map from index name to list of column names
+	 * @see DatabaseSchemaInspector#uniqueColumns(RelationName)
+	 */
+	public Map<String,List<String>> uniqueKeyColumns(RelationName table,
+			DatabaseSchemaInspector inspector) {
+		Map<String,List<String>> result = uniqueKeys.get(table);
+		if (result != null) return result;
+		String schema = table.schemaName() == null ? DEFAULT_SCHEMA : table.schemaName();
+		if (loadedUniqueKeySchemas.put(schema, Boolean.TRUE) == null) {
+			Map<RelationName,Map<String,List<String>>> keys = inspector.uniqueColumns(table.schemaName());
+			if (keys != null) {
+				uniqueKeys.putAll(keys);
+				result = uniqueKeys.get(table);
+				if (result != null) return result;
+			}
+		}
+		// Not found in bulk results, e.g., because of a different spelling
+		result = inspector.uniqueColumns(table);
+		uniqueKeys.put(table, result);
+		return result;
+	}
+
+	/**
+	 * @return The names of the primary key columns, in key order; empty
+	 * 		if the table has no primary key
+	 * @see DatabaseSchemaInspector#primaryKeyColumns(RelationName)
+	 */
+	public List<String> primaryKeyColumns(RelationName table,
+			DatabaseSchemaInspector inspector) {
+		List<String> result = primaryKeys.get(table);
+		if (result != null) return result;
+		String schema = table.schemaName() == null ? DEFAULT_SCHEMA : table.schemaName();
+		if (loadedPrimaryKeySchemas.put(schema, Boolean.TRUE) == null) {
+			Map<RelationName,List<String>> keys = inspector.primaryKeyColumns(table.schemaName());
+			if (keys != null) {
+				primaryKeys.putAll(keys);
+				result = primaryKeys.get(table);
+				if (result != null) return result;
+			}
+		}
+		// No primary key, or not found in bulk results
+		result = new ArrayList<String>();
+		for (Attribute column: inspector.primaryKeyColumns(table)) {
+			result.add(column.attributeName());
+		}
+		primaryKeys.put(table, result);
+		return result;
+	}
+
+	/**
+	 * @return The number of columns whose metadata is cached
+	 */
+	public int columnCount() {
+		return columns.size();
+	}
+
+	/**
+	 * Creates a new cache with current metadata for everything
+	 * that is in this cache. Columns that no longer exist are dropped.
+	 */
+	public SchemaCache refresh(DatabaseSchemaInspector inspector) {
+		SchemaCache result = new SchemaCache();
+		for (String schema: loadedSchemas.keySet()) {
+			result.loadedSchemas.put(schema, Boolean.TRUE);
+			result.columns.putAll(inspector.columnInfos(
+					DEFAULT_SCHEMA.equals(schema) ? null : schema));
+		}
+		for (Attribute column: columns.keySet()) {
+			if (result.columns.containsKey(column)) continue;
+			try {
+				result.columns.put(column, inspector.columnInfo(column));
+			} catch (D2RQException ex) {
+				// Column was removed; drop it
+			}
+		}
+		for (RelationName table: uniqueKeys.keySet()) {
+			result.uniqueKeyColumns(table, inspector);
+		}
+		for (RelationName table: primaryKeys.keySet()) {
+			result.primaryKeyColumns(table, inspector);
+		}
+		return result;
+	}
+
+	/**
+	 * @return <code>true</code> if both caches contain the same metadata
+	 */
+	public boolean sameContents(SchemaCache other) {
+		return new HashMap<Attribute,ColumnInfo>(columns).equals(
+						new HashMap<Attribute,ColumnInfo>(other.columns))
+				&& new HashMap<RelationName,Map<String,List<String>>>(uniqueKeys).equals(
+						new HashMap<RelationName,Map<String,List<String>>>(other.uniqueKeys))
+				&& new HashMap<RelationName,List<String>>(primaryKeys).equals(
+						new HashMap<RelationName,List<String>>(other.primaryKeys));
+	}
+
+	/**
+	 * Writes the cache to a file. The file is replaced atomically
+	 * where the platform allows.
+	 * @param jdbcURL The JDBC URL of the database
+	 * @param fingerprint The database's {@link DatabaseSchemaInspector#schemaFingerprint()}
+	 */
+	public void write(File file, String jdbcURL, String fingerprint) throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(temp)));
+		try {
+			out.writeUTF(FILE_HEADER);
+			out.writeInt(FILE_VERSION);
+			out.writeUTF(jdbcURL);
+			out.writeUTF(fingerprint);
+			List<String> schemas = new ArrayList<String>(loadedSchemas.keySet());
+			out.writeInt(schemas.size());
+			for (String schema: schemas) {
+				out.writeUTF(schema);
+			}
+			Map<Attribute,ColumnInfo> columnsCopy = new HashMap<Attribute,ColumnInfo>(columns);
+			out.writeInt(columnsCopy.size());
+			for (Map.Entry<Attribute,ColumnInfo> entry: columnsCopy.entrySet()) {
+				writeRelationName(out, entry.getKey().relationName());
+				out.writeUTF(entry.getKey().attributeName());
+				ColumnInfo info = entry.getValue();
+				out.writeInt(info.dataType());
+				out.writeUTF(info.typeName());
+				out.writeInt(info.size());
+				out.writeBoolean(info.isNullable());
+			}
+			Map<RelationName,Map<String,List<String>>> keysCopy =
+				new HashMap<RelationName,Map<String,List<String>>>(uniqueKeys);
+			out.writeInt(keysCopy.size());
+			for (Map.Entry<RelationName,Map<String,List<String>>> entry: keysCopy.entrySet()) {
+				writeRelationName(out, entry.getKey());
+				out.writeInt(entry.getValue().size());
+				for (Map.Entry<String,List<String>> key: entry.getValue().entrySet()) {
+					out.writeUTF(key.getKey());
+					out.writeInt(key.getValue().size());
+					for (String column: key.getValue()) {
+						out.writeUTF(column);
+					}
+				}
+			}
+			Map<RelationName,List<String>> primaryKeysCopy =
+				new HashMap<RelationName,List<String>>(primaryKeys);
+			out.writeInt(primaryKeysCopy.size());
+			for (Map.Entry<RelationName,List<String>> entry: primaryKeysCopy.entrySet()) {
+				writeRelationName(out, entry.getKey());
+				out.writeInt(entry.getValue().size());
+				for (String column: entry.getValue()) {
+					out.writeUTF(column);
+				}
+			}
+		} finally {
+			out.close();
+		}
+		if (!temp.renameTo(file)) {
+			// Windows can't rename over an existing file
+			file.delete();
+			if (!temp.renameTo(file)) {
+				throw new IOException("Could not rename " + temp + " to " + file);
+			}
+		}
+	}
+
+	/**
+	 * Reads a cache written by {@link #write(File, String, String)}.
+	 * @param jdbcURL The JDBC URL of the database
+	 * @param fingerprint The database's current {@link DatabaseSchemaInspector#schemaFingerprint()}
+	 * @return The cache, or <code>null</code> if the file doesn't exist
+	 * 		or was written for a different database or schema
+	 */
+	public static SchemaCache read(File file, String jdbcURL, String fingerprint) throws IOException {
+		if (!file.exists()) return null;
+		DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (!FILE_HEADER.equals(in.readUTF()) || in.readInt() != FILE_VERSION) {
+				throw new IOException("Not a schema cache file: " + file);
+			}
+			if (!jdbcURL.equals(in.readUTF()) || !fingerprint.equals(in.readUTF())) {
+				return null;
+			}
+			SchemaCache result = new SchemaCache();
+			int schemaCount = in.readInt();
+			for (int i = 0; i < schemaCount; i++) {
+				result.loadedSchemas.put(in.readUTF(), Boolean.TRUE);
+			}
+			int columnCount = in.readInt();
+			for (int i = 0; i < columnCount; i++) {
+				Attribute column = new Attribute(readRelationName(in), in.readUTF());
+				result.columns.put(column, new ColumnInfo(
+						in.readInt(), in.readUTF(), in.readInt(), in.readBoolean()));
+			}
+			int tableCount = in.readInt();
+			for (int i = 0; i < tableCount; i++) {
+				RelationName table = readRelationName(in);
+				Map<String,List<String>> keys = new HashMap<String,List<String>>();
+				int keyCount = in.readInt();
+				for (int j = 0; j < keyCount; j++) {
+					String name = in.readUTF();
+					List<String> keyColumns = new ArrayList<String>();
+					int keyColumnCount = in.readInt();
+					for (int k = 0; k < keyColumnCount; k++) {
+						keyColumns.add(in.readUTF());
+					}
+					keys.put(name, keyColumns);
+				}
+				result.uniqueKeys.put(table, keys);
+			}
+			int primaryKeyCount = in.readInt();
+			for (int i = 0; i < primaryKeyCount; i++) {
+				RelationName table = readRelationName(in);
+				List<String> keyColumns = new ArrayList<String>();
+				int keyColumnCount = in.readInt();
+				for (int j = 0; j < keyColumnCount; j++) {
+					keyColumns.add(in.readUTF());
+				}
+				result.primaryKeys.put(table, keyColumns);
+			}
+			return result;
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void writeRelationName(DataOutputStream out, RelationName name) throws IOException {
+		out.writeBoolean(name.schemaName() != null);
+		if (name.schemaName() != null) {
+			out.writeUTF(name.schemaName());
+		}
+		out.writeUTF(name.tableName());
+		out.writeBoolean(name.caseUnspecified());
+	}
+
+	private static RelationName readRelationName(DataInputStream in) throws IOException {
+		String schema = in.readBoolean() ? in.readUTF() : null;
+		String table = in.readUTF();
+		return new RelationName(schema, table, in.readBoolean());
+	}
+}
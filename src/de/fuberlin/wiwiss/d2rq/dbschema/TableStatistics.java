@@ -0,0 +1,62 @@
+package de.fuberlin.wiwiss.d2rq.dbschema;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Estimated row count and numbers of distinct values of a table,
+ * as reported by the database's catalog. The figures are only
+ * estimates and may be out of date, so they must only be used
+ * to choose between equivalent query plans, never to decide
+ * what the result of a query is.
+ */
+public class TableStatistics {
+	public final static long UNKNOWN = -1;
+
+	private final long rows;
+	private final Map<String,Long> distinctValues;
+
+	/**
+	 * @param rows The estimated number of rows
+	 * @param distinctValues Map from column name to estimated number
+	 * 		of distinct values, for the columns where it is known
+	 */
+	public TableStatistics(long rows, Map<String,Long> distinctValues) {
+		this.rows = rows;
+		this.distinctValues = Collections.unmodifiableMap(
+				new HashMap<String,Long>(distinctValues));
+	}
+
+	/**
+	 * @return The estimated number of rows
+	 */
+	public long rows() {
+		return rows;
+	}
+
+	/**
+	 * @param columnName A column of the table
+	 * @return The estimated number of distinct non-null values in the
+	 * 		column, or {@link #UNKNOWN}
+	 */
+	public long distinctValues(String columnName) {
+		Long result = distinctValues.get(columnName);
+		return result == null ? UNKNOWN : Math.min(result.longValue(), rows);
+	}
+
+	public String toString() {
+		return "TableStatistics(" + rows + " rows, distinct values: " + distinctValues + ")";
+	}
+
+	public boolean equals(Object other) {
+		if (!(other instanceof TableStatistics)) return false;
+		TableStatistics otherStatistics = (TableStatistics) other;
+		return rows == otherStatistics.rows 
+				&& distinctValues.equals(otherStatistics.distinctValues);
+	}
+
+	public int hashCode() {
+		return (int) (rows ^ (rows >>> 32)) ^ distinctValues.hashCode();
+	}
+}
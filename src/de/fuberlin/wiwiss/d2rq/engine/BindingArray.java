@@ -0,0 +1,88 @@
+package de.fuberlin.wiwiss.d2rq.engine;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingBase;
+
+/**
+ * An immutable {@link Binding} backed by two parallel arrays. The
+ * array of variables is shared by all bindings made by one
+ * {@link BindingMaker}; only the array of nodes is allocated per row.
+ * A <code>null</code> node leaves the variable unbound. Lookups
+ * scan the array, which is faster than hashing for the handful of
+ * variables of a typical triple pattern.
+ */
+public class BindingArray extends BindingBase {
+	private final Var[] vars;
+	private final Node[] nodes;
+	private final int size;
+
+	/**
+	 * @param vars The variables; must not be modified afterwards
+	 * @param nodes The nodes, in the same order, or <code>null</code>
+	 * 		for unbound variables; must not be modified afterwards
+	 */
+	public BindingArray(Var[] vars, Node[] nodes) {
+		super(null);
+		this.vars = vars;
+		this.nodes = nodes;
+		int count = 0;
+		for (Node node: nodes) {
+			if (node != null) count++;
+		}
+		this.size = count;
+	}
+
+	@Override
+	protected Iterator<Var> vars1() {
+		return new Iterator<Var>() {
+			private int next = advance(0);
+			private int advance(int i) {
+				while (i < nodes.length && nodes[i] == null) i++;
+				return i;
+			}
+			public boolean hasNext() {
+				return next < nodes.length;
+			}
+			public Var next() {
+				if (!hasNext()) throw new NoSuchElementException();
+				Var result = vars[next];
+				next = advance(next + 1);
+				return result;
+			}
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	@Override
+	protected int size1() {
+		return size;
+	}
+
+	@Override
+	protected boolean isEmpty1() {
+		return size == 0;
+	}
+
+	@Override
+	protected boolean contains1(Var var) {
+		return get1(var) != null;
+	}
+
+	@Override
+	protected Node get1(Var var) {
+		for (int i = 0; i < vars.length; i++) {
+			if (vars[i] == var) return nodes[i];
+		}
+		for (int i = 0; i < vars.length; i++) {
+			if (vars[i].equals(var)) return nodes[i];
+		}
+		return null;
+	}
+}
@@ -1,5 +1,6 @@
 package de.fuberlin.wiwiss.d2rq.engine;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -7,8 +8,6 @@ import java.util.Set;
 import com.hp.hpl.jena.graph.Node;
 import com.hp.hpl.jena.sparql.core.Var;
 import com.hp.hpl.jena.sparql.engine.binding.Binding;
-import com.hp.hpl.jena.sparql.engine.binding.BindingHashMap;
-import com.hp.hpl.jena.sparql.engine.binding.BindingMap;
 
 import de.fuberlin.wiwiss.d2rq.algebra.NodeRelation;
 import de.fuberlin.wiwiss.d2rq.algebra.ProjectionSpec;
@@ -18,6 +17,10 @@ import de.fuberlin.wiwiss.d2rq.sql.ResultRow;
 /**
  * Produces {@link Binding}s from {@link ResultRow}s.
  * 
+ * The variables are put into a fixed order once, so that making a
+ * binding from a row only needs a pass over two arrays and a
+ * single {@link BindingArray}.
+ * 
  * @author Richard Cyganiak (richard@cyganiak.de)
  */
 public class BindingMaker {
@@ -27,15 +30,40 @@ public class BindingMaker {
 		for (Var variable: relation.variables()) {
 			vars.put(variable, relation.nodeMaker(variable));
 		}
-		return new BindingMaker(vars, null);
+		return new BindingMaker(vars, null, relation.optionalVariables());
 	}
 
 	private final Map<Var,NodeMaker> nodeMakers;
 	private final ProjectionSpec condition;
+	private final Set<Var> optionalVariables;
+	private final Var[] vars;
+	private final NodeMaker[] varNodeMakers;
+	private final boolean[] isOptional;
 
 	public BindingMaker(Map<Var,NodeMaker> nodeMakers, ProjectionSpec condition) {
+		this(nodeMakers, condition, Collections.<Var>emptySet());
+	}
+
+	/**
+	 * @param optionalVariables Variables that are left unbound, instead of
+	 * 		rejecting the row, if their node maker doesn't produce a node
+	 */
+	public BindingMaker(Map<Var,NodeMaker> nodeMakers, ProjectionSpec condition,
+			Set<Var> optionalVariables) {
 		this.nodeMakers = nodeMakers;
 		this.condition = condition;
+		this.optionalVariables = optionalVariables;
+		int size = nodeMakers.size();
+		this.vars = new Var[size];
+		this.varNodeMakers = new NodeMaker[size];
+		this.isOptional = new boolean[size];
+		int i = 0;
+		for (Map.Entry<Var,NodeMaker> entry: nodeMakers.entrySet()) {
+			vars[i] = Var.alloc(entry.getKey());
+			varNodeMakers[i] = entry.getValue();
+			isOptional[i] = optionalVariables.contains(entry.getKey());
+			i++;
+		}
 	}
 
 	public Binding makeBinding(ResultRow row) {
@@ -45,15 +73,14 @@ public class BindingMaker {
 				return null;
 			}
 		}
-		BindingMap result = new BindingHashMap();
-		for (Var variableName: nodeMakers.keySet()) {
-			Node node = nodeMakers.get(variableName).makeNode(row);
-			if (node == null) {
+		Node[] nodes = new Node[vars.length];
+		for (int i = 0; i < vars.length; i++) {
+			nodes[i] = varNodeMakers[i].makeNode(row);
+			if (nodes[i] == null && !isOptional[i]) {
 				return null;
 			}
-			result.add(Var.alloc(variableName), node);
 		}
-		return result;
+		return new BindingArray(vars, nodes);
 	}
 	
 	public Set<Var> variableNames() {
@@ -87,6 +114,6 @@ public class BindingMaker {
 	}
 	
 	public BindingMaker makeConditional(ProjectionSpec condition) {
-		return new BindingMaker(nodeMakers, condition);
+		return new BindingMaker(nodeMakers, condition, optionalVariables);
 	}
 }
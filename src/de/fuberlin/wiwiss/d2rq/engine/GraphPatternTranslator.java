@@ -3,14 +3,20 @@ package de.fuberlin.wiwiss.d2rq.engine;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
+import com.hp.hpl.jena.graph.Node;
 import com.hp.hpl.jena.graph.Triple;
 
+import de.fuberlin.wiwiss.d2rq.algebra.CardinalityEstimator;
 import de.fuberlin.wiwiss.d2rq.algebra.NodeRelation;
 import de.fuberlin.wiwiss.d2rq.algebra.Relation;
 import de.fuberlin.wiwiss.d2rq.algebra.TripleRelation;
+import de.fuberlin.wiwiss.d2rq.dbschema.TableStatistics;
+import de.fuberlin.wiwiss.d2rq.find.TripleRelationIndex;
 
 /**
  * Matches a BGP against a collection of {@link TripleRelation}s
@@ -20,15 +26,29 @@ import de.fuberlin.wiwiss.d2rq.algebra.TripleRelation;
  * get from matching the BGP against the materialized triples
  * produced by the triple relations.
  * 
+ * Triple patterns are joined in order of increasing number of
+ * candidate relations and, where the database provides
+ * {@link de.fuberlin.wiwiss.d2rq.dbschema.TableStatistics}, of
+ * increasing estimated rows. After the first, patterns that share a
+ * variable with the patterns joined so far are preferred, so that
+ * incompatible combinations of candidates are discarded before they
+ * are multiplied with further candidate lists.
+ * 
  * @author Richard Cyganiak (richard@cyganiak.de)
  */
 public class GraphPatternTranslator {
 	private final List<Triple> triplePatterns;
-	private final Collection<TripleRelation> tripleRelations;
+	private final TripleRelationIndex tripleRelations;
 	boolean useAllOptimizations;
 	
 	public GraphPatternTranslator(List<Triple> triplePatterns, 
 			Collection<TripleRelation> tripleRelations, boolean useAllOptimizations) 
+	{
+		this(triplePatterns, new TripleRelationIndex(tripleRelations), useAllOptimizations);
+	}
+	
+	public GraphPatternTranslator(List<Triple> triplePatterns, 
+			TripleRelationIndex tripleRelations, boolean useAllOptimizations) 
 	{
 		this.triplePatterns = triplePatterns;
 		this.tripleRelations = tripleRelations;
@@ -42,6 +62,48 @@ public class GraphPatternTranslator {
 		if (triplePatterns.isEmpty()) {
 			return Collections.singletonList(NodeRelation.TRUE);
 		}
+		List<CandidateList> candidateLists = candidateListsInJoinOrder();
+		if (candidateLists == null) {
+			return Collections.<NodeRelation>emptyList();
+		}
+		List<TripleRelationJoiner> joiners = new ArrayList<TripleRelationJoiner>();
+		joiners.add(TripleRelationJoiner.create(this.useAllOptimizations));
+		for (CandidateList candidates: candidateLists) {
+			List<TripleRelationJoiner> nextJoiners = new ArrayList<TripleRelationJoiner>();
+			for (TripleRelationJoiner joiner: joiners) {
+				nextJoiners.addAll(joiner.joinAll(candidates.triplePattern(), candidates.all()));
+			}
+			joiners = nextJoiners;
+		}
+		List<NodeRelation> results = new ArrayList<NodeRelation>(joiners.size());
+		for (TripleRelationJoiner joiner: joiners) {
+			NodeRelation nodeRelation = joiner.toNodeRelation();
+			if (!nodeRelation.baseRelation().equals(Relation.EMPTY) || !useAllOptimizations)
+				results.add(nodeRelation);
+		}
+		return results;
+	}
+
+	/**
+	 * @return The triple patterns in the order in which they are joined,
+	 * 		or <code>null</code> if one of them has no candidates
+	 */
+	List<Triple> joinOrder() {
+		List<CandidateList> candidateLists = candidateListsInJoinOrder();
+		if (candidateLists == null) return null;
+		List<Triple> result = new ArrayList<Triple>(candidateLists.size());
+		for (CandidateList candidates: candidateLists) {
+			result.add(candidates.triplePattern());
+		}
+		return result;
+	}
+
+	/**
+	 * @return The candidate lists of the triple patterns in the order
+	 * 		in which they are joined, or <code>null</code> if one of
+	 * 		them is empty
+	 */
+	private List<CandidateList> candidateListsInJoinOrder() {
 		Iterator<Triple> it = triplePatterns.iterator();
 		List<CandidateList> candidateLists = new ArrayList<CandidateList>(triplePatterns.size());
 		int index = 1;
@@ -52,34 +114,44 @@ public class GraphPatternTranslator {
 			CandidateList candidates = new CandidateList(
 					triplePattern, triplePatterns.size() > 1, index);
 			if (candidates.isEmpty()) {
-				return Collections.<NodeRelation>emptyList();
+				return null;
 			}
 			candidateLists.add(candidates);
 			// inc value
 			index++;
 		}
 		Collections.sort(candidateLists);
-		List<TripleRelationJoiner> joiners = new ArrayList<TripleRelationJoiner>();
-		joiners.add(TripleRelationJoiner.create(this.useAllOptimizations));
-		for (CandidateList candidates: candidateLists) {
-			List<TripleRelationJoiner> nextJoiners = new ArrayList<TripleRelationJoiner>();
-			for (TripleRelationJoiner joiner: joiners) {
-				nextJoiners.addAll(joiner.joinAll(candidates.triplePattern(), candidates.all()));
+		return connectedOrder(candidateLists);
+	}
+
+	/**
+	 * Reorders a sorted list of candidate lists so that each one, if
+	 * possible, shares a variable with one of those before it. Among
+	 * those that do, the sort order is kept.
+	 */
+	private List<CandidateList> connectedOrder(List<CandidateList> sorted) {
+		List<CandidateList> remaining = new ArrayList<CandidateList>(sorted);
+		List<CandidateList> result = new ArrayList<CandidateList>(sorted.size());
+		Set<Node> boundVariables = new HashSet<Node>();
+		while (!remaining.isEmpty()) {
+			CandidateList next = remaining.get(0);
+			for (CandidateList candidates: remaining) {
+				if (candidates.sharesVariable(boundVariables)) {
+					next = candidates;
+					break;
+				}
 			}
-			joiners = nextJoiners;
+			remaining.remove(next);
+			result.add(next);
+			next.addVariables(boundVariables);
 		}
-		List<NodeRelation> results = new ArrayList<NodeRelation>(joiners.size());
-		for (TripleRelationJoiner joiner: joiners) {
-			NodeRelation nodeRelation = joiner.toNodeRelation();
-			if (!nodeRelation.baseRelation().equals(Relation.EMPTY) || !useAllOptimizations)
-				results.add(nodeRelation);
-		}
-		return results;
+		return result;
 	}
 
 	private class CandidateList implements Comparable<CandidateList> {
 		private final Triple triplePattern;
 		private final List<NodeRelation> candidates;
+		private final long estimatedRows;
 		CandidateList(Triple triplePattern, boolean useIndex, int index) {
 			this.triplePattern = triplePattern;
 			List<NodeRelation> matches = findMatchingTripleRelations(triplePattern);
@@ -88,6 +160,7 @@ public class GraphPatternTranslator {
 			} else {
 				candidates = matches;
 			}
+			estimatedRows = estimateRows(candidates);
 		}
 		boolean isEmpty() {
 			return candidates.isEmpty();
@@ -106,11 +179,39 @@ public class GraphPatternTranslator {
 			if (candidates.size() > otherList.candidates.size()) {
 				return 1;
 			}
+			// Lists without estimates go last, so the order stays consistent
+			long rows = estimatedRows == TableStatistics.UNKNOWN ? Long.MAX_VALUE : estimatedRows;
+			long otherRows = otherList.estimatedRows == TableStatistics.UNKNOWN ? Long.MAX_VALUE : otherList.estimatedRows;
+			if (rows < otherRows) {
+				return -1;
+			}
+			if (rows > otherRows) {
+				return 1;
+			}
 			return 0;
 		}
+		boolean sharesVariable(Set<Node> variables) {
+			return variables.contains(triplePattern.getSubject())
+					|| variables.contains(triplePattern.getPredicate())
+					|| variables.contains(triplePattern.getObject());
+		}
+		void addVariables(Set<Node> variables) {
+			if (triplePattern.getSubject().isVariable()) variables.add(triplePattern.getSubject());
+			if (triplePattern.getPredicate().isVariable()) variables.add(triplePattern.getPredicate());
+			if (triplePattern.getObject().isVariable()) variables.add(triplePattern.getObject());
+		}
+		private long estimateRows(List<NodeRelation> relations) {
+			long result = 0;
+			for (NodeRelation relation: relations) {
+				long rows = CardinalityEstimator.estimateRows(relation.baseRelation());
+				if (rows == TableStatistics.UNKNOWN) return TableStatistics.UNKNOWN;
+				result += rows;
+			}
+			return result;
+		}
 		private List<NodeRelation> findMatchingTripleRelations(Triple triplePattern) {
 			List<NodeRelation> results = new ArrayList<NodeRelation>();
-			for (TripleRelation tripleRelation: tripleRelations) {
+			for (TripleRelation tripleRelation: tripleRelations.candidates(triplePattern)) {
 				TripleRelation selected = tripleRelation.selectTriple(triplePattern);
 				if (selected == null) continue;
 				results.add(selected);
@@ -125,7 +226,9 @@ public class GraphPatternTranslator {
 			return results;
 		}
 		public String toString() {
-			return "CandidateList(" + triplePattern + ")[" + candidates + "]";
+			return "CandidateList(" + triplePattern + ", " + 
+					(estimatedRows == TableStatistics.UNKNOWN ? "?" : estimatedRows) + 
+					" rows)[" + candidates + "]";
 		}
 	}
 }
@@ -0,0 +1,127 @@
+package de.fuberlin.wiwiss.d2rq.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.expr.Expr;
+import com.hp.hpl.jena.sparql.expr.ExprList;
+
+import de.fuberlin.wiwiss.d2rq.algebra.LeftOuterJoin;
+import de.fuberlin.wiwiss.d2rq.algebra.NodeRelation;
+import de.fuberlin.wiwiss.d2rq.algebra.ProjectionSpec;
+import de.fuberlin.wiwiss.d2rq.algebra.Relation;
+import de.fuberlin.wiwiss.d2rq.algebra.RelationImpl;
+import de.fuberlin.wiwiss.d2rq.algebra.RelationName;
+import de.fuberlin.wiwiss.d2rq.algebra.VariableConstraints;
+import de.fuberlin.wiwiss.d2rq.expr.Conjunction;
+import de.fuberlin.wiwiss.d2rq.expr.Expression;
+import de.fuberlin.wiwiss.d2rq.nodes.NodeMaker;
+import de.fuberlin.wiwiss.d2rq.optimizer.expr.TransformExprToSQLApplyer;
+
+/**
+ * Translates a SPARQL left join (<code>OPTIONAL</code>) of two
+ * {@link NodeRelation}s into a single node relation whose base
+ * relation has an additional {@link LeftOuterJoin}. The variables
+ * that occur only on the optional side are unbound where the optional
+ * side has no matching tuple.
+ *
+ * The left join's filter expressions go into the <code>ON</code>
+ * clause, so they must be fully translatable into SQL.
+ */
+class LeftJoinTranslator {
+	private final NodeRelation left;
+	private final NodeRelation right;
+	private final ExprList filters;
+
+	LeftJoinTranslator(NodeRelation left, NodeRelation right, ExprList filters) {
+		this.left = left;
+		this.right = right;
+		this.filters = filters == null ? new ExprList() : filters;
+	}
+
+	/**
+	 * @return The combined node relation, or <code>null</code> if the
+	 * 		left join cannot be expressed as an SQL outer join
+	 */
+	public NodeRelation translate() {
+		Relation leftRelation = left.baseRelation();
+		if (!TripleRelationJoiner.isJoinable(leftRelation) 
+				|| !TripleRelationJoiner.isJoinable(right.baseRelation())) return null;
+		if (!leftRelation.database().equals(right.baseRelation().database())) return null;
+		if (!right.baseRelation().leftOuterJoins().isEmpty()) return null;
+		// A value rejected by a node maker would have to remove the
+		// optional part from the row, which SQL can't do
+		if (!OpUnionTableSQL.producesSolutionForEveryRow(Collections.singleton(right))) return null;
+		if (requiredTables(leftRelation).isEmpty()) return null;
+
+		NodeRelation optional = right.withDistinctTables(leftRelation.tables());
+		Set<Var> leftOptionalVariables = left.optionalVariables();
+		VariableConstraints constraints = new VariableConstraints();
+		Map<Var,NodeMaker> nodeMakers = new HashMap<Var,NodeMaker>();
+		for (Var variable: left.variables()) {
+			nodeMakers.put(variable, left.nodeMaker(variable));
+		}
+		for (Var variable: optional.variables()) {
+			NodeMaker nodeMaker = optional.nodeMaker(variable);
+			if (left.variables().contains(variable)) {
+				if (leftOptionalVariables.contains(variable)) return null;
+				constraints.add(variable, left.nodeMaker(variable), leftRelation.aliases());
+				constraints.add(variable, nodeMaker, optional.baseRelation().aliases());
+			} else {
+				// Without a column we couldn't tell if the optional part matched
+				if (nodeMaker.projectionSpecs().isEmpty()) return null;
+				nodeMakers.put(variable, nodeMaker);
+			}
+		}
+		if (!constraints.satisfiable()) return null;
+
+		Set<ProjectionSpec> projections = new HashSet<ProjectionSpec>(leftRelation.projections());
+		projections.addAll(optional.baseRelation().projections());
+		List<LeftOuterJoin> leftOuterJoins = new ArrayList<LeftOuterJoin>(leftRelation.leftOuterJoins());
+		leftOuterJoins.add(new LeftOuterJoin(optional.baseRelation(), constraints.constraint()));
+		NodeRelation result = new NodeRelation(new RelationImpl(
+				leftRelation.database(),
+				leftRelation.aliases().applyTo(optional.baseRelation().aliases()),
+				leftRelation.condition(), leftRelation.softCondition(),
+				leftRelation.joinConditions(), projections, false,
+				leftRelation.orderSpecs(), Relation.NO_LIMIT, Relation.NO_LIMIT,
+				leftOuterJoins), nodeMakers);
+		if (!TripleRelationJoiner.supportsDistinct(result.baseRelation())) return null;
+
+		List<Expression> conditions = new ArrayList<Expression>();
+		for (Expr filter: filters) {
+			if (!Collections.disjoint(filter.getVarsMentioned(), leftOptionalVariables)) return null;
+			Expression expression = TransformExprToSQLApplyer.convert(filter, result);
+			if (expression == null) return null;
+			conditions.add(expression);
+		}
+		if (conditions.isEmpty()) return result;
+		Expression condition = Conjunction.create(conditions);
+		if (condition.isFalse()) return null;
+		leftOuterJoins.set(leftOuterJoins.size() - 1,
+				leftOuterJoins.get(leftOuterJoins.size() - 1).select(condition));
+		return new NodeRelation(new RelationImpl(
+				leftRelation.database(), result.baseRelation().aliases(),
+				leftRelation.condition(), leftRelation.softCondition(),
+				leftRelation.joinConditions(), projections, false,
+				leftRelation.orderSpecs(), Relation.NO_LIMIT, Relation.NO_LIMIT,
+				leftOuterJoins), nodeMakers);
+	}
+
+	/**
+	 * @return The tables of the relation that are not part of a left outer join
+	 */
+	private Set<RelationName> requiredTables(Relation relation) {
+		Set<RelationName> result = new HashSet<RelationName>(relation.tables());
+		for (LeftOuterJoin join: relation.leftOuterJoins()) {
+			result.removeAll(join.tables());
+		}
+		return result;
+	}
+}
@@ -0,0 +1,364 @@
+package de.fuberlin.wiwiss.d2rq.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openjena.atlas.io.IndentedWriter;
+
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.sparql.algebra.Op;
+import com.hp.hpl.jena.sparql.algebra.op.OpExt;
+import com.hp.hpl.jena.sparql.algebra.op.OpGroup;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext;
+import com.hp.hpl.jena.sparql.engine.QueryIterator;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingFactory;
+import com.hp.hpl.jena.sparql.engine.binding.BindingMap;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterRepeatApply;
+import com.hp.hpl.jena.sparql.engine.main.QC;
+import com.hp.hpl.jena.sparql.expr.Expr;
+import com.hp.hpl.jena.sparql.expr.ExprAggregator;
+import com.hp.hpl.jena.sparql.expr.NodeValue;
+import com.hp.hpl.jena.sparql.expr.aggregate.AggAvg;
+import com.hp.hpl.jena.sparql.expr.aggregate.AggAvgDistinct;
+import com.hp.hpl.jena.sparql.expr.aggregate.AggCount;
+import com.hp.hpl.jena.sparql.expr.aggregate.AggCountVar;
+import com.hp.hpl.jena.sparql.expr.aggregate.AggCountVarDistinct;
+import com.hp.hpl.jena.sparql.expr.aggregate.AggMax;
+import com.hp.hpl.jena.sparql.expr.aggregate.AggMaxDistinct;
+import com.hp.hpl.jena.sparql.expr.aggregate.AggMin;
+import com.hp.hpl.jena.sparql.expr.aggregate.AggMinDistinct;
+import com.hp.hpl.jena.sparql.expr.aggregate.AggSum;
+import com.hp.hpl.jena.sparql.expr.aggregate.AggSumDistinct;
+import com.hp.hpl.jena.sparql.expr.aggregate.Aggregator;
+import com.hp.hpl.jena.sparql.expr.nodevalue.XSDFuncOp;
+import com.hp.hpl.jena.sparql.serializer.SerializationContext;
+import com.hp.hpl.jena.sparql.util.NodeIsomorphismMap;
+
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.ExpressionProjectionSpec;
+import de.fuberlin.wiwiss.d2rq.algebra.NodeRelation;
+import de.fuberlin.wiwiss.d2rq.algebra.OrderSpec;
+import de.fuberlin.wiwiss.d2rq.algebra.ProjectionSpec;
+import de.fuberlin.wiwiss.d2rq.algebra.Relation;
+import de.fuberlin.wiwiss.d2rq.algebra.RelationImpl;
+import de.fuberlin.wiwiss.d2rq.expr.Aggregate;
+import de.fuberlin.wiwiss.d2rq.expr.Conjunction;
+import de.fuberlin.wiwiss.d2rq.expr.Expression;
+import de.fuberlin.wiwiss.d2rq.map.Database;
+import de.fuberlin.wiwiss.d2rq.nodes.FixedNodeMaker;
+import de.fuberlin.wiwiss.d2rq.nodes.NodeMaker;
+import de.fuberlin.wiwiss.d2rq.nodes.TypedNodeMaker;
+import de.fuberlin.wiwiss.d2rq.nodes.TypedNodeMaker.NodeType;
+import de.fuberlin.wiwiss.d2rq.sql.ConnectedDB;
+import de.fuberlin.wiwiss.d2rq.sql.ResultRow;
+import de.fuberlin.wiwiss.d2rq.sql.types.DataType;
+import de.fuberlin.wiwiss.d2rq.values.BlankNodeID;
+import de.fuberlin.wiwiss.d2rq.values.Column;
+import de.fuberlin.wiwiss.d2rq.values.Pattern;
+
+/**
+ * An {@link Op} that evaluates an {@link OpGroup} over a single
+ * {@link NodeRelation} as one SQL query with aggregate functions
+ * and a <code>GROUP BY</code> clause.
+ *
+ * Supports <code>COUNT</code>, <code>COUNT(DISTINCT ...)</code>,
+ * <code>MIN</code>, <code>MAX</code>, <code>SUM</code> and
+ * <code>AVG</code> over variables, grouped by variables that are
+ * made from columns or patterns. <code>AVG</code> is computed from
+ * <code>SUM</code> and <code>COUNT</code>, so that the result has
+ * the same datatype and precision as ARQ's.
+ *
+ * Input bindings other than the empty binding are passed on to
+ * the original {@link OpGroup}.
+ */
+public class OpAggregateSQL extends OpExt {
+
+	/**
+	 * Creates an instance if the grouping can be done in SQL,
+	 * or returns the original op otherwise.
+	 */
+	public static Op create(OpGroup opGroup) {
+		if (!(opGroup.getSubOp() instanceof OpUnionTableSQL)) return opGroup;
+		OpUnionTableSQL union = (OpUnionTableSQL) opGroup.getSubOp();
+		if (union.isOrdered() || union.isSliced() || union.tableOps().size() != 1) return opGroup;
+		NodeRelation table = union.tableOps().get(0).table();
+		Relation relation = table.baseRelation();
+		if (relation.isTrivial() || relation.database() == null) return opGroup;
+		if (!relation.leftOuterJoins().isEmpty()) return opGroup;
+		// A limit would have to be applied before the grouping
+		if (relation.limit() != Relation.NO_LIMIT
+				|| relation.database().limit() != Database.NO_LIMIT) return opGroup;
+		// Each SQL row must turn into exactly one solution
+		if (!OpUnionTableSQL.producesSolutionForEveryRow(Collections.singleton(table))) return opGroup;
+
+		Map<Var,NodeMaker> keys = new HashMap<Var,NodeMaker>();
+		for (Var var: opGroup.getGroupVars().getVars()) {
+			if (opGroup.getGroupVars().hasExpr(var)) return opGroup;
+			if (!table.variables().contains(var)) continue;
+			NodeMaker nodeMaker = table.nodeMaker(var);
+			if (!isGroupableInSQL(nodeMaker, relation)) return opGroup;
+			keys.put(var, nodeMaker);
+		}
+		List<AggregateValue> values = new ArrayList<AggregateValue>();
+		for (ExprAggregator aggregator: opGroup.getAggregators()) {
+			AggregateValue value = AggregateValue.create(
+					aggregator.getVar(), aggregator.getAggregator(), table);
+			if (value == null) return opGroup;
+			values.add(value);
+		}
+
+		Set<ProjectionSpec> projections = new HashSet<ProjectionSpec>();
+		for (NodeMaker nodeMaker: keys.values()) {
+			projections.addAll(nodeMaker.projectionSpecs());
+		}
+		for (AggregateValue value: values) {
+			projections.addAll(value.projections());
+		}
+		// Rows with NULLs would be rejected by the node makers
+		List<Expression> conditions = new ArrayList<Expression>();
+		conditions.add(relation.condition());
+		for (ProjectionSpec projection: relation.projections()) {
+			conditions.add(projection.notNullExpression(relation.database(), relation.aliases()));
+		}
+		Relation aggregated = new RelationImpl(relation.database(), relation.aliases(),
+				Conjunction.create(conditions), relation.softCondition(),
+				relation.joinConditions(), projections, true,
+				Collections.<OrderSpec>emptyList(), Relation.NO_LIMIT, Relation.NO_LIMIT);
+		if (!mentionsAttributes(aggregated)) return opGroup;
+		return new OpAggregateSQL(opGroup, aggregated, new AggregateBindingMaker(keys, values));
+	}
+
+	private final static Set<String> NUMERIC_TYPES = new HashSet<String>(Arrays.asList(
+			new String[]{"xsd:integer", "xsd:decimal", "xsd:double"}));
+
+	private final OpGroup opGroup;
+	private final Relation relation;
+	private final BindingMaker bindingMaker;
+
+	private OpAggregateSQL(OpGroup opGroup, Relation relation, BindingMaker bindingMaker) {
+		super("sqlgroup");
+		this.opGroup = opGroup;
+		this.relation = relation;
+		this.bindingMaker = bindingMaker;
+	}
+
+	public Relation relation() {
+		return relation;
+	}
+
+	@Override
+	public QueryIterator eval(QueryIterator input, final ExecutionContext execCxt) {
+		return new QueryIterRepeatApply(input, execCxt) {
+			@Override
+			protected QueryIterator nextStage(Binding binding) {
+				if (!binding.isEmpty()) {
+					return QC.execute(opGroup, binding, execCxt);
+				}
+				return QueryIterTableSQL.create(relation,
+						Collections.singleton(bindingMaker), execCxt);
+			}
+		};
+	}
+
+	@Override
+	public Op effectiveOp() {
+		return opGroup;
+	}
+
+	@Override
+	public void outputArgs(IndentedWriter out, SerializationContext sCxt) {
+		out.println(relation);
+		out.println(bindingMaker);
+	}
+
+	@Override
+	public int hashCode() {
+		return 72345645 ^ opGroup.hashCode();
+	}
+
+	@Override
+	public boolean equalTo(Op other, NodeIsomorphismMap labelMap) {
+		if (!(other instanceof OpAggregateSQL)) return false;
+		return ((OpAggregateSQL) other).opGroup.equalTo(opGroup, labelMap);
+	}
+
+	/**
+	 * Checks that the node maker produces distinct nodes from distinct
+	 * values, and that the values can be compared in SQL. Only numeric,
+	 * date and time columns qualify; string comparison depends on the
+	 * collation, which may consider values equal that differ in case.
+	 */
+	private static boolean isGroupableInSQL(NodeMaker nodeMaker, Relation relation) {
+		if (nodeMaker instanceof FixedNodeMaker) return true;
+		if (!(nodeMaker instanceof TypedNodeMaker)) return false;
+		TypedNodeMaker typed = (TypedNodeMaker) nodeMaker;
+		if (!(typed.valueMaker() instanceof Column)
+				&& !(typed.valueMaker() instanceof Pattern)
+				&& !(typed.valueMaker() instanceof BlankNodeID)) return false;
+		for (ProjectionSpec projection: nodeMaker.projectionSpecs()) {
+			for (Attribute column: projection.requiredAttributes()) {
+				DataType columnType = relation.database().columnType(
+						relation.aliases().originalOf(column));
+				if (columnType == null || !columnType.supportsDistinct()
+						|| !OpUnionTableSQL.ORDERABLE_TYPES.contains(columnType.rdfType())) return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean mentionsAttributes(Relation relation) {
+		if (!relation.condition().attributes().isEmpty()) return true;
+		for (ProjectionSpec projection: relation.projections()) {
+			if (!projection.requiredAttributes().isEmpty()) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Makes bindings for the group keys from the node makers, and
+	 * adds the aggregate values. Unlike the keys, an aggregate without
+	 * value doesn't reject the row but is left unbound.
+	 */
+	private static class AggregateBindingMaker extends BindingMaker {
+		private final List<AggregateValue> values;
+		AggregateBindingMaker(Map<Var,NodeMaker> keys, List<AggregateValue> values) {
+			super(keys, null);
+			this.values = values;
+		}
+		@Override
+		public Binding makeBinding(ResultRow row) {
+			Binding keys = super.makeBinding(row);
+			if (keys == null) return null;
+			BindingMap result = BindingFactory.create(keys);
+			for (AggregateValue value: values) {
+				Node node = value.makeNode(row);
+				if (node == null) continue;
+				result.add(value.var, node);
+			}
+			return result;
+		}
+		@Override
+		public String toString() {
+			return super.toString() + " AGGREGATES " + values;
+		}
+	}
+
+	/**
+	 * Turns a SPARQL aggregator into SQL aggregates, and the
+	 * values of the SQL aggregates back into a node.
+	 */
+	private static class AggregateValue {
+
+		/**
+		 * @return <code>null</code> if the aggregator can't be computed in SQL
+		 */
+		static AggregateValue create(Var var, Aggregator aggregator, NodeRelation table) {
+			Relation relation = table.baseRelation();
+			Node empty = aggregator.getValueEmpty();
+			if (aggregator instanceof AggCount) {
+				return relation.isUnique() ? new AggregateValue(var, Aggregate.countRows(), null, null, empty) : null;
+			}
+			Expr expr = aggregator.getExpr();
+			if (expr == null || !expr.isVariable()
+					|| !table.variables().contains(expr.asVar())) return null;
+			NodeMaker nodeMaker = table.nodeMaker(expr.asVar());
+			if (aggregator instanceof AggCountVar) {
+				// The variable is bound in every solution
+				return relation.isUnique() ? new AggregateValue(var, Aggregate.countRows(), null, null, empty) : null;
+			}
+			if (aggregator instanceof AggCountVarDistinct) {
+				if (!isGroupableInSQL(nodeMaker, relation)
+						|| nodeMaker.projectionSpecs().size() != 1) return null;
+				Expression distinctValues = nodeMaker.projectionSpecs().iterator().next().toExpression();
+				return new AggregateValue(var,
+						Aggregate.create(Aggregate.COUNT, distinctValues, true), null, null, empty);
+			}
+			if (!OpUnionTableSQL.isOrderableInSQL(nodeMaker, relation)
+					|| !(nodeMaker instanceof TypedNodeMaker)) return null;
+			TypedNodeMaker typed = (TypedNodeMaker) nodeMaker;
+			Expression column = ((Column) typed.valueMaker()).attribute().toExpression();
+			boolean min = (aggregator instanceof AggMin) || (aggregator instanceof AggMinDistinct);
+			boolean max = (aggregator instanceof AggMax) || (aggregator instanceof AggMaxDistinct);
+			if (min || max) {
+				// Duplicates don't matter, so DISTINCT can be dropped
+				String function = min ? Aggregate.MIN : Aggregate.MAX;
+				return new AggregateValue(var,
+						Aggregate.create(function, column, false), null, typed.nodeType(), empty);
+			}
+			if (!isNumeric(column, relation)) return null;
+			boolean distinct = (aggregator instanceof AggSumDistinct)
+					|| (aggregator instanceof AggAvgDistinct);
+			if (!distinct && !relation.isUnique()) return null;
+			Aggregate sum = Aggregate.create(Aggregate.SUM, column, distinct);
+			if (aggregator instanceof AggSum || aggregator instanceof AggSumDistinct) {
+				return new AggregateValue(var, sum, null, typed.nodeType(), empty);
+			}
+			if (aggregator instanceof AggAvg || aggregator instanceof AggAvgDistinct) {
+				return new AggregateValue(var, sum,
+						Aggregate.create(Aggregate.COUNT, column, distinct), typed.nodeType(), empty);
+			}
+			return null;
+		}
+
+		private static boolean isNumeric(Expression column, Relation relation) {
+			ConnectedDB database = relation.database();
+			Attribute attribute = relation.aliases().originalOf(
+					column.attributes().iterator().next());
+			return NUMERIC_TYPES.contains(database.columnType(attribute).rdfType());
+		}
+
+		final Var var;
+		private final ProjectionSpec value;
+		private final ProjectionSpec count;
+		private final NodeType nodeType;
+		private final Node empty;
+
+		/**
+		 * @param count Divide the value by this count; may be <code>null</code>
+		 * @param nodeType Type of the value; <code>null</code> for <code>xsd:integer</code>
+		 * @param empty Value for an empty group; may be <code>null</code>
+		 */
+		private AggregateValue(Var var, Aggregate value, Aggregate count,
+				NodeType nodeType, Node empty) {
+			this.var = var;
+			this.value = new ExpressionProjectionSpec(value);
+			this.count = count == null ? null : new ExpressionProjectionSpec(count);
+			this.nodeType = nodeType;
+			this.empty = empty;
+		}
+
+		Set<ProjectionSpec> projections() {
+			Set<ProjectionSpec> result = new HashSet<ProjectionSpec>();
+			result.add(value);
+			if (count != null) {
+				result.add(count);
+			}
+			return result;
+		}
+
+		Node makeNode(ResultRow row) {
+			String lexicalForm = row.get(value);
+			if (lexicalForm == null) return empty;
+			Node node = (nodeType == null)
+					? Node.createLiteral(lexicalForm, null, XSDDatatype.XSDinteger)
+					: nodeType.makeNode(lexicalForm);
+			if (count == null || node == null) return node;
+			long n = Long.parseLong(row.get(count));
+			if (n == 0) return empty;
+			return XSDFuncOp.divide(NodeValue.makeNode(node), NodeValue.makeInteger(n)).asNode();
+		}
+
+		public String toString() {
+			return var + " => " + value + (count == null ? "" : " / " + count);
+		}
+	}
+}
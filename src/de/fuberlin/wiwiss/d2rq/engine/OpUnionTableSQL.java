@@ -2,25 +2,54 @@ package de.fuberlin.wiwiss.d2rq.engine;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.openjena.atlas.io.IndentedWriter;
 
+import com.hp.hpl.jena.datatypes.RDFDatatype;
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.SortCondition;
 import com.hp.hpl.jena.sparql.algebra.Op;
 import com.hp.hpl.jena.sparql.algebra.op.OpExt;
 import com.hp.hpl.jena.sparql.algebra.op.OpNull;
+import com.hp.hpl.jena.sparql.algebra.op.OpOrder;
+import com.hp.hpl.jena.sparql.algebra.op.OpSlice;
 import com.hp.hpl.jena.sparql.algebra.op.OpTable;
+import com.hp.hpl.jena.sparql.core.Var;
 import com.hp.hpl.jena.sparql.engine.ExecutionContext;
 import com.hp.hpl.jena.sparql.engine.QueryIterator;
 import com.hp.hpl.jena.sparql.engine.binding.Binding;
 import com.hp.hpl.jena.sparql.engine.iterator.QueryIterConcat;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterNullIterator;
 import com.hp.hpl.jena.sparql.engine.iterator.QueryIterRepeatApply;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterSingleton;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterSlice;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterSort;
 import com.hp.hpl.jena.sparql.serializer.SerializationContext;
 import com.hp.hpl.jena.sparql.sse.writers.WriterOp;
 import com.hp.hpl.jena.sparql.util.NodeIsomorphismMap;
 
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
 import de.fuberlin.wiwiss.d2rq.algebra.CompatibleRelationGroup;
+import de.fuberlin.wiwiss.d2rq.algebra.MutableRelation;
 import de.fuberlin.wiwiss.d2rq.algebra.NodeRelation;
+import de.fuberlin.wiwiss.d2rq.algebra.OrderSpec;
+import de.fuberlin.wiwiss.d2rq.algebra.Relation;
+import de.fuberlin.wiwiss.d2rq.map.Database;
+import de.fuberlin.wiwiss.d2rq.nodes.FixedNodeMaker;
+import de.fuberlin.wiwiss.d2rq.nodes.NodeMaker;
+import de.fuberlin.wiwiss.d2rq.nodes.TypedNodeMaker;
+import de.fuberlin.wiwiss.d2rq.nodes.TypedNodeMaker.LiteralNodeType;
+import de.fuberlin.wiwiss.d2rq.sql.types.DataType;
+import de.fuberlin.wiwiss.d2rq.values.Column;
+import de.fuberlin.wiwiss.d2rq.values.ValueDecorator;
 
 /**
  * An {@link Op} that wraps a union of multiple {@link NodeRelation}s.
@@ -28,6 +57,10 @@ import de.fuberlin.wiwiss.d2rq.algebra.NodeRelation;
  * This is typically, but not necessarily, the result of matching a BGP
  * against a D2RQ-mapped database.
  * 
+ * An instance can carry an ordering (<code>ORDER BY</code>) and a slice 
+ * (<code>LIMIT</code> and <code>OFFSET</code>), which are then applied
+ * in SQL as far as possible.
+ * 
  * @author Richard Cyganiak (richard@cyganiak.de)
  */
 public class OpUnionTableSQL extends OpExt {
@@ -49,37 +82,298 @@ public class OpUnionTableSQL extends OpExt {
 		return new OpUnionTableSQL(nonEmpty);
 	}
 	
+	/**
+	 * SQL types whose ordering and equality match the SPARQL ordering
+	 * and term equality of literals of the corresponding XSD datatype.
+	 * Strings are missing because SQL collations don't sort by code
+	 * point, and many compare case- and trailing-space-insensitively.
+	 */
+	final static Set<String> ORDERABLE_TYPES = new HashSet<String>(Arrays.asList(
+			new String[]{"xsd:integer", "xsd:decimal", "xsd:double", 
+					"xsd:date", "xsd:time", "xsd:dateTime"}));
+
 	private final List<OpTableSQL> tableOps;
 	private final Op effectiveOp;
+	private final List<SortCondition> conditions;
+	private final long start;
+	private final long length;
 	
 	public OpUnionTableSQL(Collection<OpTableSQL> tableOps) {
 		this(tableOps, OpTable.unit());
 	}
 	
 	public OpUnionTableSQL(Collection<OpTableSQL> tableOps, Op effectiveOp) {
+		this(tableOps, effectiveOp, null, Query.NOLIMIT, Query.NOLIMIT);
+	}
+	
+	private OpUnionTableSQL(Collection<OpTableSQL> tableOps, Op effectiveOp,
+			List<SortCondition> conditions, long start, long length) {
 		super("sqlunion");
 		this.tableOps = new ArrayList<OpTableSQL>(tableOps);
 		this.effectiveOp = effectiveOp;
+		this.conditions = conditions;
+		this.start = start;
+		this.length = length;
+	}
+	
+	public List<OpTableSQL> tableOps() {
+		return tableOps;
+	}
+	
+	/**
+	 * Checks if the solutions can be sorted by the conditions in SQL.
+	 * That's the case if there is only one table, and each condition is
+	 * a variable whose values sort the same way in SQL and SPARQL. These
+	 * are numeric, date and time literals made from a column of the
+	 * matching SQL type.
+	 */
+	public boolean canOrderBy(List<SortCondition> conditions) {
+		if (tableOps.size() != 1 || isOrdered() || isSliced()) return false;
+		NodeRelation table = tableOps.get(0).table();
+		for (SortCondition condition: conditions) {
+			if (!condition.getExpression().isVariable()) return false;
+			Var var = condition.getExpression().asVar();
+			if (!table.variables().contains(var)) continue;
+			// SQL sorts NULLs differently from unbound variables
+			if (table.optionalVariables().contains(var)) return false;
+			if (!isOrderableInSQL(table.nodeMaker(var), table.baseRelation())) return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns an op that is equivalent to an {@link OpOrder} over this op.
+	 * @see #canOrderBy(List)
+	 */
+	public OpUnionTableSQL orderBy(List<SortCondition> conditions) {
+		if (!canOrderBy(conditions)) {
+			throw new IllegalStateException("Cannot order in SQL: " + this);
+		}
+		return new OpUnionTableSQL(tableOps, 
+				new OpOrder(effectiveOp, conditions), conditions, start, length);
+	}
+	
+	public boolean isOrdered() {
+		return conditions != null;
+	}
+	
+	/**
+	 * Returns an op that is equivalent to an {@link OpSlice}
+	 * over this op.
+	 * @param start Number of solutions to skip, or {@link Query#NOLIMIT}
+	 * @param length Maximum number of solutions
+	 */
+	public OpUnionTableSQL slice(long start, long length) {
+		if (isSliced()) {
+			throw new IllegalStateException("Already sliced: " + this);
+		}
+		return new OpUnionTableSQL(tableOps, 
+				new OpSlice(effectiveOp, start, length), conditions, start, length);
+	}
+	
+	public boolean isSliced() {
+		return length != Query.NOLIMIT;
+	}
+	
+	/**
+	 * Replaces the variables of a binding with their values. The
+	 * variables no longer occur in the solutions, and tables whose
+	 * rows can't have the values are dropped.
+	 * 
+	 * @return An equivalent op, or an {@link OpNull} if no table is left
+	 */
+	public Op substitute(Binding binding) {
+		Collection<OpTableSQL> substituted = new ArrayList<OpTableSQL>();
+		for (OpTableSQL tableOp: tableOps) {
+			NodeRelation table = tableOp.table().substituteConstants(binding);
+			if (table.baseRelation().condition().isFalse()) continue;
+			Map<Var,NodeMaker> nodeMakers = new HashMap<Var,NodeMaker>();
+			boolean isEmpty = false;
+			for (Var var: table.variables()) {
+				if (!binding.contains(var)) {
+					nodeMakers.put(var, table.nodeMaker(var));
+				} else if (table.nodeMaker(var).equals(NodeMaker.EMPTY)) {
+					isEmpty = true;
+				}
+			}
+			if (isEmpty) continue;
+			substituted.add(new OpTableSQL(
+					new NodeRelation(table.baseRelation(), nodeMakers)));
+		}
+		if (substituted.isEmpty()) {
+			return OpNull.create();
+		}
+		return new OpUnionTableSQL(substituted, effectiveOp, conditions, start, length);
 	}
 	
 	@Override
 	public QueryIterator eval(QueryIterator input, final ExecutionContext execCxt) {
+		if (isOrdered() || isSliced()) {
+			return evalOrderedOrSliced(input, execCxt);
+		}
+		Collection<NodeRelation> tables = new ArrayList<NodeRelation>();
+		for (OpTableSQL tableOp: tableOps) {
+			tables.add(tableOp.table());
+		}
+		int batchSize = QueryIterBindJoinSQL.batchSize(tables);
+		if (batchSize > 1) {
+			return new QueryIterBindJoinSQL(input, tables, batchSize, execCxt);
+		}
 		return new QueryIterRepeatApply(input, execCxt) {
 			@Override
 			protected QueryIterator nextStage(Binding binding) {
-				QueryIterConcat resultIt = new QueryIterConcat(execCxt);
-				Collection<NodeRelation> tables = new ArrayList<NodeRelation>();
-				for (OpTableSQL tableOp: tableOps) {
-					tables.add(tableOp.table().extendWith(binding));
-				}
-				for (CompatibleRelationGroup group: CompatibleRelationGroup.groupNodeRelations(tables)) {
-					resultIt.add(QueryIterTableSQL.create(group.baseRelation(), group.bindingMakers(), execCxt));
-				}
-				return resultIt;
+				return evalTables(tablesFor(binding), Relation.NO_LIMIT, execCxt);
 			}
 		};
 	}
 
+	/**
+	 * Evaluates the ordering and slice. The SQL queries are always sorted
+	 * if there's an ordering. If there is just one input binding and 
+	 * one SQL query whose rows each turn into exactly one solution, then 
+	 * the limit and offset go into the SQL query. Otherwise, each SQL query 
+	 * is limited to offset+limit rows if possible, and the results
+	 * of all input bindings are sorted and sliced in ARQ.
+	 */
+	private QueryIterator evalOrderedOrSliced(QueryIterator input, final ExecutionContext execCxt) {
+		long offset = (start == Query.NOLIMIT) ? 0 : start;
+		final int bound = (!isSliced() || offset + length > Integer.MAX_VALUE) 
+				? Relation.NO_LIMIT : (int) (offset + length);
+		if (length == 0 || !input.hasNext()) {
+			input.close();
+			return new QueryIterNullIterator(execCxt);
+		}
+		Binding first = input.nextBinding();
+		QueryIterator result;
+		if (input.hasNext()) {
+			QueryIterConcat allInput = new QueryIterConcat(execCxt);
+			allInput.add(QueryIterSingleton.create(first, execCxt));
+			allInput.add(input);
+			result = new QueryIterRepeatApply(allInput, execCxt) {
+				@Override
+				protected QueryIterator nextStage(Binding binding) {
+					return evalTables(tablesFor(binding), bound, execCxt);
+				}
+			};
+			if (isOrdered()) {
+				// Each input binding's results are sorted; merge them
+				result = new QueryIterSort(result, conditions, execCxt);
+			}
+		} else {
+			input.close();
+			Collection<NodeRelation> tables = tablesFor(first);
+			if (isSliced() && bound != Relation.NO_LIMIT && tables.size() == 1 
+					&& canSliceInSQL(tables.iterator().next(), (int) offset)) {
+				NodeRelation table = tables.iterator().next().limit((int) length);
+				return QueryIterTableSQL.create(table.baseRelation(), 
+						Collections.singleton(BindingMaker.createFor(table)), 
+						(int) offset, execCxt);
+			}
+			result = evalTables(tables, bound, execCxt);
+		}
+		if (!isSliced()) return result;
+		// Closes the SQL iterators as soon as the limit is reached
+		return new QueryIterSlice(result, start, length, execCxt);
+	}
+	
+	private Collection<NodeRelation> tablesFor(Binding binding) {
+		Collection<NodeRelation> tables = new ArrayList<NodeRelation>();
+		for (OpTableSQL tableOp: tableOps) {
+			NodeRelation table = tableOp.table().extendWith(binding);
+			tables.add(isOrdered() ? orderedTable(table) : table);
+		}
+		return tables;
+	}
+	
+	/**
+	 * Sorts the table by the conditions, keeping any ordering
+	 * from the mapping for ties
+	 */
+	private NodeRelation orderedTable(NodeRelation table) {
+		List<OrderSpec> orderSpecs = new ArrayList<OrderSpec>();
+		for (SortCondition condition: conditions) {
+			Var var = condition.getExpression().asVar();
+			if (!table.variables().contains(var)) continue;
+			orderSpecs.addAll(table.nodeMaker(var).orderSpecs(
+					condition.getDirection() != Query.ORDER_DESCENDING));
+		}
+		orderSpecs.addAll(table.baseRelation().orderSpecs());
+		return table.withBaseRelation(
+				new MutableRelation(table.baseRelation()).orderBy(orderSpecs));
+	}
+	
+	static boolean isOrderableInSQL(NodeMaker nodeMaker, Relation relation) {
+		if (nodeMaker instanceof FixedNodeMaker) return true;
+		if (!(nodeMaker instanceof TypedNodeMaker)) return false;
+		TypedNodeMaker typed = (TypedNodeMaker) nodeMaker;
+		if (!(typed.valueMaker() instanceof Column) 
+				|| !(typed.nodeType() instanceof LiteralNodeType)) return false;
+		RDFDatatype datatype = ((LiteralNodeType) typed.nodeType()).datatype();
+		if (datatype == null || relation.database() == null) return false;
+		Attribute column = ((Column) typed.valueMaker()).attribute();
+		DataType columnType = relation.database().columnType(
+				relation.aliases().originalOf(column));
+		if (columnType == null || !ORDERABLE_TYPES.contains(columnType.rdfType())) return false;
+		return datatype.getURI().equals(
+				columnType.rdfType().replaceAll("xsd:", XSDDatatype.XSD + "#"));
+	}
+
+	/**
+	 * @param limit Maximum number of solutions needed, or {@link Relation#NO_LIMIT}
+	 */
+	private static QueryIterator evalTables(Collection<NodeRelation> tables, 
+			int limit, ExecutionContext execCxt) {
+		if (limit != Relation.NO_LIMIT && producesSolutionForEveryRow(tables)) {
+			// Grouping may combine tables into a single query, but each
+			// row of the combined query still produces at least one solution
+			Collection<NodeRelation> limited = new ArrayList<NodeRelation>(tables.size());
+			for (NodeRelation table: tables) {
+				limited.add(table.limit(limit));
+			}
+			tables = limited;
+		}
+		return QueryIterConcatParallel.create(
+				new ArrayList<CompatibleRelationGroup>(
+						CompatibleRelationGroup.groupNodeRelations(tables)), 
+				execCxt);
+	}
+	
+	private static boolean canSliceInSQL(NodeRelation table, int offset) {
+		Relation relation = table.baseRelation();
+		if (relation.isTrivial() || relation.database() == null) return false;
+		// A limit from the mapping would have to be applied before the offset
+		if (relation.limit() != Relation.NO_LIMIT 
+				|| relation.database().limit() != Database.NO_LIMIT) return false;
+		if (relation.database().vendor().getOffsetAsQueryAppendage(offset) == null) return false;
+		return producesSolutionForEveryRow(Collections.singleton(table));
+	}
+	
+	/**
+	 * Checks if each SQL result row produces a solution. This is not the 
+	 * case if a node maker rejects some values, e.g., because of value
+	 * constraints, translation tables, or invalid typed literals.
+	 */
+	static boolean producesSolutionForEveryRow(Collection<NodeRelation> tables) {
+		for (NodeRelation table: tables) {
+			for (Var var: table.variables()) {
+				if (!acceptsAllValues(table.nodeMaker(var))) return false;
+			}
+		}
+		return true;
+	}
+	
+	private static boolean acceptsAllValues(NodeMaker nodeMaker) {
+		if (nodeMaker instanceof FixedNodeMaker) return true;
+		if (!(nodeMaker instanceof TypedNodeMaker)) return false;
+		TypedNodeMaker typed = (TypedNodeMaker) nodeMaker;
+		if (typed.valueMaker() instanceof ValueDecorator) return false;
+		// These validate the lexical form
+		return typed.nodeType() != TypedNodeMaker.XSD_DATE 
+				&& typed.nodeType() != TypedNodeMaker.XSD_TIME 
+				&& typed.nodeType() != TypedNodeMaker.XSD_DATETIME
+				&& typed.nodeType() != TypedNodeMaker.XSD_BOOLEAN;
+	}
+
 	@Override
 	public Op effectiveOp() {
 		return effectiveOp;
@@ -87,6 +381,21 @@ public class OpUnionTableSQL extends OpExt {
 	
 	@Override
 	public void outputArgs(IndentedWriter out, SerializationContext sCxt) {
+		if (isOrdered()) {
+			out.print("(order");
+			for (SortCondition condition: conditions) {
+				out.print(" ");
+				condition.output(out, sCxt);
+			}
+			out.print(")");
+		}
+		if (isSliced()) {
+			out.print("(slice ");
+			out.print(start == Query.NOLIMIT ? "_" : Long.toString(start));
+			out.print(" ");
+			out.print(Long.toString(length));
+			out.print(")");
+		}
 		out.println();
 		for (OpTableSQL table: tableOps) {
 			WriterOp.output(out, table, sCxt);
@@ -95,12 +404,17 @@ public class OpUnionTableSQL extends OpExt {
 
 	@Override
 	public int hashCode() {
-		return 72345644 ^ tableOps.hashCode();
+		return 72345644 ^ tableOps.hashCode() ^ (int) start ^ ((int) length << 8)
+				^ (conditions == null ? 0 : conditions.hashCode());
 	}
 
 	@Override
 	public boolean equalTo(Op other, NodeIsomorphismMap labelMap) {
 		if (!(other instanceof OpUnionTableSQL)) return false;
-		return ((OpUnionTableSQL) other).tableOps.equals(tableOps);
+		OpUnionTableSQL otherUnion = (OpUnionTableSQL) other;
+		return otherUnion.tableOps.equals(tableOps) 
+				&& otherUnion.start == start && otherUnion.length == length
+				&& (conditions == null ? otherUnion.conditions == null 
+						: conditions.equals(otherUnion.conditions));
 	}
 }
@@ -0,0 +1,279 @@
+package de.fuberlin.wiwiss.d2rq.engine;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.sparql.algebra.Op;
+import com.hp.hpl.jena.sparql.algebra.OpVars;
+import com.hp.hpl.jena.sparql.algebra.TransformCopy;
+import com.hp.hpl.jena.sparql.algebra.Transformer;
+import com.hp.hpl.jena.sparql.algebra.op.Op1;
+import com.hp.hpl.jena.sparql.algebra.op.Op2;
+import com.hp.hpl.jena.sparql.algebra.op.OpAssign;
+import com.hp.hpl.jena.sparql.algebra.op.OpBGP;
+import com.hp.hpl.jena.sparql.algebra.op.OpConditional;
+import com.hp.hpl.jena.sparql.algebra.op.OpDisjunction;
+import com.hp.hpl.jena.sparql.algebra.op.OpDistinct;
+import com.hp.hpl.jena.sparql.algebra.op.OpExt;
+import com.hp.hpl.jena.sparql.algebra.op.OpExtend;
+import com.hp.hpl.jena.sparql.algebra.op.OpFilter;
+import com.hp.hpl.jena.sparql.algebra.op.OpGroup;
+import com.hp.hpl.jena.sparql.algebra.op.OpJoin;
+import com.hp.hpl.jena.sparql.algebra.op.OpLabel;
+import com.hp.hpl.jena.sparql.algebra.op.OpLeftJoin;
+import com.hp.hpl.jena.sparql.algebra.op.OpMinus;
+import com.hp.hpl.jena.sparql.algebra.op.OpN;
+import com.hp.hpl.jena.sparql.algebra.op.OpNull;
+import com.hp.hpl.jena.sparql.algebra.op.OpOrder;
+import com.hp.hpl.jena.sparql.algebra.op.OpProject;
+import com.hp.hpl.jena.sparql.algebra.op.OpReduced;
+import com.hp.hpl.jena.sparql.algebra.op.OpSequence;
+import com.hp.hpl.jena.sparql.algebra.op.OpSlice;
+import com.hp.hpl.jena.sparql.algebra.op.OpTable;
+import com.hp.hpl.jena.sparql.algebra.op.OpTopN;
+import com.hp.hpl.jena.sparql.algebra.op.OpUnion;
+import com.hp.hpl.jena.sparql.core.BasicPattern;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingFactory;
+import com.hp.hpl.jena.sparql.engine.binding.BindingMap;
+import com.hp.hpl.jena.vocabulary.RDF;
+
+import de.fuberlin.wiwiss.d2rq.metrics.Metrics;
+import de.fuberlin.wiwiss.d2rq.vocab.D2RQ;
+
+/**
+ * A least-recently-used cache of SPARQL query translations.
+ *
+ * Before a query is looked up, the URIs and literals in the subject and
+ * object positions of its triple patterns are replaced with variables,
+ * so that queries of the same shape share a translation. The constants
+ * are substituted into the SQL of each cached translation with
+ * {@link OpUnionTableSQL#substitute(Binding)}. Constants in predicates
+ * and in <code>rdf:type</code> objects are kept because they determine
+ * which property bridges match; so are the constants of triples with
+ * a variable predicate, whose translation without the subject
+ * would include every property bridge.
+ *
+ * Translations that contain operators other than SQL unions and the
+ * standard operators of the SPARQL algebra are cached only for the
+ * exact query.
+ *
+ * Queries are looked up by their SSE serialization rather than by
+ * {@link Op#equals(Object)}, because ARQ's operator equality ignores
+ * some expressions, such as the filter of an <code>OPTIONAL</code>.
+ *
+ * The cache belongs to a single mapping and is discarded with it.
+ */
+public class PlanCache {
+
+	/**
+	 * Turns an operator tree into an equivalent one that can be
+	 * evaluated over a D2RQ-mapped graph.
+	 */
+	public interface Translator {
+		Op translate(Op op);
+	}
+
+	private final static String SLOT_PREFIX = "*const";
+
+	/**
+	 * Marks queries whose lifted translation cannot be re-bound
+	 */
+	private final static Op NOT_REBINDABLE = OpLabel.create("not rebindable", OpNull.create());
+
+	/**
+	 * Operators that don't depend on the values of variables that
+	 * don't occur in their expressions
+	 */
+	private final static Set<Class<?>> REBINDABLE_OPS = new HashSet<Class<?>>(Arrays.asList(
+			new Class<?>[]{OpFilter.class, OpProject.class, OpDistinct.class,
+					OpReduced.class, OpSlice.class, OpOrder.class, OpTopN.class,
+					OpJoin.class, OpLeftJoin.class, OpSequence.class,
+					OpConditional.class, OpUnion.class, OpMinus.class,
+					OpExtend.class, OpAssign.class, OpGroup.class, OpLabel.class,
+					OpDisjunction.class}));
+
+	private final int maxSize;
+	private final Map<String,Op> translations;
+
+	/**
+	 * @param maxSize Maximum number of translations to keep; 0 disables the cache
+	 */
+	public PlanCache(final int maxSize) {
+		this.maxSize = maxSize;
+		this.translations = new LinkedHashMap<String,Op>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String,Op> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Returns the translation of an operator tree from the cache,
+	 * translating it and storing the result if necessary.
+	 */
+	public Op translate(Op op, Translator translator) {
+		if (maxSize == 0) {
+			return translator.translate(op);
+		}
+		ConstantLifter lifter = new ConstantLifter(op);
+		Op lifted = lifter.liftedOp();
+		Op cached = get(lifted);
+		if (cached != null && cached != NOT_REBINDABLE) {
+			Metrics.PLAN_CACHE_HITS.increment();
+			return rebind(cached, lifter.constants());
+		}
+		if (cached == null && lifted != op) {
+			Metrics.PLAN_CACHE_MISSES.increment();
+			Op translation = translator.translate(lifted);
+			if (isRebindable(translation)) {
+				put(lifted, translation);
+				return rebind(translation, lifter.constants());
+			}
+			put(lifted, NOT_REBINDABLE);
+			return translateExactly(op, translator, false);
+		}
+		return translateExactly(op, translator, true);
+	}
+
+	private Op translateExactly(Op op, Translator translator, boolean count) {
+		Op cached = get(op);
+		if (cached != null && cached != NOT_REBINDABLE) {
+			if (count) Metrics.PLAN_CACHE_HITS.increment();
+			return cached;
+		}
+		if (count) Metrics.PLAN_CACHE_MISSES.increment();
+		Op translation = translator.translate(op);
+		put(op, translation);
+		return translation;
+	}
+
+	public synchronized int size() {
+		return translations.size();
+	}
+
+	public synchronized void clear() {
+		translations.clear();
+	}
+
+	private Op get(Op op) {
+		String key = key(op);
+		synchronized (this) {
+			return translations.get(key);
+		}
+	}
+
+	private void put(Op op, Op translation) {
+		String key = key(op);
+		synchronized (this) {
+			translations.put(key, translation);
+		}
+	}
+
+	/**
+	 * The SSE serialization of an operator tree, which includes
+	 * every expression in the tree
+	 */
+	static String key(Op op) {
+		return op.toString();
+	}
+
+	private static Op rebind(Op translation, final Binding constants) {
+		if (constants.isEmpty()) return translation;
+		return Transformer.transform(new TransformCopy() {
+			@Override
+			public Op transform(OpExt opExt) {
+				if (!(opExt instanceof OpUnionTableSQL)) return opExt;
+				return ((OpUnionTableSQL) opExt).substitute(constants);
+			}
+		}, translation);
+	}
+
+	static boolean isRebindable(Op op) {
+		if (op instanceof OpUnionTableSQL || op instanceof OpNull
+				|| op instanceof OpTable) return true;
+		if (!REBINDABLE_OPS.contains(op.getClass())) return false;
+		if (op instanceof Op1) {
+			return isRebindable(((Op1) op).getSubOp());
+		}
+		if (op instanceof Op2) {
+			return isRebindable(((Op2) op).getLeft())
+					&& isRebindable(((Op2) op).getRight());
+		}
+		if (op instanceof OpN) {
+			for (Op element: ((OpN) op).getElements()) {
+				if (!isRebindable(element)) return false;
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Replaces the constants in the subjects and objects of
+	 * triple patterns with slot variables. Each distinct constant
+	 * gets its own variable.
+	 */
+	private static class ConstantLifter extends TransformCopy {
+		private final Map<Node,Var> slots = new LinkedHashMap<Node,Var>();
+		private final Op liftedOp;
+
+		ConstantLifter(Op op) {
+			for (Var var: OpVars.allVars(op)) {
+				if (var.getVarName().startsWith(SLOT_PREFIX)) {
+					liftedOp = op;
+					return;
+				}
+			}
+			Op result = Transformer.transformSkipService(this, op);
+			liftedOp = slots.isEmpty() ? op : result;
+		}
+
+		Op liftedOp() {
+			return liftedOp;
+		}
+
+		Binding constants() {
+			BindingMap result = BindingFactory.create();
+			for (Node constant: slots.keySet()) {
+				result.add(slots.get(constant), constant);
+			}
+			return result;
+		}
+
+		@Override
+		public Op transform(OpBGP opBGP) {
+			BasicPattern result = new BasicPattern();
+			for (Triple triple: opBGP.getPattern()) {
+				result.add(lift(triple));
+			}
+			return new OpBGP(result);
+		}
+
+		private Triple lift(Triple triple) {
+			Node p = triple.getPredicate();
+			if (!p.isConcrete()) return triple;
+			boolean liftObject = !p.equals(RDF.Nodes.type)
+					&& !p.equals(D2RQ.textMatch.asNode());
+			return Triple.create(slot(triple.getSubject()), p,
+					liftObject ? slot(triple.getObject()) : triple.getObject());
+		}
+
+		private Node slot(Node node) {
+			if (!node.isURI() && !node.isLiteral()) return node;
+			Var result = slots.get(node);
+			if (result == null) {
+				result = Var.alloc(SLOT_PREFIX + slots.size());
+				slots.put(node, result);
+			}
+			return result;
+		}
+	}
+}
@@ -466,7 +466,8 @@ public class PushDownOpFilterVisitor implements OpVisitor {
 			((OpFilter) newOp).getExprs().getList()
 					.addAll(notMoveableFilterExpr);
 		} else {
-			newOp = opUnion;
+			// the subtrees may have changed
+			newOp = OpUnion.create(left, right);
 		}
 
 		// restore filterexpressions
@@ -535,8 +536,8 @@ public class PushDownOpFilterVisitor implements OpVisitor {
 			((OpFilter) newOp).getExprs().getList()
 					.addAll(notMoveableFilterExpr);
 		} else {
-			// nothing must be done
-			newOp = opJoin;
+			// the subtrees may have changed
+			newOp = OpJoin.create(left, right);
 		}
 
 		// restore filterexpressions
@@ -623,8 +624,8 @@ public class PushDownOpFilterVisitor implements OpVisitor {
 			((OpFilter) newOp).getExprs().getList()
 					.addAll(notMoveableFilterExpr);
 		} else {
-			// nothing must be done
-			newOp = opLeftJoin;
+			// the subtrees may have changed
+			newOp = OpLeftJoin.create(left, right, opLeftJoin.getExprs());
 		}
 
 		// restore filterexpressions
@@ -696,8 +697,8 @@ public class PushDownOpFilterVisitor implements OpVisitor {
 			((OpFilter) newOp).getExprs().getList()
 					.addAll(notMoveableFilterExpr);
 		} else {
-			// nothing must be done
-			newOp = opDiff;
+			// the subtrees may have changed
+			newOp = OpDiff.create(left, right);
 		}
 
 		// restore filterexpressions
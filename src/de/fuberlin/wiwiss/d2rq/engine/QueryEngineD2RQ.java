@@ -13,6 +13,7 @@ import com.hp.hpl.jena.sparql.core.DatasetGraphFactory;
 import com.hp.hpl.jena.sparql.engine.Plan;
 import com.hp.hpl.jena.sparql.engine.QueryEngineFactory;
 import com.hp.hpl.jena.sparql.engine.QueryEngineRegistry;
+import com.hp.hpl.jena.sparql.engine.QueryIterator;
 import com.hp.hpl.jena.sparql.engine.binding.Binding;
 import com.hp.hpl.jena.sparql.engine.binding.BindingRoot;
 import com.hp.hpl.jena.sparql.engine.main.QueryEngineMain;
@@ -20,6 +21,8 @@ import com.hp.hpl.jena.sparql.util.Context;
 
 import de.fuberlin.wiwiss.d2rq.jena.GraphD2RQ;
 import de.fuberlin.wiwiss.d2rq.map.Mapping;
+import de.fuberlin.wiwiss.d2rq.metrics.Metrics;
+import de.fuberlin.wiwiss.d2rq.metrics.QueryTrace;
 
 import com.hp.hpl.jena.sparql.core.Substitute;
 
@@ -35,7 +38,9 @@ public class QueryEngineD2RQ extends QueryEngineMain {
 	private static final Log log = LogFactory.getLog(QueryEngineD2RQ.class);
 
 	private final Mapping mapping;
+	private final PlanCache planCache;
 	private final Binding inputBinding;
+	private final Object description;
 
 	public QueryEngineD2RQ(GraphD2RQ graph, Query query) {
 		this(graph, query, BindingRoot.create(), null);
@@ -44,17 +49,22 @@ public class QueryEngineD2RQ extends QueryEngineMain {
 	public QueryEngineD2RQ(GraphD2RQ graph, Query query, Binding input, Context context) {
 		super(query, DatasetGraphFactory.createOneGraph(graph), input, context);
 		this.mapping = graph.getMapping();
+		this.planCache = graph.getPlanCache();
 		this.inputBinding = input;
+		this.description = query;
 	}
 
 	public QueryEngineD2RQ(GraphD2RQ graph, Op op, Binding input, Context context) {
 		super(op, DatasetGraphFactory.createOneGraph(graph), input, context);
 		this.mapping = graph.getMapping();
+		this.planCache = graph.getPlanCache();
 		this.inputBinding = input;
+		this.description = op;
 	}
 
 	@Override
 	protected Op modifyOp(Op op) {
+		Metrics.SPARQL_QUERIES.increment();
 		// According to ARQ's {@link Optimize#rewrite()} source code,
 		// this has to be done if no other ARQ optimizations are applied
 		op = TransformScopeRename.transform(op);
@@ -65,7 +75,30 @@ public class QueryEngineD2RQ extends QueryEngineMain {
 		// TODO: Apply all or some of ARQ's standard transforms?
 		// op = super.modifyOp(op);
 
-		return translate(op);
+		return planCache.translate(op, new PlanCache.Translator() {
+			public Op translate(Op op) {
+				return QueryEngineD2RQ.this.translate(op);
+			}
+		});
+	}
+
+	/**
+	 * Evaluates the translated operator tree, recording the SQL
+	 * statements it runs if the mapping has a slow query log.
+	 */
+	@Override
+	public QueryIterator eval(Op op, DatasetGraph dsg, Binding input, Context context) {
+		QueryTrace trace = mapping.configuration().slowQueryLog().startTrace(description);
+		if (trace == null) {
+			return super.eval(op, dsg, input, context);
+		}
+		trace.setTranslation(op);
+		QueryTrace previous = trace.enter();
+		try {
+			return new QueryIterTraced(super.eval(op, dsg, input, context), trace, null);
+		} finally {
+			QueryTrace.exit(previous);
+		}
 	}
 
 	/**
@@ -86,6 +119,11 @@ public class QueryEngineD2RQ extends QueryEngineMain {
 		op = Transformer.transformSkipService(new TransformOpBGP(mapping, true), op);
 		// Translate BGPs that don't have a filter
 		op = Transformer.transformSkipService(new TransformOpBGP(mapping, false), op);
+		// Compute GROUP BY and aggregates in SQL where possible
+		op = Transformer.transformSkipService(new TransformOpGroup(), op);
+		// Move ORDER BY, LIMIT and OFFSET into the SQL queries where possible
+		op = Transformer.transformSkipService(new TransformOpOrder(), op);
+		op = Transformer.transformSkipService(new TransformOpSlice(), op);
 
 		if (log.isDebugEnabled()) {
 			log.debug("After translation:\n" + PrintUtils.toString(op));
@@ -0,0 +1,154 @@
+package de.fuberlin.wiwiss.d2rq.engine;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import com.hp.hpl.jena.sparql.algebra.Algebra;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext;
+import com.hp.hpl.jena.sparql.engine.QueryIterator;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIter;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterRepeatApply;
+
+import de.fuberlin.wiwiss.d2rq.algebra.CompatibleRelationGroup;
+import de.fuberlin.wiwiss.d2rq.algebra.MutableRelation;
+import de.fuberlin.wiwiss.d2rq.algebra.NodeRelation;
+import de.fuberlin.wiwiss.d2rq.algebra.Relation;
+import de.fuberlin.wiwiss.d2rq.expr.Conjunction;
+import de.fuberlin.wiwiss.d2rq.expr.Disjunction;
+import de.fuberlin.wiwiss.d2rq.expr.Expression;
+import de.fuberlin.wiwiss.d2rq.sql.ConnectedDB;
+
+/**
+ * Joins the bindings of an input iterator with a union of
+ * {@link NodeRelation}s, like a {@link QueryIterRepeatApply} that
+ * evaluates the relations for each input binding, but with one SQL
+ * query per batch of input bindings rather than one per binding.
+ *
+ * For each relation, the conditions that each input binding of the
+ * batch would add to the relation are combined with OR. Each result
+ * row is then joined with each compatible input binding of the batch.
+ *
+ * Relations with a limit or order can't be batched this way, as the
+ * limit or order applies per input binding.
+ */
+public class QueryIterBindJoinSQL extends QueryIter {
+
+	/**
+	 * @return The batch size to use for the relations according to
+	 * 		{@link ConnectedDB#bindJoinBatchSize()}, or 1 if they can't be batched
+	 */
+	public static int batchSize(Collection<NodeRelation> tables) {
+		int result = Integer.MAX_VALUE;
+		for (NodeRelation table: tables) {
+			Relation relation = table.baseRelation();
+			if (relation.limit() != Relation.NO_LIMIT
+					|| relation.limitInverse() != Relation.NO_LIMIT
+					|| !relation.orderSpecs().isEmpty()
+					|| !relation.leftOuterJoins().isEmpty()) {
+				return 1;
+			}
+			if (relation.database() == null) continue;
+			result = Math.min(result, relation.database().bindJoinBatchSize());
+		}
+		return result == Integer.MAX_VALUE ? 1 : result;
+	}
+
+	private final QueryIterator input;
+	private final Collection<NodeRelation> tables;
+	private final int batchSize;
+	private final List<Binding> batch = new ArrayList<Binding>();
+	private final LinkedList<Binding> queue = new LinkedList<Binding>();
+	private QueryIterator current = null;
+
+	public QueryIterBindJoinSQL(QueryIterator input, Collection<NodeRelation> tables,
+			int batchSize, ExecutionContext execCxt) {
+		super(execCxt);
+		this.input = input;
+		this.tables = tables;
+		this.batchSize = batchSize;
+	}
+
+	@Override
+	protected boolean hasNextBinding() {
+		while (queue.isEmpty()) {
+			if (current != null && current.hasNext()) {
+				Binding row = current.nextBinding();
+				for (Binding binding: batch) {
+					if (Algebra.compatible(binding, row)) {
+						queue.add(Algebra.merge(binding, row));
+					}
+				}
+				continue;
+			}
+			if (current != null) {
+				current.close();
+				current = null;
+			}
+			if (!input.hasNext()) return false;
+			batch.clear();
+			while (batch.size() < batchSize && input.hasNext()) {
+				batch.add(input.nextBinding());
+			}
+			current = evalBatch();
+		}
+		return true;
+	}
+
+	@Override
+	protected Binding moveToNextBinding() {
+		return queue.removeFirst();
+	}
+
+	@Override
+	protected void closeIterator() {
+		if (current != null) {
+			performClose(current);
+			current = null;
+		}
+		performClose(input);
+	}
+
+	@Override
+	protected void requestCancel() {
+		if (current != null) {
+			performRequestCancel(current);
+		}
+		performRequestCancel(input);
+	}
+
+	private QueryIterator evalBatch() {
+		Collection<NodeRelation> batchTables = new ArrayList<NodeRelation>();
+		for (NodeRelation table: tables) {
+			Set<Expression> baseConjuncts = conjuncts(table.baseRelation().condition());
+			Collection<Expression> alternatives = new ArrayList<Expression>(batch.size());
+			for (Binding binding: batch) {
+				Set<Expression> conjuncts = conjuncts(
+						table.extendWith(binding).baseRelation().condition());
+				conjuncts.removeAll(baseConjuncts);
+				alternatives.add(Conjunction.create(conjuncts));
+			}
+			MutableRelation mutator = new MutableRelation(table.baseRelation());
+			mutator.select(Disjunction.create(alternatives));
+			batchTables.add(table.withBaseRelation(mutator.immutableSnapshot()));
+		}
+		return QueryIterConcatParallel.create(
+				new ArrayList<CompatibleRelationGroup>(
+						CompatibleRelationGroup.groupNodeRelations(batchTables)),
+				getExecContext());
+	}
+
+	private Set<Expression> conjuncts(Expression condition) {
+		Set<Expression> result = new HashSet<Expression>();
+		if (condition instanceof Conjunction) {
+			result.addAll(((Conjunction) condition).expressions());
+		} else {
+			result.add(condition);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,340 @@
+package de.fuberlin.wiwiss.d2rq.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.hp.hpl.jena.sparql.engine.ExecutionContext;
+import com.hp.hpl.jena.sparql.engine.QueryIterator;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIter;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterConcat;
+
+import de.fuberlin.wiwiss.d2rq.D2RQException;
+import de.fuberlin.wiwiss.d2rq.algebra.CompatibleRelationGroup;
+import de.fuberlin.wiwiss.d2rq.sql.ConnectedDB;
+
+/**
+ * A {@link QueryIterator} over the concatenation of several
+ * independent branch iterators, typically one {@link QueryIterTableSQL}
+ * per {@link CompatibleRelationGroup}, that runs up to a fixed number
+ * of branches at the same time on worker threads. Each branch leases
+ * its own connection from the database's pool.
+ *
+ * In ordered mode, results are delivered exactly in the order of
+ * a {@link QueryIterConcat}. In unordered mode, results are delivered
+ * as soon as any branch produces them.
+ *
+ * Each running branch buffers at most a fixed number of bindings,
+ * so a slow consumer stalls the branches instead of exhausting memory.
+ * Cancelling or closing this iterator cancels all running branches.
+ * Branch iterators are only ever closed on the consumer's thread.
+ *
+ * Worker threads are shared by all instances and limited to
+ * {@link #MAX_WORKER_THREADS}. A branch is only started on a worker if
+ * one is free and the database has a free pooled connection for it,
+ * because a stalled branch keeps its connection. A branch that
+ * couldn't be started is run on the consumer's thread when the
+ * consumer gets to it, so the consumer never waits for a branch
+ * that isn't running.
+ */
+public class QueryIterConcatParallel extends QueryIter {
+	private final static Log log = LogFactory.getLog(QueryIterConcatParallel.class);
+
+	public final static int DEFAULT_BUFFER_SIZE = 1000;
+	public final static int MAX_WORKER_THREADS = 64;
+
+	private final static Object END_OF_BRANCH = new Object();
+
+	// Rejects work when all threads are busy, rather than queueing it
+	private final static ThreadPoolExecutor executor = new ThreadPoolExecutor(
+			0, MAX_WORKER_THREADS, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+			new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "D2RQ-query-" + count.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+
+	/**
+	 * Creates a query iterator over the union of the relation groups.
+	 * The groups' queries run in parallel if all involved databases
+	 * allow it (see {@link ConnectedDB#parallelQueries()}); otherwise
+	 * they run one after another as in a {@link QueryIterConcat}.
+	 */
+	public static QueryIter create(
+			List<CompatibleRelationGroup> groups, ExecutionContext execCxt) {
+		int parallelism = Integer.MAX_VALUE;
+		boolean ordered = false;
+		ConnectedDB database = null;
+		for (CompatibleRelationGroup group: groups) {
+			ConnectedDB db = group.baseRelation().database();
+			if (db == null) continue;
+			parallelism = Math.min(parallelism, db.parallelQueries());
+			ordered |= db.parallelQueriesOrdered();
+			database = db;
+		}
+		if (groups.size() > 1 && parallelism > 1 && parallelism != Integer.MAX_VALUE) {
+			// Branches are not registered with the execution context because
+			// its iterator tracking is not thread-safe; we are registered instead
+			List<QueryIterator> branches = new ArrayList<QueryIterator>(groups.size());
+			for (CompatibleRelationGroup group: groups) {
+				branches.add(QueryIterTableSQL.create(
+						group.baseRelation(), group.bindingMakers(), null));
+			}
+			return new QueryIterConcatParallel(branches, parallelism,
+					ordered, DEFAULT_BUFFER_SIZE, database, execCxt);
+		}
+		QueryIterConcat result = new QueryIterConcat(execCxt);
+		for (CompatibleRelationGroup group: groups) {
+			result.add(QueryIterTableSQL.create(
+					group.baseRelation(), group.bindingMakers(), execCxt));
+		}
+		return result;
+	}
+
+	private final List<Branch> branches = new ArrayList<Branch>();
+	private final int maxRunning;
+	private final boolean ordered;
+	private final ConnectedDB database;
+	private final BlockingQueue<Object> sharedQueue;
+	private int started = 0;
+	private int finished = 0;
+	// The branch that is running on the consumer's thread, if any
+	private volatile Branch inline = null;
+	private Binding nextBinding = null;
+	private volatile boolean stopping = false;
+
+	/**
+	 * @param branches The iterators to concatenate; they must not have been used
+	 * 		yet, and should not be registered with an execution context
+	 * @param maxRunning Maximum number of branches running at the same time
+	 * @param ordered Deliver bindings in branch order?
+	 * @param bufferSize Maximum number of bindings buffered per running branch
+	 * @param execCxt The execution context; may be <code>null</code>
+	 */
+	public QueryIterConcatParallel(List<QueryIterator> branches, int maxRunning,
+			boolean ordered, int bufferSize, ExecutionContext execCxt) {
+		this(branches, maxRunning, ordered, bufferSize, null, execCxt);
+	}
+
+	/**
+	 * @param database The database whose free connections limit the
+	 * 		number of branches that are started; may be <code>null</code>
+	 */
+	public QueryIterConcatParallel(List<QueryIterator> branches, int maxRunning,
+			boolean ordered, int bufferSize, ConnectedDB database, ExecutionContext execCxt) {
+		super(execCxt);
+		this.maxRunning = Math.max(1, maxRunning);
+		this.ordered = ordered;
+		this.database = database;
+		this.sharedQueue = ordered ? null :
+				new ArrayBlockingQueue<Object>(bufferSize * this.maxRunning);
+		for (QueryIterator it: branches) {
+			this.branches.add(new Branch(it, ordered
+					? new ArrayBlockingQueue<Object>(bufferSize) : sharedQueue));
+		}
+	}
+
+	@Override
+	protected boolean hasNextBinding() {
+		if (nextBinding != null) return true;
+		while (finished < branches.size()) {
+			if (inline != null) {
+				if (inline.iterator.hasNext()) {
+					nextBinding = inline.iterator.nextBinding();
+					return true;
+				}
+				inline = null;
+				finished++;
+				continue;
+			}
+			startBranches();
+			if (started == finished) {
+				// Nothing is running that we could wait for
+				inline = branches.get(started++);
+				continue;
+			}
+			Object o = take(ordered ? branches.get(finished).queue : sharedQueue);
+			if (o == END_OF_BRANCH) {
+				finished++;
+				continue;
+			}
+			if (o instanceof Throwable) {
+				throw branchFailure((Throwable) o);
+			}
+			nextBinding = (Binding) o;
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	protected Binding moveToNextBinding() {
+		Binding result = nextBinding;
+		nextBinding = null;
+		return result;
+	}
+
+	@Override
+	protected void closeIterator() {
+		stopBranches();
+	}
+
+	@Override
+	protected void requestCancel() {
+		stopping = true;
+		for (Branch branch: branches) {
+			branch.cancel();
+		}
+		Branch current = inline;
+		if (current != null) {
+			current.iterator.cancel();
+		}
+	}
+
+	/**
+	 * Starts branches until the permitted number is running, or until
+	 * there are no free worker threads or connections. A branch counts
+	 * as running until the consumer has seen its end.
+	 */
+	private void startBranches() {
+		while (started < branches.size() && started - finished < maxRunning) {
+			if (database != null && database.availableConnections() <= 0) return;
+			if (!branches.get(started).submit()) return;
+			started++;
+		}
+	}
+
+	private Object take(BlockingQueue<Object> queue) {
+		try {
+			return queue.take();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			stopBranches();
+			throw new D2RQException("Interrupted while waiting for SQL results", ex);
+		}
+	}
+
+	private RuntimeException branchFailure(Throwable t) {
+		stopBranches();
+		if (t instanceof RuntimeException) return (RuntimeException) t;
+		if (t instanceof Error) throw (Error) t;
+		return new D2RQException(t);
+	}
+
+	/**
+	 * Cancels running branches, waits for their threads to let go
+	 * of them, and closes all branch iterators.
+	 */
+	private void stopBranches() {
+		stopping = true;
+		for (Branch branch: branches) {
+			branch.stop();
+		}
+		for (Branch branch: branches) {
+			branch.awaitTermination();
+			try {
+				branch.iterator.close();
+			} catch (RuntimeException ex) {
+				log.debug("Error while closing branch: " + ex.getMessage());
+			}
+		}
+	}
+
+	private class Branch implements Runnable {
+		private final QueryIterator iterator;
+		private final BlockingQueue<Object> queue;
+		private boolean submitted = false;
+		private boolean stopped = false;
+		private boolean done = false;
+		private Thread runner = null;
+		Branch(QueryIterator iterator, BlockingQueue<Object> queue) {
+			this.iterator = iterator;
+			this.queue = queue;
+		}
+		/**
+		 * @return <code>false</code> if no worker thread was free
+		 */
+		synchronized boolean submit() {
+			try {
+				executor.execute(this);
+			} catch (RejectedExecutionException ex) {
+				return false;
+			}
+			submitted = true;
+			return true;
+		}
+		public void run() {
+			synchronized (this) {
+				if (stopped) {
+					done = true;
+					notifyAll();
+					return;
+				}
+				runner = Thread.currentThread();
+			}
+			try {
+				Object last = END_OF_BRANCH;
+				try {
+					while (!stopping && iterator.hasNext()) {
+						queue.put(iterator.nextBinding());
+					}
+				} catch (InterruptedException ex) {
+					return;		// Stopped by the consumer
+				} catch (Throwable t) {
+					last = t;
+				}
+				queue.put(last);
+			} catch (InterruptedException ex) {
+				// Stopped by the consumer
+			} finally {
+				synchronized (this) {
+					runner = null;
+					done = true;
+					Thread.interrupted();
+					notifyAll();
+				}
+			}
+		}
+		synchronized void stop() {
+			if (stopped) return;
+			stopped = true;
+			if (runner != null) {
+				iterator.cancel();
+				runner.interrupt();
+			}
+		}
+		synchronized void cancel() {
+			if (runner != null) {
+				iterator.cancel();
+			}
+		}
+		/**
+		 * Waits until the worker thread has let go of the iterator.
+		 */
+		synchronized void awaitTermination() {
+			boolean interrupted = false;
+			while (submitted && !done) {
+				try {
+					wait();
+				} catch (InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) Thread.currentThread().interrupt();
+		}
+	}
+}
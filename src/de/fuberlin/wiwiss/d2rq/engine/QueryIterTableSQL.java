@@ -3,7 +3,7 @@ package de.fuberlin.wiwiss.d2rq.engine;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedList;
+import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -18,6 +18,7 @@ import com.hp.hpl.jena.sparql.engine.iterator.QueryIterSingleton;
 
 import de.fuberlin.wiwiss.d2rq.algebra.NodeRelation;
 import de.fuberlin.wiwiss.d2rq.algebra.Relation;
+import de.fuberlin.wiwiss.d2rq.metrics.Metrics;
 import de.fuberlin.wiwiss.d2rq.sql.ResultRow;
 import de.fuberlin.wiwiss.d2rq.sql.SQLIterator;
 import de.fuberlin.wiwiss.d2rq.sql.SelectStatementBuilder;
@@ -39,6 +40,19 @@ public class QueryIterTableSQL extends QueryIter {
 	 */
 	public static QueryIterator create(Relation relation, 
 			Collection<BindingMaker> bindingMakers, ExecutionContext execCxt) {
+		return create(relation, bindingMakers, 0, execCxt);
+	}
+	
+	/**
+	 * Creates an instance that skips a number of rows at the start
+	 * of the SQL result, or a simpler QueryIterator if optimization
+	 * is possible (e.g., the relation is empty).
+	 * @param offset Number of rows to skip; the database must support this
+	 * 		(see {@link de.fuberlin.wiwiss.d2rq.sql.vendor.Vendor#getOffsetAsQueryAppendage(int)})
+	 * @return A query iterator over the contents of the relation
+	 */
+	public static QueryIterator create(Relation relation, 
+			Collection<BindingMaker> bindingMakers, int offset, ExecutionContext execCxt) {
 		if (relation.equals(Relation.EMPTY) || relation.condition().isFalse() || bindingMakers.isEmpty()) {
 			return new QueryIterNullIterator(execCxt);
 		}
@@ -49,9 +63,13 @@ public class QueryIterTableSQL extends QueryIter {
 				if (t == null) continue;
 				bindingList.add(t);
 			}
+			if (offset > 0) {
+				bindingList = new ArrayList<Binding>(
+						bindingList.subList(Math.min(offset, bindingList.size()), bindingList.size()));
+			}
 			return new QueryIterPlainWrapper(bindingList.iterator(), execCxt);				
 		}
-		return new QueryIterTableSQL(relation, bindingMakers, execCxt);
+		return new QueryIterTableSQL(relation, bindingMakers, offset, execCxt);
 	}
 	
 	/**
@@ -69,33 +87,44 @@ public class QueryIterTableSQL extends QueryIter {
 					execCxt);
 		}
 		return new QueryIterTableSQL(table.baseRelation(), 
-				Collections.singleton(BindingMaker.createFor(table)), execCxt);
+				Collections.singleton(BindingMaker.createFor(table)), 0, execCxt);
 	}
 	
 	private final SQLIterator wrapped;
 	private final Collection<BindingMaker> bindingMakers;
-	private final LinkedList<Binding> queue = new LinkedList<Binding>();
+	// Bindings made from the current row; consumed from index 'next'
+	private final List<Binding> buffer = new ArrayList<Binding>();
+	private int next = 0;
 
 	private QueryIterTableSQL(Relation relation, 
-			Collection<BindingMaker> bindingMakers, ExecutionContext execCxt) {
+			Collection<BindingMaker> bindingMakers, int offset, ExecutionContext execCxt) {
 		super(execCxt);
 		this.bindingMakers = bindingMakers;
-		SelectStatementBuilder builder = new SelectStatementBuilder(relation);
-		wrapped = new SQLIterator(
-				builder.getSQLStatement(), builder.getColumnSpecs(), relation.database());
+		SelectStatementBuilder builder = new SelectStatementBuilder(relation, offset);
+		if (relation.database().useParameterizedQueries()) {
+			wrapped = new SQLIterator(builder.getParameterizedSQLStatement(), 
+					builder.getParameters(), builder.getColumnSpecs(), relation.database());
+		} else {
+			wrapped = new SQLIterator(
+					builder.getSQLStatement(), builder.getColumnSpecs(), relation.database());
+		}
 	}
 	
 	@Override
 	protected boolean hasNextBinding() {
-		while (queue.isEmpty() && wrapped.hasNext()) {
+		while (next == buffer.size() && wrapped.hasNext()) {
+			buffer.clear();
+			next = 0;
 			enqueueBindings(wrapped.next());
 		}
-		return !queue.isEmpty();
+		return next < buffer.size();
 	}
 
 	@Override
 	protected Binding moveToNextBinding() {
-		return queue.removeFirst();
+		Binding result = buffer.get(next);
+		buffer.set(next++, null);
+		return result;
 	}
 
 	@Override
@@ -112,13 +141,15 @@ public class QueryIterTableSQL extends QueryIter {
 
 	/**
 	 * Create bindings from one database result row and put
-	 * them onto the queue
+	 * them into the buffer
 	 */
 	private void enqueueBindings(ResultRow row) {
+		long start = Metrics.BINDING_TIME.start();
 		for (BindingMaker bindingMaker: bindingMakers) {
 			Binding binding = bindingMaker.makeBinding(row);
 			if (binding == null) continue; 
-			queue.add(binding);
+			buffer.add(binding);
 		}
+		Metrics.BINDING_TIME.stop(start);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,58 @@
+package de.fuberlin.wiwiss.d2rq.engine;
+
+import com.hp.hpl.jena.sparql.engine.ExecutionContext;
+import com.hp.hpl.jena.sparql.engine.QueryIterator;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIter;
+
+import de.fuberlin.wiwiss.d2rq.metrics.QueryTrace;
+
+/**
+ * Wraps the top-level iterator of a query so that SQL statements
+ * created while advancing it are attributed to a {@link QueryTrace}.
+ * The trace is finished when the iterator is exhausted or closed.
+ */
+public class QueryIterTraced extends QueryIter {
+	private final QueryIterator wrapped;
+	private final QueryTrace trace;
+	
+	public QueryIterTraced(QueryIterator wrapped, QueryTrace trace, ExecutionContext execCxt) {
+		super(execCxt);
+		this.wrapped = wrapped;
+		this.trace = trace;
+	}
+
+	@Override
+	protected boolean hasNextBinding() {
+		QueryTrace previous = trace.enter();
+		try {
+			return wrapped.hasNext();
+		} finally {
+			QueryTrace.exit(previous);
+		}
+	}
+
+	@Override
+	protected Binding moveToNextBinding() {
+		QueryTrace previous = trace.enter();
+		try {
+			return wrapped.nextBinding();
+		} finally {
+			QueryTrace.exit(previous);
+		}
+	}
+
+	@Override
+	protected void closeIterator() {
+		try {
+			performClose(wrapped);
+		} finally {
+			trace.finish();
+		}
+	}
+
+	@Override
+	protected void requestCancel() {
+		performRequestCancel(wrapped);
+	}
+}
@@ -1,22 +1,38 @@
 package de.fuberlin.wiwiss.d2rq.engine;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import com.hp.hpl.jena.graph.Triple;
 import com.hp.hpl.jena.sparql.algebra.Op;
 import com.hp.hpl.jena.sparql.algebra.TransformCopy;
 import com.hp.hpl.jena.sparql.algebra.op.OpBGP;
 import com.hp.hpl.jena.sparql.algebra.op.OpFilter;
+import com.hp.hpl.jena.sparql.algebra.op.OpJoin;
+import com.hp.hpl.jena.sparql.algebra.op.OpLeftJoin;
+import com.hp.hpl.jena.sparql.algebra.op.OpSequence;
+import com.hp.hpl.jena.sparql.core.Var;
 import com.hp.hpl.jena.sparql.expr.Expr;
 import com.hp.hpl.jena.sparql.expr.ExprList;
 
+import de.fuberlin.wiwiss.d2rq.D2RQException;
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
 import de.fuberlin.wiwiss.d2rq.algebra.NodeRelation;
+import de.fuberlin.wiwiss.d2rq.algebra.Relation;
+import de.fuberlin.wiwiss.d2rq.expr.AttributeExpr;
 import de.fuberlin.wiwiss.d2rq.expr.Expression;
+import de.fuberlin.wiwiss.d2rq.expr.FullTextMatch;
 import de.fuberlin.wiwiss.d2rq.map.Mapping;
+import de.fuberlin.wiwiss.d2rq.nodes.NodeMaker;
+import de.fuberlin.wiwiss.d2rq.nodes.TypedNodeMaker;
 import de.fuberlin.wiwiss.d2rq.optimizer.expr.TransformExprToSQLApplyer;
+import de.fuberlin.wiwiss.d2rq.values.Column;
+import de.fuberlin.wiwiss.d2rq.values.ValueMaker;
+import de.fuberlin.wiwiss.d2rq.vocab.D2RQ;
 
 /**
  * Translates an OpBGP to an OpUnionTableSQL over a GraphD2RQ.
@@ -24,6 +40,15 @@ import de.fuberlin.wiwiss.d2rq.optimizer.expr.TransformExprToSQLApplyer;
  * expressions into the SQL. Leave an OpFilter if not all
  * expressions could be absorbed. 
  * 
+ * An OpLeftJoin (<code>OPTIONAL</code>) of two translated BGPs 
+ * is turned into a single OpUnionTableSQL with an SQL outer join 
+ * where possible. Likewise, an OpJoin or OpSequence of translated
+ * graph patterns is turned into a single SQL join where possible.
+ * 
+ * Triples of the form <code>?x d2rq:textMatch "keywords"</code>
+ * become full-text searches on the column that <code>?x</code>
+ * comes from.
+ * 
  * @author Herwig Leimer
  * @author Richard Cyganiak (richard@cyganiak.de)
  */
@@ -56,10 +81,148 @@ public class TransformOpBGP extends TransformCopy {
 		return createOpD2RQ((OpBGP) subOp, opFilter.getExprs());
 	}
 
+	@Override
+	public Op transform(OpLeftJoin opLeftJoin, Op left, Op right) {
+		if (transformFilters 
+				|| !(left instanceof OpUnionTableSQL) || !(right instanceof OpUnionTableSQL)) {
+			return super.transform(opLeftJoin, left, right);
+		}
+		OpUnionTableSQL leftUnion = (OpUnionTableSQL) left;
+		OpUnionTableSQL rightUnion = (OpUnionTableSQL) right;
+		if (leftUnion.tableOps().size() != 1 || leftUnion.isOrdered() || leftUnion.isSliced()
+				|| rightUnion.tableOps().size() != 1 || rightUnion.isOrdered() || rightUnion.isSliced()) {
+			return super.transform(opLeftJoin, left, right);
+		}
+		NodeRelation joined = new LeftJoinTranslator(
+				leftUnion.tableOps().get(0).table(), rightUnion.tableOps().get(0).table(),
+				opLeftJoin.getExprs()).translate();
+		if (joined == null) {
+			return super.transform(opLeftJoin, left, right);
+		}
+		log.debug("Translated left join into SQL: " + joined);
+		return OpUnionTableSQL.create(Collections.singleton(joined));
+	}
+
+	@Override
+	public Op transform(OpJoin opJoin, Op left, Op right) {
+		if (transformFilters) {
+			return super.transform(opJoin, left, right);
+		}
+		Op joined = joinInSQL(left, right);
+		if (joined == null) {
+			return super.transform(opJoin, left, right);
+		}
+		return joined;
+	}
+
+	@Override
+	public Op transform(OpSequence opSequence, List<Op> elements) {
+		if (transformFilters) {
+			return super.transform(opSequence, elements);
+		}
+		List<Op> result = new ArrayList<Op>(elements.size());
+		for (Op element: elements) {
+			Op joined = result.isEmpty() ? null : joinInSQL(result.get(result.size() - 1), element);
+			if (joined == null) {
+				result.add(element);
+			} else {
+				result.set(result.size() - 1, joined);
+			}
+		}
+		if (result.size() == elements.size()) {
+			return super.transform(opSequence, elements);
+		}
+		if (result.size() == 1) {
+			return result.get(0);
+		}
+		return opSequence.copy(result);
+	}
+
+	/**
+	 * Joins two translated graph patterns into a single union of
+	 * SQL relations, each joining one relation from each side.
+	 * Filters that could not be translated to SQL are applied
+	 * to the join instead if that doesn't change their results.
+	 * 
+	 * @return The joined op, or <code>null</code> if it cannot be done in SQL 
+	 */
+	private Op joinInSQL(Op left, Op right) {
+		ExprList filters = new ExprList();
+		left = liftFilter(left, filters);
+		right = liftFilter(right, filters);
+		if (!(left instanceof OpUnionTableSQL) || !(right instanceof OpUnionTableSQL)) return null;
+		OpUnionTableSQL leftUnion = (OpUnionTableSQL) left;
+		OpUnionTableSQL rightUnion = (OpUnionTableSQL) right;
+		if (leftUnion.isOrdered() || leftUnion.isSliced() 
+				|| rightUnion.isOrdered() || rightUnion.isSliced()) return null;
+		List<NodeRelation> tables = new ArrayList<NodeRelation>();
+		for (OpTableSQL leftTable: leftUnion.tableOps()) {
+			for (OpTableSQL rightTable: rightUnion.tableOps()) {
+				Relation leftRelation = leftTable.table().baseRelation();
+				Relation rightRelation = rightTable.table().baseRelation();
+				if (!TripleRelationJoiner.isJoinable(leftRelation)
+						|| !TripleRelationJoiner.isJoinable(rightRelation)
+						|| !leftRelation.database().equals(rightRelation.database())
+						|| !leftRelation.leftOuterJoins().isEmpty()
+						|| !rightRelation.leftOuterJoins().isEmpty()) {
+					return null;
+				}
+				NodeRelation joined = TripleRelationJoiner.join(leftTable.table(), rightTable.table());
+				if (joined == null) continue;
+				if (!TripleRelationJoiner.supportsDistinct(joined.baseRelation())) return null;
+				tables.add(joined);
+			}
+		}
+		log.debug("Joined " + leftUnion.tableOps().size() + " and " 
+				+ rightUnion.tableOps().size() + " NodeRelations in SQL");
+		Op op = OpUnionTableSQL.create(tables);
+		if (!filters.isEmpty()) {
+			op = OpFilter.filter(filters, op);
+		}
+		return op;
+	}
+
+	/**
+	 * If the op is a filter over an OpUnionTableSQL, and the filter uses
+	 * only variables that are bound in all solutions of the union,
+	 * then adds the filter's expressions to the list and returns the union.
+	 * Otherwise, returns the op unchanged.
+	 */
+	private Op liftFilter(Op op, ExprList filters) {
+		if (!(op instanceof OpFilter) || !(((OpFilter) op).getSubOp() instanceof OpUnionTableSQL)) {
+			return op;
+		}
+		OpUnionTableSQL union = (OpUnionTableSQL) ((OpFilter) op).getSubOp();
+		for (OpTableSQL tableOp: union.tableOps()) {
+			NodeRelation table = tableOp.table();
+			for (Expr expr: ((OpFilter) op).getExprs()) {
+				for (Var var: expr.getVarsMentioned()) {
+					if (!table.variables().contains(var) 
+							|| table.optionalVariables().contains(var)) return op;
+				}
+			}
+		}
+		filters.addAll(((OpFilter) op).getExprs());
+		return union;
+	}
+
 	public Op createOpD2RQ(OpBGP opBGP, ExprList filters) {
+		List<Triple> triples = new ArrayList<Triple>();
+		List<Triple> textMatches = new ArrayList<Triple>();
+		for (Triple triple: opBGP.getPattern().getList()) {
+			if (isTextMatch(triple)) {
+				textMatches.add(triple);
+			} else {
+				triples.add(triple);
+			}
+		}
         List<NodeRelation> tables = new GraphPatternTranslator(
-        		opBGP.getPattern().getList(), mapping.compiledPropertyBridges(), 
+        		triples, mapping.tripleRelationIndex(triples), 
         		useAllOptimizations).translate();
+        for (Triple textMatch: textMatches) {
+        	tables = applyTextMatch(tables, Var.alloc(textMatch.getSubject()), 
+        			textMatch.getObject().getLiteralLexicalForm());
+        }
         
         if (useAllOptimizations) {
         	log.debug("NodeRelations before applying filters: " + tables.size());
@@ -79,6 +242,47 @@ public class TransformOpBGP extends TransformCopy {
         return op;
     }
     
+    /**
+     * A <code>?x d2rq:textMatch "keywords"</code> triple searches
+     * the full-text index of the column that <code>?x</code> comes from.
+     */
+    private boolean isTextMatch(Triple triple) {
+    	return D2RQ.textMatch.asNode().equals(triple.getPredicate())
+    			&& triple.getSubject().isVariable() && triple.getObject().isLiteral();
+    }
+
+    /**
+     * Restricts each NodeRelation to rows whose value for the variable
+     * matches the keywords. Drops NodeRelations where the variable
+     * doesn't come from a column with a <code>d2rq:fullTextIndex</code>,
+     * as those values never match.
+     */
+    private List<NodeRelation> applyTextMatch(
+    		List<NodeRelation> nodeRelations, Var var, String keywords) {
+    	List<NodeRelation> result = new ArrayList<NodeRelation>();
+    	for (NodeRelation nodeRelation: nodeRelations) {
+    		if (!nodeRelation.variables().contains(var)) continue;
+    		NodeMaker nodeMaker = nodeRelation.nodeMaker(var);
+    		if (!(nodeMaker instanceof TypedNodeMaker)) continue;
+    		ValueMaker valueMaker = ((TypedNodeMaker) nodeMaker).valueMaker();
+    		if (!(valueMaker instanceof Column)) continue;
+    		Attribute attribute = ((Column) valueMaker).attribute();
+    		Relation base = nodeRelation.baseRelation();
+    		String configuration = mapping.fullTextIndex(
+    				base.database(), base.aliases().originalOf(attribute));
+    		if (configuration == null) continue;
+    		Expression match = new FullTextMatch(
+    				new AttributeExpr(attribute), keywords, configuration);
+    		if (!base.database().vendor().supportsFullTextMatch()) {
+    			throw new D2RQException("d2rq:textMatch is not supported by the database engine of " + 
+    					base.database().getJdbcURL(), D2RQException.SQL_FULLTEXT_UNSUPPORTED);
+    		}
+    		log.debug("Full-text search on " + attribute + ": " + match);
+    		result.add(nodeRelation.select(match));
+    	}
+    	return result;
+    }
+
     private List<NodeRelation> applyFilter(
     		List<NodeRelation> nodeRelations, Expr filter, ExprList allFilters) {
         List<NodeRelation> result = new ArrayList<NodeRelation>();
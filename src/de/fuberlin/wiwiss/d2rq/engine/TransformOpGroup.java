@@ -0,0 +1,26 @@
+package de.fuberlin.wiwiss.d2rq.engine;
+
+import com.hp.hpl.jena.sparql.algebra.Op;
+import com.hp.hpl.jena.sparql.algebra.TransformCopy;
+import com.hp.hpl.jena.sparql.algebra.op.OpGroup;
+
+/**
+ * Turns a grouping (<code>GROUP BY</code> and aggregates) over an
+ * {@link OpUnionTableSQL} into an {@link OpAggregateSQL} where
+ * possible, so that the aggregates are computed by the database.
+ * Must run after the BGPs have been translated, and before
+ * {@link TransformOpOrder} and {@link TransformOpSlice}.
+ *
+ * @see OpAggregateSQL#create(OpGroup)
+ */
+public class TransformOpGroup extends TransformCopy {
+
+	@Override
+	public Op transform(OpGroup opGroup, Op subOp) {
+		Op result = super.transform(opGroup, subOp);
+		if (subOp instanceof OpUnionTableSQL && result instanceof OpGroup) {
+			return OpAggregateSQL.create((OpGroup) result);
+		}
+		return result;
+	}
+}
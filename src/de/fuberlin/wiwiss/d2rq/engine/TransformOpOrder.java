@@ -0,0 +1,39 @@
+package de.fuberlin.wiwiss.d2rq.engine;
+
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.sparql.algebra.Op;
+import com.hp.hpl.jena.sparql.algebra.TransformCopy;
+import com.hp.hpl.jena.sparql.algebra.op.OpOrder;
+import com.hp.hpl.jena.sparql.algebra.op.OpTopN;
+
+/**
+ * Moves an ordering (<code>ORDER BY</code>) into an {@link OpUnionTableSQL}
+ * immediately below it, so that the sorting is done by the database.
+ * A top-N operation becomes an ordered and sliced {@link OpUnionTableSQL}.
+ * Must run after the BGPs have been translated, and before
+ * {@link TransformOpSlice} so that a <code>LIMIT</code> on top of the
+ * ordering can go into the same SQL query.
+ *
+ * @see OpUnionTableSQL#orderBy(java.util.List)
+ */
+public class TransformOpOrder extends TransformCopy {
+
+	@Override
+	public Op transform(OpOrder opOrder, Op subOp) {
+		if (subOp instanceof OpUnionTableSQL 
+				&& ((OpUnionTableSQL) subOp).canOrderBy(opOrder.getConditions())) {
+			return ((OpUnionTableSQL) subOp).orderBy(opOrder.getConditions());
+		}
+		return super.transform(opOrder, subOp);
+	}
+
+	@Override
+	public Op transform(OpTopN opTop, Op subOp) {
+		if (subOp instanceof OpUnionTableSQL 
+				&& ((OpUnionTableSQL) subOp).canOrderBy(opTop.getConditions())) {
+			return ((OpUnionTableSQL) subOp).orderBy(opTop.getConditions())
+					.slice(Query.NOLIMIT, opTop.getLimit());
+		}
+		return super.transform(opTop, subOp);
+	}
+}
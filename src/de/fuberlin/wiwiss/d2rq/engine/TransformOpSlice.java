@@ -0,0 +1,45 @@
+package de.fuberlin.wiwiss.d2rq.engine;
+
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.sparql.algebra.Op;
+import com.hp.hpl.jena.sparql.algebra.TransformCopy;
+import com.hp.hpl.jena.sparql.algebra.op.OpProject;
+import com.hp.hpl.jena.sparql.algebra.op.OpSlice;
+
+/**
+ * Moves a slice (<code>LIMIT</code> and <code>OFFSET</code>) into an
+ * {@link OpUnionTableSQL} immediately below it, or below a projection
+ * immediately below it, so that the limit and offset can be applied
+ * in the SQL queries. Must run after the BGPs have been translated.
+ *
+ * Slices without a <code>LIMIT</code> are left alone, as there is
+ * nothing to gain from pushing down just the offset.
+ *
+ * @see OpUnionTableSQL#slice(long, long)
+ */
+public class TransformOpSlice extends TransformCopy {
+
+	@Override
+	public Op transform(OpSlice opSlice, Op subOp) {
+		if (opSlice.getLength() == Query.NOLIMIT) {
+			return super.transform(opSlice, subOp);
+		}
+		if (isUnslicedUnion(subOp)) {
+			return ((OpUnionTableSQL) subOp).slice(
+					opSlice.getStart(), opSlice.getLength());
+		}
+		if (subOp instanceof OpProject && isUnslicedUnion(((OpProject) subOp).getSubOp())) {
+			// Projection doesn't change the number of solutions
+			OpProject opProject = (OpProject) subOp;
+			return new OpProject(
+					((OpUnionTableSQL) opProject.getSubOp()).slice(
+							opSlice.getStart(), opSlice.getLength()),
+					opProject.getVars());
+		}
+		return super.transform(opSlice, subOp);
+	}
+
+	private boolean isUnslicedUnion(Op op) {
+		return op instanceof OpUnionTableSQL && !((OpUnionTableSQL) op).isSliced();
+	}
+}
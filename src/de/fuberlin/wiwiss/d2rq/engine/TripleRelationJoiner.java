@@ -1,6 +1,7 @@
 package de.fuberlin.wiwiss.d2rq.engine;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -27,8 +28,10 @@ import de.fuberlin.wiwiss.d2rq.algebra.RelationName;
 import de.fuberlin.wiwiss.d2rq.algebra.TripleRelation;
 import de.fuberlin.wiwiss.d2rq.expr.Conjunction;
 import de.fuberlin.wiwiss.d2rq.expr.Expression;
+import de.fuberlin.wiwiss.d2rq.map.Database;
 import de.fuberlin.wiwiss.d2rq.nodes.NodeMaker;
 import de.fuberlin.wiwiss.d2rq.sql.ConnectedDB;
+import de.fuberlin.wiwiss.d2rq.sql.types.DataType;
 
 class TripleRelationJoiner {
 	
@@ -38,6 +41,59 @@ class TripleRelationJoiner {
 				allOptimizations);
 	}
 
+	/**
+	 * Joins two node relations, e.g., the results of translating two 
+	 * separate graph patterns, into one. The tables of the second
+	 * relation are renamed if necessary.
+	 * 
+	 * @return The joined node relation, or <code>null</code> if the two
+	 * 		relations cannot produce compatible solutions
+	 * @see #isJoinable(Relation)
+	 */
+	public static NodeRelation join(NodeRelation left, NodeRelation right) {
+		NodeRelation renamed = right.withDistinctTables(left.baseRelation().tables());
+		VariableConstraints nodeSets = new VariableConstraints();
+		nodeSets.addAll(left);
+		nodeSets.addAll(renamed);
+		if (!nodeSets.satisfiable()) {
+			return null;
+		}
+		Relation joined = joinRelations(
+				Arrays.asList(new Relation[]{left.baseRelation(), renamed.baseRelation()}), 
+				Expression.TRUE);
+		return new NodeRelation(
+				joined.select(nodeSets.constraint()).project(nodeSets.allProjections()), 
+				nodeSets.toMap());
+	}
+	
+	/**
+	 * Checks if a relation can be joined with others in a single SQL
+	 * statement. That's not the case for relations with limits or
+	 * orderings, which apply to the relation alone.
+	 */
+	static boolean isJoinable(Relation relation) {
+		return !relation.isTrivial() && relation.database() != null
+				&& relation.limit() == Relation.NO_LIMIT
+				&& relation.limitInverse() == Relation.NO_LIMIT
+				&& relation.database().limit() == Database.NO_LIMIT
+				&& relation.orderSpecs().isEmpty();
+	}
+	
+	/**
+	 * Joined relations are not unique, so they are queried
+	 * with <code>SELECT DISTINCT</code>.
+	 */
+	static boolean supportsDistinct(Relation relation) {
+		for (ProjectionSpec projection: relation.projections()) {
+			for (Attribute column: projection.requiredAttributes()) {
+				DataType dataType = relation.database().columnType(
+						relation.aliases().originalOf(column));
+				if (dataType == null || !dataType.supportsDistinct()) return false;
+			}
+		}
+		return true;
+	}
+
 	private final VariableConstraints nodeSets;
 	private final List<Triple> joinedTriplePatterns;
 	private final List<NodeRelation> joinedTripleRelations;
@@ -74,13 +130,9 @@ class TripleRelationJoiner {
 				}
 			}
 		}
-		List<Attribute> primaryKeys = database.schemaInspector().primaryKeyColumns(originalName);
+		List<String> primaryKeys = database.getPrimaryKeyColumns(originalName);
 		if (primaryKeys != null) {
-			for (Attribute attr: primaryKeys) {
-				if (!attributeNames.contains(attr.attributeName()))
-					return false;
-			}
-			return true;
+			return attributeNames.containsAll(primaryKeys);
 		}
 		return false;
 	}
@@ -294,7 +346,7 @@ class TripleRelationJoiner {
 	 * @param additionalCondition An additional expression, e.g. join condition
 	 * @return A relation that is the join of the inputs
 	 */
-	private Relation joinRelations(Collection<Relation> relations, Expression additionalCondition) {
+	private static Relation joinRelations(Collection<Relation> relations, Expression additionalCondition) {
 		if (relations.isEmpty()) {
 			return Relation.TRUE;
 		}
@@ -0,0 +1,100 @@
+package de.fuberlin.wiwiss.d2rq.expr;
+
+import java.util.Collections;
+import java.util.Set;
+
+import de.fuberlin.wiwiss.d2rq.algebra.AliasMap;
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.ColumnRenamer;
+import de.fuberlin.wiwiss.d2rq.sql.ConnectedDB;
+
+/**
+ * A SQL aggregate function call, such as <code>COUNT(*)</code>
+ * or <code>MAX(DISTINCT expr)</code>. Only meaningful in the
+ * SELECT clause of a query with a GROUP BY clause, or of a
+ * query that returns a single aggregated row.
+ */
+public class Aggregate extends Expression {
+	public final static String COUNT = "COUNT";
+	public final static String MIN = "MIN";
+	public final static String MAX = "MAX";
+	public final static String SUM = "SUM";
+
+	/**
+	 * @return <code>COUNT(*)</code>
+	 */
+	public static Aggregate countRows() {
+		return new Aggregate(COUNT, null, false);
+	}
+
+	public static Aggregate create(String function, Expression expr, boolean distinct) {
+		return new Aggregate(function, expr, distinct);
+	}
+
+	private final String function;
+	private final Expression expr;
+	private final boolean distinct;
+
+	private Aggregate(String function, Expression expr, boolean distinct) {
+		this.function = function;
+		this.expr = expr;
+		this.distinct = distinct;
+	}
+
+	public String function() {
+		return function;
+	}
+
+	/**
+	 * @return The aggregated expression, or <code>null</code> for <code>COUNT(*)</code>
+	 */
+	public Expression expression() {
+		return expr;
+	}
+
+	public boolean isDistinct() {
+		return distinct;
+	}
+
+	public Set<Attribute> attributes() {
+		if (expr == null) return Collections.<Attribute>emptySet();
+		return expr.attributes();
+	}
+
+	public boolean isFalse() {
+		return false;
+	}
+
+	public boolean isTrue() {
+		return false;
+	}
+
+	public Expression renameAttributes(ColumnRenamer columnRenamer) {
+		if (expr == null) return this;
+		return new Aggregate(function, columnRenamer.applyTo(expr), distinct);
+	}
+
+	public String toSQL(ConnectedDB database, AliasMap aliases) {
+		return function + "(" + (distinct ? "DISTINCT " : "") +
+				(expr == null ? "*" : expr.toSQL(database, aliases)) + ")";
+	}
+
+	public String toString() {
+		return "Aggregate(" + function + (distinct ? " DISTINCT " : " ") +
+				(expr == null ? "*" : expr.toString()) + ")";
+	}
+
+	public boolean equals(Object other) {
+		if (!(other instanceof Aggregate)) {
+			return false;
+		}
+		Aggregate otherAggregate = (Aggregate) other;
+		return function.equals(otherAggregate.function)
+				&& distinct == otherAggregate.distinct
+				&& (expr == null ? otherAggregate.expr == null : expr.equals(otherAggregate.expr));
+	}
+
+	public int hashCode() {
+		return function.hashCode() ^ (expr == null ? 0 : expr.hashCode()) ^ (distinct ? 1 : 0) ^ 320941;
+	}
+}
@@ -15,6 +15,10 @@ public class AttributeExpr extends Expression {
 		this.attribute = attribute;
 	}
 	
+	public Attribute attribute() {
+		return attribute;
+	}
+	
 	public Set<Attribute> attributes() {
 		return Collections.singleton(attribute);
 	}
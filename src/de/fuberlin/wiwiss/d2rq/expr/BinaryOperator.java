@@ -25,6 +25,14 @@ public abstract class BinaryOperator extends Expression {
 		columns.addAll(expr2.attributes());
 	}
 	
+	public Expression expr1() {
+		return expr1;
+	}
+	
+	public Expression expr2() {
+		return expr2;
+	}
+	
 	public Set<Attribute> attributes() {
 		return columns;
 	}
@@ -41,6 +41,10 @@ public class Concatenation extends Expression {
 		}
 	}
 	
+	public List<Expression> parts() {
+		return parts;
+	}
+	
 	public Set<Attribute> attributes() {
 		return attributes;
 	}
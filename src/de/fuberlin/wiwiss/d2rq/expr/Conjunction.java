@@ -49,6 +49,13 @@ public class Conjunction extends Expression {
 		}
 	}
 
+	/**
+	 * @return The conjoined expressions, in no particular order
+	 */
+	public Set<Expression> expressions() {
+		return Collections.unmodifiableSet(expressions);
+	}
+
 	public boolean isTrue() {
 		return false;
 	}
@@ -40,6 +40,13 @@ public class Constant extends Expression {
 		return value;
 	}
 	
+	/**
+	 * @return The attribute whose type this constant is assumed to have, or <code>null</code>
+	 */
+	public Attribute attributeForTrackingType() {
+		return attributeForTrackingType;
+	}
+	
 	public Set<Attribute> attributes() {
 		return Collections.<Attribute>emptySet();
 	}
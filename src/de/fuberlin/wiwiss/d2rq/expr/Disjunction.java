@@ -49,6 +49,10 @@ public class Disjunction extends Expression {
 		}
 	}
 
+	public Set<Expression> expressions() {
+		return this.expressions;
+	}
+	
 	public boolean isTrue() {
 		return false;
 	}
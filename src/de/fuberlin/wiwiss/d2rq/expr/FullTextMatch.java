@@ -0,0 +1,74 @@
+package de.fuberlin.wiwiss.d2rq.expr;
+
+import java.util.Set;
+
+import de.fuberlin.wiwiss.d2rq.algebra.AliasMap;
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.ColumnRenamer;
+import de.fuberlin.wiwiss.d2rq.sql.ConnectedDB;
+import de.fuberlin.wiwiss.d2rq.sql.vendor.Vendor;
+
+/**
+ * Searches a column that has a full-text index for keywords.
+ * Only usable with engines that support full-text search, see
+ * {@link Vendor#getFullTextMatchExpression(String, String, String)}.
+ */
+public class FullTextMatch extends Expression {
+	private final Expression expr;
+	private final String keywords;
+	private final String configuration;
+
+	public FullTextMatch(Expression expr, String keywords, String configuration) {
+		this.expr = expr;
+		this.keywords = keywords;
+		this.configuration = configuration;
+	}
+
+	public Expression getBase() {
+		return expr;
+	}
+
+	public String keywords() {
+		return keywords;
+	}
+
+	public String configuration() {
+		return configuration;
+	}
+
+	public Set<Attribute> attributes() {
+		return expr.attributes();
+	}
+
+	public boolean isFalse() {
+		return false;
+	}
+
+	public boolean isTrue() {
+		return false;
+	}
+
+	public Expression renameAttributes(ColumnRenamer columnRenamer) {
+		return new FullTextMatch(columnRenamer.applyTo(expr), keywords, configuration);
+	}
+
+	public String toSQL(ConnectedDB database, AliasMap aliases) {
+		return database.vendor().getFullTextMatchExpression(
+				expr.toSQL(database, aliases), keywords, configuration);
+	}
+
+	public String toString() {
+		return "FullTextMatch(" + expr + ", \"" + keywords + "\", " + configuration + ")";
+	}
+
+	public boolean equals(Object other) {
+		if (!(other instanceof FullTextMatch)) return false;
+		FullTextMatch otherMatch = (FullTextMatch) other;
+		return expr.equals(otherMatch.expr) && keywords.equals(otherMatch.keywords)
+				&& configuration.equals(otherMatch.configuration);
+	}
+
+	public int hashCode() {
+		return expr.hashCode() ^ keywords.hashCode() ^ configuration.hashCode() ^ 5120397;
+	}
+}
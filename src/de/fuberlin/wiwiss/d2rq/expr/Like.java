@@ -0,0 +1,75 @@
+package de.fuberlin.wiwiss.d2rq.expr;
+
+import java.util.Set;
+
+import de.fuberlin.wiwiss.d2rq.algebra.AliasMap;
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.ColumnRenamer;
+import de.fuberlin.wiwiss.d2rq.sql.ConnectedDB;
+import de.fuberlin.wiwiss.d2rq.sql.vendor.Vendor;
+
+/**
+ * Matches a string expression against a <code>LIKE</code> pattern,
+ * optionally ignoring case. The pattern's only special character
+ * is <code>%</code>. The SQL syntax is vendor-specific, see
+ * {@link Vendor#getLikeExpression(String, String, boolean)}.
+ */
+public class Like extends Expression {
+	private final Expression expr;
+	private final String pattern;
+	private final boolean caseInsensitive;
+
+	public Like(Expression expr, String pattern, boolean caseInsensitive) {
+		this.expr = expr;
+		this.pattern = pattern;
+		this.caseInsensitive = caseInsensitive;
+	}
+
+	public Expression getBase() {
+		return expr;
+	}
+
+	public String pattern() {
+		return pattern;
+	}
+
+	public boolean isCaseInsensitive() {
+		return caseInsensitive;
+	}
+
+	public Set<Attribute> attributes() {
+		return expr.attributes();
+	}
+
+	public boolean isFalse() {
+		return false;
+	}
+
+	public boolean isTrue() {
+		return false;
+	}
+
+	public Expression renameAttributes(ColumnRenamer columnRenamer) {
+		return new Like(columnRenamer.applyTo(expr), pattern, caseInsensitive);
+	}
+
+	public String toSQL(ConnectedDB database, AliasMap aliases) {
+		return database.vendor().getLikeExpression(
+				expr.toSQL(database, aliases), pattern, caseInsensitive);
+	}
+
+	public String toString() {
+		return "Like(" + expr + ", \"" + pattern + "\"" + (caseInsensitive ? ", i" : "") + ")";
+	}
+
+	public boolean equals(Object other) {
+		if (!(other instanceof Like)) return false;
+		Like otherLike = (Like) other;
+		return expr.equals(otherLike.expr) && pattern.equals(otherLike.pattern)
+				&& caseInsensitive == otherLike.caseInsensitive;
+	}
+
+	public int hashCode() {
+		return expr.hashCode() ^ pattern.hashCode() ^ (caseInsensitive ? 1 : 0) ^ 7634521;
+	}
+}
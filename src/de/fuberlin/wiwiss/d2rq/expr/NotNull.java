@@ -19,6 +19,10 @@ public class NotNull extends Expression {
 		this.expr = expr;
 	}
 	
+	public Expression getBase() {
+		return expr;
+	}
+	
 	public Set<Attribute> attributes() {
 		return expr.attributes();
 	}
@@ -0,0 +1,75 @@
+package de.fuberlin.wiwiss.d2rq.expr;
+
+import java.util.Set;
+
+import de.fuberlin.wiwiss.d2rq.algebra.AliasMap;
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.ColumnRenamer;
+import de.fuberlin.wiwiss.d2rq.sql.ConnectedDB;
+import de.fuberlin.wiwiss.d2rq.sql.vendor.Vendor;
+
+/**
+ * Matches a string expression against a regular expression,
+ * optionally ignoring case. Only usable with engines that support
+ * regular expressions, see
+ * {@link Vendor#getRegexMatchExpression(String, String, boolean)}.
+ */
+public class RegexMatch extends Expression {
+	private final Expression expr;
+	private final String regex;
+	private final boolean caseInsensitive;
+
+	public RegexMatch(Expression expr, String regex, boolean caseInsensitive) {
+		this.expr = expr;
+		this.regex = regex;
+		this.caseInsensitive = caseInsensitive;
+	}
+
+	public Expression getBase() {
+		return expr;
+	}
+
+	public String regex() {
+		return regex;
+	}
+
+	public boolean isCaseInsensitive() {
+		return caseInsensitive;
+	}
+
+	public Set<Attribute> attributes() {
+		return expr.attributes();
+	}
+
+	public boolean isFalse() {
+		return false;
+	}
+
+	public boolean isTrue() {
+		return false;
+	}
+
+	public Expression renameAttributes(ColumnRenamer columnRenamer) {
+		return new RegexMatch(columnRenamer.applyTo(expr), regex, caseInsensitive);
+	}
+
+	public String toSQL(ConnectedDB database, AliasMap aliases) {
+		return database.vendor().getRegexMatchExpression(
+				expr.toSQL(database, aliases), regex, caseInsensitive);
+	}
+
+	public String toString() {
+		return "RegexMatch(" + expr + ", \"" + regex + "\"" + (caseInsensitive ? ", i" : "") + ")";
+	}
+
+	public boolean equals(Object other) {
+		if (!(other instanceof RegexMatch)) return false;
+		RegexMatch otherMatch = (RegexMatch) other;
+		return expr.equals(otherMatch.expr) && regex.equals(otherMatch.regex)
+				&& caseInsensitive == otherMatch.caseInsensitive;
+	}
+
+	public int hashCode() {
+		return expr.hashCode() ^ regex.hashCode() ^ (caseInsensitive ? 1 : 0) ^ 3498761;
+	}
+}
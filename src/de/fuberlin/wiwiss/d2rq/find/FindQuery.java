@@ -7,21 +7,22 @@ import java.util.List;
 import com.hp.hpl.jena.graph.Triple;
 import com.hp.hpl.jena.sparql.engine.ExecutionContext;
 import com.hp.hpl.jena.sparql.engine.iterator.QueryIter;
-import com.hp.hpl.jena.sparql.engine.iterator.QueryIterConcat;
 
 import de.fuberlin.wiwiss.d2rq.algebra.CompatibleRelationGroup;
 import de.fuberlin.wiwiss.d2rq.algebra.JoinOptimizer;
 import de.fuberlin.wiwiss.d2rq.algebra.Relation;
 import de.fuberlin.wiwiss.d2rq.algebra.TripleRelation;
-import de.fuberlin.wiwiss.d2rq.engine.QueryIterTableSQL;
+import de.fuberlin.wiwiss.d2rq.engine.QueryIterConcatParallel;
 import de.fuberlin.wiwiss.d2rq.find.URIMakerRule.URIMakerRuleChecker;
+import de.fuberlin.wiwiss.d2rq.metrics.Metrics;
 
 
 /**
  * A find query on a collection of {@link TripleRelation}s. Results are 
  * delivered as a {@link QueryIter} over three-variable s/p/o bindings.
  * Will combine queries on multiple
- * relations into one SQL statement where possible.
+ * relations into one SQL statement where possible, and can run the
+ * remaining SQL statements in parallel.
  * An option for limiting the number of triples returned from each
  * {@link TripleRelation} is available.
  * 
@@ -29,7 +30,7 @@ import de.fuberlin.wiwiss.d2rq.find.URIMakerRule.URIMakerRuleChecker;
  */
 public class FindQuery {
 	private final Triple triplePattern;
-	private final Collection<TripleRelation> tripleRelations;
+	private final TripleRelationIndex tripleRelations;
 	private final int limitPerRelation;
 	private final ExecutionContext context;
 	
@@ -40,6 +41,16 @@ public class FindQuery {
 
 	public FindQuery(Triple triplePattern, Collection<TripleRelation> tripleRelations, int limit,
 			ExecutionContext context) {
+		this(triplePattern, new TripleRelationIndex(tripleRelations), limit, context);
+	}	
+
+	public FindQuery(Triple triplePattern, TripleRelationIndex tripleRelations,
+			ExecutionContext context) {
+		this(triplePattern, tripleRelations, Relation.NO_LIMIT, context);
+	}	
+
+	public FindQuery(Triple triplePattern, TripleRelationIndex tripleRelations, int limit,
+			ExecutionContext context) {
 		this.triplePattern = triplePattern;
 		this.tripleRelations = tripleRelations;
 		this.limitPerRelation = limit;
@@ -47,8 +58,9 @@ public class FindQuery {
 	}	
 
 	private List<TripleRelation> selectedTripleRelations() {
-		URIMakerRule rule = new URIMakerRule();
-		List<TripleRelation> sortedTripleRelations = rule.sortRDFRelations(tripleRelations);
+		URIMakerRule rule = tripleRelations.uriMakerRule();
+		List<TripleRelation> sortedTripleRelations = 
+				tripleRelations.candidatesInURIMakerOrder(triplePattern);
 		URIMakerRuleChecker subjectChecker = rule.createRuleChecker(triplePattern.getSubject());
 		URIMakerRuleChecker predicateChecker = rule.createRuleChecker(triplePattern.getPredicate());
 		URIMakerRuleChecker objectChecker = rule.createRuleChecker(triplePattern.getObject());
@@ -73,14 +85,14 @@ public class FindQuery {
 	}
 	
 	public QueryIter iterator() {
-		QueryIterConcat qIter = new QueryIterConcat(context);
+		Metrics.FIND_QUERIES.increment();
+		List<CompatibleRelationGroup> groups = new ArrayList<CompatibleRelationGroup>();
 		for (CompatibleRelationGroup group: 
 				CompatibleRelationGroup.groupNodeRelations(selectedTripleRelations())) {
 			if (!group.baseRelation().equals(Relation.EMPTY) && group.baseRelation().limit()!=0) {
-				qIter.add(QueryIterTableSQL.create(
-						group.baseRelation(), group.bindingMakers(), context));
+				groups.add(group);
 			}
 		}
-		return qIter;
+		return QueryIterConcatParallel.create(groups, context);
 	}
 }
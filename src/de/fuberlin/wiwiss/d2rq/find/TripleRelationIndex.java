@@ -0,0 +1,181 @@
+package de.fuberlin.wiwiss.d2rq.find;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.sparql.core.Var;
+
+import de.fuberlin.wiwiss.d2rq.algebra.TripleRelation;
+import de.fuberlin.wiwiss.d2rq.nodes.FixedNodeMaker;
+import de.fuberlin.wiwiss.d2rq.nodes.NodeMaker;
+import de.fuberlin.wiwiss.d2rq.nodes.TypedNodeMaker;
+import de.fuberlin.wiwiss.d2rq.values.Pattern;
+import de.fuberlin.wiwiss.d2rq.values.PrefixTrie;
+
+/**
+ * An immutable index over a collection of {@link TripleRelation}s,
+ * usually all the compiled property bridges of a mapping. Given a
+ * triple pattern, it returns the relations that might match it,
+ * without calling {@link TripleRelation#selectTriple(Triple)} on
+ * every relation.
+ *
+ * For each position of the triple, relations with a
+ * {@link FixedNodeMaker} are indexed by their node, and relations
+ * with a URI {@link Pattern} by the pattern's first literal part,
+ * in a {@link PrefixTrie}. All other relations are candidates for any
+ * node. The result is a superset of the matching relations;
+ * <code>selectTriple</code> must still be called on each.
+ *
+ * The index also keeps the relations' order according to
+ * {@link URIMakerRule}, so that find queries don't have to sort them.
+ */
+public class TripleRelationIndex {
+	private final List<TripleRelation> relations;
+	private final URIMakerRule uriMakerRule = new URIMakerRule();
+	private final int[] uriMakerRanks;
+	private final List<TripleRelation> inURIMakerOrder;
+	private final NodeIndex[] positions = new NodeIndex[3];
+
+	/**
+	 * @param tripleRelations The relations, in the order in which
+	 * 		{@link #candidates(Triple)} returns them
+	 */
+	public TripleRelationIndex(Collection<TripleRelation> tripleRelations) {
+		relations = new ArrayList<TripleRelation>(tripleRelations);
+		inURIMakerOrder = uriMakerRule.sortRDFRelations(relations);
+		Map<TripleRelation,Integer> ranks = new IdentityHashMap<TripleRelation,Integer>();
+		for (int i = inURIMakerOrder.size() - 1; i >= 0; i--) {
+			ranks.put(inURIMakerOrder.get(i), i);
+		}
+		uriMakerRanks = new int[relations.size()];
+		for (int i = 0; i < relations.size(); i++) {
+			uriMakerRanks[i] = ranks.get(relations.get(i));
+		}
+		Var[] vars = {TripleRelation.SUBJECT, TripleRelation.PREDICATE, TripleRelation.OBJECT};
+		for (int p = 0; p < 3; p++) {
+			positions[p] = new NodeIndex(relations.size());
+			for (int i = 0; i < relations.size(); i++) {
+				positions[p].add(relations.get(i).nodeMaker(vars[p]), i);
+			}
+		}
+	}
+
+	/**
+	 * @return All relations, in their original order
+	 */
+	public List<TripleRelation> all() {
+		return relations;
+	}
+
+	/**
+	 * @return The relations that might match the pattern, in their original order
+	 */
+	public List<TripleRelation> candidates(Triple pattern) {
+		BitSet matches = lookup(pattern);
+		List<TripleRelation> result = new ArrayList<TripleRelation>(matches.cardinality());
+		for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+			result.add(relations.get(i));
+		}
+		return result;
+	}
+
+	/**
+	 * @return The relations that might match the pattern, sorted as by
+	 * 		{@link URIMakerRule#sortRDFRelations(Collection)}
+	 */
+	public List<TripleRelation> candidatesInURIMakerOrder(Triple pattern) {
+		BitSet matches = lookup(pattern);
+		int[] ranks = new int[matches.cardinality()];
+		int count = 0;
+		for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+			ranks[count++] = uriMakerRanks[i];
+		}
+		Arrays.sort(ranks);
+		List<TripleRelation> result = new ArrayList<TripleRelation>(ranks.length);
+		for (int rank: ranks) {
+			result.add(inURIMakerOrder.get(rank));
+		}
+		return result;
+	}
+
+	/**
+	 * @return A rule whose node maker identifiers are precomputed
+	 * 		for all relations in this index
+	 */
+	public URIMakerRule uriMakerRule() {
+		return uriMakerRule;
+	}
+
+	private BitSet lookup(Triple pattern) {
+		BitSet result = new BitSet(relations.size());
+		result.set(0, relations.size());
+		positions[0].restrict(result, pattern.getSubject());
+		positions[1].restrict(result, pattern.getPredicate());
+		positions[2].restrict(result, pattern.getObject());
+		return result;
+	}
+
+	/**
+	 * Indexes the node makers of one position of the triple relations.
+	 */
+	private static class NodeIndex {
+		private final BitSet unindexed;
+		private final Map<Node,BitSet> fixedNodes = new HashMap<Node,BitSet>();
+		private final PrefixTrie<BitSet> uriPrefixes = new PrefixTrie<BitSet>();
+		private final int size;
+		NodeIndex(int size) {
+			this.size = size;
+			this.unindexed = new BitSet(size);
+		}
+		void add(NodeMaker nodeMaker, int index) {
+			if (nodeMaker instanceof FixedNodeMaker) {
+				Node node = ((FixedNodeMaker) nodeMaker).node();
+				BitSet bits = fixedNodes.get(node);
+				if (bits == null) {
+					bits = new BitSet(size);
+					fixedNodes.put(node, bits);
+				}
+				bits.set(index);
+			} else if (nodeMaker instanceof TypedNodeMaker
+					&& ((TypedNodeMaker) nodeMaker).nodeType() == TypedNodeMaker.URI
+					&& ((TypedNodeMaker) nodeMaker).valueMaker() instanceof Pattern) {
+				String prefix = ((Pattern) ((TypedNodeMaker) nodeMaker).valueMaker()).firstLiteralPart();
+				BitSet bits = uriPrefixes.get(prefix);
+				if (bits == null) {
+					bits = new BitSet(size);
+					uriPrefixes.put(prefix, bits);
+				}
+				bits.set(index);
+			} else {
+				unindexed.set(index);
+			}
+		}
+		/**
+		 * Clears the bits of relations that can't produce the node
+		 */
+		void restrict(BitSet candidates, Node node) {
+			if (!node.isConcrete()) return;
+			BitSet matches = (BitSet) unindexed.clone();
+			BitSet fixed = fixedNodes.get(node);
+			if (fixed != null) {
+				matches.or(fixed);
+			}
+			if (node.isURI()) {
+				List<BitSet> prefixMatches = new ArrayList<BitSet>();
+				uriPrefixes.collectPrefixValues(node.getURI(), prefixMatches);
+				for (BitSet bits: prefixMatches) {
+					matches.or(bits);
+				}
+			}
+			candidates.and(matches);
+		}
+	}
+}
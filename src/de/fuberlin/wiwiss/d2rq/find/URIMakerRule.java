@@ -4,9 +4,9 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.hp.hpl.jena.datatypes.RDFDatatype;
 import com.hp.hpl.jena.graph.Node;
@@ -47,7 +47,8 @@ import de.fuberlin.wiwiss.d2rq.values.Translator;
  * @author Richard Cyganiak (richard@cyganiak.de)
  */
 public class URIMakerRule implements Comparator<TripleRelation> {
-	private Map<NodeMaker, URIMakerIdentifier> identifierCache = new HashMap<NodeMaker, URIMakerIdentifier>();
+	// Shared by concurrent find queries through TripleRelationIndex
+	private Map<NodeMaker, URIMakerIdentifier> identifierCache = new ConcurrentHashMap<NodeMaker, URIMakerIdentifier>();
 
 	public List<TripleRelation> sortRDFRelations(Collection<TripleRelation> tripleRelations) {
 		ArrayList<TripleRelation> results = new ArrayList<TripleRelation>(tripleRelations);
@@ -12,10 +12,13 @@ import com.hp.hpl.jena.graph.query.QueryHandler;
 import com.hp.hpl.jena.util.iterator.ExtendedIterator;
 
 import de.fuberlin.wiwiss.d2rq.D2RQException;
+import de.fuberlin.wiwiss.d2rq.engine.PlanCache;
 import de.fuberlin.wiwiss.d2rq.engine.QueryEngineD2RQ;
+import de.fuberlin.wiwiss.d2rq.engine.QueryIterTraced;
 import de.fuberlin.wiwiss.d2rq.find.FindQuery;
 import de.fuberlin.wiwiss.d2rq.find.TripleQueryIter;
 import de.fuberlin.wiwiss.d2rq.map.Mapping;
+import de.fuberlin.wiwiss.d2rq.metrics.QueryTrace;
 import de.fuberlin.wiwiss.d2rq.pp.PrettyPrinter;
 
 /**
@@ -43,6 +46,7 @@ public class GraphD2RQ extends GraphBase implements Graph {
 	}
 	
 	private final Mapping mapping;
+	private PlanCache planCache = null;
 	
 	/**
 	 * Creates a new D2RQ graph from a previously prepared {@link Mapping} instance.
@@ -69,6 +73,11 @@ public class GraphD2RQ extends GraphBase implements Graph {
 
 	@Override
 	public void close() {
+		synchronized (this) {
+			if (planCache != null) {
+				planCache.clear();
+			}
+		}
 		mapping.close();
 	}
 
@@ -84,8 +93,20 @@ public class GraphD2RQ extends GraphBase implements Graph {
 		if (log.isDebugEnabled()) {
 			log.debug("Find: " + PrettyPrinter.toString(t, getPrefixMapping()));
 		}
-		FindQuery query = new FindQuery(t, mapping.compiledPropertyBridges(), null);
-		ExtendedIterator<Triple> result = TripleQueryIter.create(query.iterator());
+		FindQuery query = new FindQuery(t, mapping.tripleRelationIndex(t), null);
+		ExtendedIterator<Triple> result;
+		QueryTrace trace = mapping.configuration().slowQueryLog().startTrace(t);
+		if (trace == null) {
+			result = TripleQueryIter.create(query.iterator());
+		} else {
+			QueryTrace previous = trace.enter();
+			try {
+				result = TripleQueryIter.create(
+						new QueryIterTraced(query.iterator(), trace, null));
+			} finally {
+				QueryTrace.exit(previous);
+			}
+		}
 		if (mapping.configuration().getServeVocabulary()) {
 			result = result.andThen(mapping.getVocabularyModel().getGraph().find(t));
 		}
@@ -103,4 +124,14 @@ public class GraphD2RQ extends GraphBase implements Graph {
 	public Mapping getMapping() {
 		return mapping;
 	}
+	
+	/**
+	 * @return The cache of SPARQL query translations over this graph
+	 */
+	public synchronized PlanCache getPlanCache() {
+		if (planCache == null) {
+			planCache = new PlanCache(mapping.configuration().getPlanCacheSize());
+		}
+		return planCache;
+	}
 }
\ No newline at end of file
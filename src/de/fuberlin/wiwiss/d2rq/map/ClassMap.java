@@ -2,10 +2,14 @@ package de.fuberlin.wiwiss.d2rq.map;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
 import com.hp.hpl.jena.rdf.model.Property;
 import com.hp.hpl.jena.rdf.model.Resource;
 import com.hp.hpl.jena.vocabulary.RDF;
@@ -22,7 +26,7 @@ public class ClassMap extends ResourceMap {
 	private Database database = null;
 	private Collection<Resource> classes = new ArrayList<Resource>();
 	private Collection<PropertyBridge> propertyBridges = new ArrayList<PropertyBridge>();
-	private Collection<TripleRelation> compiledPropertyBridges = null;
+	private volatile Collection<TripleRelation> compiledPropertyBridges = null;
 	private Log log = LogFactory.getLog(ClassMap.class);
 	
 	public ClassMap(Resource classMapResource) {
@@ -84,25 +88,88 @@ public class ClassMap extends ResourceMap {
 		return (!this.classes.isEmpty() || !this.propertyBridges.isEmpty());
 	}
 	
+	/**
+	 * Compiles the class map on first use. Once compiled, the result
+	 * is returned without locking.
+	 */
 	public Collection<TripleRelation> compiledPropertyBridges() {
-		if (this.compiledPropertyBridges == null) {
-			compile();
+		Collection<TripleRelation> result = this.compiledPropertyBridges;
+		if (result != null) return result;
+		synchronized (this) {
+			if (this.compiledPropertyBridges == null) {
+				this.compiledPropertyBridges = compile();
+			}
+			return this.compiledPropertyBridges;
 		}
-		return this.compiledPropertyBridges;
 	}
 
-	private void compile() {
-		this.compiledPropertyBridges = new ArrayList<TripleRelation>();
+	public boolean isCompiled() {
+		return this.compiledPropertyBridges != null;
+	}
+	
+	/**
+	 * Uses previously compiled property bridges, e.g., from
+	 * a {@link MappingSnapshot}, instead of compiling them.
+	 * <code>null</code> forces recompilation on next use.
+	 */
+	synchronized void setCompiledPropertyBridges(Collection<TripleRelation> compiledPropertyBridges) {
+		this.compiledPropertyBridges = compiledPropertyBridges;
+	}
+
+	/**
+	 * Checks, without compiling the class map, whether any of its
+	 * property bridges could produce a triple matching the pattern.
+	 * Only the subject and predicate are checked. The check is
+	 * conservative: it may return <code>true</code> for class maps
+	 * that don't produce any matching triples.
+	 */
+	public boolean couldMatch(Triple pattern) {
+		return couldMatchPredicate(pattern.getPredicate()) 
+				&& couldMatchSubject(pattern.getSubject());
+	}
+	
+	private boolean couldMatchPredicate(Node predicate) {
+		if (!predicate.isConcrete()) return true;
+		if (!predicate.isURI()) return false;
+		if (!classes.isEmpty() && RDF.type.asNode().equals(predicate)) return true;
+		for (PropertyBridge bridge: propertyBridges) {
+			if (bridge.hasDynamicProperties()) return true;
+			for (Resource property: bridge.properties()) {
+				if (property.asNode().equals(predicate)) return true;
+			}
+		}
+		return false;
+	}
+	
+	private boolean couldMatchSubject(Node subject) {
+		if (!subject.isConcrete()) return true;
+		if (this.constantValue != null) {
+			return this.constantValue.asNode().equals(subject);
+		}
+		if (subject.isLiteral()) return false;
+		if (this.bNodeIdColumns != null) return subject.isBlank();
+		if (subject.isBlank()) return false;
+		if (this.uriPattern != null && this.translateWith == null) {
+			Pattern pattern = new Pattern(this.uriPattern);
+			return subject.getURI().startsWith(pattern.firstLiteralPart())
+					&& subject.getURI().endsWith(pattern.lastLiteralPart());
+		}
+		return true;
+	}
+	
+	private Collection<TripleRelation> compile() {
+		List<TripleRelation> result = new ArrayList<TripleRelation>();
 		for (PropertyBridge bridge: propertyBridges) {
-			this.compiledPropertyBridges.addAll(bridge.toTripleRelations());
+			result.addAll(bridge.toTripleRelations());
 		}
 		for (Resource class_: classes) {
 			PropertyBridge bridge = new PropertyBridge(this.resource);
 			bridge.setBelongsToClassMap(this);
 			bridge.addProperty(RDF.type);
 			bridge.setConstantValue(class_);
-			this.compiledPropertyBridges.addAll(bridge.toTripleRelations());
+			result.addAll(bridge.toTripleRelations());
 		}
+		return Collections.unmodifiableList(result);
 	}
 	
 	protected Relation buildRelation() {
@@ -3,6 +3,7 @@ package de.fuberlin.wiwiss.d2rq.map;
 import com.hp.hpl.jena.rdf.model.Resource;
 
 import de.fuberlin.wiwiss.d2rq.D2RQException;
+import de.fuberlin.wiwiss.d2rq.metrics.SlowQueryLog;
 
 
 /**
@@ -11,8 +12,16 @@ import de.fuberlin.wiwiss.d2rq.D2RQException;
  * @author Christian Becker <http://beckr.org#chris>
  */
 public class Configuration extends MapObject {
+	public final static int DEFAULT_PLAN_CACHE_SIZE = 0;
+	
 	private boolean serveVocabulary = true;
 	private boolean useAllOptimizations = false;
+	private int slowQueryThreshold = SlowQueryLog.NO_THRESHOLD;
+	private int slowSQLThreshold = SlowQueryLog.NO_THRESHOLD;
+	private SlowQueryLog slowQueryLog = null;
+	private String mappingSnapshot = null;
+	private boolean compileLazily = false;
+	private int planCacheSize = DEFAULT_PLAN_CACHE_SIZE;
 	
 	public Configuration() {
 		this(null);
@@ -38,6 +47,72 @@ public class Configuration extends MapObject {
 		this.useAllOptimizations = useAllOptimizations;
 	}
 
+	public int getSlowQueryThreshold() {
+		return this.slowQueryThreshold;
+	}
+	
+	public void setSlowQueryThreshold(int milliseconds) {
+		this.slowQueryThreshold = milliseconds;
+		this.slowQueryLog = null;
+	}
+	
+	public int getSlowSQLThreshold() {
+		return this.slowSQLThreshold;
+	}
+	
+	public void setSlowSQLThreshold(int milliseconds) {
+		this.slowSQLThreshold = milliseconds;
+		this.slowQueryLog = null;
+	}
+	
+	/**
+	 * @return Whether class maps are compiled on first use by a query
+	 * 		rather than all at once
+	 * @see Mapping#compiledPropertyBridges(java.util.Collection)
+	 */
+	public boolean getCompileLazily() {
+		return this.compileLazily;
+	}
+	
+	public void setCompileLazily(boolean compileLazily) {
+		this.compileLazily = compileLazily;
+	}
+	
+	/**
+	 * @return Maximum number of query translations to keep, or 0
+	 * 		if queries are translated every time
+	 * @see de.fuberlin.wiwiss.d2rq.engine.PlanCache
+	 */
+	public int getPlanCacheSize() {
+		return this.planCacheSize;
+	}
+	
+	public void setPlanCacheSize(int planCacheSize) {
+		this.planCacheSize = planCacheSize;
+	}
+	
+	/**
+	 * @return File name of the compiled mapping snapshot, or <code>null</code>
+	 * @see MappingSnapshot
+	 */
+	public String getMappingSnapshot() {
+		return this.mappingSnapshot;
+	}
+	
+	public void setMappingSnapshot(String fileName) {
+		this.mappingSnapshot = fileName;
+	}
+	
+	/**
+	 * @return A slow query log using the configured thresholds
+	 */
+	public synchronized SlowQueryLog slowQueryLog() {
+		if (slowQueryLog == null) {
+			slowQueryLog = new SlowQueryLog(slowQueryThreshold, slowSQLThreshold);
+		}
+		return slowQueryLog;
+	}
+
 	public String toString() {
 		return "d2rq:Configuration " + super.toString();
 	}
@@ -169,7 +169,7 @@ public class Database extends MapObject {
 		this.connection = db;
 	}
 	
-	public ConnectedDB connectedDB() {
+	public synchronized ConnectedDB connectedDB() {
 		if (this.connection == null) {
 			if (jdbcDriver != null) {
 				ConnectedDB.registerJDBCDriver(jdbcDriver);
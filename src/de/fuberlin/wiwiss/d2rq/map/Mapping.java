@@ -1,13 +1,25 @@
 package de.fuberlin.wiwiss.d2rq.map;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import com.hp.hpl.jena.graph.Triple;
 import com.hp.hpl.jena.rdf.model.Literal;
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.ModelFactory;
@@ -20,9 +32,14 @@ import com.hp.hpl.jena.vocabulary.RDF;
 import com.hp.hpl.jena.vocabulary.RDFS;
 
 import de.fuberlin.wiwiss.d2rq.D2RQException;
+import de.fuberlin.wiwiss.d2rq.algebra.AliasMap;
+import de.fuberlin.wiwiss.d2rq.algebra.AliasMap.Alias;
 import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
 import de.fuberlin.wiwiss.d2rq.algebra.Relation;
 import de.fuberlin.wiwiss.d2rq.algebra.TripleRelation;
+import de.fuberlin.wiwiss.d2rq.find.TripleRelationIndex;
+import de.fuberlin.wiwiss.d2rq.sql.ConnectedDB;
+import de.fuberlin.wiwiss.d2rq.sql.SQL;
 import de.fuberlin.wiwiss.d2rq.sql.types.DataType;
 import de.fuberlin.wiwiss.d2rq.vocab.D2RQ;
 
@@ -53,7 +70,14 @@ public class Mapping {
 	private final Map<Resource,TranslationTable> translationTables = new HashMap<Resource,TranslationTable>();
 	private final Map<Resource,DownloadMap> downloadMaps = new HashMap<Resource,DownloadMap>();
 	private final PrefixMapping prefixes = new PrefixMappingImpl();
-	private Collection<TripleRelation> compiledPropertyBridges;
+	private volatile Collection<TripleRelation> compiledPropertyBridges;
+	private volatile TripleRelationIndex tripleRelationIndex;
+	// Index over the class maps compiled so far, in lazy mode
+	private TripleRelationIndex partialIndex = null;
+	private int partialIndexClassMaps = 0;
+	private volatile Map<ConnectedDB,Map<Attribute,String>> fullTextIndexes;
+	private String fingerprint = null;
+	private boolean snapshotChecked = false;
 	
 	public Mapping() {
 		this(null);
@@ -106,6 +130,10 @@ public class Mapping {
 		for (DownloadMap dlm: downloadMaps.values()) {
 			dlm.validate();
 		}
+		if (configuration.getCompileLazily()) {
+			// Column types are checked when each class map is compiled
+			return;
+		}
 		for (TripleRelation bridge: compiledPropertyBridges()) {
 			new AttributeTypeValidator(bridge).validate();
 		}
@@ -125,6 +153,10 @@ public class Mapping {
 			db.connectedDB().connection();
 		}
 		validate();
+		// Validation has looked up all mapped columns
+		for (Database db: databases()) {
+			db.connectedDB().saveSchemaCache();
+		}
 	}
 	private boolean connected = false;
 
@@ -170,10 +202,26 @@ public class Mapping {
 		this.translationTables.put(table.resource(), table);
 	}
 	
+	public Collection<Resource> translationTableResources() {
+		return this.translationTables.keySet();
+	}
+	
 	public TranslationTable translationTable(Resource name) {
 		return (TranslationTable) this.translationTables.get(name);
 	}
 	
+	/**
+	 * Sets the {@link MappingSnapshot#fingerprint(Model, String)} of the
+	 * mapping file. Required for using a mapping snapshot.
+	 */
+	public void setFingerprint(String fingerprint) {
+		this.fingerprint = fingerprint;
+	}
+	
+	public String getFingerprint() {
+		return this.fingerprint;
+	}
+	
 	public void addDownloadMap(DownloadMap downloadMap) {
 		downloadMaps.put(downloadMap.resource(), downloadMap);
 	}
@@ -190,11 +238,169 @@ public class Mapping {
 	 * @return A collection of {@link TripleRelation}s corresponding to each
 	 * 		of the property bridges
 	 */
-	public synchronized Collection<TripleRelation> compiledPropertyBridges() {
-		if (this.compiledPropertyBridges == null) {
-			compilePropertyBridges();
+	public Collection<TripleRelation> compiledPropertyBridges() {
+		Collection<TripleRelation> result = this.compiledPropertyBridges;
+		if (result != null) return result;
+		synchronized (this) {
+			if (this.compiledPropertyBridges == null) {
+				compilePropertyBridges();
+			}
+			return this.compiledPropertyBridges;
+		}
+	}
+
+	/**
+	 * Returns the compiled property bridges that might be needed for
+	 * answering a query with the given triple patterns. If
+	 * {@link Configuration#getCompileLazily()} is set, only class maps
+	 * that {@link ClassMap#couldMatch(Triple) could match} one of the
+	 * patterns are compiled. Otherwise, all property bridges are returned.
+	 */
+	public Collection<TripleRelation> compiledPropertyBridges(Collection<Triple> patterns) {
+		if (!configuration.getCompileLazily() || this.compiledPropertyBridges != null) {
+			return compiledPropertyBridges();
+		}
+		checkSnapshot();
+		List<TripleRelation> result = new ArrayList<TripleRelation>();
+		for (ClassMap classMap: classMaps.values()) {
+			for (Triple pattern: patterns) {
+				if (classMap.couldMatch(pattern)) {
+					result.addAll(compileAndValidate(classMap));
+					break;
+				}
+			}
+		}
+		return result;
+	}
+	
+	public Collection<TripleRelation> compiledPropertyBridges(Triple pattern) {
+		return compiledPropertyBridges(Collections.singleton(pattern));
+	}
+
+	/**
+	 * @return An index over all compiled property bridges, built
+	 * 		when they are compiled
+	 */
+	public TripleRelationIndex tripleRelationIndex() {
+		compiledPropertyBridges();
+		return this.tripleRelationIndex;
+	}
+	
+	/**
+	 * Returns an index over the compiled property bridges that might be
+	 * needed for answering a query with the given triple patterns.
+	 * In lazy mode, this is an index over all class maps compiled so far.
+	 * It is only rebuilt when more class maps have been compiled, and
+	 * is replaced by {@link #tripleRelationIndex()} once all are.
+	 * @see #compiledPropertyBridges(Collection)
+	 */
+	public TripleRelationIndex tripleRelationIndex(Collection<Triple> patterns) {
+		if (!configuration.getCompileLazily() || this.compiledPropertyBridges != null) {
+			return tripleRelationIndex();
+		}
+		compiledPropertyBridges(patterns);
+		return partialIndex();
+	}
+	
+	private synchronized TripleRelationIndex partialIndex() {
+		List<ClassMap> compiled = new ArrayList<ClassMap>();
+		for (ClassMap classMap: classMaps.values()) {
+			if (classMap.isCompiled()) {
+				compiled.add(classMap);
+			}
+		}
+		if (compiled.size() == classMaps.size()) {
+			partialIndex = null;
+			return tripleRelationIndex();
+		}
+		if (partialIndex == null || compiled.size() != partialIndexClassMaps) {
+			List<TripleRelation> relations = new ArrayList<TripleRelation>();
+			for (ClassMap classMap: compiled) {
+				relations.addAll(classMap.compiledPropertyBridges());
+			}
+			partialIndex = new TripleRelationIndex(relations);
+			partialIndexClassMaps = compiled.size();
+		}
+		return partialIndex;
+	}
+	
+	public TripleRelationIndex tripleRelationIndex(Triple pattern) {
+		return tripleRelationIndex(Collections.singleton(pattern));
+	}
+
+	/**
+	 * Looks up a column's full-text index, as declared with
+	 * <code>d2rq:fullTextIndex</code> on a property bridge.
+	 * 
+	 * @param database The database containing the column
+	 * @param column A column name, without table aliases
+	 * @return The text search configuration of the full-text index,
+	 * 		or <code>null</code> if the column has none
+	 */
+	public String fullTextIndex(ConnectedDB database, Attribute column) {
+		Map<Attribute,String> indexes = fullTextIndexes().get(database);
+		return indexes == null ? null : indexes.get(column);
+	}
+	
+	/**
+	 * @return Map from databases to maps from columns, without table
+	 * 		aliases, to the text search configurations of their
+	 * 		full-text indexes
+	 */
+	private Map<ConnectedDB,Map<Attribute,String>> fullTextIndexes() {
+		Map<ConnectedDB,Map<Attribute,String>> result = this.fullTextIndexes;
+		if (result != null) return result;
+		synchronized (this) {
+			if (this.fullTextIndexes != null) return this.fullTextIndexes;
+			result = new HashMap<ConnectedDB,Map<Attribute,String>>();
+			for (ClassMap classMap: classMaps.values()) {
+				if (classMap.database() == null) continue;
+				for (PropertyBridge bridge: classMap.propertyBridges()) {
+					if (bridge.getFullTextIndex() == null) continue;
+					Set<Alias> aliases = new HashSet<Alias>(classMap.aliases());
+					aliases.addAll(bridge.aliases());
+					Attribute column = new AliasMap(aliases).originalOf(
+							SQL.parseAttribute(bridge.getColumn()));
+					ConnectedDB database = classMap.database().connectedDB();
+					if (!result.containsKey(database)) {
+						result.put(database, new HashMap<Attribute,String>());
+					}
+					result.get(database).put(column, bridge.getFullTextIndex());
+				}
+			}
+			this.fullTextIndexes = result;
+			return result;
+		}
+	}
+	
+	private synchronized void checkSnapshot() {
+		if (snapshotChecked) return;
+		snapshotChecked = true;
+		if (readSnapshot()) {
+			log.info("Loaded compiled property bridges from snapshot");
+		}
+	}
+	
+	private Collection<TripleRelation> compileAndValidate(ClassMap classMap) {
+		if (classMap.isCompiled()) {
+			return classMap.compiledPropertyBridges();
+		}
+		synchronized (classMap) {
+			if (classMap.isCompiled()) {
+				return classMap.compiledPropertyBridges();
+			}
+			Collection<TripleRelation> result = classMap.compiledPropertyBridges();
+			try {
+				for (TripleRelation bridge: result) {
+					new AttributeTypeValidator(bridge).validate();
+				}
+			} catch (D2RQException ex) {
+				classMap.setCompiledPropertyBridges(null);
+				throw ex;
+			}
+			log.debug("Compiled " + classMap);
+			return result;
 		}
-		return this.compiledPropertyBridges;
 	}
 
 	private void compilePropertyBridges() {
@@ -208,11 +414,24 @@ public class Mapping {
 		 validate();
 
 		 */
-		compiledPropertyBridges = new ArrayList<TripleRelation>();
+		long start = System.currentTimeMillis();
+		boolean fromSnapshot = readSnapshot();
+		if (!fromSnapshot) {
+			compileInParallel();
+		}
+		List<TripleRelation> result = new ArrayList<TripleRelation>();
 		for (ClassMap classMap: classMaps.values()) {
-			this.compiledPropertyBridges.addAll(classMap.compiledPropertyBridges());
+			result.addAll(classMap.compiledPropertyBridges());
+		}
+		this.tripleRelationIndex = new TripleRelationIndex(result);
+		fullTextIndexes();
+		this.compiledPropertyBridges = Collections.unmodifiableList(result);
+		log.info((fromSnapshot ? "Loaded " : "Compiled ") + 
+				compiledPropertyBridges.size() + " property bridges in " + 
+				(System.currentTimeMillis() - start) + " ms");
+		if (!fromSnapshot) {
+			writeSnapshot();
 		}
-		log.info("Compiled " + compiledPropertyBridges.size() + " property bridges");
 		if (log.isDebugEnabled()) {
 			for (TripleRelation rel: compiledPropertyBridges) {
 				log.debug(rel);
@@ -220,6 +439,90 @@ public class Mapping {
 		}
 	}
 	
+	/**
+	 * Compiles all class maps that haven't been compiled yet, using
+	 * one thread per available processor.
+	 */
+	private void compileInParallel() {
+		List<ClassMap> pending = new ArrayList<ClassMap>();
+		for (ClassMap classMap: classMaps.values()) {
+			if (!classMap.isCompiled()) {
+				pending.add(classMap);
+			}
+		}
+		int threads = Math.min(pending.size(), Runtime.getRuntime().availableProcessors());
+		if (threads < 2) return;
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private int count = 0;
+			public synchronized Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "D2RQ-compiler-" + (++count));
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		try {
+			List<Future<?>> results = new ArrayList<Future<?>>(pending.size());
+			for (final ClassMap classMap: pending) {
+				results.add(executor.submit(new Runnable() {
+					public void run() {
+						classMap.compiledPropertyBridges();
+					}
+				}));
+			}
+			for (Future<?> result: results) {
+				result.get();
+			}
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) ex.getCause();
+			}
+			if (ex.getCause() instanceof Error) {
+				throw (Error) ex.getCause();
+			}
+			throw new D2RQException(ex.getCause());
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new D2RQException("Interrupted while compiling mapping", ex);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	private boolean readSnapshot() {
+		String file = configuration.getMappingSnapshot();
+		if (file == null || fingerprint == null) return false;
+		try {
+			Map<Resource,Collection<TripleRelation>> snapshot = 
+				new MappingSnapshot(this).read(new File(file), fingerprint);
+			if (snapshot == null) {
+				log.info("Mapping snapshot " + file + " is missing or out of date");
+				return false;
+			}
+			if (!snapshot.keySet().equals(classMaps.keySet())) {
+				log.warn("Mapping snapshot " + file + " doesn't match the class maps");
+				return false;
+			}
+			for (Map.Entry<Resource,Collection<TripleRelation>> entry: snapshot.entrySet()) {
+				classMaps.get(entry.getKey()).setCompiledPropertyBridges(entry.getValue());
+			}
+			return true;
+		} catch (IOException ex) {
+			log.warn("Could not read mapping snapshot " + file + ": " + ex.getMessage());
+			return false;
+		}
+	}
+	
+	private void writeSnapshot() {
+		String file = configuration.getMappingSnapshot();
+		if (file == null || fingerprint == null) return;
+		try {
+			new MappingSnapshot(this).write(new File(file), fingerprint);
+			log.info("Wrote mapping snapshot " + file);
+		} catch (IOException ex) {
+			log.warn("Could not write mapping snapshot " + file + ": " + ex.getMessage());
+		}
+	}
+	
 	public PrefixMapping getPrefixMapping() {
 		return prefixes;
 	}
@@ -0,0 +1,854 @@
+package de.fuberlin.wiwiss.d2rq.map;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.hp.hpl.jena.datatypes.RDFDatatype;
+import com.hp.hpl.jena.datatypes.TypeMapper;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.rdf.model.AnonId;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.ResourceFactory;
+import com.hp.hpl.jena.rdf.model.Statement;
+import com.hp.hpl.jena.rdf.model.StmtIterator;
+import com.hp.hpl.jena.sparql.util.FmtUtils;
+
+import de.fuberlin.wiwiss.d2rq.algebra.AliasMap;
+import de.fuberlin.wiwiss.d2rq.algebra.AliasMap.Alias;
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.ExpressionProjectionSpec;
+import de.fuberlin.wiwiss.d2rq.algebra.Join;
+import de.fuberlin.wiwiss.d2rq.algebra.OrderSpec;
+import de.fuberlin.wiwiss.d2rq.algebra.ProjectionSpec;
+import de.fuberlin.wiwiss.d2rq.algebra.Relation;
+import de.fuberlin.wiwiss.d2rq.algebra.RelationImpl;
+import de.fuberlin.wiwiss.d2rq.algebra.RelationName;
+import de.fuberlin.wiwiss.d2rq.algebra.TripleRelation;
+import de.fuberlin.wiwiss.d2rq.expr.Add;
+import de.fuberlin.wiwiss.d2rq.expr.AttributeExpr;
+import de.fuberlin.wiwiss.d2rq.expr.BinaryOperator;
+import de.fuberlin.wiwiss.d2rq.expr.BooleanToIntegerCaseExpression;
+import de.fuberlin.wiwiss.d2rq.expr.Concatenation;
+import de.fuberlin.wiwiss.d2rq.expr.Conjunction;
+import de.fuberlin.wiwiss.d2rq.expr.Constant;
+import de.fuberlin.wiwiss.d2rq.expr.Disjunction;
+import de.fuberlin.wiwiss.d2rq.expr.Divide;
+import de.fuberlin.wiwiss.d2rq.expr.Equality;
+import de.fuberlin.wiwiss.d2rq.expr.Expression;
+import de.fuberlin.wiwiss.d2rq.expr.GreaterThan;
+import de.fuberlin.wiwiss.d2rq.expr.GreaterThanOrEqual;
+import de.fuberlin.wiwiss.d2rq.expr.LessThan;
+import de.fuberlin.wiwiss.d2rq.expr.LessThanOrEqual;
+import de.fuberlin.wiwiss.d2rq.expr.Multiply;
+import de.fuberlin.wiwiss.d2rq.expr.Negation;
+import de.fuberlin.wiwiss.d2rq.expr.NotNull;
+import de.fuberlin.wiwiss.d2rq.expr.SQLExpression;
+import de.fuberlin.wiwiss.d2rq.expr.Subtract;
+import de.fuberlin.wiwiss.d2rq.expr.UnaryMinus;
+import de.fuberlin.wiwiss.d2rq.nodes.FixedNodeMaker;
+import de.fuberlin.wiwiss.d2rq.nodes.NodeMaker;
+import de.fuberlin.wiwiss.d2rq.nodes.NodeCache;
+import de.fuberlin.wiwiss.d2rq.nodes.TypedNodeMaker;
+import de.fuberlin.wiwiss.d2rq.nodes.TypedNodeMaker.LiteralNodeType;
+import de.fuberlin.wiwiss.d2rq.nodes.TypedNodeMaker.NodeType;
+import de.fuberlin.wiwiss.d2rq.sql.ConnectedDB;
+import de.fuberlin.wiwiss.d2rq.values.BlankNodeID;
+import de.fuberlin.wiwiss.d2rq.values.Column;
+import de.fuberlin.wiwiss.d2rq.values.ConstantValueMaker;
+import de.fuberlin.wiwiss.d2rq.values.Pattern;
+import de.fuberlin.wiwiss.d2rq.values.SQLExpressionValueMaker;
+import de.fuberlin.wiwiss.d2rq.values.Translator;
+import de.fuberlin.wiwiss.d2rq.values.ValueDecorator;
+import de.fuberlin.wiwiss.d2rq.values.ValueDecorator.ContainsConstraint;
+import de.fuberlin.wiwiss.d2rq.values.ValueDecorator.MaxLengthConstraint;
+import de.fuberlin.wiwiss.d2rq.values.ValueDecorator.RegexConstraint;
+import de.fuberlin.wiwiss.d2rq.values.ValueDecorator.ValueConstraint;
+import de.fuberlin.wiwiss.d2rq.values.ValueMaker;
+
+/**
+ * Writes the compiled property bridges of a {@link Mapping} to a
+ * compact binary file, and reads them back, so that a large mapping
+ * doesn't have to be compiled on every startup.
+ *
+ * The file is keyed by a {@link #fingerprint(Model, String)} of the
+ * mapping's RDF statements, and is ignored when the mapping has changed.
+ * Databases, class maps and translation tables are referenced by URI
+ * and resolved against the freshly parsed mapping when reading.
+ * Mappings that use anything the format can't express, such as
+ * class maps or databases that are blank nodes, cause a
+ * {@link NotSerializableException} when writing.
+ */
+public class MappingSnapshot {
+	private final static String FILE_HEADER = "D2RQ mapping snapshot";
+	private final static int FILE_VERSION = 3;
+
+	// Limits recursion when describing nested blank nodes
+	private final static int MAX_BLANK_NODE_DEPTH = 8;
+
+	private final static byte NULL = 0;
+	private final static byte REFERENCE = 1;
+
+	private final static byte RELATION_EMPTY = 10;
+	private final static byte RELATION_TRUE = 11;
+	private final static byte RELATION_IMPL = 12;
+
+	private final static byte EXPR_TRUE = 20;
+	private final static byte EXPR_FALSE = 21;
+	private final static byte EXPR_ATTRIBUTE = 22;
+	private final static byte EXPR_CONSTANT = 23;
+	private final static byte EXPR_CONJUNCTION = 24;
+	private final static byte EXPR_DISJUNCTION = 25;
+	private final static byte EXPR_EQUALITY = 26;
+	private final static byte EXPR_NEGATION = 27;
+	private final static byte EXPR_NOT_NULL = 28;
+	private final static byte EXPR_SQL = 29;
+	private final static byte EXPR_ADD = 30;
+	private final static byte EXPR_SUBTRACT = 31;
+	private final static byte EXPR_MULTIPLY = 32;
+	private final static byte EXPR_DIVIDE = 33;
+	private final static byte EXPR_GREATER_THAN = 34;
+	private final static byte EXPR_GREATER_THAN_OR_EQUAL = 35;
+	private final static byte EXPR_LESS_THAN = 36;
+	private final static byte EXPR_LESS_THAN_OR_EQUAL = 37;
+	private final static byte EXPR_CONCATENATION = 38;
+	private final static byte EXPR_BOOLEAN_TO_INTEGER = 39;
+	private final static byte EXPR_UNARY_MINUS = 40;
+
+	private final static byte PROJECTION_ATTRIBUTE = 50;
+	private final static byte PROJECTION_EXPRESSION = 51;
+
+	private final static byte NODE_MAKER_EMPTY = 60;
+	private final static byte NODE_MAKER_FIXED = 61;
+	private final static byte NODE_MAKER_TYPED = 62;
+
+	private final static byte NODE_URI = 70;
+	private final static byte NODE_BLANK = 71;
+	private final static byte NODE_LITERAL = 72;
+
+	private final static byte NODE_TYPE_URI = 80;
+	private final static byte NODE_TYPE_BLANK = 81;
+	private final static byte NODE_TYPE_PLAIN_LITERAL = 82;
+	private final static byte NODE_TYPE_XSD_DATE = 83;
+	private final static byte NODE_TYPE_XSD_TIME = 84;
+	private final static byte NODE_TYPE_XSD_DATETIME = 85;
+	private final static byte NODE_TYPE_XSD_BOOLEAN = 86;
+	private final static byte NODE_TYPE_LANGUAGE_LITERAL = 87;
+	private final static byte NODE_TYPE_TYPED_LITERAL = 88;
+
+	private final static byte VALUES_NULL = 90;
+	private final static byte VALUES_COLUMN = 91;
+	private final static byte VALUES_PATTERN = 92;
+	private final static byte VALUES_BLANK_NODE_ID = 93;
+	private final static byte VALUES_CONSTANT = 94;
+	private final static byte VALUES_SQL_EXPRESSION = 95;
+	private final static byte VALUES_DECORATOR = 96;
+
+	private final static byte CONSTRAINT_MAX_LENGTH = 100;
+	private final static byte CONSTRAINT_CONTAINS = 101;
+	private final static byte CONSTRAINT_REGEX = 102;
+
+	private final static byte TRANSLATOR_IDENTITY = 110;
+	private final static byte TRANSLATOR_TABLE = 111;
+
+	/**
+	 * Computes a fingerprint of a mapping's RDF statements. Blank nodes
+	 * are described by their properties, so the fingerprint doesn't
+	 * depend on blank node labels assigned by the parser.
+	 * @param mapModel The RDF statements of the mapping file
+	 * @param baseURI The base URI used for parsing the mapping
+	 * @return A hex-encoded SHA-1 hash
+	 */
+	public static String fingerprint(Model mapModel, String baseURI) {
+		List<String> lines = new ArrayList<String>();
+		StmtIterator it = mapModel.listStatements();
+		while (it.hasNext()) {
+			Statement stmt = it.nextStatement();
+			lines.add(describe(stmt.getSubject(), 0) + " " +
+					FmtUtils.stringForNode(stmt.getPredicate().asNode()) + " " +
+					describe(stmt.getObject(), 0));
+		}
+		Collections.sort(lines);
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			digest.update((FILE_VERSION + "\n" + baseURI + "\n").getBytes("UTF-8"));
+			for (String line: lines) {
+				digest.update(line.getBytes("UTF-8"));
+				digest.update((byte) '\n');
+			}
+			StringBuffer result = new StringBuffer();
+			for (byte b: digest.digest()) {
+				result.append(Integer.toHexString((b & 0xFF) | 0x100).substring(1));
+			}
+			return result.toString();
+		} catch (NoSuchAlgorithmException ex) {
+			throw new RuntimeException(ex);
+		} catch (UnsupportedEncodingException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	private static String describe(RDFNode node, int depth) {
+		if (!node.isAnon()) {
+			return FmtUtils.stringForNode(node.asNode());
+		}
+		if (depth >= MAX_BLANK_NODE_DEPTH) {
+			return "[]";
+		}
+		List<String> properties = new ArrayList<String>();
+		StmtIterator it = ((Resource) node).listProperties();
+		while (it.hasNext()) {
+			Statement stmt = it.nextStatement();
+			properties.add(FmtUtils.stringForNode(stmt.getPredicate().asNode()) + " " +
+					describe(stmt.getObject(), depth + 1));
+		}
+		Collections.sort(properties);
+		StringBuffer result = new StringBuffer("[");
+		for (String property: properties) {
+			result.append(property);
+			result.append(";");
+		}
+		result.append("]");
+		return result.toString();
+	}
+
+	private final Mapping mapping;
+	private final Map<Relation,Integer> writtenRelations = new IdentityHashMap<Relation,Integer>();
+	private final List<Relation> readRelations = new ArrayList<Relation>();
+
+	/**
+	 * @param mapping The parsed mapping whose compiled property
+	 * 		bridges are written or read
+	 */
+	public MappingSnapshot(Mapping mapping) {
+		this.mapping = mapping;
+	}
+
+	/**
+	 * Compiles the mapping's property bridges, if necessary, and
+	 * writes them to a file. The file is replaced atomically
+	 * where the platform allows.
+	 * @param fingerprint The mapping's {@link #fingerprint(Model, String)}
+	 * @throws NotSerializableException if the compiled mapping contains
+	 * 		something that can't be written to a snapshot
+	 */
+	public void write(File file, String fingerprint) throws IOException {
+		writtenRelations.clear();
+		File temp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(temp)));
+		try {
+			out.writeUTF(FILE_HEADER);
+			out.writeInt(FILE_VERSION);
+			out.writeUTF(fingerprint);
+			out.writeInt(mapping.classMapResources().size());
+			for (Resource classMapResource: mapping.classMapResources()) {
+				writeURI(out, classMapResource);
+				Collection<TripleRelation> relations =
+					mapping.classMap(classMapResource).compiledPropertyBridges();
+				out.writeInt(relations.size());
+				for (TripleRelation relation: relations) {
+					writeRelation(out, relation.baseRelation());
+					writeNodeMaker(out, relation.nodeMaker(TripleRelation.SUBJECT));
+					writeNodeMaker(out, relation.nodeMaker(TripleRelation.PREDICATE));
+					writeNodeMaker(out, relation.nodeMaker(TripleRelation.OBJECT));
+				}
+			}
+		} catch (IOException ex) {
+			out.close();
+			temp.delete();
+			throw ex;
+		}
+		out.close();
+		if (!temp.renameTo(file)) {
+			// Windows can't rename over an existing file
+			file.delete();
+			if (!temp.renameTo(file)) {
+				throw new IOException("Could not rename " + temp + " to " + file);
+			}
+		}
+	}
+
+	/**
+	 * Reads compiled property bridges written by {@link #write(File, String)}.
+	 * @param fingerprint The mapping's current {@link #fingerprint(Model, String)}
+	 * @return A map from class map resources to their compiled property
+	 * 		bridges, or <code>null</code> if the file doesn't exist or
+	 * 		was written for a different mapping
+	 */
+	public Map<Resource,Collection<TripleRelation>> read(File file, String fingerprint) throws IOException {
+		if (!file.exists()) return null;
+		readRelations.clear();
+		DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (!FILE_HEADER.equals(in.readUTF()) || in.readInt() != FILE_VERSION) {
+				return null;
+			}
+			if (!fingerprint.equals(in.readUTF())) {
+				return null;
+			}
+			Map<Resource,Collection<TripleRelation>> result =
+				new HashMap<Resource,Collection<TripleRelation>>();
+			int classMapCount = in.readInt();
+			for (int i = 0; i < classMapCount; i++) {
+				Resource classMapResource = ResourceFactory.createResource(in.readUTF());
+				if (mapping.classMap(classMapResource) == null) {
+					throw new IOException("Unknown class map: " + classMapResource);
+				}
+				int relationCount = in.readInt();
+				Collection<TripleRelation> relations = new ArrayList<TripleRelation>(relationCount);
+				for (int j = 0; j < relationCount; j++) {
+					relations.add(new TripleRelation(readRelation(in),
+							readNodeMaker(in), readNodeMaker(in), readNodeMaker(in)));
+				}
+				result.put(classMapResource, relations);
+			}
+			return result;
+		} finally {
+			in.close();
+		}
+	}
+
+	private void writeRelation(DataOutputStream out, Relation relation) throws IOException {
+		if (relation == Relation.EMPTY) {
+			out.writeByte(RELATION_EMPTY);
+			return;
+		}
+		if (relation == Relation.TRUE) {
+			out.writeByte(RELATION_TRUE);
+			return;
+		}
+		if (relation.getClass() != RelationImpl.class) {
+			throw new NotSerializableException(relation.getClass().getName());
+		}
+		Integer index = writtenRelations.get(relation);
+		if (index != null) {
+			out.writeByte(REFERENCE);
+			out.writeInt(index.intValue());
+			return;
+		}
+		writtenRelations.put(relation, writtenRelations.size());
+		out.writeByte(RELATION_IMPL);
+		writeDatabase(out, relation.database());
+		out.writeInt(relation.aliases().aliases().size());
+		for (Alias alias: relation.aliases().aliases()) {
+			writeRelationName(out, alias.original());
+			writeRelationName(out, alias.alias());
+		}
+		writeExpression(out, relation.condition());
+		writeExpression(out, relation.softCondition());
+		out.writeInt(relation.joinConditions().size());
+		for (Join join: relation.joinConditions()) {
+			writeAttributes(out, join.attributes1());
+			writeAttributes(out, join.attributes2());
+			out.writeInt(join.joinDirection());
+		}
+		out.writeInt(relation.projections().size());
+		for (ProjectionSpec projection: relation.projections()) {
+			writeProjection(out, projection);
+		}
+		out.writeBoolean(relation.isUnique());
+		out.writeInt(relation.orderSpecs().size());
+		for (OrderSpec orderSpec: relation.orderSpecs()) {
+			writeExpression(out, orderSpec.expression());
+			out.writeBoolean(orderSpec.isAscending());
+		}
+		out.writeInt(relation.limit());
+		out.writeInt(relation.limitInverse());
+	}
+
+	private Relation readRelation(DataInputStream in) throws IOException {
+		byte tag = in.readByte();
+		switch (tag) {
+		case RELATION_EMPTY: return Relation.EMPTY;
+		case RELATION_TRUE: return Relation.TRUE;
+		case REFERENCE: return readRelations.get(in.readInt());
+		case RELATION_IMPL: break;
+		default: throw new IOException("Unexpected relation tag " + tag);
+		}
+		ConnectedDB database = readDatabase(in);
+		int aliasCount = in.readInt();
+		Collection<Alias> aliases = new ArrayList<Alias>(aliasCount);
+		for (int i = 0; i < aliasCount; i++) {
+			aliases.add(new Alias(readRelationName(in), readRelationName(in)));
+		}
+		Expression condition = readExpression(in);
+		Expression softCondition = readExpression(in);
+		int joinCount = in.readInt();
+		Set<Join> joins = new HashSet<Join>();
+		for (int i = 0; i < joinCount; i++) {
+			joins.add(new Join(readAttributes(in), readAttributes(in), in.readInt()));
+		}
+		int projectionCount = in.readInt();
+		Set<ProjectionSpec> projections = new HashSet<ProjectionSpec>();
+		for (int i = 0; i < projectionCount; i++) {
+			projections.add(readProjection(in));
+		}
+		boolean isUnique = in.readBoolean();
+		int orderSpecCount = in.readInt();
+		List<OrderSpec> orderSpecs = new ArrayList<OrderSpec>(orderSpecCount);
+		for (int i = 0; i < orderSpecCount; i++) {
+			orderSpecs.add(new OrderSpec(readExpression(in), in.readBoolean()));
+		}
+		Relation result = new RelationImpl(database, new AliasMap(aliases),
+				condition, softCondition, joins, projections, isUnique,
+				orderSpecs, in.readInt(), in.readInt());
+		readRelations.add(result);
+		return result;
+	}
+
+	private void writeDatabase(DataOutputStream out, ConnectedDB connectedDB) throws IOException {
+		if (connectedDB == null) {
+			out.writeByte(NULL);
+			return;
+		}
+		for (Database database: mapping.databases()) {
+			if (database.connectedDB() == connectedDB) {
+				out.writeByte(REFERENCE);
+				writeURI(out, database.resource());
+				return;
+			}
+		}
+		throw new NotSerializableException("Database not in mapping: " + connectedDB);
+	}
+
+	private ConnectedDB readDatabase(DataInputStream in) throws IOException {
+		if (in.readByte() == NULL) return null;
+		String uri = in.readUTF();
+		Database database = mapping.database(ResourceFactory.createResource(uri));
+		if (database == null) {
+			throw new IOException("Unknown database: " + uri);
+		}
+		return database.connectedDB();
+	}
+
+	private void writeProjection(DataOutputStream out, ProjectionSpec projection) throws IOException {
+		if (projection instanceof Attribute) {
+			out.writeByte(PROJECTION_ATTRIBUTE);
+			writeAttribute(out, (Attribute) projection);
+		} else if (projection.getClass() == ExpressionProjectionSpec.class) {
+			out.writeByte(PROJECTION_EXPRESSION);
+			writeExpression(out, projection.toExpression());
+		} else {
+			throw new NotSerializableException(projection.getClass().getName());
+		}
+	}
+
+	private ProjectionSpec readProjection(DataInputStream in) throws IOException {
+		byte tag = in.readByte();
+		switch (tag) {
+		case PROJECTION_ATTRIBUTE: return readAttribute(in);
+		case PROJECTION_EXPRESSION: return new ExpressionProjectionSpec(readExpression(in));
+		default: throw new IOException("Unexpected projection tag " + tag);
+		}
+	}
+
+	private void writeExpression(DataOutputStream out, Expression expression) throws IOException {
+		if (expression == Expression.TRUE) {
+			out.writeByte(EXPR_TRUE);
+		} else if (expression == Expression.FALSE) {
+			out.writeByte(EXPR_FALSE);
+		} else if (expression.getClass() == AttributeExpr.class) {
+			out.writeByte(EXPR_ATTRIBUTE);
+			writeAttribute(out, ((AttributeExpr) expression).attribute());
+		} else if (expression.getClass() == Constant.class) {
+			out.writeByte(EXPR_CONSTANT);
+			writeString(out, ((Constant) expression).value());
+			Attribute attribute = ((Constant) expression).attributeForTrackingType();
+			out.writeBoolean(attribute != null);
+			if (attribute != null) {
+				writeAttribute(out, attribute);
+			}
+		} else if (expression.getClass() == Conjunction.class) {
+			out.writeByte(EXPR_CONJUNCTION);
+			writeExpressions(out, ((Conjunction) expression).expressions());
+		} else if (expression.getClass() == Disjunction.class) {
+			out.writeByte(EXPR_DISJUNCTION);
+			writeExpressions(out, ((Disjunction) expression).expressions());
+		} else if (expression.getClass() == Equality.class) {
+			out.writeByte(EXPR_EQUALITY);
+			writeExpression(out, ((Equality) expression).expr1());
+			writeExpression(out, ((Equality) expression).expr2());
+		} else if (expression.getClass() == Negation.class) {
+			out.writeByte(EXPR_NEGATION);
+			writeExpression(out, ((Negation) expression).getBase());
+		} else if (expression.getClass() == NotNull.class) {
+			out.writeByte(EXPR_NOT_NULL);
+			writeExpression(out, ((NotNull) expression).getBase());
+		} else if (expression.getClass() == SQLExpression.class) {
+			out.writeByte(EXPR_SQL);
+			out.writeUTF(((SQLExpression) expression).getExpression());
+		} else if (expression.getClass() == Concatenation.class) {
+			out.writeByte(EXPR_CONCATENATION);
+			writeExpressions(out, ((Concatenation) expression).parts());
+		} else if (expression.getClass() == BooleanToIntegerCaseExpression.class) {
+			out.writeByte(EXPR_BOOLEAN_TO_INTEGER);
+			writeExpression(out, ((BooleanToIntegerCaseExpression) expression).getBase());
+		} else if (expression.getClass() == UnaryMinus.class) {
+			out.writeByte(EXPR_UNARY_MINUS);
+			writeExpression(out, ((UnaryMinus) expression).getBase());
+		} else if (expression instanceof BinaryOperator) {
+			out.writeByte(binaryOperatorTag((BinaryOperator) expression));
+			writeExpression(out, ((BinaryOperator) expression).expr1());
+			writeExpression(out, ((BinaryOperator) expression).expr2());
+		} else {
+			throw new NotSerializableException(expression.getClass().getName());
+		}
+	}
+
+	private byte binaryOperatorTag(BinaryOperator operator) throws IOException {
+		Class<?> c = operator.getClass();
+		if (c == Add.class) return EXPR_ADD;
+		if (c == Subtract.class) return EXPR_SUBTRACT;
+		if (c == Multiply.class) return EXPR_MULTIPLY;
+		if (c == Divide.class) return EXPR_DIVIDE;
+		if (c == GreaterThan.class) return EXPR_GREATER_THAN;
+		if (c == GreaterThanOrEqual.class) return EXPR_GREATER_THAN_OR_EQUAL;
+		if (c == LessThan.class) return EXPR_LESS_THAN;
+		if (c == LessThanOrEqual.class) return EXPR_LESS_THAN_OR_EQUAL;
+		throw new NotSerializableException(c.getName());
+	}
+
+	private Expression readExpression(DataInputStream in) throws IOException {
+		byte tag = in.readByte();
+		switch (tag) {
+		case EXPR_TRUE: return Expression.TRUE;
+		case EXPR_FALSE: return Expression.FALSE;
+		case EXPR_ATTRIBUTE: return new AttributeExpr(readAttribute(in));
+		case EXPR_CONSTANT:
+			String value = readString(in);
+			return new Constant(value, in.readBoolean() ? readAttribute(in) : null);
+		case EXPR_CONJUNCTION: return Conjunction.create(readExpressions(in));
+		case EXPR_DISJUNCTION: return Disjunction.create(readExpressions(in));
+		case EXPR_EQUALITY: return Equality.create(readExpression(in), readExpression(in));
+		case EXPR_NEGATION: return new Negation(readExpression(in));
+		case EXPR_NOT_NULL: return NotNull.create(readExpression(in));
+		case EXPR_SQL: return SQLExpression.create(in.readUTF());
+		case EXPR_CONCATENATION: return Concatenation.create(readExpressions(in));
+		case EXPR_BOOLEAN_TO_INTEGER: return new BooleanToIntegerCaseExpression(readExpression(in));
+		case EXPR_UNARY_MINUS: return new UnaryMinus(readExpression(in));
+		case EXPR_ADD: return new Add(readExpression(in), readExpression(in));
+		case EXPR_SUBTRACT: return new Subtract(readExpression(in), readExpression(in));
+		case EXPR_MULTIPLY: return new Multiply(readExpression(in), readExpression(in));
+		case EXPR_DIVIDE: return new Divide(readExpression(in), readExpression(in));
+		case EXPR_GREATER_THAN: return new GreaterThan(readExpression(in), readExpression(in));
+		case EXPR_GREATER_THAN_OR_EQUAL: return new GreaterThanOrEqual(readExpression(in), readExpression(in));
+		case EXPR_LESS_THAN: return new LessThan(readExpression(in), readExpression(in));
+		case EXPR_LESS_THAN_OR_EQUAL: return new LessThanOrEqual(readExpression(in), readExpression(in));
+		default: throw new IOException("Unexpected expression tag " + tag);
+		}
+	}
+
+	private void writeExpressions(DataOutputStream out, Collection<Expression> expressions) throws IOException {
+		out.writeInt(expressions.size());
+		for (Expression expression: expressions) {
+			writeExpression(out, expression);
+		}
+	}
+
+	private List<Expression> readExpressions(DataInputStream in) throws IOException {
+		int count = in.readInt();
+		List<Expression> result = new ArrayList<Expression>(count);
+		for (int i = 0; i < count; i++) {
+			result.add(readExpression(in));
+		}
+		return result;
+	}
+
+	private void writeNodeMaker(DataOutputStream out, NodeMaker nodeMaker) throws IOException {
+		if (nodeMaker == NodeMaker.EMPTY) {
+			out.writeByte(NODE_MAKER_EMPTY);
+		} else if (nodeMaker.getClass() == FixedNodeMaker.class) {
+			out.writeByte(NODE_MAKER_FIXED);
+			writeNode(out, ((FixedNodeMaker) nodeMaker).node());
+			out.writeBoolean(nodeMaker.isUnique());
+		} else if (nodeMaker.getClass() == TypedNodeMaker.class) {
+			out.writeByte(NODE_MAKER_TYPED);
+			writeNodeType(out, ((TypedNodeMaker) nodeMaker).nodeType());
+			writeValueMaker(out, ((TypedNodeMaker) nodeMaker).valueMaker());
+			out.writeBoolean(nodeMaker.isUnique());
+			NodeCache cache = ((TypedNodeMaker) nodeMaker).nodeCache();
+			out.writeInt(cache == null ? 0 : cache.maxSize());
+		} else {
+			throw new NotSerializableException(nodeMaker.getClass().getName());
+		}
+	}
+
+	private NodeMaker readNodeMaker(DataInputStream in) throws IOException {
+		byte tag = in.readByte();
+		switch (tag) {
+		case NODE_MAKER_EMPTY: return NodeMaker.EMPTY;
+		case NODE_MAKER_FIXED: return new FixedNodeMaker(readNode(in), in.readBoolean());
+		case NODE_MAKER_TYPED:
+			NodeType type = readNodeType(in);
+			ValueMaker values = readValueMaker(in);
+			boolean isUnique = in.readBoolean();
+			int cacheSize = in.readInt();
+			return new TypedNodeMaker(type, values, isUnique,
+					cacheSize == 0 ? null : new NodeCache(cacheSize));
+		default: throw new IOException("Unexpected node maker tag " + tag);
+		}
+	}
+
+	private void writeNode(DataOutputStream out, Node node) throws IOException {
+		if (node.isURI()) {
+			out.writeByte(NODE_URI);
+			out.writeUTF(node.getURI());
+		} else if (node.isBlank()) {
+			out.writeByte(NODE_BLANK);
+			out.writeUTF(node.getBlankNodeLabel());
+		} else if (node.isLiteral()) {
+			out.writeByte(NODE_LITERAL);
+			out.writeUTF(node.getLiteralLexicalForm());
+			out.writeUTF(node.getLiteralLanguage());
+			writeString(out, node.getLiteralDatatypeURI());
+		} else {
+			throw new NotSerializableException(node.toString());
+		}
+	}
+
+	private Node readNode(DataInputStream in) throws IOException {
+		byte tag = in.readByte();
+		switch (tag) {
+		case NODE_URI: return Node.createURI(in.readUTF());
+		case NODE_BLANK: return Node.createAnon(new AnonId(in.readUTF()));
+		case NODE_LITERAL:
+			String lexicalForm = in.readUTF();
+			String language = in.readUTF();
+			String datatypeURI = readString(in);
+			return Node.createLiteral(lexicalForm, language, datatypeURI == null ? null :
+					TypeMapper.getInstance().getSafeTypeByName(datatypeURI));
+		default: throw new IOException("Unexpected node tag " + tag);
+		}
+	}
+
+	private void writeNodeType(DataOutputStream out, NodeType type) throws IOException {
+		if (type == TypedNodeMaker.URI) {
+			out.writeByte(NODE_TYPE_URI);
+		} else if (type == TypedNodeMaker.BLANK) {
+			out.writeByte(NODE_TYPE_BLANK);
+		} else if (type == TypedNodeMaker.PLAIN_LITERAL) {
+			out.writeByte(NODE_TYPE_PLAIN_LITERAL);
+		} else if (type == TypedNodeMaker.XSD_DATE) {
+			out.writeByte(NODE_TYPE_XSD_DATE);
+		} else if (type == TypedNodeMaker.XSD_TIME) {
+			out.writeByte(NODE_TYPE_XSD_TIME);
+		} else if (type == TypedNodeMaker.XSD_DATETIME) {
+			out.writeByte(NODE_TYPE_XSD_DATETIME);
+		} else if (type == TypedNodeMaker.XSD_BOOLEAN) {
+			out.writeByte(NODE_TYPE_XSD_BOOLEAN);
+		} else if (type.getClass() == LiteralNodeType.class
+				&& ((LiteralNodeType) type).datatype() == null) {
+			out.writeByte(NODE_TYPE_LANGUAGE_LITERAL);
+			out.writeUTF(((LiteralNodeType) type).language());
+		} else if (type.getClass() == LiteralNodeType.class) {
+			out.writeByte(NODE_TYPE_TYPED_LITERAL);
+			out.writeUTF(((LiteralNodeType) type).datatype().getURI());
+		} else {
+			throw new NotSerializableException(type.getClass().getName());
+		}
+	}
+
+	private NodeType readNodeType(DataInputStream in) throws IOException {
+		byte tag = in.readByte();
+		switch (tag) {
+		case NODE_TYPE_URI: return TypedNodeMaker.URI;
+		case NODE_TYPE_BLANK: return TypedNodeMaker.BLANK;
+		case NODE_TYPE_PLAIN_LITERAL: return TypedNodeMaker.PLAIN_LITERAL;
+		case NODE_TYPE_XSD_DATE: return TypedNodeMaker.XSD_DATE;
+		case NODE_TYPE_XSD_TIME: return TypedNodeMaker.XSD_TIME;
+		case NODE_TYPE_XSD_DATETIME: return TypedNodeMaker.XSD_DATETIME;
+		case NODE_TYPE_XSD_BOOLEAN: return TypedNodeMaker.XSD_BOOLEAN;
+		case NODE_TYPE_LANGUAGE_LITERAL: return TypedNodeMaker.languageLiteral(in.readUTF());
+		case NODE_TYPE_TYPED_LITERAL:
+			RDFDatatype datatype = TypeMapper.getInstance().getSafeTypeByName(in.readUTF());
+			return TypedNodeMaker.typedLiteral(datatype);
+		default: throw new IOException("Unexpected node type tag " + tag);
+		}
+	}
+
+	private void writeValueMaker(DataOutputStream out, ValueMaker values) throws IOException {
+		if (values == ValueMaker.NULL) {
+			out.writeByte(VALUES_NULL);
+		} else if (values.getClass() == Column.class) {
+			out.writeByte(VALUES_COLUMN);
+			writeAttribute(out, ((Column) values).attribute());
+		} else if (values.getClass() == Pattern.class) {
+			out.writeByte(VALUES_PATTERN);
+			out.writeUTF(((Pattern) values).pattern());
+		} else if (values.getClass() == BlankNodeID.class) {
+			out.writeByte(VALUES_BLANK_NODE_ID);
+			out.writeUTF(((BlankNodeID) values).classMapID());
+			writeAttributes(out, ((BlankNodeID) values).attributes());
+		} else if (values.getClass() == ConstantValueMaker.class) {
+			out.writeByte(VALUES_CONSTANT);
+			writeString(out, ((ConstantValueMaker) values).value());
+		} else if (values.getClass() == SQLExpressionValueMaker.class) {
+			out.writeByte(VALUES_SQL_EXPRESSION);
+			writeExpression(out, ((SQLExpressionValueMaker) values).expression());
+		} else if (values.getClass() == ValueDecorator.class) {
+			ValueDecorator decorator = (ValueDecorator) values;
+			out.writeByte(VALUES_DECORATOR);
+			writeValueMaker(out, decorator.base());
+			out.writeInt(decorator.constraints().size());
+			for (ValueConstraint constraint: decorator.constraints()) {
+				writeConstraint(out, constraint);
+			}
+			writeTranslator(out, decorator.translator());
+		} else {
+			throw new NotSerializableException(values.getClass().getName());
+		}
+	}
+
+	private ValueMaker readValueMaker(DataInputStream in) throws IOException {
+		byte tag = in.readByte();
+		switch (tag) {
+		case VALUES_NULL: return ValueMaker.NULL;
+		case VALUES_COLUMN: return new Column(readAttribute(in));
+		case VALUES_PATTERN: return new Pattern(in.readUTF());
+		case VALUES_BLANK_NODE_ID: return new BlankNodeID(in.readUTF(), readAttributes(in));
+		case VALUES_CONSTANT: return new ConstantValueMaker(readString(in));
+		case VALUES_SQL_EXPRESSION: return new SQLExpressionValueMaker(readExpression(in));
+		case VALUES_DECORATOR:
+			ValueMaker base = readValueMaker(in);
+			int constraintCount = in.readInt();
+			List<ValueConstraint> constraints = new ArrayList<ValueConstraint>(constraintCount);
+			for (int i = 0; i < constraintCount; i++) {
+				constraints.add(readConstraint(in));
+			}
+			return new ValueDecorator(base, constraints, readTranslator(in));
+		default: throw new IOException("Unexpected value maker tag " + tag);
+		}
+	}
+
+	private void writeConstraint(DataOutputStream out, ValueConstraint constraint) throws IOException {
+		if (constraint instanceof MaxLengthConstraint) {
+			out.writeByte(CONSTRAINT_MAX_LENGTH);
+			out.writeInt(((MaxLengthConstraint) constraint).maxLength());
+		} else if (constraint instanceof ContainsConstraint) {
+			out.writeByte(CONSTRAINT_CONTAINS);
+			out.writeUTF(((ContainsConstraint) constraint).containsSubstring());
+		} else if (constraint instanceof RegexConstraint) {
+			out.writeByte(CONSTRAINT_REGEX);
+			out.writeUTF(((RegexConstraint) constraint).regex());
+		} else {
+			throw new NotSerializableException(constraint.getClass().getName());
+		}
+	}
+
+	private ValueConstraint readConstraint(DataInputStream in) throws IOException {
+		byte tag = in.readByte();
+		switch (tag) {
+		case CONSTRAINT_MAX_LENGTH: return ValueDecorator.maxLengthConstraint(in.readInt());
+		case CONSTRAINT_CONTAINS: return ValueDecorator.containsConstraint(in.readUTF());
+		case CONSTRAINT_REGEX: return ValueDecorator.regexConstraint(in.readUTF());
+		default: throw new IOException("Unexpected constraint tag " + tag);
+		}
+	}
+
+	private void writeTranslator(DataOutputStream out, Translator translator) throws IOException {
+		if (translator == Translator.IDENTITY) {
+			out.writeByte(TRANSLATOR_IDENTITY);
+			return;
+		}
+		for (Resource tableResource: mapping.translationTableResources()) {
+			if (mapping.translationTable(tableResource).createdTranslator(translator)) {
+				out.writeByte(TRANSLATOR_TABLE);
+				writeURI(out, tableResource);
+				return;
+			}
+		}
+		throw new NotSerializableException(translator.getClass().getName());
+	}
+
+	private Translator readTranslator(DataInputStream in) throws IOException {
+		byte tag = in.readByte();
+		switch (tag) {
+		case TRANSLATOR_IDENTITY: return Translator.IDENTITY;
+		case TRANSLATOR_TABLE:
+			String uri = in.readUTF();
+			TranslationTable table = mapping.translationTable(ResourceFactory.createResource(uri));
+			if (table == null) {
+				throw new IOException("Unknown translation table: " + uri);
+			}
+			return table.translator();
+		default: throw new IOException("Unexpected translator tag " + tag);
+		}
+	}
+
+	private void writeAttributes(DataOutputStream out, List<Attribute> attributes) throws IOException {
+		out.writeInt(attributes.size());
+		for (Attribute attribute: attributes) {
+			writeAttribute(out, attribute);
+		}
+	}
+
+	private List<Attribute> readAttributes(DataInputStream in) throws IOException {
+		int count = in.readInt();
+		List<Attribute> result = new ArrayList<Attribute>(count);
+		for (int i = 0; i < count; i++) {
+			result.add(readAttribute(in));
+		}
+		return result;
+	}
+
+	private void writeAttribute(DataOutputStream out, Attribute attribute) throws IOException {
+		writeRelationName(out, attribute.relationName());
+		out.writeUTF(attribute.attributeName());
+	}
+
+	private Attribute readAttribute(DataInputStream in) throws IOException {
+		return new Attribute(readRelationName(in), in.readUTF());
+	}
+
+	private void writeRelationName(DataOutputStream out, RelationName name) throws IOException {
+		writeString(out, name.schemaName());
+		out.writeUTF(name.tableName());
+		out.writeBoolean(name.caseUnspecified());
+	}
+
+	private RelationName readRelationName(DataInputStream in) throws IOException {
+		String schema = readString(in);
+		String table = in.readUTF();
+		return new RelationName(schema, table, in.readBoolean());
+	}
+
+	private void writeURI(DataOutputStream out, Resource resource) throws IOException {
+		if (!resource.isURIResource()) {
+			throw new NotSerializableException("Not a URI: " + resource);
+		}
+		out.writeUTF(resource.getURI());
+	}
+
+	private void writeString(DataOutputStream out, String s) throws IOException {
+		out.writeBoolean(s != null);
+		if (s != null) {
+			out.writeUTF(s);
+		}
+	}
+
+	private String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+}
@@ -26,6 +26,7 @@ public class PropertyBridge extends ResourceMap {
 	private ClassMap belongsToClassMap = null;
 	private Collection<Resource> properties = new HashSet<Resource>();
 	private Collection<String> dynamicPropertyPatterns = new HashSet<String>();
+	private String fullTextIndex = null;
 	
 	public PropertyBridge(Resource resource) {
 		super(resource, true);
@@ -123,6 +124,20 @@ public class PropertyBridge extends ResourceMap {
 	    this.orderDesc = new Boolean(desc);
 	}
     
+	/**
+	 * @return The text search configuration of the column's full-text index,
+	 * 		or <code>null</code> if the column has no full-text index
+	 */
+	public String getFullTextIndex() {
+		return fullTextIndex;
+	}
+
+	public void setFullTextIndex(String configuration) {
+		assertNotYetDefined(this.fullTextIndex, D2RQ.fullTextIndex, 
+				D2RQException.PROPERTYBRIDGE_DUPLICATE_FULLTEXTINDEX);
+		this.fullTextIndex = configuration;
+	}
+    
     public ClassMap getRefersToClassMap() {
         return refersToClassMap;
     }
@@ -142,6 +157,10 @@ public class PropertyBridge extends ResourceMap {
 		this.properties.add(property);
 	}
 	
+	public boolean hasDynamicProperties() {
+		return !this.dynamicPropertyPatterns.isEmpty();
+	}
+	
 	public void addDynamicProperty(String dynamicPropertyPattern) {
 		this.dynamicPropertyPatterns.add(dynamicPropertyPattern);
 	}
@@ -180,6 +199,10 @@ public class PropertyBridge extends ResourceMap {
 					"or d2rq:sqlExpression at " + this,
 					D2RQException.PROPERTYBRIDGE_NONLITERAL_WITH_LANG);
 		}
+		if (this.fullTextIndex != null && this.column == null) {
+			throw new D2RQException("d2rq:fullTextIndex can only be used with d2rq:column at " + this,
+					D2RQException.PROPERTYBRIDGE_FULLTEXTINDEX_WITHOUT_COLUMN);
+		}
 	}
 
 	protected Relation buildRelation() {
@@ -23,6 +23,7 @@ import de.fuberlin.wiwiss.d2rq.algebra.ProjectionSpec;
 import de.fuberlin.wiwiss.d2rq.algebra.Relation;
 import de.fuberlin.wiwiss.d2rq.expr.SQLExpression;
 import de.fuberlin.wiwiss.d2rq.nodes.FixedNodeMaker;
+import de.fuberlin.wiwiss.d2rq.nodes.NodeCache;
 import de.fuberlin.wiwiss.d2rq.nodes.NodeMaker;
 import de.fuberlin.wiwiss.d2rq.nodes.TypedNodeMaker;
 import de.fuberlin.wiwiss.d2rq.nodes.TypedNodeMaker.NodeType;
@@ -58,6 +59,7 @@ public abstract class ResourceMap extends MapObject {
 	protected Collection<String> aliases = new ArrayList<String>();
 	protected boolean containsDuplicates;
 	protected TranslationTable translateWith = null;
+	protected Integer nodeCacheSize = null;
 
 	// These can be set only on a PropertyBridge
 	protected String column = null;
@@ -72,8 +74,9 @@ public abstract class ResourceMap extends MapObject {
 	protected String order = null;
 	protected Boolean orderDesc = null;
 
-	private NodeMaker cachedNodeMaker;
-	private Relation cachedRelation;
+	// Volatile because class maps are compiled in parallel
+	private volatile NodeMaker cachedNodeMaker;
+	private volatile Relation cachedRelation;
 	
 	Collection<Literal> definitionLabels = new ArrayList<Literal>();
 	Collection<Literal> definitionComments = new ArrayList<Literal>();
@@ -137,6 +140,16 @@ public abstract class ResourceMap extends MapObject {
 		this.translateWith = table;
 	}
 	
+	/**
+	 * @param size Number of generated nodes to cache; 0 disables
+	 * 		the cache. If not set, no cache is used.
+	 */
+	public void setNodeCacheSize(int size) {
+		assertNotYetDefined(this.nodeCacheSize, D2RQ.nodeCacheSize, 
+				D2RQException.RESOURCEMAP_DUPLICATE_NODECACHESIZE);
+		this.nodeCacheSize = size;
+	}
+	
 	public void addJoin(String join) {
 		this.joins.add(join);
 	}
@@ -153,7 +166,7 @@ public abstract class ResourceMap extends MapObject {
 		this.containsDuplicates = b;
 	}
 
-	private Collection<Alias> aliases() {
+	Collection<Alias> aliases() {
 		Set<Alias> parsedAliases = new HashSet<Alias>();
 		for (String alias: aliases) {
 			parsedAliases.add(SQL.parseAlias(alias));
@@ -203,7 +216,13 @@ public abstract class ResourceMap extends MapObject {
 		if (this.refersToClassMap == null) {
 			return buildNodeMaker(wrapValueSource(buildValueSourceBase()), !this.containsDuplicates);
 		}
-		return this.refersToClassMap.buildAliasedNodeMaker(new AliasMap(aliases()), !this.containsDuplicates);
+		NodeMaker result = this.refersToClassMap.buildAliasedNodeMaker(new AliasMap(aliases()), !this.containsDuplicates);
+		if (this.nodeCacheSize != null && result instanceof TypedNodeMaker) {
+			TypedNodeMaker referred = (TypedNodeMaker) result;
+			return new TypedNodeMaker(referred.nodeType(), referred.valueMaker(), 
+					referred.isUnique(), buildNodeCache());
+		}
+		return result;
 	}
 
 	public NodeMaker buildAliasedNodeMaker(AliasMap aliases, boolean unique) {
@@ -264,7 +283,14 @@ public abstract class ResourceMap extends MapObject {
 	}
 	
 	private NodeMaker buildNodeMaker(ValueMaker values, boolean isUnique) {
-		return new TypedNodeMaker(nodeType(), values, isUnique);
+		return new TypedNodeMaker(nodeType(), values, isUnique, buildNodeCache());
+	}
+	
+	private NodeCache buildNodeCache() {
+		if (this.nodeCacheSize == null || this.nodeCacheSize.intValue() <= 0) {
+			return null;
+		}
+		return new NodeCache(this.nodeCacheSize.intValue());
 	}
 	
 	private NodeType nodeType() {
@@ -23,6 +23,7 @@ public class TranslationTable extends MapObject {
 	private Collection<Translation> translations = new ArrayList<Translation>();
 	private String javaClass = null;
 	private String href = null;
+	private final Collection<Translator> createdTranslators = new ArrayList<Translator>();
 
 	public TranslationTable(Resource resource) {
 		super(resource);
@@ -67,6 +68,27 @@ public class TranslationTable extends MapObject {
 	}
 	
 	public Translator translator() {
+		Translator result = createTranslator();
+		synchronized (this.createdTranslators) {
+			this.createdTranslators.add(result);
+		}
+		return result;
+	}
+	
+	/**
+	 * @return <code>true</code> if the translator was returned by
+	 * 		an earlier call to {@link #translator()} on this table
+	 */
+	public boolean createdTranslator(Translator translator) {
+		synchronized (this.createdTranslators) {
+			for (Translator created: this.createdTranslators) {
+				if (created == translator) return true;
+			}
+			return false;
+		}
+	}
+	
+	private Translator createTranslator() {
 		validate();
 		if (this.javaClass != null) {
 			return instantiateJavaClass();
@@ -0,0 +1,36 @@
+package de.fuberlin.wiwiss.d2rq.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A monotonically increasing count that can be updated from
+ * any thread without locking.
+ */
+public class Counter implements CounterMBean {
+	private final String name;
+	private final AtomicLong count = new AtomicLong();
+	
+	public Counter(String name) {
+		this.name = name;
+	}
+	
+	public String name() {
+		return name;
+	}
+	
+	public void increment() {
+		count.incrementAndGet();
+	}
+	
+	public void add(long n) {
+		count.addAndGet(n);
+	}
+	
+	public long getCount() {
+		return count.get();
+	}
+	
+	public String toString() {
+		return name + " " + getCount();
+	}
+}
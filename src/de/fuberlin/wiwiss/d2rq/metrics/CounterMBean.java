@@ -0,0 +1,9 @@
+package de.fuberlin.wiwiss.d2rq.metrics;
+
+/**
+ * JMX management interface of a {@link Counter}.
+ */
+public interface CounterMBean {
+	
+	long getCount();
+}
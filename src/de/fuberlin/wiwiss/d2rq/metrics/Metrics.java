@@ -0,0 +1,119 @@
+package de.fuberlin.wiwiss.d2rq.metrics;
+
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * The global registry of D2RQ's performance counters and timers.
+ * All metrics can be updated from any thread. They are registered
+ * as JMX MBeans under the <code>de.fuberlin.wiwiss.d2rq</code> domain
+ * when this class is first used.
+ */
+public class Metrics {
+	private final static Log log = LogFactory.getLog(Metrics.class);
+
+	public final static String JMX_DOMAIN = "de.fuberlin.wiwiss.d2rq";
+
+	private final static List<Counter> counters = new ArrayList<Counter>();
+	private final static List<Timer> timers = new ArrayList<Timer>();
+
+	/** Number of SQL queries executed */
+	public final static Counter SQL_QUERIES = counter("sql_queries");
+	/** Number of rows fetched from SQL result sets */
+	public final static Counter SQL_ROWS = counter("sql_rows");
+	/** Number of fields fetched from SQL result sets */
+	public final static Counter SQL_FIELDS = counter("sql_fields");
+	/** Time from starting a SQL query until the first row, or the end of an empty result */
+	public final static Timer SQL_FIRST_ROW_TIME = timer("sql_first_row_time");
+	/** Time from starting a SQL query until its result set is exhausted or closed */
+	public final static Timer SQL_TOTAL_TIME = timer("sql_total_time");
+	/** Time spent turning a result row into SPARQL bindings */
+	public final static Timer BINDING_TIME = timer("binding_time");
+	/** Number of find(s, p, o) queries */
+	public final static Counter FIND_QUERIES = counter("find_queries");
+	/** Number of SPARQL queries */
+	public final static Counter SPARQL_QUERIES = counter("sparql_queries");
+	/** Number of SPARQL queries whose translation was found in a plan cache */
+	public final static Counter PLAN_CACHE_HITS = counter("plan_cache_hits");
+	/** Number of SPARQL queries that had to be translated despite a plan cache */
+	public final static Counter PLAN_CACHE_MISSES = counter("plan_cache_misses");
+
+	static {
+		registerMBeans();
+	}
+
+	private static Counter counter(String name) {
+		Counter result = new Counter(name);
+		counters.add(result);
+		return result;
+	}
+
+	private static Timer timer(String name) {
+		Timer result = new Timer(name);
+		timers.add(result);
+		return result;
+	}
+
+	public static List<Counter> counters() {
+		return Collections.unmodifiableList(counters);
+	}
+
+	public static List<Timer> timers() {
+		return Collections.unmodifiableList(timers);
+	}
+
+	/**
+	 * Writes all metrics in a plain text format, one
+	 * <code>name value</code> pair per line. Times are in milliseconds.
+	 */
+	public static void write(PrintWriter out) {
+		for (Counter counter: counters) {
+			out.println("d2rq_" + counter.name() + " " + counter.getCount());
+		}
+		for (Timer timer: timers) {
+			String prefix = "d2rq_" + timer.name();
+			out.println(prefix + "_count " + timer.getCount());
+			out.println(prefix + "_total_ms " + timer.getTotalMillis());
+			out.println(prefix + "_mean_ms " + timer.getMeanMillis());
+			out.println(prefix + "_max_ms " + timer.getMaxMillis());
+			out.println(prefix + "_p50_ms " + timer.get50thPercentileMillis());
+			out.println(prefix + "_p95_ms " + timer.get95thPercentileMillis());
+			out.println(prefix + "_p99_ms " + timer.get99thPercentileMillis());
+		}
+		out.flush();
+	}
+
+	private static void registerMBeans() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			for (Counter counter: counters) {
+				register(server, counter, "Counter", counter.name());
+			}
+			for (Timer timer: timers) {
+				register(server, timer, "Timer", timer.name());
+			}
+		} catch (Exception ex) {
+			// JMX is optional; metrics are still available through the registry
+			log.warn("Could not register metrics with JMX: " + ex.getMessage());
+		}
+	}
+
+	private static void register(MBeanServer server, Object mbean,
+			String type, String name) throws Exception {
+		ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=" + type + ",name=" + name);
+		// A previous instance of this class, e.g. from a redeployed webapp
+		if (server.isRegistered(objectName)) {
+			server.unregisterMBean(objectName);
+		}
+		server.registerMBean(mbean, objectName);
+	}
+}
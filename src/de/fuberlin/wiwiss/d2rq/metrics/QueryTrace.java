@@ -0,0 +1,121 @@
+package de.fuberlin.wiwiss.d2rq.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Collects the SQL statements run on behalf of one SPARQL query or
+ * find pattern, for reporting by a {@link SlowQueryLog}.
+ * 
+ * A trace is made current on a thread with {@link #enter()} while
+ * the query's iterators are created or advanced. SQL iterators pick up
+ * the current trace when they are created, and report to it from
+ * whatever thread they finish on.
+ */
+public class QueryTrace {
+	private final static ThreadLocal<QueryTrace> current = new ThreadLocal<QueryTrace>();
+	
+	/**
+	 * @return The trace of the query being run on this thread, or <code>null</code>
+	 */
+	public static QueryTrace current() {
+		return current.get();
+	}
+	
+	/**
+	 * Restores the trace that was current before {@link #enter()}.
+	 * @param previous The return value of {@link #enter()}
+	 */
+	public static void exit(QueryTrace previous) {
+		if (previous == null) {
+			current.remove();
+		} else {
+			current.set(previous);
+		}
+	}
+
+	/**
+	 * A SQL statement run as part of the query.
+	 */
+	public static class Statement {
+		private final String sql;
+		private final long totalNanos;
+		private final long firstRowNanos;	// -1 if the first row was never fetched
+		private final long rows;
+		public Statement(String sql, long totalNanos, long firstRowNanos, long rows) {
+			this.sql = sql;
+			this.totalNanos = totalNanos;
+			this.firstRowNanos = firstRowNanos;
+			this.rows = rows;
+		}
+		public String sql() { return sql; }
+		public long totalNanos() { return totalNanos; }
+		public long firstRowNanos() { return firstRowNanos; }
+		public long rows() { return rows; }
+	}
+	
+	private final SlowQueryLog log;
+	private final Object query;
+	private final long startNanos = System.nanoTime();
+	private final List<Statement> statements = 
+		Collections.synchronizedList(new ArrayList<Statement>());
+	private final AtomicBoolean finished = new AtomicBoolean(false);
+	private volatile Object translation = null;
+	
+	QueryTrace(SlowQueryLog log, Object query) {
+		this.log = log;
+		this.query = query;
+	}
+	
+	/**
+	 * @return The SPARQL query or find pattern; rendered with toString()
+	 * 		only if the query is logged
+	 */
+	public Object query() {
+		return query;
+	}
+	
+	/**
+	 * @return The translated query, e.g., an ARQ operator tree; rendered
+	 * 		with toString() only if the query is logged
+	 */
+	public Object translation() {
+		return translation;
+	}
+	
+	public void setTranslation(Object translation) {
+		this.translation = translation;
+	}
+
+	public List<Statement> statements() {
+		synchronized (statements) {
+			return new ArrayList<Statement>(statements);
+		}
+	}
+	
+	public void addStatement(String sql, long totalNanos, long firstRowNanos, long rows) {
+		statements.add(new Statement(sql, totalNanos, firstRowNanos, rows));
+	}
+	
+	/**
+	 * Makes this the current trace of this thread.
+	 * @return The previously current trace, for {@link #exit(QueryTrace)}
+	 */
+	public QueryTrace enter() {
+		QueryTrace previous = current.get();
+		current.set(this);
+		return previous;
+	}
+	
+	/**
+	 * Marks the query as done and hands it to the log. Only the first
+	 * call has an effect. Statements finishing later are not reported.
+	 */
+	public void finish() {
+		if (finished.compareAndSet(false, true)) {
+			log.finished(this, System.nanoTime() - startNanos);
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package de.fuberlin.wiwiss.d2rq.metrics;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Logs SPARQL queries and find patterns that take longer than a
+ * threshold, or that run a SQL statement that takes longer than
+ * another threshold. Each entry shows the query, its translation,
+ * and every SQL statement with its time, time to first row, and
+ * row count.
+ * 
+ * Entries are written to the <code>de.fuberlin.wiwiss.d2rq.metrics.SlowQueryLog</code>
+ * logger at WARN level. They are formatted and written on a background
+ * thread; if that thread falls behind, excess entries are dropped.
+ */
+public class SlowQueryLog {
+	private final static Log log = LogFactory.getLog(SlowQueryLog.class);
+	
+	public final static int NO_THRESHOLD = -1;
+	
+	public final static SlowQueryLog DISABLED = new SlowQueryLog(NO_THRESHOLD, NO_THRESHOLD);
+	
+	private final static ExecutorService writer = new ThreadPoolExecutor(1, 1, 
+			0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(1000),
+			new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "D2RQ-slow-query-log");
+					t.setDaemon(true);
+					return t;
+				}
+			}, new ThreadPoolExecutor.DiscardPolicy());
+	
+	private final long queryThresholdNanos;
+	private final long sqlThresholdNanos;
+	
+	/**
+	 * @param queryThresholdMillis Log queries taking at least this long; {@link #NO_THRESHOLD} to disable
+	 * @param sqlThresholdMillis Log queries running a SQL statement taking at least this long; {@link #NO_THRESHOLD} to disable
+	 */
+	public SlowQueryLog(int queryThresholdMillis, int sqlThresholdMillis) {
+		this.queryThresholdNanos = queryThresholdMillis < 0 ? -1 : queryThresholdMillis * 1000000L;
+		this.sqlThresholdNanos = sqlThresholdMillis < 0 ? -1 : sqlThresholdMillis * 1000000L;
+	}
+	
+	public boolean isEnabled() {
+		return queryThresholdNanos >= 0 || sqlThresholdNanos >= 0;
+	}
+	
+	/**
+	 * @param query The SPARQL query or find pattern; its toString() is logged
+	 * @return A new trace, or <code>null</code> if the log is disabled
+	 */
+	public QueryTrace startTrace(Object query) {
+		if (!isEnabled()) return null;
+		return new QueryTrace(this, query);
+	}
+	
+	void finished(final QueryTrace trace, final long totalNanos) {
+		if (!isSlow(trace, totalNanos)) return;
+		writer.execute(new Runnable() {
+			public void run() {
+				log.warn(format(trace, totalNanos));
+			}
+		});
+	}
+	
+	boolean isSlow(QueryTrace trace, long totalNanos) {
+		if (queryThresholdNanos >= 0 && totalNanos >= queryThresholdNanos) return true;
+		if (sqlThresholdNanos < 0) return false;
+		for (QueryTrace.Statement statement: trace.statements()) {
+			if (statement.totalNanos() >= sqlThresholdNanos) return true;
+		}
+		return false;
+	}
+	
+	static String format(QueryTrace trace, long totalNanos) {
+		List<QueryTrace.Statement> statements = trace.statements();
+		StringBuffer result = new StringBuffer();
+		result.append("Slow query (");
+		result.append(millis(totalNanos));
+		result.append(" ms, ");
+		result.append(statements.size());
+		result.append(" SQL statements):\n");
+		result.append(trace.query().toString().trim());
+		result.append("\n");
+		if (trace.translation() != null) {
+			result.append("Translated to:\n");
+			result.append(trace.translation().toString().trim());
+			result.append("\n");
+		}
+		for (QueryTrace.Statement statement: statements) {
+			result.append("SQL (");
+			result.append(millis(statement.totalNanos()));
+			result.append(" ms, ");
+			if (statement.firstRowNanos() >= 0) {
+				result.append("first row after ");
+				result.append(millis(statement.firstRowNanos()));
+				result.append(" ms, ");
+			}
+			result.append(statement.rows());
+			result.append(" rows): ");
+			result.append(statement.sql());
+			result.append("\n");
+		}
+		return result.toString();
+	}
+	
+	private static String millis(long nanos) {
+		return Long.toString(nanos / 1000000);
+	}
+}
@@ -0,0 +1,109 @@
+package de.fuberlin.wiwiss.d2rq.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A latency histogram that can be updated from any thread without
+ * locking. Durations are counted in buckets whose bounds are powers
+ * of two microseconds, so percentiles are reported as the upper
+ * bound of the bucket they fall into, that is, at most twice
+ * the exact value.
+ */
+public class Timer implements TimerMBean {
+	// Bucket i holds durations of less than 2^i microseconds
+	private final static int BUCKETS = 40;
+	
+	private final String name;
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong totalNanos = new AtomicLong();
+	private final AtomicLong maxNanos = new AtomicLong();
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	
+	public Timer(String name) {
+		this.name = name;
+	}
+	
+	public String name() {
+		return name;
+	}
+	
+	/**
+	 * @return A start time for {@link #stop(long)}
+	 */
+	public long start() {
+		return System.nanoTime();
+	}
+	
+	/**
+	 * Records the time passed since a {@link #start()}.
+	 */
+	public void stop(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+	
+	public void record(long nanos) {
+		if (nanos < 0) nanos = 0;
+		count.incrementAndGet();
+		totalNanos.addAndGet(nanos);
+		long max = maxNanos.get();
+		while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+			max = maxNanos.get();
+		}
+		long micros = nanos / 1000;
+		int bucket = 64 - Long.numberOfLeadingZeros(micros);
+		buckets.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+	}
+	
+	public long getCount() {
+		return count.get();
+	}
+	
+	public double getTotalMillis() {
+		return totalNanos.get() / 1000000.0;
+	}
+	
+	public double getMeanMillis() {
+		long n = count.get();
+		return n == 0 ? 0 : getTotalMillis() / n;
+	}
+	
+	public double getMaxMillis() {
+		return maxNanos.get() / 1000000.0;
+	}
+	
+	public double get50thPercentileMillis() {
+		return percentileMillis(0.5);
+	}
+	
+	public double get95thPercentileMillis() {
+		return percentileMillis(0.95);
+	}
+	
+	public double get99thPercentileMillis() {
+		return percentileMillis(0.99);
+	}
+	
+	public double percentileMillis(double p) {
+		long[] snapshot = new long[BUCKETS];
+		long n = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = buckets.get(i);
+			n += snapshot[i];
+		}
+		if (n == 0) return 0;
+		long rank = (long) Math.ceil(p * n);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return Math.min((1L << i) / 1000.0, getMaxMillis());
+			}
+		}
+		return getMaxMillis();
+	}
+	
+	public String toString() {
+		return name + " count=" + getCount() + " mean=" + getMeanMillis() + "ms";
+	}
+}
@@ -0,0 +1,22 @@
+package de.fuberlin.wiwiss.d2rq.metrics;
+
+/**
+ * JMX management interface of a {@link Timer}. All times are
+ * in milliseconds.
+ */
+public interface TimerMBean {
+	
+	long getCount();
+	
+	double getTotalMillis();
+	
+	double getMeanMillis();
+	
+	double getMaxMillis();
+	
+	double get50thPercentileMillis();
+	
+	double get95thPercentileMillis();
+	
+	double get99thPercentileMillis();
+}
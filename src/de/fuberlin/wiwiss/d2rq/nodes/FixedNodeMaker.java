@@ -23,6 +23,10 @@ public class FixedNodeMaker implements NodeMaker {
 		this.isUnique = isUnique;
 	}
 	
+	public Node node() {
+		return this.node;
+	}
+	
 	public boolean isUnique() {
 		return this.isUnique;
 	}
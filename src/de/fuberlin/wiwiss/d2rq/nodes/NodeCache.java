@@ -0,0 +1,58 @@
+package de.fuberlin.wiwiss.d2rq.nodes;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.hp.hpl.jena.graph.Node;
+
+/**
+ * A bounded, least-recently-used cache of the nodes made by a
+ * {@link TypedNodeMaker}, keyed by the raw value of the node maker's
+ * single column. On a hit, the node maker doesn't have to format,
+ * encode or create the node again. This pays off for columns with
+ * few distinct values, such as foreign keys or enumerations.
+ *
+ * The cache is shared by all threads that use the node maker, and
+ * every lookup takes its lock. It is therefore only used where the
+ * mapping asks for it with <code>d2rq:nodeCacheSize</code>.
+ */
+public class NodeCache {
+	private final int maxSize;
+	private final Map<String,Node> nodes;
+
+	/**
+	 * @param maxSize The maximum number of nodes to keep
+	 */
+	public NodeCache(final int maxSize) {
+		this.maxSize = maxSize;
+		this.nodes = new LinkedHashMap<String,Node>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String,Node> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	public int maxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @return The node for the raw value, or <code>null</code> if not cached
+	 */
+	public synchronized Node get(String key) {
+		return nodes.get(key);
+	}
+
+	public synchronized void put(String key, Node node) {
+		nodes.put(key, node);
+	}
+
+	public synchronized int size() {
+		return nodes.size();
+	}
+
+	public String toString() {
+		return "NodeCache(" + maxSize + ")";
+	}
+}
@@ -49,11 +49,27 @@ public class TypedNodeMaker implements NodeMaker {
 	private NodeType nodeType;
 	private ValueMaker valueMaker;
 	private boolean isUnique;
+	private NodeCache nodeCache;
+	private ProjectionSpec nodeCacheKey;
 	
 	public TypedNodeMaker(NodeType nodeType, ValueMaker valueMaker, boolean isUnique) {
+		this(nodeType, valueMaker, isUnique, null);
+	}
+	
+	/**
+	 * @param nodeCache Cache for the made nodes, or <code>null</code>;
+	 * 		ignored unless the value maker uses exactly one column
+	 */
+	public TypedNodeMaker(NodeType nodeType, ValueMaker valueMaker, boolean isUnique,
+			NodeCache nodeCache) {
 		this.nodeType = nodeType;
 		this.valueMaker = valueMaker;
 		this.isUnique = isUnique;
+		Set<ProjectionSpec> projections = valueMaker.projectionSpecs();
+		if (nodeCache != null && projections.size() == 1) {
+			this.nodeCache = nodeCache;
+			this.nodeCacheKey = projections.iterator().next();
+		}
 	}
 	
 	public Set<ProjectionSpec> projectionSpecs() {
@@ -74,7 +90,36 @@ public class TypedNodeMaker implements NodeMaker {
 		return this.valueMaker;
 	}
 	
+	public NodeType nodeType() {
+		return this.nodeType;
+	}
+	
+	/**
+	 * @return The cache of made nodes, or <code>null</code>
+	 */
+	public NodeCache nodeCache() {
+		return this.nodeCache;
+	}
+	
 	public Node makeNode(ResultRow tuple) {
+		if (this.nodeCache == null) {
+			return makeUncachedNode(tuple);
+		}
+		String key = tuple.get(this.nodeCacheKey);
+		if (key == null) {
+			return makeUncachedNode(tuple);
+		}
+		Node result = this.nodeCache.get(key);
+		if (result == null) {
+			result = makeUncachedNode(tuple);
+			if (result != null) {
+				this.nodeCache.put(key, result);
+			}
+		}
+		return result;
+	}
+	
+	private Node makeUncachedNode(ResultRow tuple) {
 		String value = this.valueMaker.makeValue(tuple);
 		if (value == null) {
 			return null;
@@ -103,8 +148,9 @@ public class TypedNodeMaker implements NodeMaker {
 	}
 	
 	public NodeMaker renameAttributes(ColumnRenamer renamer) {
+		// The cache is shared because renaming doesn't change the nodes
 		return new TypedNodeMaker(this.nodeType, 
-				this.valueMaker.renameAttributes(renamer), this.isUnique);
+				this.valueMaker.renameAttributes(renamer), this.isUnique, this.nodeCache);
 	}
 
 	public List<OrderSpec> orderSpecs(boolean ascending) {
@@ -140,13 +186,17 @@ public class TypedNodeMaker implements NodeMaker {
 		public String toString() { return "Blank"; }
 	}
 	
-	private static class LiteralNodeType implements NodeType {
+	public static class LiteralNodeType implements NodeType {
 		private String language;
 		private RDFDatatype datatype;
 		LiteralNodeType(String language, RDFDatatype datatype) {
 			this.language = language;
 			this.datatype = datatype;
 		}
+		/** @return The language tag, or the empty string */
+		public String language() { return this.language; }
+		/** @return The datatype, or <code>null</code> for plain literals */
+		public RDFDatatype datatype() { return this.datatype; }
 		public String extractValue(Node node) {
 			return node.getLiteralLexicalForm();
 		}
@@ -0,0 +1,121 @@
+package de.fuberlin.wiwiss.d2rq.nodes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.hp.hpl.jena.graph.Node;
+
+import de.fuberlin.wiwiss.d2rq.algebra.RelationalOperators;
+import de.fuberlin.wiwiss.d2rq.values.Pattern;
+import de.fuberlin.wiwiss.d2rq.values.PrefixTrie;
+
+/**
+ * Finds the {@link NodeMaker}s, out of a fixed set, that can produce
+ * a given URI. Node makers made from a plain URI {@link Pattern} are
+ * stored in a {@link PrefixTrie} by the pattern's first literal part,
+ * and are checked with {@link Pattern#columnValues(String)}, which
+ * needs no regular expression and builds no SQL expressions. Node
+ * makers for fixed nodes are looked up in a map. Only the
+ * remaining node makers, such as URI columns, are asked with
+ * {@link NodeMaker#selectNode(Node, RelationalOperators)}.
+ *
+ * @param <T> The type of the targets, such as class map names
+ */
+public class URIRouter<T> {
+	private final PrefixTrie<List<Route<T>>> patternRoutes = new PrefixTrie<List<Route<T>>>();
+	private final Map<Node,List<Route<T>>> fixedRoutes = new HashMap<Node,List<Route<T>>>();
+	private final List<Route<T>> otherRoutes = new ArrayList<Route<T>>();
+
+	/**
+	 * @param nodeMakers Node makers for each target; their iteration
+	 * 		order is the order of {@link #route(Node)}'s results
+	 */
+	public URIRouter(Map<T,NodeMaker> nodeMakers) {
+		int ordinal = 0;
+		for (Map.Entry<T,NodeMaker> entry: nodeMakers.entrySet()) {
+			Route<T> route = new Route<T>(ordinal++, entry.getKey(), entry.getValue());
+			Pattern pattern = uriPattern(entry.getValue());
+			if (pattern != null) {
+				List<Route<T>> routes = patternRoutes.get(pattern.firstLiteralPart());
+				if (routes == null) {
+					routes = new ArrayList<Route<T>>();
+					patternRoutes.put(pattern.firstLiteralPart(), routes);
+				}
+				routes.add(route);
+			} else if (entry.getValue() instanceof FixedNodeMaker) {
+				Node node = ((FixedNodeMaker) entry.getValue()).node();
+				List<Route<T>> routes = fixedRoutes.get(node);
+				if (routes == null) {
+					routes = new ArrayList<Route<T>>();
+					fixedRoutes.put(node, routes);
+				}
+				routes.add(route);
+			} else {
+				otherRoutes.add(route);
+			}
+		}
+	}
+
+	/**
+	 * @return The targets whose node makers can produce the node
+	 */
+	public List<T> route(Node node) {
+		List<Route<T>> matches = new ArrayList<Route<T>>();
+		if (node.isURI()) {
+			List<List<Route<T>>> candidates = new ArrayList<List<Route<T>>>();
+			patternRoutes.collectPrefixValues(node.getURI(), candidates);
+			for (List<Route<T>> routes: candidates) {
+				for (Route<T> route: routes) {
+					if (uriPattern(route.nodeMaker).matches(node.getURI())) {
+						matches.add(route);
+					}
+				}
+			}
+		}
+		if (fixedRoutes.containsKey(node)) {
+			matches.addAll(fixedRoutes.get(node));
+		}
+		for (Route<T> route: otherRoutes) {
+			if (!route.nodeMaker.selectNode(node, RelationalOperators.DUMMY).equals(NodeMaker.EMPTY)) {
+				matches.add(route);
+			}
+		}
+		Collections.sort(matches, new Comparator<Route<T>>() {
+			public int compare(Route<T> r1, Route<T> r2) {
+				return r1.ordinal - r2.ordinal;
+			}
+		});
+		List<T> result = new ArrayList<T>(matches.size());
+		for (Route<T> route: matches) {
+			result.add(route.target);
+		}
+		return result;
+	}
+
+	/**
+	 * @return The pattern if the node maker makes URIs from nothing
+	 * 		but a pattern, or <code>null</code>
+	 */
+	private static Pattern uriPattern(NodeMaker nodeMaker) {
+		if (!(nodeMaker instanceof TypedNodeMaker)) return null;
+		TypedNodeMaker typed = (TypedNodeMaker) nodeMaker;
+		if (typed.nodeType() != TypedNodeMaker.URI) return null;
+		if (!(typed.valueMaker() instanceof Pattern)) return null;
+		return (Pattern) typed.valueMaker();
+	}
+
+	private static class Route<T> {
+		final int ordinal;
+		final T target;
+		final NodeMaker nodeMaker;
+		Route(int ordinal, T target, NodeMaker nodeMaker) {
+			this.ordinal = ordinal;
+			this.target = target;
+			this.nodeMaker = nodeMaker;
+		}
+	}
+}
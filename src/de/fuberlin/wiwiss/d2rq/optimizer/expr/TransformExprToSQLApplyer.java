@@ -1,9 +1,12 @@
 package de.fuberlin.wiwiss.d2rq.optimizer.expr;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import java.util.Stack;
 
 import org.apache.commons.logging.Log;
@@ -30,8 +33,12 @@ import com.hp.hpl.jena.sparql.expr.E_LogicalNot;
 import com.hp.hpl.jena.sparql.expr.E_LogicalOr;
 import com.hp.hpl.jena.sparql.expr.E_Multiply;
 import com.hp.hpl.jena.sparql.expr.E_NotEquals;
+import com.hp.hpl.jena.sparql.expr.E_Regex;
 import com.hp.hpl.jena.sparql.expr.E_SameTerm;
 import com.hp.hpl.jena.sparql.expr.E_Str;
+import com.hp.hpl.jena.sparql.expr.E_StrContains;
+import com.hp.hpl.jena.sparql.expr.E_StrEndsWith;
+import com.hp.hpl.jena.sparql.expr.E_StrStartsWith;
 import com.hp.hpl.jena.sparql.expr.E_Subtract;
 import com.hp.hpl.jena.sparql.expr.E_UnaryMinus;
 import com.hp.hpl.jena.sparql.expr.E_UnaryPlus;
@@ -57,6 +64,7 @@ import de.fuberlin.wiwiss.d2rq.algebra.NodeRelation;
 import de.fuberlin.wiwiss.d2rq.algebra.ProjectionSpec;
 import de.fuberlin.wiwiss.d2rq.algebra.RelationalOperators;
 import de.fuberlin.wiwiss.d2rq.expr.Add;
+import de.fuberlin.wiwiss.d2rq.expr.AttributeExpr;
 import de.fuberlin.wiwiss.d2rq.expr.Constant;
 import de.fuberlin.wiwiss.d2rq.expr.Divide;
 import de.fuberlin.wiwiss.d2rq.expr.Equality;
@@ -65,8 +73,10 @@ import de.fuberlin.wiwiss.d2rq.expr.GreaterThan;
 import de.fuberlin.wiwiss.d2rq.expr.GreaterThanOrEqual;
 import de.fuberlin.wiwiss.d2rq.expr.LessThan;
 import de.fuberlin.wiwiss.d2rq.expr.LessThanOrEqual;
+import de.fuberlin.wiwiss.d2rq.expr.Like;
 import de.fuberlin.wiwiss.d2rq.expr.Multiply;
 import de.fuberlin.wiwiss.d2rq.expr.Negation;
+import de.fuberlin.wiwiss.d2rq.expr.RegexMatch;
 import de.fuberlin.wiwiss.d2rq.expr.SQLExpression;
 import de.fuberlin.wiwiss.d2rq.expr.Subtract;
 import de.fuberlin.wiwiss.d2rq.expr.UnaryMinus;
@@ -75,6 +85,11 @@ import de.fuberlin.wiwiss.d2rq.nodes.FixedNodeMaker;
 import de.fuberlin.wiwiss.d2rq.nodes.NodeMaker;
 import de.fuberlin.wiwiss.d2rq.nodes.NodeSetConstraintBuilder;
 import de.fuberlin.wiwiss.d2rq.nodes.TypedNodeMaker;
+import de.fuberlin.wiwiss.d2rq.nodes.TypedNodeMaker.LiteralNodeType;
+import de.fuberlin.wiwiss.d2rq.sql.ConnectedDB;
+import de.fuberlin.wiwiss.d2rq.sql.types.DataType;
+import de.fuberlin.wiwiss.d2rq.sql.types.SQLCharacterString;
+import de.fuberlin.wiwiss.d2rq.values.Column;
 import de.fuberlin.wiwiss.d2rq.values.ValueMaker;
 
 /**
@@ -110,6 +125,12 @@ public final class TransformExprToSQLApplyer implements ExprVisitor {
 	private static final Expression CONSTANT_FALSE = new ConstantEx("false", NodeValueBoolean.FALSE.asNode());
 	private static final Expression CONSTANT_TRUE  = new ConstantEx("true", NodeValueBoolean.TRUE.asNode());
 	
+	// Fixed-length types are blank-padded, and some engines can't match LOBs
+	private static final Set<String> VARIABLE_LENGTH_STRING_TYPES = new HashSet<String>(Arrays.asList(new String[] {
+			"VARCHAR", "VARCHAR2", "NVARCHAR", "NVARCHAR2", "CHARACTER VARYING", 
+			"NATIONAL CHARACTER VARYING", "LONGVARCHAR", "LONGNVARCHAR", "TEXT", 
+			"TINYTEXT", "MEDIUMTEXT", "LONGTEXT", "CLOB", "NCLOB"}));
+	
 	private final NodeRelation nodeRelation;
 	private final Stack<Expression> expression = new Stack<Expression>();
 	
@@ -253,6 +274,10 @@ public final class TransformExprToSQLApplyer implements ExprVisitor {
 			expression.push(Expression.FALSE); // prevent stack empty exceptions when conversion
 			return;                            // fails in the middle of a multi-arg operator conversion
 		}
+		if (function instanceof E_Regex) {
+			convertRegex((E_Regex) function);
+			return;
+		}
 		if (!extensionSupports(function)) {
 			conversionFailed(function);
 			return;
@@ -415,6 +440,12 @@ public final class TransformExprToSQLApplyer implements ExprVisitor {
 			convertLangMatches((E_LangMatches) expr);
 		} else if (expr instanceof E_SameTerm) {
 			convertSameTerm((E_SameTerm) expr);
+		} else if (expr instanceof E_StrStartsWith) {
+			convertStringMatch(expr, false, true);
+		} else if (expr instanceof E_StrEndsWith) {
+			convertStringMatch(expr, true, false);
+		} else if (expr instanceof E_StrContains) {
+			convertStringMatch(expr, true, true);
 		} else if (extensionSupports(expr)) {
 			expr.getArg(1).visit(this);
 			expr.getArg(2).visit(this);
@@ -1083,6 +1114,138 @@ public final class TransformExprToSQLApplyer implements ExprVisitor {
 	}
 	
 	
+	/*
+	 * See http://www.w3.org/TR/sparql11-query/#func-strings
+	 * 
+	 * STRSTARTS, STRENDS and CONTAINS on a string column become LIKE
+	 * if the second argument is a constant simple literal or xsd:string.
+	 */
+	private void convertStringMatch(ExprFunction2 expr, boolean prefix, boolean suffix)
+	{
+		logger.debug("convertStringMatch " + expr.toString());
+		
+		expr.getArg1().visit(this);
+		expr.getArg2().visit(this);
+		Expression e2 = expression.pop();
+		Expression e1 = expression.pop();
+		
+		String text = stringValue(e2);
+		if (!isStringColumn(e1) || text == null) {
+			conversionFailed(expr);
+			return;
+		}
+		String pattern = XPathRegex.toLikePattern(text, prefix, suffix);
+		if (pattern == null) {
+			conversionFailed("LIKE wildcards in search string", expr);
+			return;
+		}
+		pushLike((AttributeExprEx) e1, pattern, false, expr);
+	}
+	
+	/*
+	 * See http://www.w3.org/TR/rdf-sparql-query paragraph 11.4.14
+	 * 
+	 * Regular expressions that match a fixed string, optionally anchored
+	 * with ^ and $, become LIKE. Other regular expressions are only
+	 * handed to the database if they mean the same there as in XPath.
+	 * The only supported flag is "i", and only for ASCII patterns.
+	 */
+	private void convertRegex(E_Regex expr)
+	{
+		logger.debug("convertRegex " + expr.toString());
+		
+		List<Expression> args = new ArrayList<Expression>(3);
+		for (int i = 1; i <= expr.numArgs(); i++) {
+			if (expr.getArg(i) == null) continue;
+			expr.getArg(i).visit(this);
+			args.add(expression.pop());
+		}
+		String regex = args.size() < 2 ? null : stringValue(args.get(1));
+		String flags = args.size() < 3 ? "" : stringValue(args.get(2));
+		if (!isStringColumn(args.get(0)) || regex == null || flags == null) {
+			conversionFailed(expr);
+			return;
+		}
+		boolean caseInsensitive = "i".equals(flags);
+		if (!caseInsensitive && !"".equals(flags)) {
+			conversionFailed("unsupported flags", expr);
+			return;
+		}
+		if (caseInsensitive && !XPathRegex.isASCII(regex)) {
+			conversionFailed("case-insensitive match with non-ASCII pattern", expr);
+			return;
+		}
+		AttributeExprEx column = (AttributeExprEx) args.get(0);
+		String pattern = XPathRegex.toLikePattern(regex);
+		if (pattern != null) {
+			pushLike(column, pattern, caseInsensitive, expr);
+			return;
+		}
+		if (!XPathRegex.isPortable(regex)) {
+			conversionFailed("regular expression not portable", expr);
+			return;
+		}
+		RegexMatch match = new RegexMatch(new AttributeExpr(column.attribute()), regex, caseInsensitive);
+		if (match.toSQL(database(), nodeRelation.baseRelation().aliases()) == null) {
+			conversionFailed("no regular expressions in database", expr);
+			return;
+		}
+		expression.push(match);
+	}
+	
+	private void pushLike(AttributeExprEx column, String pattern, boolean caseInsensitive, Expr expr)
+	{
+		Like like = new Like(new AttributeExpr(column.attribute()), pattern, caseInsensitive);
+		if (like.toSQL(database(), nodeRelation.baseRelation().aliases()) == null) {
+			conversionFailed("LIKE not supported by database", expr);
+			return;
+		}
+		expression.push(like);
+	}
+	
+	/**
+	 * @return The lexical form if the expression is a simple literal or
+	 * 		xsd:string constant, <code>null</code> otherwise
+	 */
+	private String stringValue(Expression e)
+	{
+		if (!(e instanceof ConstantEx)) return null;
+		Node node = ((ConstantEx) e).getNode();
+		if (isSimpleLiteral(node)) return node.getLiteralLexicalForm();
+		if (node.isLiteral() && XSDDatatype.XSDstring.equals(node.getLiteralDatatype()))
+			return node.getLiteralLexicalForm();
+		return null;
+	}
+	
+	/**
+	 * Checks if an expression is a column of a variable-length character
+	 * string type whose values are plain literals or xsd:strings. The
+	 * SQL string functions work on such columns as SPARQL's do on the
+	 * literals.
+	 */
+	private boolean isStringColumn(Expression e)
+	{
+		if (!(e instanceof AttributeExprEx) || database() == null) return false;
+		NodeMaker nodeMaker = ((AttributeExprEx) e).getNodeMaker();
+		if (!(nodeMaker instanceof TypedNodeMaker)) return false;
+		TypedNodeMaker typedNodeMaker = (TypedNodeMaker) nodeMaker;
+		if (!(typedNodeMaker.valueMaker() instanceof Column)) return false;
+		if (!(typedNodeMaker.nodeType() instanceof LiteralNodeType)) return false;
+		LiteralNodeType nodeType = (LiteralNodeType) typedNodeMaker.nodeType();
+		if (!"".equals(nodeType.language())) return false;
+		if (nodeType.datatype() != null && !XSDDatatype.XSDstring.equals(nodeType.datatype())) return false;
+		Attribute attribute = nodeRelation.baseRelation().aliases().originalOf(
+				((AttributeExprEx) e).attribute());
+		DataType dataType = database().columnType(attribute);
+		return dataType instanceof SQLCharacterString && dataType.supportsDistinct()
+				&& VARIABLE_LENGTH_STRING_TYPES.contains(dataType.name());
+	}
+	
+	private ConnectedDB database()
+	{
+		return nodeRelation == null ? null : nodeRelation.baseRelation().database();
+	}
+	
 	private void conversionFailed(Expr unconvertableExpr)
 	{
 		// prevent stack empty exceptions when conversion fails in the middle of a multi-arg operator conversion
@@ -0,0 +1,216 @@
+package de.fuberlin.wiwiss.d2rq.optimizer.expr;
+
+/**
+ * Analyzes the regular expressions of the SPARQL <code>regex</code>
+ * function, which use XPath syntax, to find out whether they can
+ * be evaluated by the database.
+ */
+public class XPathRegex {
+	private final static String META_CHARACTERS = "\\|.?*+{}()[]^$";
+	private final static String LIKE_SPECIAL_CHARACTERS = "%_\\";
+
+	/**
+	 * Turns a regular expression that matches a fixed string,
+	 * optionally anchored with <code>^</code> and <code>$</code>,
+	 * into an equivalent <code>LIKE</code> pattern.
+	 *
+	 * @param regex An XPath regular expression
+	 * @return A <code>LIKE</code> pattern whose only special character is
+	 * 		<code>%</code>, or <code>null</code> if there is none
+	 */
+	public static String toLikePattern(String regex) {
+		int start = 0;
+		int end = regex.length();
+		boolean anchoredAtStart = regex.startsWith("^");
+		if (anchoredAtStart) {
+			start++;
+		}
+		boolean anchoredAtEnd = end > start && regex.charAt(end - 1) == '$'
+				&& !isEscaped(regex, end - 1);
+		if (anchoredAtEnd) {
+			end--;
+		}
+		StringBuffer text = new StringBuffer();
+		for (int i = start; i < end; i++) {
+			char c = regex.charAt(i);
+			if (c == '\\') {
+				i++;
+				if (i == end) return null;
+				c = regex.charAt(i);
+				if (META_CHARACTERS.indexOf(c) == -1 && c != '-') return null;
+			} else if (META_CHARACTERS.indexOf(c) != -1) {
+				return null;
+			}
+			text.append(c);
+		}
+		return toLikePattern(text.toString(), !anchoredAtStart, !anchoredAtEnd);
+	}
+
+	/**
+	 * @param text A fixed string
+	 * @param prefix Allow any characters before the string?
+	 * @param suffix Allow any characters after the string?
+	 * @return A <code>LIKE</code> pattern, or <code>null</code> if the
+	 * 		string contains characters that are special in <code>LIKE</code>
+	 */
+	public static String toLikePattern(String text, boolean prefix, boolean suffix) {
+		for (int i = 0; i < text.length(); i++) {
+			if (LIKE_SPECIAL_CHARACTERS.indexOf(text.charAt(i)) != -1) return null;
+		}
+		return (prefix ? "%" : "") + text + (suffix ? "%" : "");
+	}
+
+	/**
+	 * Checks if a regular expression uses only features that mean the
+	 * same in XPath, POSIX extended regular expressions and Java:
+	 * ASCII characters, escaped metacharacters, <code>^</code>,
+	 * alternatives, groups, quantifiers, and character classes made of
+	 * letters, digits and ranges. <code>.</code> and <code>$</code> are
+	 * not portable because they treat newlines differently.
+	 *
+	 * @param regex An XPath regular expression
+	 * @return <code>true</code> if the regular expression is portable
+	 */
+	public static boolean isPortable(String regex) {
+		if (regex.length() == 0) return false;
+		int depth = 0;
+		boolean atBranchStart = true;
+		boolean canQuantify = false;
+		int i = 0;
+		while (i < regex.length()) {
+			char c = regex.charAt(i);
+			if (c < 32 || c > 126) return false;
+			if (c == '\\') {
+				if (i + 1 == regex.length()) return false;
+				if (META_CHARACTERS.indexOf(regex.charAt(i + 1)) == -1) return false;
+				i += 2;
+				atBranchStart = false;
+				canQuantify = true;
+				continue;
+			}
+			if (c == '.' || c == '$' || c == ']' || c == '}') return false;
+			if (c == '^') {
+				canQuantify = false;
+			} else if (c == '|') {
+				if (atBranchStart) return false;
+				atBranchStart = true;
+				canQuantify = false;
+				i++;
+				continue;
+			} else if (c == '(') {
+				if (i + 1 < regex.length() && regex.charAt(i + 1) == '?') return false;
+				depth++;
+				atBranchStart = true;
+				canQuantify = false;
+				i++;
+				continue;
+			} else if (c == ')') {
+				if (depth == 0 || atBranchStart) return false;
+				depth--;
+				canQuantify = true;
+			} else if (c == '*' || c == '+' || c == '?') {
+				if (!canQuantify) return false;
+				canQuantify = false;
+			} else if (c == '{') {
+				if (!canQuantify) return false;
+				i = skipBounds(regex, i);
+				if (i == -1) return false;
+				canQuantify = false;
+			} else if (c == '[') {
+				i = skipCharacterClass(regex, i);
+				if (i == -1) return false;
+				canQuantify = true;
+			} else {
+				canQuantify = true;
+			}
+			atBranchStart = false;
+			i++;
+		}
+		return depth == 0 && !atBranchStart;
+	}
+
+	/**
+	 * @return <code>true</code> if all characters are ASCII
+	 */
+	public static boolean isASCII(String s) {
+		for (int i = 0; i < s.length(); i++) {
+			if (s.charAt(i) > 127) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Skips over <code>{m}</code>, <code>{m,}</code> or <code>{m,n}</code>.
+	 *
+	 * @return Index of the closing brace, or -1 if malformed
+	 */
+	private static int skipBounds(String regex, int open) {
+		int close = regex.indexOf('}', open);
+		if (close == -1) return -1;
+		String[] bounds = regex.substring(open + 1, close).split(",", -1);
+		if (bounds.length > 2) return -1;
+		int min = toBound(bounds[0]);
+		if (min == -1) return -1;
+		if (bounds.length == 2 && bounds[1].length() > 0) {
+			int max = toBound(bounds[1]);
+			if (max == -1 || max < min) return -1;
+		}
+		return close;
+	}
+
+	/**
+	 * @return The number, or -1 if it isn't a number that all
+	 * 		engines support as a bound (RE_DUP_MAX is 255)
+	 */
+	private static int toBound(String s) {
+		if (s.length() == 0 || s.length() > 3) return -1;
+		for (int i = 0; i < s.length(); i++) {
+			if (!Character.isDigit(s.charAt(i))) return -1;
+		}
+		int result = Integer.parseInt(s);
+		return result > 255 ? -1 : result;
+	}
+
+	/**
+	 * Skips over a character class made of ASCII letters and digits,
+	 * and of ranges like <code>a-z</code> within lowercase letters,
+	 * uppercase letters or digits.
+	 *
+	 * @return Index of the closing bracket, or -1 if not supported
+	 */
+	private static int skipCharacterClass(String regex, int open) {
+		int i = open + 1;
+		while (i < regex.length() && regex.charAt(i) != ']') {
+			char c = regex.charAt(i);
+			if (!isAlphanumeric(c)) return -1;
+			if (i + 2 < regex.length() && regex.charAt(i + 1) == '-' && regex.charAt(i + 2) != ']') {
+				char to = regex.charAt(i + 2);
+				if (characterGroup(c) == -1 || characterGroup(c) != characterGroup(to) || to < c) return -1;
+				i += 3;
+			} else {
+				i++;
+			}
+		}
+		if (i == regex.length() || i == open + 1) return -1;
+		return i;
+	}
+
+	private static boolean isAlphanumeric(char c) {
+		return characterGroup(c) != -1;
+	}
+
+	private static int characterGroup(char c) {
+		if (c >= 'a' && c <= 'z') return 0;
+		if (c >= 'A' && c <= 'Z') return 1;
+		if (c >= '0' && c <= '9') return 2;
+		return -1;
+	}
+
+	private static boolean isEscaped(String regex, int index) {
+		int backslashes = 0;
+		while (index - backslashes > 0 && regex.charAt(index - backslashes - 1) == '\\') {
+			backslashes++;
+		}
+		return backslashes % 2 == 1;
+	}
+}
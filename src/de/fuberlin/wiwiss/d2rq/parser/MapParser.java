@@ -32,6 +32,7 @@ import de.fuberlin.wiwiss.d2rq.map.Configuration;
 import de.fuberlin.wiwiss.d2rq.map.Database;
 import de.fuberlin.wiwiss.d2rq.map.DownloadMap;
 import de.fuberlin.wiwiss.d2rq.map.Mapping;
+import de.fuberlin.wiwiss.d2rq.map.MappingSnapshot;
 import de.fuberlin.wiwiss.d2rq.map.PropertyBridge;
 import de.fuberlin.wiwiss.d2rq.map.ResourceMap;
 import de.fuberlin.wiwiss.d2rq.map.TranslationTable;
@@ -109,6 +110,9 @@ public class MapParser {
 			parsePropertyBridges();
 			parseDownloadMaps();
 			this.mapping.buildVocabularyModel();
+			if (mapping.configuration().getMappingSnapshot() != null) {
+				mapping.setFingerprint(MappingSnapshot.fingerprint(model.getBaseModel(), baseURI));
+			}
 			log.info("Done reading D2RQ map with " + 
 					mapping.databases().size() + " databases and " +
 					mapping.classMapResources().size() + " class maps");
@@ -187,6 +191,26 @@ public class MapParser {
 			while (stmts.hasNext()) {
 				configuration.setUseAllOptimizations(stmts.nextStatement().getBoolean());
 			}			
+			stmts = configResource.listProperties(D2RQ.slowQueryThreshold);
+			while (stmts.hasNext()) {
+				configuration.setSlowQueryThreshold(stmts.nextStatement().getInt());
+			}			
+			stmts = configResource.listProperties(D2RQ.slowSQLThreshold);
+			while (stmts.hasNext()) {
+				configuration.setSlowSQLThreshold(stmts.nextStatement().getInt());
+			}			
+			stmts = configResource.listProperties(D2RQ.compileLazily);
+			while (stmts.hasNext()) {
+				configuration.setCompileLazily(stmts.nextStatement().getBoolean());
+			}			
+			stmts = configResource.listProperties(D2RQ.planCacheSize);
+			while (stmts.hasNext()) {
+				configuration.setPlanCacheSize(stmts.nextStatement().getInt());
+			}			
+			stmts = configResource.listProperties(D2RQ.mappingSnapshot);
+			while (stmts.hasNext()) {
+				configuration.setMappingSnapshot(stmts.nextStatement().getString());
+			}			
 			this.mapping.setConfiguration(configuration);
 
 			if (it.hasNext())
@@ -383,6 +407,16 @@ public class MapParser {
 						PrettyPrinter.toString(r) + " must be an integer number");
 			}
 		}
+		stmts = r.listProperties(D2RQ.nodeCacheSize);
+		while (stmts.hasNext()) {
+			String s = stmts.nextStatement().getString();
+			try {
+				resourceMap.setNodeCacheSize(Integer.parseInt(s));
+			} catch (NumberFormatException nfex) {
+				throw new D2RQException("d2rq:nodeCacheSize \"" + s + "\" on " + 
+						PrettyPrinter.toString(r) + " must be an integer number");
+			}
+		}
 		stmts = r.listProperties(D2RQ.join);
 		while (stmts.hasNext()) {
 			resourceMap.addJoin(stmts.nextStatement().getString());
@@ -545,6 +579,10 @@ public class MapParser {
 		while (stmts.hasNext()) {
 		    bridge.setOrder(stmts.nextStatement().getString(), false);
 		}
+		stmts = r.listProperties(D2RQ.fullTextIndex);
+		while (stmts.hasNext()) {
+		    bridge.setFullTextIndex(stmts.nextStatement().getString());
+		}
 	}
 
 	private void parseDownloadMaps() {
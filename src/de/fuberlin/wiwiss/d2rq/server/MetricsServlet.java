@@ -0,0 +1,28 @@
+package de.fuberlin.wiwiss.d2rq.server;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import de.fuberlin.wiwiss.d2rq.metrics.Metrics;
+
+/**
+ * Serves the current values of D2RQ's performance {@link Metrics}
+ * as plain text, one <code>name value</code> pair per line.
+ */
+public class MetricsServlet extends HttpServlet {
+
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) 
+			throws ServletException, IOException {
+		response.setContentType("text/plain; charset=utf-8");
+		response.setHeader("Cache-Control", "no-cache");
+		PrintWriter out = response.getWriter();
+		Metrics.write(out);
+	}
+
+	private static final long serialVersionUID = 4528630174389925811L;
+}
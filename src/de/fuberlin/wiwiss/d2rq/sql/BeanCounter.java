@@ -1,36 +1,34 @@
 package de.fuberlin.wiwiss.d2rq.sql;
 
+import de.fuberlin.wiwiss.d2rq.metrics.Metrics;
+
 /**
  * A class for capturing performance information.
  * We grant read/write access to instance variables.
  * 
- * TODO: Remove?
+ * The global totals are kept in {@link Metrics}; this class
+ * takes snapshots of them and computes differences.
  * 
  * @author jgarbers
  */
 public class BeanCounter implements Cloneable {
     
-    // Static global state information to be copied into an instance with update(). 
-    public static int totalNumberOfExecutedSQLQueries = 0; 
-    public static int totalNumberOfReturnedRows = 0; 
-    public static int totalNumberOfReturnedFields = 0; 
-       
-    // instance fields corresponding to static fields
-    public int numberOfExecutedSQLQueries = 0; 
-    public int numberOfReturnedRows = 0; 
-    public int numberOfReturnedFields = 0; 
+    // instance fields corresponding to global metrics
+    public long numberOfExecutedSQLQueries = 0; 
+    public long numberOfReturnedRows = 0; 
+    public long numberOfReturnedFields = 0; 
     // time field corresponding to System.currentTimeMillis()
     public long timeMillis;
    
     // Operations on instances
     
     /**
-     * Updates the instance fields with current static values.
+     * Updates the instance fields with current global values.
      */
     public void update() {
-    	   numberOfExecutedSQLQueries=totalNumberOfExecutedSQLQueries;
-    	   numberOfReturnedRows=totalNumberOfReturnedRows;
-    	   numberOfReturnedFields=totalNumberOfReturnedFields;
+    	   numberOfExecutedSQLQueries=Metrics.SQL_QUERIES.getCount();
+    	   numberOfReturnedRows=Metrics.SQL_ROWS.getCount();
+    	   numberOfReturnedFields=Metrics.SQL_FIELDS.getCount();
     	   timeMillis=System.currentTimeMillis();
     }
     /**
@@ -66,7 +64,7 @@ public class BeanCounter implements Cloneable {
     	  }
     }
     /** 
-     * Get a copy of the static fields.
+     * Get a copy of the global values.
      * @return an instance
      */
     public static BeanCounter instance() {
@@ -76,7 +74,7 @@ public class BeanCounter implements Cloneable {
     }
     /**
      * Get a difference instance.
-     * @return a new (static - minus) instance
+     * @return a new (global - minus) instance
      */ 
     public static BeanCounter instanceMinus(BeanCounter minus) {
    	   BeanCounter inst=instance();
@@ -1,22 +1,39 @@
 package de.fuberlin.wiwiss.d2rq.sql;
 
+import java.io.File;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.commons.pool.BasePoolableObjectFactory;
+import org.apache.commons.pool.impl.GenericObjectPool;
 
 import de.fuberlin.wiwiss.d2rq.D2RQException;
 import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
 import de.fuberlin.wiwiss.d2rq.algebra.RelationName;
 import de.fuberlin.wiwiss.d2rq.dbschema.DatabaseSchemaInspector;
+import de.fuberlin.wiwiss.d2rq.dbschema.SchemaCache;
+import de.fuberlin.wiwiss.d2rq.dbschema.TableStatistics;
 import de.fuberlin.wiwiss.d2rq.map.Database;
 import de.fuberlin.wiwiss.d2rq.sql.types.DataType;
 import de.fuberlin.wiwiss.d2rq.sql.types.DataType.GenericType;
@@ -35,6 +52,22 @@ public class ConnectedDB {
 	public static final int DEFAULT_KEEP_ALIVE_INTERVAL = 60*60; // hourly
 	public static final String KEEP_ALIVE_QUERY_PROPERTY = "keepAliveQuery"; // override default keep alive query
 	public static final String DEFAULT_KEEP_ALIVE_QUERY = "SELECT 1"; // may not work for some DBMS
+	public static final String POOL_MIN_IDLE_PROPERTY = "poolMinIdle"; // connections kept open while idle
+	public static final String POOL_MAX_SIZE_PROPERTY = "poolMaxSize"; // max. connections leased at once
+	public static final int DEFAULT_POOL_MAX_SIZE = 8;
+	public static final String POOL_MAX_WAIT_PROPERTY = "poolMaxWait"; // borrow timeout, value in milliseconds
+	public static final int DEFAULT_POOL_MAX_WAIT = 30*1000;
+	public static final String STATEMENT_CACHE_SIZE_PROPERTY = "statementCacheSize"; // prepared statements per connection; 0 disables
+	public static final String PARALLEL_QUERIES_PROPERTY = "parallelQueries"; // SQL queries of one union run at once; 1 disables
+	public static final String PARALLEL_QUERIES_ORDERED_PROPERTY = "parallelQueriesOrdered"; // keep results in sequential order
+	public static final String PREFETCH_BUFFER_SIZE_PROPERTY = "prefetchBufferSize"; // rows read ahead in the background; 0 disables
+	public static final String PREFETCH_TIMEOUT_PROPERTY = "prefetchTimeout"; // abandoned read-ahead, value in milliseconds
+	public static final int DEFAULT_PREFETCH_TIMEOUT = 10*60*1000;
+	public static final String BIND_JOIN_BATCH_SIZE_PROPERTY = "bindJoinBatchSize"; // input bindings per SQL query in joins; 1 disables
+	public static final String SCHEMA_CACHE_FILE_PROPERTY = "schemaCacheFile"; // keeps schema metadata across restarts
+	public static final String SCHEMA_REFRESH_INTERVAL_PROPERTY = "schemaRefreshInterval"; // schema metadata, value in seconds; 0 never refreshes
+	public static final int DEFAULT_SCHEMA_REFRESH_INTERVAL = 60*60; // hourly, if a schema cache file is used
+	public static final String STATISTICS_REFRESH_INTERVAL_PROPERTY = "statisticsRefreshInterval"; // table statistics, value in seconds; 0 never refreshes
 
 	{
 		ConnectedDB.registerJDBCDriverIfPresent("com.mysql.jdbc.Driver");
@@ -45,14 +78,17 @@ public class ConnectedDB {
 	private String jdbcURL;
 	private String username;
 	private String password;
-	private final Map<Attribute,Boolean> cachedColumnNullability = 
-		new HashMap<Attribute,Boolean>();
 	private final Map<Attribute,DataType> cachedColumnTypes = 
-		new HashMap<Attribute,DataType>();
+		new ConcurrentHashMap<Attribute,DataType>();
+	// Columns whose datatype is not supported; null values can't go into cachedColumnTypes
+	private final Map<Attribute,Boolean> unknownColumnTypes = 
+		new ConcurrentHashMap<Attribute,Boolean>();
 	private final Map<Attribute,GenericType> overriddenColumnTypes =
 		new HashMap<Attribute,GenericType>();
 	private Connection connection = null;
 	private DatabaseSchemaInspector schemaInspector = null;
+	private SchemaCache schemaCache = null;
+	private boolean schemaCacheFromFile = false;
 
 	// Lazy initialization -- use vendor() for access!
 	private Vendor vendor = null;
@@ -60,85 +96,93 @@ public class ConnectedDB {
 	private int limit;
 	private int fetchSize;
 	private int defaultFetchSize = Database.NO_FETCH_SIZE;
-	private Map<Attribute,Boolean> zerofillCache = new HashMap<Attribute,Boolean>();
-	private Map<RelationName,Map<String,List<String>>> uniqueIndexCache = 
-		new HashMap<RelationName,Map<String,List<String>>>();
+	private final Map<Attribute,Boolean> zerofillCache = new ConcurrentHashMap<Attribute,Boolean>();
 	private final Properties connectionProperties;
 
-	private class KeepAliveAgent extends Thread {
-		private final int interval;
-		private final String query;
-		volatile boolean shutdown = false;
+	/**
+	 * Creates, validates and disposes the connections held in the pool.
+	 * Each new connection receives the same vendor-specific initialization
+	 * as the primary connection.
+	 */
+	private class PooledConnectionFactory extends BasePoolableObjectFactory<Connection> {
+		private final String validationQuery;
 
 		/**
-		 * @param interval in seconds
-		 * @param query the noop query to execute
+		 * @param validationQuery the noop query used to test connections, or
+		 * 		<code>null</code> to only check whether they are still open 
 		 */
-		public KeepAliveAgent(int interval, String query) {
-			super("keepalive");
-			this.interval = interval;
-			this.query = query;
+		public PooledConnectionFactory(String validationQuery) {
+			this.validationQuery = validationQuery;
 		}
-
-		public void run() {
-			Connection c;
-			Statement s = null;
-			Vendor v = null;
-			while (!shutdown) {
-				try { Thread.sleep(interval*1000); }
-				catch (InterruptedException e) { if (shutdown) break; }
-
-				try {
-					if (log.isDebugEnabled())
-						log.debug("Keep alive agent is executing noop query '" + query + "'...");
-					c = connection();
-					v = vendor();
-					s = c.createStatement();
-
-					v.beforeQuery(c);
-					s.execute(query);
-					v.afterQuery(c);
-					
-					v.beforeClose(c);
-					s.close();
-					v.afterClose(c);
-					
-				} catch (Throwable e) { // may throw D2RQException at runtime
-					log.error("Keep alive connection test failed: " + e.getMessage());
-					
-					log.info("Connection will be reset since a failure is detected by keep alive agent.");
-					if (s != null) { try { s.close(); } catch (Exception ignore) {} } 
-					resetConnection();
-				} finally {
-					if (s != null) try { s.close(); } catch (Exception ignore) {}
-				}
+		
+		public Connection makeObject() throws Exception {
+			log.debug("Opening pooled JDBC connection to " + jdbcURL);
+			Connection c = DriverManager.getConnection(jdbcURL, getConnectionProperties());
+			try {
+				vendor().initializeConnection(c);
+			} catch (SQLException ex) {
+				c.close();
+				throw ex;
 			}
-
-			log.debug("Keep alive agent terminated.");
+			return c;
 		}
 
-		public void shutdown() {
-			log.debug("shutting down");
-			shutdown = true;
-			this.interrupt();
-		}
-	};
-	
-	private void resetConnection() {
-		if (this.connection != null) {
+		public boolean validateObject(Connection c) {
+			Statement s = null;
 			try {
-				this.connection.close();
-			} catch (SQLException sqlExc) {
-				// ignore...
-				log.error("Error while closing current connection: "
-						+ sqlExc.getMessage(), sqlExc);
+				if (c.isClosed()) return false;
+				if (validationQuery == null) return true;
+				if (log.isDebugEnabled())
+					log.debug("Validating pooled connection with noop query '" + validationQuery + "'...");
+				Vendor v = vendor();
+				s = c.createStatement();
+				v.beforeQuery(c);
+				s.execute(validationQuery);
+				v.afterQuery(c);
+				v.beforeClose(c);
+				s.close();
+				s = null;
+				v.afterClose(c);
+				return true;
+			} catch (Throwable e) { // may throw D2RQException at runtime
+				log.info("Pooled connection failed validation and will be discarded: " + e.getMessage());
+				return false;
 			} finally {
-				this.connection = null;
+				if (s != null) try { s.close(); } catch (Exception ignore) {}
 			}
 		}
-	}
 
-	private final KeepAliveAgent keepAliveAgent;
+		public void destroyObject(Connection c) throws Exception {
+			log.debug("Closing pooled JDBC connection to " + jdbcURL);
+			closeConnection(c);
+		}
+	}
+	
+	private GenericObjectPool<Connection> pool = null;
+	private final int poolMinIdle;
+	private final int poolMaxSize;
+	private final long poolMaxWait;
+	private final int statementCacheSize;
+	private final int parallelQueries;
+	private final boolean parallelQueriesOrdered;
+	private final int bindJoinBatchSize;
+	private final int prefetchBufferSize;
+	private final long prefetchTimeout;
+	private final File schemaCacheFile;
+	private final int schemaRefreshInterval;
+	private ScheduledFuture<?> schemaRefresher = null;
+	private final int statisticsRefreshInterval;
+	private final Map<RelationName,TableStatistics> tableStatistics =
+		new ConcurrentHashMap<RelationName,TableStatistics>();
+	private final ConcurrentMap<RelationName,Future<?>> pendingStatistics =
+		new ConcurrentHashMap<RelationName,Future<?>>();
+	private ScheduledFuture<?> statisticsRefresher = null;
+	private final Map<Connection,StatementCache> statementCaches =
+		Collections.synchronizedMap(new HashMap<Connection,StatementCache>());
+	// Leased pooled connections and the threads that borrowed them; also the lock for waiting borrowers
+	private final Map<Connection,Thread> leases = new HashMap<Connection,Thread>();
+	private final int keepAliveInterval;
+	private final String keepAliveQuery;
 
 	public ConnectedDB(String jdbcURL, String username, String password) {
 		this(jdbcURL, username, password,
@@ -162,7 +206,7 @@ public class ConnectedDB {
 					columnTypes.get(columnName));
 		}
 
-		// create keep alive agent if enabled
+		// keep alive is implemented through validation of pooled connections
 		if (connectionProperties != null && connectionProperties.containsKey(KEEP_ALIVE_PROPERTY)) {
 			int interval = DEFAULT_KEEP_ALIVE_INTERVAL;
 			String query = DEFAULT_KEEP_ALIVE_QUERY;
@@ -172,12 +216,40 @@ public class ConnectedDB {
 			} catch (NumberFormatException ignore) {	} // use default
 			if (connectionProperties.containsKey(KEEP_ALIVE_QUERY_PROPERTY))
 				query = connectionProperties.getProperty(KEEP_ALIVE_QUERY_PROPERTY);
+			this.keepAliveInterval = interval;
+			this.keepAliveQuery = query;
+			log.debug("Keep alive is enabled (interval: " + interval + " seconds, noop query: '" + query + "').");
+		} else {
+			this.keepAliveInterval = -1;
+			this.keepAliveQuery = null;
+		}
+		this.poolMinIdle = intProperty(connectionProperties, POOL_MIN_IDLE_PROPERTY, 0);
+		this.poolMaxSize = Math.max(1, intProperty(connectionProperties, POOL_MAX_SIZE_PROPERTY, DEFAULT_POOL_MAX_SIZE));
+		this.poolMaxWait = intProperty(connectionProperties, POOL_MAX_WAIT_PROPERTY, DEFAULT_POOL_MAX_WAIT);
+		this.statementCacheSize = intProperty(connectionProperties, STATEMENT_CACHE_SIZE_PROPERTY, 0);
+		// More parallel queries than pooled connections would only wait for each other
+		this.parallelQueries = Math.min(poolMaxSize,
+				Math.max(1, intProperty(connectionProperties, PARALLEL_QUERIES_PROPERTY, 1)));
+		this.parallelQueriesOrdered = connectionProperties == null
+				|| !"false".equalsIgnoreCase(connectionProperties.getProperty(PARALLEL_QUERIES_ORDERED_PROPERTY, "true").trim());
+		this.bindJoinBatchSize = Math.max(1, intProperty(connectionProperties, BIND_JOIN_BATCH_SIZE_PROPERTY, 1));
+		this.prefetchBufferSize = Math.max(0, intProperty(connectionProperties, PREFETCH_BUFFER_SIZE_PROPERTY, 0));
+		this.prefetchTimeout = intProperty(connectionProperties, PREFETCH_TIMEOUT_PROPERTY, DEFAULT_PREFETCH_TIMEOUT);
+		this.schemaCacheFile = (connectionProperties == null || !connectionProperties.containsKey(SCHEMA_CACHE_FILE_PROPERTY))
+				? null : new File(connectionProperties.getProperty(SCHEMA_CACHE_FILE_PROPERTY).trim());
+		this.schemaRefreshInterval = intProperty(connectionProperties, SCHEMA_REFRESH_INTERVAL_PROPERTY,
+				schemaCacheFile == null ? 0 : DEFAULT_SCHEMA_REFRESH_INTERVAL);
+		this.statisticsRefreshInterval = intProperty(connectionProperties, STATISTICS_REFRESH_INTERVAL_PROPERTY, -1);
+	}
 
-			this.keepAliveAgent = new KeepAliveAgent(interval, query);
-			this.keepAliveAgent.start();
-			log.debug("Keep alive agent is enabled (interval: " + interval + " seconds, noop query: '" + query + "').");
-		} else
-			this.keepAliveAgent = null;
+	private static int intProperty(Properties properties, String key, int defaultValue) {
+		if (properties == null || !properties.containsKey(key)) return defaultValue;
+		try {
+			return Integer.parseInt(properties.getProperty(key).trim());
+		} catch (NumberFormatException ex) {
+			log.warn("Ignoring non-numeric value for " + key + ": " + properties.getProperty(key));
+			return defaultValue;
+		}
 	}
 
 	public String getJdbcURL() {
@@ -192,13 +264,256 @@ public class ConnectedDB {
 		return password;
 	}
 
-	public Connection connection() {
+	/**
+	 * Returns the primary connection. It is used for schema inspection,
+	 * vendor detection and startup scripts. SQL queries should lease
+	 * their own connection using {@link #borrowConnection()} instead,
+	 * so that they don't block each other.
+	 */
+	public synchronized Connection connection() {
 		if (this.connection == null) {
 			connect();
 		}
 		return this.connection;
 	}
 
+	/**
+	 * Leases a connection from the connection pool. The pool is created
+	 * on first use. The caller has exclusive use of the connection until
+	 * it is handed back using {@link #returnConnection(Connection)}.
+	 * 
+	 * If all pooled connections are in use, the caller waits for one to
+	 * be returned. A thread that already holds a lease doesn't wait, because
+	 * the connection it waits for might be its own, as in nested-loop
+	 * evaluation where an outer query stays open while inner queries run.
+	 * It gets the shared primary connection instead, as all queries did
+	 * before there was a pool. The shared connection has no statement cache.
+	 * 
+	 * @return An initialized JDBC connection
+	 * @throws D2RQException if no connection could be established, or
+	 * 		if none became available within the borrow timeout
+	 */
+	public Connection borrowConnection() {
+		Thread current = Thread.currentThread();
+		long deadline = System.currentTimeMillis() + poolMaxWait;
+		try {
+			GenericObjectPool<Connection> p = pool();
+			while (true) {
+				try {
+					Connection c = p.borrowObject();
+					synchronized (leases) {
+						leases.put(c, current);
+					}
+					return c;
+				} catch (NoSuchElementException exhausted) {
+					// wait below
+				}
+				synchronized (leases) {
+					if (leases.containsValue(current)) {
+						return connection();
+					}
+					long wait = (poolMaxWait < 0) ? Long.MAX_VALUE : deadline - System.currentTimeMillis();
+					if (wait <= 0) {
+						throw new D2RQException(
+								"Timed out waiting for a connection to " + jdbcURL + 
+								" (" + poolMaxSize + " connections in use)", 
+								D2RQException.D2RQ_DB_CONNECTION_FAILED);
+					}
+					// A connection returned just before we started waiting doesn't notify us
+					leases.wait(Math.min(wait, 100));
+				}
+			}
+		} catch (D2RQException ex) {
+			throw ex;
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new D2RQException("Interrupted while waiting for a connection to " + jdbcURL,
+					D2RQException.D2RQ_DB_CONNECTION_FAILED);
+		} catch (Exception ex) {
+			throw new D2RQException(
+					"Database connection to " + jdbcURL + " failed " +
+					"(user: " + username + "): " + ex.getMessage(), 
+					D2RQException.D2RQ_DB_CONNECTION_FAILED);
+		}
+	}
+	
+	/**
+	 * Hands a connection obtained from {@link #borrowConnection()} back
+	 * to the pool. Open statements on the connection should be closed first.
+	 */
+	public void returnConnection(Connection c) {
+		if (c == null) return;
+		GenericObjectPool<Connection> p;
+		synchronized (this) {
+			if (c == connection) return;
+			p = pool;
+		}
+		try {
+			if (p == null) {
+				// Pool was closed while the connection was leased
+				closeConnection(c);
+			} else {
+				p.returnObject(c);
+			}
+		} catch (Exception ex) {
+			log.error("Error while returning connection to pool: " + ex.getMessage(), ex);
+		} finally {
+			synchronized (leases) {
+				leases.remove(c);
+				leases.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * @return The number of pooled connections that are not leased
+	 * 		at the moment
+	 */
+	public int availableConnections() {
+		synchronized (leases) {
+			return poolMaxSize - leases.size();
+		}
+	}
+
+	/**
+	 * Tells whether {@link #prepareStatement(Connection, String)} keeps
+	 * the statements of a connection open for reuse. This is not the case
+	 * for the shared connection, which several queries may use at once.
+	 */
+	public boolean cachesStatements(Connection c) {
+		synchronized (this) {
+			return c != connection;
+		}
+	}
+
+	/**
+	 * Tells whether SQL queries should be run as prepared statements with
+	 * <code>?</code> placeholders, using a per-connection statement cache.
+	 * Enabled by setting the <code>statementCacheSize</code> property.
+	 */
+	public boolean useParameterizedQueries() {
+		return statementCacheSize > 0;
+	}
+	
+	/**
+	 * The maximum number of independent SQL queries of a single union
+	 * (for example, the branches of a find query) that may run at the same
+	 * time, each on its own pooled connection. 1 means sequential execution.
+	 * Set through the <code>parallelQueries</code> property.
+	 */
+	public int parallelQueries() {
+		return parallelQueries;
+	}
+	
+	/**
+	 * Tells whether results of parallel queries are delivered in the same
+	 * order as sequential execution would produce them. Defaults to true;
+	 * set the <code>parallelQueriesOrdered</code> property to false to
+	 * deliver rows as soon as any query produces them.
+	 */
+	public boolean parallelQueriesOrdered() {
+		return parallelQueriesOrdered;
+	}
+	
+	/**
+	 * The number of input bindings that are joined with a SQL table in a
+	 * single query, instead of issuing one query per input binding.
+	 * 1 means no batching. Set through the <code>bindJoinBatchSize</code>
+	 * property.
+	 */
+	public int bindJoinBatchSize() {
+		return bindJoinBatchSize;
+	}
+	
+	/**
+	 * The maximum number of result rows that an {@link SQLIterator} reads
+	 * ahead on a background thread while the consumer processes earlier
+	 * rows. 0 means rows are read on demand. Set through the
+	 * <code>prefetchBufferSize</code> property.
+	 */
+	public int prefetchBufferSize() {
+		return prefetchBufferSize;
+	}
+	
+	/**
+	 * The number of milliseconds that the background reader of an
+	 * {@link SQLIterator} waits for the consumer to take rows from a full
+	 * buffer. After that, the iterator is considered abandoned, and the
+	 * reader closes the result set and hands back the connection.
+	 * Negative values wait indefinitely. Set through the
+	 * <code>prefetchTimeout</code> property.
+	 */
+	public long prefetchTimeout() {
+		return prefetchTimeout;
+	}
+	
+	/**
+	 * Returns a prepared statement for the SQL text from the statement cache
+	 * of a connection obtained from {@link #borrowConnection()}. The
+	 * statement must not be closed by the caller, but its result sets must.
+	 * If the connection {@link #cachesStatements(Connection) doesn't cache
+	 * statements}, a new statement is returned, and the caller must close it.
+	 */
+	public PreparedStatement prepareStatement(Connection c, String sql) throws SQLException {
+		if (!cachesStatements(c)) {
+			return c.prepareStatement(sql);
+		}
+		StatementCache cache;
+		synchronized (statementCaches) {
+			cache = statementCaches.get(c);
+			if (cache == null) {
+				cache = new StatementCache(c, Math.max(1, statementCacheSize));
+				statementCaches.put(c, cache);
+			}
+		}
+		return cache.prepare(sql);
+	}
+	
+	/**
+	 * Removes a statement from the statement cache of a connection, 
+	 * e.g. because its execution failed.
+	 */
+	public void discardStatement(Connection c, String sql) {
+		StatementCache cache = statementCaches.get(c);
+		if (cache != null) {
+			cache.discard(sql);
+		}
+	}
+	
+	private void closeConnection(Connection c) throws SQLException {
+		StatementCache cache = statementCaches.remove(c);
+		if (cache != null) {
+			cache.close();
+		}
+		c.close();
+	}
+
+	private synchronized GenericObjectPool<Connection> pool() throws Exception {
+		if (pool != null) return pool;
+		if (jdbcURL != null && !jdbcURL.toLowerCase().startsWith("jdbc:")) {
+			throw new D2RQException("Not a JDBC URL: " + jdbcURL, D2RQException.D2RQ_DB_CONNECTION_FAILED);
+		}
+		GenericObjectPool<Connection> p = new GenericObjectPool<Connection>(
+				new PooledConnectionFactory(keepAliveQuery));
+		p.setMaxActive(poolMaxSize);
+		p.setMaxIdle(poolMaxSize);
+		p.setMinIdle(Math.min(poolMinIdle, poolMaxSize));
+		// borrowConnection() does the waiting
+		p.setWhenExhaustedAction(GenericObjectPool.WHEN_EXHAUSTED_FAIL);
+		p.setTestOnBorrow(true);
+		if (keepAliveInterval > 0) {
+			p.setTestWhileIdle(true);
+			p.setTimeBetweenEvictionRunsMillis(keepAliveInterval * 1000L);
+		}
+		for (int i = 0; i < p.getMinIdle(); i++) {
+			p.addObject();
+		}
+		log.info("Created connection pool for " + jdbcURL + 
+				" (min idle: " + p.getMinIdle() + ", max size: " + poolMaxSize + ")");
+		pool = p;
+		return pool;
+	}
+
 	public int limit() {
 		return this.limit;
 	}
@@ -242,7 +557,7 @@ public class ConnectedDB {
 		}
 	}
 
-	private Properties getConnectionProperties() {
+	Properties getConnectionProperties() {
 		Properties result = (connectionProperties == null)
 				? new Properties()
 				: (Properties) connectionProperties.clone();
@@ -252,6 +567,19 @@ public class ConnectedDB {
 		if (password != null) {
 			result.setProperty("password", password);
 		}
+		// D2RQ's own settings are not meant for the driver
+		result.remove(POOL_MIN_IDLE_PROPERTY);
+		result.remove(POOL_MAX_SIZE_PROPERTY);
+		result.remove(POOL_MAX_WAIT_PROPERTY);
+		result.remove(STATEMENT_CACHE_SIZE_PROPERTY);
+		result.remove(PARALLEL_QUERIES_PROPERTY);
+		result.remove(PARALLEL_QUERIES_ORDERED_PROPERTY);
+		result.remove(BIND_JOIN_BATCH_SIZE_PROPERTY);
+		result.remove(PREFETCH_BUFFER_SIZE_PROPERTY);
+		result.remove(PREFETCH_TIMEOUT_PROPERTY);
+		result.remove(SCHEMA_CACHE_FILE_PROPERTY);
+		result.remove(SCHEMA_REFRESH_INTERVAL_PROPERTY);
+		result.remove(STATISTICS_REFRESH_INTERVAL_PROPERTY);
 
 		/* 
 		 * Enable cursor support in MySQL
@@ -267,37 +595,252 @@ public class ConnectedDB {
 		return result;
 	}
 
-	public DatabaseSchemaInspector schemaInspector() {
+	public synchronized DatabaseSchemaInspector schemaInspector() {
 		if (schemaInspector == null && jdbcURL != null) {
 			schemaInspector = new DatabaseSchemaInspector(this);
 		}
 		return this.schemaInspector;
 	}
 
+	/**
+	 * Returns the cache of column metadata and unique keys. If the
+	 * <code>schemaCacheFile</code> property is set and the file matches
+	 * the current database, the cache starts out with its contents.
+	 * If the <code>schemaRefreshInterval</code> property is set, the
+	 * cache is replaced with a refreshed copy at that interval.
+	 */
+	private synchronized SchemaCache schemaCache() {
+		if (schemaCache != null) return schemaCache;
+		if (schemaCacheFile != null) {
+			try {
+				schemaCache = SchemaCache.read(schemaCacheFile, jdbcURL, 
+						schemaInspector().schemaFingerprint());
+				if (schemaCache == null) {
+					log.info("Schema cache " + schemaCacheFile + " is missing or out of date");
+				} else {
+					log.info("Read metadata of " + schemaCache.columnCount() + 
+							" columns from schema cache " + schemaCacheFile);
+					schemaCacheFromFile = true;
+				}
+			} catch (IOException ex) {
+				log.warn("Could not read schema cache " + schemaCacheFile + ": " + ex.getMessage());
+			}
+		}
+		if (schemaCache == null) {
+			schemaCache = new SchemaCache();
+		}
+		if (schemaRefreshInterval > 0 && schemaInspector() != null) {
+			schemaRefresher = schemaCacheWriter.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					updateSchemaCache(true);
+				}
+			}, schemaRefreshInterval, schemaRefreshInterval, TimeUnit.SECONDS);
+		}
+		return schemaCache;
+	}
+
+	private final static ScheduledExecutorService schemaCacheWriter = 
+		Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "D2RQ-schema-cache");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+	/**
+	 * Writes the schema metadata gathered so far to the file named in the
+	 * <code>schemaCacheFile</code> property, on a background thread.
+	 * If the metadata was read from that file, it is first refreshed from
+	 * the database, so that schema changes since the file was written
+	 * take effect. Does nothing if the property is not set.
+	 * 
+	 * @return A future for the background task, or <code>null</code>
+	 */
+	public Future<?> saveSchemaCache() {
+		if (schemaCacheFile == null || schemaInspector() == null) return null;
+		schemaCache();
+		final boolean refresh;
+		synchronized (this) {
+			refresh = schemaCacheFromFile;
+		}
+		return schemaCacheWriter.submit(new Runnable() {
+			public void run() {
+				updateSchemaCache(refresh);
+			}
+		});
+	}
+
+	/**
+	 * Re-reads everything in the schema cache from the database and
+	 * makes the result current, so that metadata looked up afterwards
+	 * reflects schema changes. Writes the cache to the
+	 * <code>schemaCacheFile</code> if that property is set.
+	 * Runs on a background thread.
+	 * 
+	 * @param refresh Read the metadata again before writing?
+	 */
+	private void updateSchemaCache(boolean refresh) {
+		Connection c = null;
+		try {
+			c = borrowConnection();
+			DatabaseSchemaInspector inspector = new DatabaseSchemaInspector(this, c);
+			SchemaCache cache = schemaCache();
+			SchemaCache current = cache;
+			if (refresh) {
+				current = cache.refresh(inspector);
+				if (!current.sameContents(cache)) {
+					log.info("Schema metadata has changed; refreshed metadata of " + 
+							current.columnCount() + " columns");
+					synchronized (this) {
+						schemaCache = current;
+						cachedColumnTypes.clear();
+						unknownColumnTypes.clear();
+					}
+				}
+			}
+			if (schemaCacheFile != null) {
+				current.write(schemaCacheFile, jdbcURL, inspector.schemaFingerprint());
+				log.debug("Wrote metadata of " + current.columnCount() + 
+						" columns to schema cache " + schemaCacheFile);
+			}
+		} catch (Exception ex) {
+			log.warn("Could not refresh schema cache: " + ex.getMessage());
+		} finally {
+			returnConnection(c);
+		}
+	}
+
+	private final static ScheduledExecutorService statisticsRefreshTimer = 
+		Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "D2RQ-statistics");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+	/**
+	 * Returns estimated row counts and numbers of distinct values for
+	 * a table, for use in choosing between equivalent query plans.
+	 * Statistics are only gathered if the <code>statisticsRefreshInterval</code>
+	 * property is set. They are never read while a query is being
+	 * translated: on first use, they are requested from a background
+	 * thread, and until they arrive, the table's statistics are unknown.
+	 * They are then refreshed on the background thread at the given interval.
+	 * 
+	 * @param table An original table name, without aliases
+	 * @return The table's statistics, or <code>null</code> if not available
+	 */
+	public TableStatistics tableStatistics(RelationName table) {
+		if (statisticsRefreshInterval < 0) return null;
+		TableStatistics result = tableStatistics.get(table);
+		if (result == null) {
+			requestStatistics(table);
+		}
+		return result;
+	}
+
+	/**
+	 * Starts reading a table's statistics on the background thread,
+	 * unless they are available or already being read.
+	 * 
+	 * @param table An original table name, without aliases
+	 * @return A future for the background task, or <code>null</code> if
+	 * 		the statistics are available or not gathered at all
+	 */
+	public Future<?> requestStatistics(final RelationName table) {
+		if (statisticsRefreshInterval < 0 || tableStatistics.containsKey(table)) return null;
+		FutureTask<Object> task = new FutureTask<Object>(new Runnable() {
+			public void run() {
+				readStatistics(table);
+			}
+		}, null);
+		Future<?> pending = pendingStatistics.putIfAbsent(table, task);
+		if (pending != null) return pending;
+		statisticsRefreshTimer.execute(task);
+		return task;
+	}
+
+	private void readStatistics(RelationName table) {
+		if (schemaInspector() == null) return;
+		Connection c = null;
+		try {
+			c = borrowConnection();
+			TableStatistics result = new DatabaseSchemaInspector(this, c).tableStatistics(table, true);
+			log.debug("Statistics of table " + table + ": " + result);
+			tableStatistics.put(table, result);
+			// On failure, the entry stays, so we don't try again on every query
+			pendingStatistics.remove(table);
+			scheduleStatisticsRefresh();
+		} catch (Exception ex) {
+			log.warn("Could not read statistics of table " + table + ": " + ex.getMessage());
+		} finally {
+			returnConnection(c);
+		}
+	}
+
+	/**
+	 * Re-reads the statistics of all tables whose statistics have
+	 * been read so far. Called periodically from a background thread.
+	 * Rows are not counted again; tables whose row count the database
+	 * doesn't report keep their previous statistics.
+	 */
+	public void refreshStatistics() {
+		if (tableStatistics.isEmpty()) return;
+		Connection c = null;
+		try {
+			c = borrowConnection();
+			DatabaseSchemaInspector inspector = new DatabaseSchemaInspector(this, c);
+			for (RelationName table: tableStatistics.keySet()) {
+				TableStatistics result = inspector.tableStatistics(table, false);
+				if (result.rows() == TableStatistics.UNKNOWN) continue;
+				tableStatistics.put(table, result);
+			}
+			log.debug("Refreshed statistics of " + tableStatistics.size() + " tables");
+		} catch (Exception ex) {
+			log.warn("Could not refresh table statistics: " + ex.getMessage());
+		} finally {
+			returnConnection(c);
+		}
+	}
+
+	private synchronized void scheduleStatisticsRefresh() {
+		if (statisticsRefresher != null || statisticsRefreshInterval <= 0) return;
+		statisticsRefresher = statisticsRefreshTimer.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				refreshStatistics();
+			}
+		}, statisticsRefreshInterval, statisticsRefreshInterval, TimeUnit.SECONDS);
+	}
+
 	/**
 	 * Returns a column's datatype. Caches the types for performance.
 	 * @param column
 	 * @return The column's datatype, or <code>null</code> if unknown
 	 */
 	public DataType columnType(Attribute column) {
-		if (!cachedColumnTypes.containsKey(column)) {
-			if (overriddenColumnTypes.containsKey(column)) {
-				cachedColumnTypes.put(column, overriddenColumnTypes.get(column).dataTypeFor(vendor()));
-			} else if (schemaInspector() == null) {
-				cachedColumnTypes.put(column, GenericType.CHARACTER.dataTypeFor(vendor()));
-			} else {
-				cachedColumnTypes.put(column, schemaInspector().columnType(column));
-			}
+		DataType result = cachedColumnTypes.get(column);
+		if (result != null || unknownColumnTypes.containsKey(column)) return result;
+		if (overriddenColumnTypes.containsKey(column)) {
+			result = overriddenColumnTypes.get(column).dataTypeFor(vendor());
+		} else if (schemaInspector() == null) {
+			result = GenericType.CHARACTER.dataTypeFor(vendor());
+		} else {
+			result = schemaInspector().dataType(
+					schemaCache().columnInfo(column, schemaInspector()));
 		}
-		return cachedColumnTypes.get(column);
+		if (result == null) {
+			unknownColumnTypes.put(column, Boolean.TRUE);
+		} else {
+			cachedColumnTypes.put(column, result);
+		}
+		return result;
 	}
 
 	public boolean isNullable(Attribute column) {
-		if (!cachedColumnNullability.containsKey(column)) {
-			cachedColumnNullability.put(column, 
-					schemaInspector() == null ? true : schemaInspector().isNullable(column));
-		}
-		return cachedColumnNullability.get(column);
+		if (schemaInspector() == null) return true;
+		return schemaCache().columnInfo(column, schemaInspector()).isNullable();
 	}
 
 	/**
@@ -324,7 +867,7 @@ public class ConnectedDB {
 		return connection().getMetaData().getDatabaseProductName();
 	}
 
-	private void ensureVendorInitialized() {
+	private synchronized void ensureVendorInitialized() {
 		if (vendor != null) return;
 		try {
 			String productName = getDatabaseProductType();
@@ -390,9 +933,17 @@ public class ConnectedDB {
 	}
 
 	public Map<String,List<String>> getUniqueKeyColumns(RelationName tableName) {
-		if (!uniqueIndexCache.containsKey(tableName) && schemaInspector() != null)
-			uniqueIndexCache.put(tableName, schemaInspector().uniqueColumns(tableName));
-		return uniqueIndexCache.get(tableName);
+		if (schemaInspector() == null) return null;
+		return schemaCache().uniqueKeyColumns(tableName, schemaInspector());
+	}
+
+	/**
+	 * @return The names of the table's primary key columns, or
+	 * 		<code>null</code> if the schema can't be inspected
+	 */
+	public List<String> getPrimaryKeyColumns(RelationName tableName) {
+		if (schemaInspector() == null) return null;
+		return schemaCache().primaryKeyColumns(tableName, schemaInspector());
 	}
     
 	/**
@@ -411,11 +962,26 @@ public class ConnectedDB {
 	}
 
 	/**
-	 * Closes the database connection and shuts down the keep alive agent.
+	 * Closes the database connection and all idle pooled connections.
+	 * Connections that are still leased are closed when they are returned.
 	 */
-	public void close() {
-		if (keepAliveAgent != null)
-			keepAliveAgent.shutdown();
+	public synchronized void close() {
+		if (statisticsRefresher != null) {
+			statisticsRefresher.cancel(false);
+			statisticsRefresher = null;
+		}
+		if (schemaRefresher != null) {
+			schemaRefresher.cancel(false);
+			schemaRefresher = null;
+		}
+		if (pool != null) try {
+			log.info("Closing connection pool for " + jdbcURL);
+			pool.close();
+		} catch (Exception ex) {
+			log.error("Error while closing connection pool: " + ex.getMessage(), ex);
+		} finally {
+			pool = null;
+		}
 
 		if (connection != null) try {
 			log.info("Closing connection to " + jdbcURL);
@@ -0,0 +1,50 @@
+package de.fuberlin.wiwiss.d2rq.sql;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import de.fuberlin.wiwiss.d2rq.algebra.ProjectionSpec;
+
+/**
+ * A result row returned by a database query, presented as an
+ * array of string values. The mapping from SELECT clause entries
+ * to array positions is shared by all rows of a result set.
+ * 
+ * @see ResultRowDecoder
+ */
+public class ResultRowArray implements ResultRow {
+	private final Map<ProjectionSpec,Integer> columnIndexes;
+	private final String[] values;
+	
+	public ResultRowArray(Map<ProjectionSpec,Integer> columnIndexes, String[] values) {
+		this.columnIndexes = columnIndexes;
+		this.values = values;
+	}
+	
+	public String get(ProjectionSpec projection) {
+		Integer index = columnIndexes.get(projection);
+		return index == null ? null : values[index];
+	}
+
+	public String toString() {
+		List<ProjectionSpec> columns = new ArrayList<ProjectionSpec>(columnIndexes.keySet());
+		Collections.sort(columns);
+		StringBuffer result = new StringBuffer("{");
+		Iterator<ProjectionSpec> it = columns.iterator();
+		while (it.hasNext()) {
+			ProjectionSpec projection = it.next();
+			result.append(projection.toString());
+			result.append(" => '");
+			result.append(get(projection));
+			result.append("'");
+			if (it.hasNext()) {
+				result.append(", ");
+			}
+		}
+		result.append("}");
+		return result.toString();
+	}
+}
@@ -0,0 +1,52 @@
+package de.fuberlin.wiwiss.d2rq.sql;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.fuberlin.wiwiss.d2rq.algebra.ProjectionSpec;
+import de.fuberlin.wiwiss.d2rq.sql.types.DataType;
+
+/**
+ * Turns the rows of a SQL result set into {@link ResultRow}s.
+ * The {@link DataType} of each column is looked up only once,
+ * from the result set's metadata, and all rows share a single
+ * mapping from {@link ProjectionSpec}s to column positions.
+ */
+public class ResultRowDecoder {
+	private final DataType[] dataTypes;
+	private final Map<ProjectionSpec,Integer> columnIndexes;
+	
+	/**
+	 * @param metaData Metadata of the result set; may be <code>null</code>
+	 * @param projectionSpecs The SELECT clause entries, in order
+	 * @param database The database that produced the result set
+	 */
+	public ResultRowDecoder(ResultSetMetaData metaData, 
+			List<ProjectionSpec> projectionSpecs, ConnectedDB database)
+	throws SQLException {
+		int size = projectionSpecs.size();
+		dataTypes = new DataType[size];
+		columnIndexes = new HashMap<ProjectionSpec,Integer>(size * 2);
+		for (int i = 0; i < size; i++) {
+			int jdbcType = metaData == null ? Integer.MIN_VALUE : metaData.getColumnType(i + 1);
+			String name = metaData == null ? "UNKNOWN" : metaData.getColumnTypeName(i + 1);
+			dataTypes[i] = database.vendor().getDataType(jdbcType, name.toUpperCase(), -1);
+			columnIndexes.put(projectionSpecs.get(i), i);
+		}
+	}
+
+	/**
+	 * Reads the values of the result set's current row.
+	 */
+	public ResultRow decode(ResultSet resultSet) throws SQLException {
+		String[] values = new String[dataTypes.length];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = dataTypes[i].value(resultSet, i + 1);
+		}
+		return new ResultRowArray(columnIndexes, values);
+	}
+}
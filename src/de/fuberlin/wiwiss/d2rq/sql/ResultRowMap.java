@@ -1,7 +1,6 @@
 package de.fuberlin.wiwiss.d2rq.sql;
 
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -23,13 +22,10 @@ public class ResultRowMap implements ResultRow {
 	public static ResultRowMap fromResultSet(ResultSet resultSet, 
 			List<ProjectionSpec> projectionSpecs, ConnectedDB database) 
 	throws SQLException {
+		ResultRow row = new ResultRowDecoder(resultSet.getMetaData(), projectionSpecs, database).decode(resultSet);
 		Map<ProjectionSpec,String> result = new HashMap<ProjectionSpec,String>();
-		ResultSetMetaData metaData = resultSet.getMetaData();
-		for (int i = 0; i < projectionSpecs.size(); i++) {
-			ProjectionSpec key = projectionSpecs.get(i);
-			int jdbcType = metaData == null ? Integer.MIN_VALUE : metaData.getColumnType(i + 1);
-			String name = metaData == null ? "UNKNOWN" : metaData.getColumnTypeName(i + 1);
-			result.put(key, database.vendor().getDataType(jdbcType, name.toUpperCase(), -1).value(resultSet, i + 1));
+		for (ProjectionSpec projection: projectionSpecs) {
+			result.put(projection, row.get(projection));
 		}
 		return new ResultRowMap(result);
 	}
@@ -1,11 +1,22 @@
 package de.fuberlin.wiwiss.d2rq.sql;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -16,32 +27,88 @@ import com.hp.hpl.jena.util.iterator.ClosableIterator;
 import de.fuberlin.wiwiss.d2rq.D2RQException;
 import de.fuberlin.wiwiss.d2rq.algebra.ProjectionSpec;
 import de.fuberlin.wiwiss.d2rq.map.Database;
+import de.fuberlin.wiwiss.d2rq.metrics.Metrics;
+import de.fuberlin.wiwiss.d2rq.metrics.QueryTrace;
 
 /**
  * Executes an SQL query and delivers result rows as an iterator over {@link ResultRow}s.
  * The query is executed lazily. This class logs all executed SQL queries.
+ * 
+ * Each iterator leases its own connection from the {@link ConnectedDB}'s pool
+ * when the query is executed, and hands it back when the results are
+ * exhausted or the iterator is closed.
+ * 
+ * If the database has a {@link ConnectedDB#prefetchBufferSize()}, rows are
+ * read from the result set in batches on a background thread, so that
+ * network reads overlap with the consumer's work. The background reader
+ * stops when the buffer is full, and stops for good when the iterator is
+ * closed or cancelled. Closing the iterator cancels a statement that is
+ * still running. If the consumer takes no rows from the full buffer for
+ * {@link ConnectedDB#prefetchTimeout()}, the iterator is considered
+ * abandoned: the reader closes the result set and hands back the connection.
  *
  * @author Chris Bizer chris@bizer.de
  * @author Richard Cyganiak (richard@cyganiak.de)
  */
 public class SQLIterator implements ClosableIterator<ResultRow> {
 	private final static Log log = LogFactory.getLog(SQLIterator.class);
+	private final static Object END_OF_RESULTS = new Object();
+	private final static int PREFETCH_BATCHES = 8;
+	private final static ExecutorService prefetchExecutor =
+		Executors.newCachedThreadPool(new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "D2RQ-prefetch-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
 	private String sql;
+	private List<SQLParameter> parameters;
 	private List<ProjectionSpec> columns;
 	private ConnectedDB database;
+	private Connection connection = null;
 	private volatile Statement statement = null;
-	private ResultSet resultSet = null;
+	private volatile ResultSet resultSet = null;
+	private ResultRowDecoder decoder = null;
 	private ResultRow prefetchedRow = null;
 	private int numCols = 0;
 	private boolean queryExecuted = false;
 	private boolean explicitlyClosed = false;
 	private volatile boolean cancelled = false;
+	private final QueryTrace trace;
+	private long startNanos = 0;
+	private volatile boolean firstRowTimed = false;
+	private long firstRowNanos = -1;
+	private long rowCount = 0;
+	private BlockingQueue<Object> prefetchBuffer = null;
+	private CountDownLatch prefetchDone = null;
+	private volatile boolean stopPrefetch = false;
+	private volatile boolean prefetchAbandoned = false;
+	private boolean prefetchFinished = false;
+	private List<ResultRow> currentBatch = null;
+	private int currentBatchIndex = 0;
 
 	public SQLIterator(String sql, List<ProjectionSpec> columns, ConnectedDB db) {
+		this(sql, null, columns, db);
+    }
+
+	/**
+	 * @param sql SQL text with <code>?</code> placeholders
+	 * @param parameters Values for the placeholders; if <code>null</code>,
+	 * 		the query is run as a plain statement
+	 * @param columns The projection specs of the SELECT clause
+	 * @param db The database to query
+	 * @see SelectStatementBuilder#getParameterizedSQLStatement()
+	 */
+	public SQLIterator(String sql, List<SQLParameter> parameters, 
+			List<ProjectionSpec> columns, ConnectedDB db) {
 		this.sql = sql;
+		this.parameters = parameters;
 		this.columns = columns;
 		this.database = db;
-    }
+		this.trace = QueryTrace.current();
+	}
 
 	public boolean hasNext() {
 		if (cancelled) {
@@ -52,7 +119,11 @@ public class SQLIterator implements ClosableIterator<ResultRow> {
 		}
 		if (prefetchedRow == null) {
 		    ensureQueryExecuted();
-			tryFetchNextRow();
+		    if (prefetchDone != null) {
+		    	takeNextRow();
+		    } else {
+		    	tryFetchNextRow();
+		    }
 		}
 		return prefetchedRow != null;
 	}
@@ -83,19 +154,178 @@ public class SQLIterator implements ClosableIterator<ResultRow> {
 	    }
 		try {
 			if (!this.resultSet.next()) {
+				recordFirstRow();
 				this.resultSet.close();
 				this.resultSet = null;
 		    	this.prefetchedRow = null;
+		    	releaseConnection();
 		    	return;
 			}
-			BeanCounter.totalNumberOfReturnedRows++;
-			BeanCounter.totalNumberOfReturnedFields+=this.numCols;
-			prefetchedRow = ResultRowMap.fromResultSet(resultSet, columns, database);
+			recordRow();
+			prefetchedRow = decoder.decode(resultSet);
 		} catch (SQLException ex) {
 			throw new D2RQException(ex);
 		}
 	}
 	
+	private void startPrefetch() {
+		final int batchSize = Math.max(1, database.prefetchBufferSize() / PREFETCH_BATCHES);
+		prefetchBuffer = new ArrayBlockingQueue<Object>(PREFETCH_BATCHES);
+		prefetchDone = new CountDownLatch(1);
+		prefetchExecutor.execute(new Runnable() {
+			public void run() {
+				try {
+					List<ResultRow> batch = new ArrayList<ResultRow>(batchSize);
+					while (!stopPrefetch) {
+						if (!resultSet.next()) {
+							recordFirstRow();
+							resultSet.close();
+							resultSet = null;
+							if (!batch.isEmpty()) offer(batch);
+							offer(END_OF_RESULTS);
+							return;
+						}
+						recordRow();
+						batch.add(decoder.decode(resultSet));
+						if (batch.size() == batchSize) {
+							offer(batch);
+							batch = new ArrayList<ResultRow>(batchSize);
+						}
+					}
+				} catch (Throwable t) {
+					offer(t);
+				} finally {
+					if (prefetchAbandoned) {
+						closeAbandoned();
+					}
+					prefetchDone.countDown();
+				}
+			}
+			private void offer(Object o) {
+				long timeout = database.prefetchTimeout();
+				long deadline = System.currentTimeMillis() + timeout;
+				try {
+					while (!stopPrefetch) {
+						if (prefetchBuffer.offer(o, 100, TimeUnit.MILLISECONDS)) return;
+						if (timeout >= 0 && System.currentTimeMillis() >= deadline) {
+							log.warn("Results not read for " + timeout + " ms, closing abandoned query: " + sql);
+							prefetchAbandoned = true;
+							stopPrefetch = true;
+						}
+					}
+				} catch (InterruptedException ex) {
+					stopPrefetch = true;
+				}
+			}
+		});
+	}
+	
+	@SuppressWarnings("unchecked")
+	private void takeNextRow() {
+		while (currentBatch == null || currentBatchIndex == currentBatch.size()) {
+			currentBatch = null;
+			if (prefetchFinished) {
+				prefetchedRow = null;
+				return;
+			}
+			Object o;
+			try {
+				o = prefetchBuffer.poll(100, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new D2RQException("Interrupted while reading results: " + sql);
+			}
+			if (o == null) {
+				if (prefetchAbandoned) {
+					// The reader gave up and is gone; the buffer is drained
+					prefetchFinished = true;
+					awaitPrefetch();
+					throw new D2RQException("Results were not read for " + 
+							database.prefetchTimeout() + " ms and have been discarded: " + sql);
+				}
+				continue;
+			}
+			if (o == END_OF_RESULTS) {
+				prefetchFinished = true;
+				awaitPrefetch();
+				prefetchedRow = null;
+				releaseConnection();
+				return;
+			}
+			if (o instanceof Throwable) {
+				prefetchFinished = true;
+				awaitPrefetch();
+				try {
+					close();
+				} catch (D2RQException ignore) {
+					// report the original exception
+				}
+				if (cancelled) {
+					log.debug("SQL query execution cancelled", (Throwable) o);
+					throw new QueryCancelledException();
+				}
+				if (o instanceof SQLException) {
+					throw new D2RQException(((SQLException) o).getMessage() + ": " + sql);
+				}
+				if (o instanceof RuntimeException) throw (RuntimeException) o;
+				if (o instanceof Error) throw (Error) o;
+				throw new D2RQException((Throwable) o);
+			}
+			currentBatch = (List<ResultRow>) o;
+			currentBatchIndex = 0;
+		}
+		prefetchedRow = currentBatch.get(currentBatchIndex++);
+	}
+	
+	private void recordRow() {
+		recordFirstRow();
+		rowCount++;
+		Metrics.SQL_ROWS.increment();
+		Metrics.SQL_FIELDS.add(numCols);
+	}
+	
+	private void recordFirstRow() {
+		if (firstRowTimed) return;
+		firstRowTimed = true;
+		firstRowNanos = System.nanoTime() - startNanos;
+		Metrics.SQL_FIRST_ROW_TIME.record(firstRowNanos);
+	}
+	
+	/**
+	 * Called on the background reader's thread when the consumer has
+	 * stopped taking rows; nobody else will close the result set.
+	 */
+	private void closeAbandoned() {
+		try {
+			if (resultSet != null) resultSet.close();
+		} catch (SQLException ex) {
+			log.debug("Error closing abandoned result set", ex);
+		} finally {
+			resultSet = null;
+		}
+		try {
+			releaseConnection();
+		} catch (D2RQException ex) {
+			log.warn("Error releasing connection of abandoned query", ex);
+		}
+	}
+	
+	/**
+	 * Waits until the background reader has stopped touching the result set.
+	 */
+	private void awaitPrefetch() {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				prefetchDone.await();
+				break;
+			} catch (InterruptedException ex) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+	}
+	
 	/**
 	 * Make sure the SQL result set is closed and freed. Will auto-close when the
 	 * record-set is exhausted.
@@ -104,6 +334,16 @@ public class SQLIterator implements ClosableIterator<ResultRow> {
 		if (explicitlyClosed) return;
 		log.debug("Closing SQLIterator");
 	    explicitlyClosed = true;
+	    if (prefetchDone != null) {
+	    	stopPrefetch = true;
+	    	if (prefetchDone.getCount() > 0) {
+	    		// The reader may be blocked inside the driver
+	    		cancelStatement();
+	    	}
+	    	prefetchBuffer.clear();
+	    	awaitPrefetch();
+	    	currentBatch = null;
+	    }
 	    
 	    /* JDBC 4+ requires manual closing of result sets and statements */
 	    if (this.resultSet != null) {
@@ -111,46 +351,71 @@ public class SQLIterator implements ClosableIterator<ResultRow> {
 				this.resultSet.close();
 			} catch (SQLException ex) {
 				throw new D2RQException(ex.getMessage() + "; query was: " + this.sql);
+			} finally {
+				this.resultSet = null;
 			}
 	    }
-	    
-	    if (this.database != null) {
-			try {
-				this.database.vendor().beforeClose(this.database.connection());
-			} catch (SQLException ex) {
-				throw new D2RQException(ex.getMessage() + "; query was: " + this.sql);
-			}
-	    }
-	    if (this.statement != null) {
-			try {
-				this.statement.close();
-			} catch (SQLException ex) {
-				throw new D2RQException(ex.getMessage() + "; query was: " + this.sql);
-			}
-	    }
+	    releaseConnection();
+	}
 
-	    if (this.database != null) {
-			try {
-				this.database.vendor().afterClose(this.database.connection());
-			} catch (SQLException ex) {
-				throw new D2RQException(ex.getMessage() + "; query was: " + this.sql);
+	/**
+	 * Closes the statement and hands the leased connection back to the pool.
+	 */
+	private synchronized void releaseConnection() {
+		if (this.connection == null) return;
+		long totalNanos = System.nanoTime() - startNanos;
+		Metrics.SQL_TOTAL_TIME.record(totalNanos);
+		if (trace != null) {
+			trace.addStatement(parameters == null ? sql : sql + " " + parameters,
+					totalNanos, firstRowNanos, rowCount);
+		}
+		try {
+			this.database.vendor().beforeClose(this.connection);
+			// Prepared statements stay open in the connection's statement cache
+			if (this.statement != null && (this.parameters == null
+					|| !this.database.cachesStatements(this.connection))) {
+				this.statement.close();
 			}
-	    }
+			this.database.vendor().afterClose(this.connection);
+		} catch (SQLException ex) {
+			throw new D2RQException(ex.getMessage() + "; query was: " + this.sql);
+		} finally {
+			this.statement = null;
+			this.database.returnConnection(this.connection);
+			this.connection = null;
+		}
 	}
 
 	public synchronized void cancel() {
 		cancelled = true;
 		if (statement != null) {
 			try {
-				database.vendor().beforeCancel(database.connection());
+				database.vendor().beforeCancel(connection);
 				statement.cancel();
-				database.vendor().afterCancel(database.connection());
+				database.vendor().afterCancel(connection);
 			} catch (SQLException ex) {
 				throw new RuntimeException(ex);
 			}
 		}
 	}
 	
+	/**
+	 * Cancels the running statement on close, without reporting the
+	 * iterator as cancelled.
+	 */
+	private synchronized void cancelStatement() {
+		if (statement != null) {
+			try {
+				database.vendor().beforeCancel(connection);
+				statement.cancel();
+				database.vendor().afterCancel(connection);
+			} catch (SQLException ex) {
+				// Not all drivers can cancel; the reader then stops after the current row
+				log.debug("Could not cancel statement on close", ex);
+			}
+		}
+	}
+	
 	public void remove() {
 		throw new RuntimeException("Operation not supported");
 	}
@@ -160,24 +425,49 @@ public class SQLIterator implements ClosableIterator<ResultRow> {
 	    	return;
 	    }
     	this.queryExecuted = true;
-    	log.info(sql);
-    	BeanCounter.totalNumberOfExecutedSQLQueries++;
+    	log.info(parameters == null ? sql : sql + " " + parameters);
+    	Metrics.SQL_QUERIES.increment();
+    	startNanos = Metrics.SQL_TOTAL_TIME.start();
+    	Connection con = null;
         try {
-			Connection con = this.database.connection();
-			this.statement = con.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			con = leaseConnection();
+			if (parameters == null) {
+				this.statement = con.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			} else {
+				PreparedStatement prepared = database.prepareStatement(con, sql);
+				for (int i = 0; i < parameters.size(); i++) {
+					parameters.get(i).bind(prepared, i + 1);
+				}
+				this.statement = prepared;
+			}
 			if (database.fetchSize() != Database.NO_FETCH_SIZE) {
 				try {
 					this.statement.setFetchSize(database.fetchSize());
 				}
 				catch (SQLException e) {} /* Some drivers don't support fetch sizes, e.g. JDBC-ODBC */
 			}
-			database.vendor().beforeQuery(database.connection());
-			this.resultSet = this.statement.executeQuery(this.sql);
-			database.vendor().afterQuery(database.connection());
+			database.vendor().beforeQuery(con);
+			this.resultSet = (parameters == null)
+					? this.statement.executeQuery(this.sql)
+					: ((PreparedStatement) this.statement).executeQuery();
+			database.vendor().afterQuery(con);
 
 			log.debug("SQL result set created");
-			this.numCols = this.resultSet.getMetaData().getColumnCount();
+			ResultSetMetaData metaData = this.resultSet.getMetaData();
+			this.numCols = metaData.getColumnCount();
+			this.decoder = new ResultRowDecoder(metaData, columns, database);
+			if (database.prefetchBufferSize() > 0) {
+				startPrefetch();
+			}
         } catch (SQLException ex) {
+        	if (con != null && parameters != null) {
+        		database.discardStatement(con, sql);
+        	}
+        	try {
+        		releaseConnection();
+        	} catch (D2RQException ignore) {
+        		// report the original exception
+        	}
         	if (cancelled) {
         		log.debug("SQL query execution cancelled", ex);
         		throw new QueryCancelledException();
@@ -185,4 +475,9 @@ public class SQLIterator implements ClosableIterator<ResultRow> {
         	throw new D2RQException(ex.getMessage() + ": " + this.sql);
         }
     }
+
+	private synchronized Connection leaseConnection() {
+		this.connection = this.database.borrowConnection();
+		return this.connection;
+	}
 }
@@ -0,0 +1,53 @@
+package de.fuberlin.wiwiss.d2rq.sql;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import de.fuberlin.wiwiss.d2rq.sql.types.DataType;
+
+/**
+ * A value that is passed to a prepared statement in place of a
+ * <code>?</code> placeholder. It knows the {@link DataType} of the
+ * column it is compared to, which determines how it is bound.
+ */
+public class SQLParameter {
+	private final String value;
+	private final DataType dataType;
+	
+	public SQLParameter(String value, DataType dataType) {
+		this.value = value;
+		this.dataType = dataType;
+	}
+	
+	public String value() {
+		return value;
+	}
+	
+	public DataType dataType() {
+		return dataType;
+	}
+	
+	/**
+	 * Binds the value to a placeholder of a prepared statement.
+	 * @param statement A prepared statement
+	 * @param index The parameter index; leftmost placeholder is 1
+	 */
+	public void bind(PreparedStatement statement, int index) throws SQLException {
+		dataType.bindParameter(statement, index, value);
+	}
+	
+	public String toString() {
+		return "'" + value + "'@" + dataType;
+	}
+	
+	public boolean equals(Object other) {
+		if (!(other instanceof SQLParameter)) return false;
+		SQLParameter otherParameter = (SQLParameter) other;
+		return value.equals(otherParameter.value) && 
+				dataType.equals(otherParameter.dataType);
+	}
+	
+	public int hashCode() {
+		return value.hashCode() ^ dataType.hashCode();
+	}
+}
@@ -2,9 +2,10 @@ package de.fuberlin.wiwiss.d2rq.sql;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.TreeSet;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -14,18 +15,29 @@ import de.fuberlin.wiwiss.d2rq.D2RQException;
 import de.fuberlin.wiwiss.d2rq.algebra.AliasMap;
 import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
 import de.fuberlin.wiwiss.d2rq.algebra.Join;
+import de.fuberlin.wiwiss.d2rq.algebra.LeftOuterJoin;
 import de.fuberlin.wiwiss.d2rq.algebra.OrderSpec;
 import de.fuberlin.wiwiss.d2rq.algebra.ProjectionSpec;
 import de.fuberlin.wiwiss.d2rq.algebra.Relation;
 import de.fuberlin.wiwiss.d2rq.algebra.RelationName;
+import de.fuberlin.wiwiss.d2rq.expr.Aggregate;
+import de.fuberlin.wiwiss.d2rq.expr.AttributeExpr;
 import de.fuberlin.wiwiss.d2rq.expr.Conjunction;
+import de.fuberlin.wiwiss.d2rq.expr.Constant;
 import de.fuberlin.wiwiss.d2rq.expr.Equality;
 import de.fuberlin.wiwiss.d2rq.expr.Expression;
+import de.fuberlin.wiwiss.d2rq.sql.types.DataType;
 
 
 /**
  * Collects parts of a SELECT query and delivers a corresponding SQL statement.
  * Used within TripleResultSets.
+ * 
+ * If any of the relation's projections is an {@link Aggregate}, then
+ * the query is grouped by all the other projections.
+ * 
+ * The relation's {@link LeftOuterJoin}s are written as
+ * <code>LEFT OUTER JOIN</code> clauses after the other tables.
  *
  * @author Chris Bizer chris@bizer.de
  * @author Richard Cyganiak (richard@cyganiak.de)
@@ -39,9 +51,30 @@ public class SelectStatementBuilder {
 	private Expression cachedCondition = null;
 	private boolean eliminateDuplicates = false;
 	private AliasMap aliases = AliasMap.NO_ALIASES;
-	private Collection<RelationName> mentionedTables = new HashSet<RelationName>(5); // in their alias forms	
+	// in their alias forms; sorted so that equal queries yield identical SQL text
+	private Collection<RelationName> mentionedTables = new TreeSet<RelationName>();
+	private List<LeftOuterJoin> leftOuterJoins;
 	private List<OrderSpec> orderSpecs;
 	private int limit;
+	private int offset = 0;
+	private String parameterizedSQL = null;
+	private List<SQLParameter> parameters = null;
+	
+	/**
+	 * Creates a statement that skips a number of rows at the start of
+	 * the result. The relation's {@link Relation#limit()} counts
+	 * from the first row after the skipped ones.
+	 * @param offset Number of rows to skip
+	 * @throws IllegalArgumentException if the database can't skip rows
+	 * @see de.fuberlin.wiwiss.d2rq.sql.vendor.Vendor#getOffsetAsQueryAppendage(int)
+	 */
+	public SelectStatementBuilder(Relation relation, int offset) {
+		this(relation);
+		if (offset != 0 && database.vendor().getOffsetAsQueryAppendage(offset) == null) {
+			throw new IllegalArgumentException("Cannot skip rows in " + database.vendor());
+		}
+		this.offset = offset;
+	}
 	
 	public SelectStatementBuilder(Relation relation) {
 		if (relation.isTrivial()) {
@@ -70,6 +103,11 @@ public class SelectStatementBuilder {
 	
 		addMentionedTablesFromConditions();
 		
+		this.leftOuterJoins = relation.leftOuterJoins();
+		for (LeftOuterJoin join: leftOuterJoins) {
+			mentionedTables.removeAll(join.tables());
+		}
+		
 		if (eliminateDuplicates) {
 			for (ProjectionSpec projection: selectSpecs) {
 				for (Attribute column: projection.requiredAttributes()) {
@@ -98,7 +136,42 @@ public class SelectStatementBuilder {
 		}
 	}
 	
+	/**
+	 * Returns the SQL statement, with all constants written as SQL literals.
+	 */
 	public String getSQLStatement() {
+		return buildSQLStatement(null);
+	}
+	
+	/**
+	 * Returns the SQL statement for execution as a prepared statement.
+	 * Constants that are compared to a column are replaced with
+	 * <code>?</code> placeholders, so that queries of the same shape
+	 * yield identical SQL text. The values are available from
+	 * {@link #getParameters()}.
+	 */
+	public String getParameterizedSQLStatement() {
+		if (parameterizedSQL == null) {
+			parameters = new ArrayList<SQLParameter>();
+			parameterizedSQL = buildSQLStatement(parameters);
+		}
+		return parameterizedSQL;
+	}
+	
+	/**
+	 * Returns the values to be bound to the placeholders of
+	 * {@link #getParameterizedSQLStatement()}, in order of appearance.
+	 */
+	public List<SQLParameter> getParameters() {
+		getParameterizedSQLStatement();
+		return parameters;
+	}
+	
+	/**
+	 * @param parameters Collects parameter values; if <code>null</code>,
+	 * 		all constants are written as literals
+	 */
+	private String buildSQLStatement(List<SQLParameter> parameters) {
 		
 		StringBuffer result = new StringBuffer("SELECT ");
 		
@@ -126,24 +199,49 @@ public class SelectStatementBuilder {
 		
 		
 		result.append(" FROM ");
-		Iterator<RelationName> tableIt = mentionedTables.iterator();
-		while (tableIt.hasNext()) {			
-			RelationName tableName = tableIt.next();
-			if (this.aliases.isAlias(tableName)) {
-				result.append(database.vendor().getRelationNameAliasExpression(
-						aliases.originalOf(tableName), tableName));
-			} else {
-				result.append(database.vendor().quoteRelationName(tableName));
+		// Comma joins bind less tightly than LEFT OUTER JOIN
+		appendTables(result, mentionedTables, 
+				leftOuterJoins.isEmpty() ? ", " : " CROSS JOIN ");
+		for (LeftOuterJoin join: leftOuterJoins) {
+			result.append(" LEFT OUTER JOIN ");
+			Collection<RelationName> tables = new TreeSet<RelationName>(join.tables());
+			if (tables.size() > 1) {
+				result.append("(");
 			}
-			if (tableIt.hasNext()) {
-				result.append(", ");
+			appendTables(result, tables, " CROSS JOIN ");
+			if (tables.size() > 1) {
+				result.append(")");
+			}
+			result.append(" ON ");
+			Expression on = join.onCondition();
+			// ON needs a boolean expression, not just a truth value
+			if (on.isTrue()) {
+				result.append("1=1");
+			} else if (on.isFalse()) {
+				result.append("1=0");
+			} else {
+				result.append(on.toSQL(database, aliases));
 			}
-		
 		}
 		
 		if (!condition().isTrue()) {
 			result.append(" WHERE ");
-			result.append(condition().toSQL(this.database, this.aliases));
+			if (parameters == null) {
+				result.append(condition().toSQL(this.database, this.aliases));
+			} else {
+				result.append(parameterizedConditionSQL(parameters));
+			}
+		}
+
+		Iterator<ProjectionSpec> groupIt = groupSpecs().iterator();
+		if (groupIt.hasNext()) {
+			result.append(" GROUP BY ");
+		}
+		while (groupIt.hasNext()) {
+			result.append(groupIt.next().toExpression().toSQL(database, aliases));
+			if (groupIt.hasNext()) {
+				result.append(", ");
+			}
 		}
 
 		Iterator<OrderSpec> orderIt = orderSpecs.iterator();
@@ -162,10 +260,122 @@ public class SelectStatementBuilder {
 			result.append(" ");
 			result.append(s);
 		}
+		
+		s = database.vendor().getOffsetAsQueryAppendage(offset);
+		if (!"".equals(s)) {
+			result.append(" ");
+			result.append(s);
+		}
 						
 		return result.toString();
 	}
 	
+	private void appendTables(StringBuffer result, Collection<RelationName> tables, String separator) {
+		Iterator<RelationName> tableIt = tables.iterator();
+		while (tableIt.hasNext()) {			
+			RelationName tableName = tableIt.next();
+			if (this.aliases.isAlias(tableName)) {
+				result.append(database.vendor().getRelationNameAliasExpression(
+						aliases.originalOf(tableName), tableName));
+			} else {
+				result.append(database.vendor().quoteRelationName(tableName));
+			}
+			if (tableIt.hasNext()) {
+				result.append(separator);
+			}
+		}
+	}
+	
+	/**
+	 * @return The non-aggregate projections if there are any aggregates,
+	 * 		or an empty list if the query is not grouped
+	 */
+	private List<ProjectionSpec> groupSpecs() {
+		List<ProjectionSpec> result = new ArrayList<ProjectionSpec>();
+		boolean hasAggregates = false;
+		for (ProjectionSpec projection: selectSpecs) {
+			if (projection.toExpression() instanceof Aggregate) {
+				hasAggregates = true;
+			} else {
+				result.add(projection);
+			}
+		}
+		return hasAggregates ? result : Collections.<ProjectionSpec>emptyList();
+	}
+	
+	/**
+	 * Writes the condition like {@link Conjunction#toSQL} would, but 
+	 * with placeholders in those terms that compare a column to a constant.
+	 */
+	private String parameterizedConditionSQL(List<SQLParameter> parameters) {
+		Expression condition = condition();
+		Collection<Expression> terms = (condition instanceof Conjunction)
+				? ((Conjunction) condition).expressions()
+				: Collections.singleton(condition);
+		List<ConditionFragment> fragments = new ArrayList<ConditionFragment>(terms.size());
+		for (Expression term: terms) {
+			fragments.add(toFragment(term));
+		}
+		Collections.sort(fragments);
+		StringBuffer result = new StringBuffer();
+		Iterator<ConditionFragment> it = fragments.iterator();
+		while (it.hasNext()) {
+			ConditionFragment fragment = it.next();
+			result.append(fragment.sql);
+			if (fragment.parameter != null) {
+				parameters.add(fragment.parameter);
+			}
+			if (it.hasNext()) {
+				result.append(" AND ");
+			}
+		}
+		return (condition instanceof Conjunction) ? "(" + result + ")" : result.toString();
+	}
+	
+	private ConditionFragment toFragment(Expression term) {
+		if (term instanceof Equality) {
+			Expression expr1 = ((Equality) term).expr1();
+			Expression expr2 = ((Equality) term).expr2();
+			SQLParameter parameter = toParameter(expr1, expr2);
+			if (parameter != null) {
+				return new ConditionFragment(expr1.toSQL(database, aliases) + " = ?", parameter);
+			}
+			parameter = toParameter(expr2, expr1);
+			if (parameter != null) {
+				return new ConditionFragment("? = " + expr2.toSQL(database, aliases), parameter);
+			}
+		}
+		return new ConditionFragment(term.toSQL(database, aliases), null);
+	}
+	
+	/**
+	 * @return A parameter for the constant if it is compared to the
+	 * 		attribute and its value can be bound, or <code>null</code> 
+	 */
+	private SQLParameter toParameter(Expression attribute, Expression constant) {
+		if (!(attribute instanceof AttributeExpr) || !(constant instanceof Constant)) {
+			return null;
+		}
+		Attribute trackingAttribute = ((Constant) constant).attributeForTrackingType();
+		if (trackingAttribute == null) return null;
+		String value = ((Constant) constant).value();
+		DataType dataType = database.columnType(aliases.originalOf(trackingAttribute));
+		if (dataType == null || !dataType.isParameterizable(value)) return null;
+		return new SQLParameter(value, dataType);
+	}
+
+	private static class ConditionFragment implements Comparable<ConditionFragment> {
+		final String sql;
+		final SQLParameter parameter;
+		ConditionFragment(String sql, SQLParameter parameter) {
+			this.sql = sql;
+			this.parameter = parameter;
+		}
+		public int compareTo(ConditionFragment other) {
+			return sql.compareTo(other.sql);
+		}
+	}
+	
 	/**
 	 * Returns the projection specs used in this query, in order of appearance 
 	 * in the "SELECT x, y, z" part of the query.
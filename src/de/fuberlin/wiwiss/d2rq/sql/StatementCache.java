@@ -0,0 +1,82 @@
+package de.fuberlin.wiwiss.d2rq.sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A least-recently-used cache of {@link PreparedStatement}s for a single
+ * connection, keyed by SQL text. Statements that drop out of the cache
+ * are closed.
+ * 
+ * The cache is not meant to be shared between threads; it is only used
+ * by whoever has currently leased the connection from the pool.
+ */
+class StatementCache {
+	private final static Log log = LogFactory.getLog(StatementCache.class);
+	
+	private final Connection connection;
+	private final Map<String,PreparedStatement> statements;
+	
+	StatementCache(Connection connection, final int maxSize) {
+		this.connection = connection;
+		this.statements = new LinkedHashMap<String,PreparedStatement>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<String,PreparedStatement> eldest) {
+				if (size() <= maxSize) return false;
+				closeQuietly(eldest.getValue());
+				return true;
+			}
+		};
+	}
+	
+	/**
+	 * Returns a cached statement for the SQL text, or prepares a new one.
+	 */
+	synchronized PreparedStatement prepare(String sql) throws SQLException {
+		PreparedStatement result = statements.get(sql);
+		if (result == null) {
+			result = connection.prepareStatement(sql, 
+					ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			statements.put(sql, result);
+		}
+		return result;
+	}
+	
+	/**
+	 * Closes and forgets the statement for the SQL text, e.g. after an error.
+	 */
+	synchronized void discard(String sql) {
+		PreparedStatement statement = statements.remove(sql);
+		if (statement != null) {
+			closeQuietly(statement);
+		}
+	}
+	
+	synchronized int size() {
+		return statements.size();
+	}
+	
+	/**
+	 * Closes all cached statements.
+	 */
+	synchronized void close() {
+		for (PreparedStatement statement: statements.values()) {
+			closeQuietly(statement);
+		}
+		statements.clear();
+	}
+	
+	private void closeQuietly(PreparedStatement statement) {
+		try {
+			statement.close();
+		} catch (SQLException ex) {
+			log.debug("Error while closing cached statement: " + ex.getMessage());
+		}
+	}
+}
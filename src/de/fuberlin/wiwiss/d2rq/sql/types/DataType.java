@@ -1,5 +1,6 @@
 package de.fuberlin.wiwiss.d2rq.sql.types;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
@@ -92,6 +93,34 @@ public abstract class DataType {
 		return sqlSyntax.quoteStringLiteral(value);
 	}
 
+	/**
+	 * Checks whether a value can be passed as a parameter of a
+	 * prepared statement using {@link #bindParameter}, instead of
+	 * being written into the SQL text using {@link #toSQLLiteral(String)}.
+	 * Types that need special literal syntax return <code>false</code>.
+	 * 
+	 * @param value A value
+	 * @return <code>true</code> if the value can be bound as a parameter
+	 */
+	public boolean isParameterizable(String value) {
+		return false;
+	}
+	
+	/**
+	 * Binds a value to a <code>?</code> placeholder of a prepared statement,
+	 * suitable for comparison to a column of this type. Only called
+	 * if {@link #isParameterizable(String)} is <code>true</code>.
+	 * 
+	 * @param statement A prepared statement
+	 * @param index The parameter index; leftmost placeholder is 1
+	 * @param value A value
+	 * @throws SQLException
+	 */
+	public void bindParameter(PreparedStatement statement, int index, String value) 
+	throws SQLException {
+		statement.setString(index, value);
+	}
+
 	/**
 	 * Retrieves a string value in preferred format (canonical form
 	 * of the closest XSD type) from a SQL ResultSet.
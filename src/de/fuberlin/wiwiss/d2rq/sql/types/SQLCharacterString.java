@@ -14,4 +14,10 @@ public class SQLCharacterString extends DataType {
 	public boolean supportsDistinct() {
 		return supportsDistinct;
 	}
+	
+	@Override
+	public boolean isParameterizable(String value) {
+		// LOB types often can't be compared to parameters
+		return supportsDistinct;
+	}
 }
@@ -1,6 +1,7 @@
 package de.fuberlin.wiwiss.d2rq.sql.types;
 
 import java.math.BigDecimal;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
@@ -62,4 +63,18 @@ public class SQLExactNumeric extends DataType {
 			}
 		}
 	}
+	@Override
+	public boolean isParameterizable(String value) {
+		try {
+			new BigDecimal(value);
+			return true;
+		} catch (NumberFormatException ex) {
+			return false;
+		}
+	}
+	@Override
+	public void bindParameter(PreparedStatement statement, int index, String value) 
+	throws SQLException {
+		statement.setBigDecimal(index, new BigDecimal(value));
+	}
 }
\ No newline at end of file
@@ -93,7 +93,7 @@ public class BlankNodeID implements ValueMaker {
 	 * @return this column's blank node identifier
 	 */
 	public String makeValue(ResultRow row) {
-		StringBuffer result = new StringBuffer(this.classMapID);
+		StringBuilder result = ValueBuilder.start(this.classMapID);
 		for (Attribute attribute: attributes) {
 			String value = row.get(attribute);
 			if (value == null) {
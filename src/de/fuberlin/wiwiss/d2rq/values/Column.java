@@ -29,6 +29,10 @@ public class Column implements ValueMaker {
 		this.attributeAsSet = Collections.<ProjectionSpec>singleton(this.attribute);
 	}
 	
+	public Attribute attribute() {
+		return this.attribute;
+	}
+	
 	public String makeValue(ResultRow row) {
 		return row.get(this.attribute);
 	}
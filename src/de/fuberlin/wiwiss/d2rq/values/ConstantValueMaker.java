@@ -31,6 +31,10 @@ public class ConstantValueMaker implements ValueMaker {
 	public ConstantValueMaker(String constant) {
 		this.value = constant;
 	}
+	
+	public String value() {
+		return this.value;
+	}
 	public Expression valueExpression(String value) {
 		return this.value.equals(value) ? Expression.TRUE : Expression.FALSE;
 	}
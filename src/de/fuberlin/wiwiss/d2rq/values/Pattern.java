@@ -44,7 +44,6 @@ public class Pattern implements ValueMaker {
 	private List<ColumnFunction> columnFunctions = new ArrayList<ColumnFunction>(3);
 	private List<String> literalParts = new ArrayList<String>(3);
 	private Set<ProjectionSpec> columnsAsSet;
-	private java.util.regex.Pattern regex;
 	
 	/**
 	 * Constructs a new Pattern instance from a pattern syntax string
@@ -57,6 +56,13 @@ public class Pattern implements ValueMaker {
 		this.columnsAsSet = new HashSet<ProjectionSpec>(this.columns);
 	}
 
+	/**
+	 * @return The pattern syntax string
+	 */
+	public String pattern() {
+		return this.pattern;
+	}
+
 	public String firstLiteralPart() {
 		return firstLiteralPart;
 	}
@@ -89,30 +95,75 @@ public class Pattern implements ValueMaker {
 	}
 
 	public boolean matches(String value) {
-		return !valueExpression(value).isFalse();
+		return columnValues(value) != null;
 	}
 	
 	public Expression valueExpression(String value) {
-		if (value == null) {
-			return Expression.FALSE;
-		}
-		Matcher match = this.regex.matcher(value);
-		if (!match.matches()) {
+		String[] values = columnValues(value);
+		if (values == null) {
 			return Expression.FALSE;
 		}
 		Collection<Expression> expressions = new ArrayList<Expression>(columns.size());
 		for (int i = 0; i < this.columns.size(); i++) {
-			Attribute attribute = columns.get(i);
-			ColumnFunction function = columnFunctions.get(i);
-			String attributeValue = function.decode(match.group(i + 1));
-			if (attributeValue == null) {
-				return Expression.FALSE;
-			}
-			expressions.add(Equality.createAttributeValue(attribute, attributeValue));
+			expressions.add(Equality.createAttributeValue(columns.get(i), values[i]));
 		}
 		return Conjunction.create(expressions);
 	}
 
+	/**
+	 * Extracts the column values from a value generated by this pattern.
+	 * This makes a single pass over the value without regular expressions.
+	 * If a literal part occurs more than once, the shortest value is
+	 * used for the column before it.
+	 * 
+	 * @param value A string, such as a URI
+	 * @return The decoded values of the {@link #attributes()}, or 
+	 * 		<code>null</code> if the value doesn't match the pattern
+	 */
+	public String[] columnValues(String value) {
+		if (value == null || !value.startsWith(firstLiteralPart)) {
+			return null;
+		}
+		String[] result = new String[columns.size()];
+		if (columns.isEmpty()) {
+			return value.length() == firstLiteralPart.length() ? result : null;
+		}
+		int[] ends = new int[columns.size()];
+		if (!findColumnEnds(value, firstLiteralPart.length(), 0, ends)) {
+			return null;
+		}
+		int start = firstLiteralPart.length();
+		for (int i = 0; i < columns.size(); i++) {
+			result[i] = columnFunctions.get(i).decode(value.substring(start, ends[i]));
+			if (result[i] == null) {
+				return null;
+			}
+			start = ends[i] + literalParts.get(i).length();
+		}
+		return result;
+	}
+	
+	/**
+	 * Finds where each column value ends, trying the shortest
+	 * values first, and backtracking if the rest doesn't match
+	 */
+	private boolean findColumnEnds(String value, int start, int index, int[] ends) {
+		String literal = literalParts.get(index);
+		if (index == columns.size() - 1) {
+			ends[index] = value.length() - literal.length();
+			return ends[index] >= start && value.endsWith(literal);
+		}
+		int end = value.indexOf(literal, start);
+		while (end != -1) {
+			ends[index] = end;
+			if (findColumnEnds(value, end + literal.length(), index + 1, ends)) {
+				return true;
+			}
+			end = end < value.length() ? value.indexOf(literal, end + 1) : -1;
+		}
+		return false;
+	}
+
 	public Set<ProjectionSpec> projectionSpecs() {
 		return this.columnsAsSet;
 	}
@@ -123,22 +174,17 @@ public class Pattern implements ValueMaker {
 	 * @return the pattern's value for the given row
 	 */
 	public String makeValue(ResultRow row) {
-		int index = 0;
-		StringBuffer result = new StringBuffer(this.firstLiteralPart);
-		while (index < this.columns.size()) {
-			Attribute column = columns.get(index);
-			ColumnFunction function = columnFunctions.get(index);
-			String value = row.get(column);
-			if (value == null) {
-				return null;
-			}
-			value = function.encode(value);
+		if (this.columns.isEmpty()) {
+			return this.firstLiteralPart;
+		}
+		StringBuilder result = ValueBuilder.start(this.firstLiteralPart);
+		for (int index = 0; index < this.columns.size(); index++) {
+			String value = row.get(columns.get(index));
 			if (value == null) {
 				return null;
 			}
-			result.append(value);
+			columnFunctions.get(index).encode(value, result);
 			result.append(this.literalParts.get(index));
-			index++;
 		}
 		return result.toString();
 	}
@@ -201,7 +247,6 @@ public class Pattern implements ValueMaker {
 		boolean matched = match.find();
 		int firstLiteralEnd = matched ? match.start() : this.pattern.length();
 		this.firstLiteralPart = this.pattern.substring(0, firstLiteralEnd);
-		String regexPattern = "\\Q" + this.firstLiteralPart + "\\E";
 		while (matched) {
 			this.columns.add(SQL.parseAttribute(match.group(1)));
 			this.columnFunctions.add(getColumnFunction(match.group(2)));
@@ -210,9 +255,7 @@ public class Pattern implements ValueMaker {
 			int nextLiteralEnd = matched ? match.start() : this.pattern.length();
 			String nextLiteralPart = this.pattern.substring(nextLiteralStart, nextLiteralEnd);
 			this.literalParts.add(nextLiteralPart);
-			regexPattern += "(.*?)\\Q" + nextLiteralPart + "\\E";
 		}
-		this.regex = java.util.regex.Pattern.compile(regexPattern, java.util.regex.Pattern.DOTALL);
 	}
 	
 	public Iterator<Object> partsIterator() {
@@ -282,12 +325,18 @@ public class Pattern implements ValueMaker {
 	
 	private interface ColumnFunction {
 		String encode(String s);
+		/**
+		 * Appends the encoded string, without creating an intermediate
+		 * String if the value needs no encoding
+		 */
+		void encode(String s, StringBuilder result);
 		String decode(String s);
 		String name();
 	}
 	
 	static class IdentityFunction implements ColumnFunction {
 		public String encode(String s) { return s; }
+		public void encode(String s, StringBuilder result) { result.append(s); }
 		public String decode(String s) { return s; }
 		public String name() { return null; }
 	}
@@ -301,6 +350,9 @@ public class Pattern implements ValueMaker {
 				throw new RuntimeException(ex);
 			}
 		}
+		public void encode(String s, StringBuilder result) {
+			result.append(ValueBuilder.needsNoEncoding(s, true) ? s : encode(s));
+		}
 		public String decode(String s) {
 			try {
 				return URLDecoder.decode(s, "utf-8");
@@ -324,6 +376,9 @@ public class Pattern implements ValueMaker {
 				throw new RuntimeException(ex);
 			}
 		}
+		public void encode(String s, StringBuilder result) {
+			result.append(ValueBuilder.needsNoEncoding(s, false) ? s : encode(s));
+		}
 		public String decode(String s) {
 			try {
 				return URLDecoder.decode(s.replace('_', '+'), "utf-8");
@@ -341,6 +396,9 @@ public class Pattern implements ValueMaker {
 		public String encode(String s) {
 			return IRIEncoder.encode(s);
 		}
+		public void encode(String s, StringBuilder result) {
+			result.append(ValueBuilder.needsNoEncoding(s, true) ? s : encode(s));
+		}
 		public String decode(String s) {
 			try {
 				return URLDecoder.decode(s.replaceAll("%20", "+"), "utf-8");
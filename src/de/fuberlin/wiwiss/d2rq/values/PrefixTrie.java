@@ -0,0 +1,63 @@
+package de.fuberlin.wiwiss.d2rq.values;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A character trie that maps strings, usually the
+ * {@link Pattern#firstLiteralPart() first literal parts} of URI
+ * patterns, to values. Finds the values of all keys that are
+ * prefixes of a string in a single pass over the string.
+ *
+ * Not thread-safe while values are being added.
+ */
+public class PrefixTrie<V> {
+	private V value = null;
+	private Map<Character,PrefixTrie<V>> children = null;
+
+	/**
+	 * @return The value for the key, or <code>null</code>
+	 */
+	public V get(String key) {
+		PrefixTrie<V> node = this;
+		for (int i = 0; i < key.length() && node != null; i++) {
+			node = node.children == null ? null : node.children.get(key.charAt(i));
+		}
+		return node == null ? null : node.value;
+	}
+
+	public void put(String key, V value) {
+		PrefixTrie<V> node = this;
+		for (int i = 0; i < key.length(); i++) {
+			if (node.children == null) {
+				node.children = new HashMap<Character,PrefixTrie<V>>();
+			}
+			PrefixTrie<V> child = node.children.get(key.charAt(i));
+			if (child == null) {
+				child = new PrefixTrie<V>();
+				node.children.put(key.charAt(i), child);
+			}
+			node = child;
+		}
+		node.value = value;
+	}
+
+	/**
+	 * Adds the values of all keys that are prefixes of a string,
+	 * including the string itself and the empty string, to a
+	 * collection, shortest key first.
+	 */
+	public void collectPrefixValues(String s, Collection<? super V> result) {
+		PrefixTrie<V> node = this;
+		int i = 0;
+		while (node != null) {
+			if (node.value != null) {
+				result.add(node.value);
+			}
+			if (i == s.length() || node.children == null) return;
+			node = node.children.get(s.charAt(i));
+			i++;
+		}
+	}
+}
@@ -29,6 +29,10 @@ public class SQLExpressionValueMaker implements ValueMaker {
 		this.projection = new ExpressionProjectionSpec(expression); 
 	}
 	
+	public Expression expression() {
+		return expression;
+	}
+	
 	public void describeSelf(NodeSetFilter c) {
 		c.limitValuesToExpression(expression);
 	}
@@ -0,0 +1,58 @@
+package de.fuberlin.wiwiss.d2rq.values;
+
+/**
+ * Hands out a per-thread {@link StringBuilder} for assembling
+ * values from the columns of a result row. The builder is reused
+ * for every row, so the only allocation per value is the resulting
+ * String. Builders that have grown very large are not kept.
+ *
+ * A builder must not be used again before its value has been
+ * turned into a String, so value makers must not call other value
+ * makers while building.
+ */
+class ValueBuilder {
+	private final static int INITIAL_CAPACITY = 256;
+	private final static int MAX_RETAINED_CAPACITY = 8192;
+
+	private final static ThreadLocal<StringBuilder> builders = new ThreadLocal<StringBuilder>() {
+		protected StringBuilder initialValue() {
+			return new StringBuilder(INITIAL_CAPACITY);
+		}
+	};
+
+	/**
+	 * @param start The first part of the value
+	 * @return The current thread's builder, containing only <code>start</code>
+	 */
+	static StringBuilder start(String start) {
+		StringBuilder result = builders.get();
+		if (result.capacity() > MAX_RETAINED_CAPACITY) {
+			result = new StringBuilder(INITIAL_CAPACITY);
+			builders.set(result);
+		}
+		result.setLength(0);
+		result.append(start);
+		return result;
+	}
+
+	/**
+	 * @param allowUnderscore Whether '_' is safe, too
+	 * @return <code>true</code> if the string contains only ASCII letters,
+	 * 		digits, '-' and '.', which all of the column functions leave
+	 * 		unchanged
+	 */
+	static boolean needsNoEncoding(String s, boolean allowUnderscore) {
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if ((c >= '0' && c <= '9') || (c >= 'a' && c <= 'z')
+					|| (c >= 'A' && c <= 'Z') || c == '-' || c == '.') continue;
+			if (c == '_' && allowUnderscore) continue;
+			return false;
+		}
+		return true;
+	}
+
+	private ValueBuilder() {
+		// Only static methods
+	}
+}
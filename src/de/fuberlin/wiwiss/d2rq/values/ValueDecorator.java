@@ -16,36 +16,14 @@ import de.fuberlin.wiwiss.d2rq.sql.ResultRow;
  * @author Richard Cyganiak (richard@cyganiak.de)
  */
 public class ValueDecorator implements ValueMaker {
-	public static ValueConstraint maxLengthConstraint(final int maxLength) {
-		return new ValueConstraint() {
-			public boolean matches(String value) {
-				return value == null || value.length() <= maxLength;
-			}
-			public String toString() {
-				return "maxLength=" + maxLength;
-			}
-		};
+	public static ValueConstraint maxLengthConstraint(int maxLength) {
+		return new MaxLengthConstraint(maxLength);
 	}
-	public static ValueConstraint containsConstraint(final String containsSubstring) {
-		return new ValueConstraint() {
-			public boolean matches(String value) {
-				return value == null || value.indexOf(containsSubstring) >= 0;
-			}
-			public String toString() {
-				return "contains='" + containsSubstring + "'";
-			}
-		};
+	public static ValueConstraint containsConstraint(String containsSubstring) {
+		return new ContainsConstraint(containsSubstring);
 	}
-	public static ValueConstraint regexConstraint(final String regex) {
-		final Pattern pattern = Pattern.compile(regex);
-		return new ValueConstraint() {
-			public boolean matches(String value) {
-				return value == null || pattern.matcher(value).matches();
-			}
-			public String toString() {
-				return "regex='" + regex + "'";
-			}
-		};
+	public static ValueConstraint regexConstraint(String regex) {
+		return new RegexConstraint(regex);
 	}
 	
 	private ValueMaker base;
@@ -62,6 +40,18 @@ public class ValueDecorator implements ValueMaker {
 		this.translator = translator;
 	}
 	
+	public ValueMaker base() {
+		return this.base;
+	}
+	
+	public List<ValueConstraint> constraints() {
+		return this.constraints;
+	}
+	
+	public Translator translator() {
+		return this.translator;
+	}
+	
 	public String makeValue(ResultRow row) {
 		return this.translator.toRDFValue(this.base.makeValue(row));
 	}
@@ -100,6 +90,56 @@ public class ValueDecorator implements ValueMaker {
 		boolean matches(String value);
 	}
 	
+	public static class MaxLengthConstraint implements ValueConstraint {
+		private final int maxLength;
+		MaxLengthConstraint(int maxLength) {
+			this.maxLength = maxLength;
+		}
+		public int maxLength() {
+			return maxLength;
+		}
+		public boolean matches(String value) {
+			return value == null || value.length() <= maxLength;
+		}
+		public String toString() {
+			return "maxLength=" + maxLength;
+		}
+	}
+	
+	public static class ContainsConstraint implements ValueConstraint {
+		private final String containsSubstring;
+		ContainsConstraint(String containsSubstring) {
+			this.containsSubstring = containsSubstring;
+		}
+		public String containsSubstring() {
+			return containsSubstring;
+		}
+		public boolean matches(String value) {
+			return value == null || value.indexOf(containsSubstring) >= 0;
+		}
+		public String toString() {
+			return "contains='" + containsSubstring + "'";
+		}
+	}
+	
+	public static class RegexConstraint implements ValueConstraint {
+		private final String regex;
+		private final Pattern pattern;
+		RegexConstraint(String regex) {
+			this.regex = regex;
+			this.pattern = Pattern.compile(regex);
+		}
+		public String regex() {
+			return regex;
+		}
+		public boolean matches(String value) {
+			return value == null || pattern.matcher(value).matches();
+		}
+		public String toString() {
+			return "regex='" + regex + "'";
+		}
+	}
+	
 	public String toString() {
 		StringBuffer result = new StringBuffer();
 		if (!this.translator.equals(Translator.IDENTITY)) {
@@ -128,6 +128,16 @@ public class D2RQ {
      */
     public static final Property limitInverse = m_model.createProperty( "http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#limitInverse" );
     
+    /** <p>Declares that the column of this PropertyBridge has a full-text index, 
+     *  built with the given text search configuration</p>
+     */
+    public static final Property fullTextIndex = m_model.createProperty( "http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#fullTextIndex" );
+    
+    /** <p>Used in SPARQL queries to search the values of a column with a full-text 
+     *  index for keywords</p>
+     */
+    public static final Property textMatch = m_model.createProperty( "http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#textMatch" );
+    
     /** <p>URL of a D2RQ mapping file.</p> */
     public static final Property mappingFile = m_model.createProperty( "http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#mappingFile" );
     
@@ -214,6 +224,21 @@ public class D2RQ {
     /** <p>An SQL expression whose result will be the URI value of this property bridge.</p> */
     public static final Property uriSqlExpression = m_model.createProperty( "http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#uriSqlExpression" );
     
+    /** <p>Log SPARQL queries and find patterns taking at least this many milliseconds</p> */
+    public static final Property slowQueryThreshold = m_model.createProperty( "http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#slowQueryThreshold" );
+    
+    /** <p>Log SPARQL queries and find patterns running an SQL query that takes at least this many milliseconds</p> */
+    public static final Property slowSQLThreshold = m_model.createProperty( "http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#slowSQLThreshold" );
+    
+    /** <p>Whether to compile class maps only when a query needs them</p> */
+    public static final Property compileLazily = m_model.createProperty( "http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#compileLazily" );
+    
+    /** <p>Maximum number of SPARQL query translations to cache</p> */
+    public static final Property planCacheSize = m_model.createProperty( "http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#planCacheSize" );
+    
+    /** <p>File for storing the compiled mapping, to speed up startup</p> */
+    public static final Property mappingSnapshot = m_model.createProperty( "http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#mappingSnapshot" );
+    
     /** <p>Whether to use bleeding edge optimizations</p> */
     public static final Property useAllOptimizations = m_model.createProperty( "http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#useAllOptimizations" );
     
@@ -222,6 +247,11 @@ public class D2RQ {
     /** <p>Optimizing hint: a string contained in every value of this resource map.</p> */
     public static final Property valueContains = m_model.createProperty( "http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#valueContains" );
     
+    /** <p>Number of generated RDF nodes of this resource map to cache; 0 disables 
+     *  the cache</p>
+     */
+    public static final Property nodeCacheSize = m_model.createProperty( "http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#nodeCacheSize" );
+    
     /** <p>Optimizing hint: the maximum length of values of this resource map.</p> */
     public static final Property valueMaxLength = m_model.createProperty( "http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#valueMaxLength" );
     
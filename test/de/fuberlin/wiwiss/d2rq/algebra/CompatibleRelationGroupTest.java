@@ -1,5 +1,6 @@
 package de.fuberlin.wiwiss.d2rq.algebra;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.Map;
@@ -9,6 +10,7 @@ import junit.framework.TestCase;
 
 import com.hp.hpl.jena.sparql.core.Var;
 
+import de.fuberlin.wiwiss.d2rq.dbschema.TableStatistics;
 import de.fuberlin.wiwiss.d2rq.engine.BindingMaker;
 import de.fuberlin.wiwiss.d2rq.expr.Expression;
 import de.fuberlin.wiwiss.d2rq.nodes.NodeMaker;
@@ -114,4 +116,37 @@ public class CompatibleRelationGroupTest extends TestCase {
 		assertTrue((bm3.condition() == null && bm4.condition() != null) 
 				|| (bm3.condition() != null && bm4.condition() == null));
 	}
+
+	public void testDifferentConditionsOnLargeTableAreSeparateStatements() {
+		db.setTableStatistics(SQL.parseRelationName("TABLE"), new TableStatistics(
+				CompatibleRelationGroup.LARGE_TABLE_ROWS, Collections.<String,Long>emptyMap()));
+		assertEquals(2, CompatibleRelationGroup.groupNodeRelations(Arrays.asList(
+				nodeRelation("TABLE.VALUE=1"), nodeRelation("TABLE.VALUE=2"))).size());
+	}
+	
+	public void testDifferentConditionsOnSmallTableAreOneStatement() {
+		db.setTableStatistics(SQL.parseRelationName("TABLE"), new TableStatistics(
+				CompatibleRelationGroup.LARGE_TABLE_ROWS - 1, Collections.<String,Long>emptyMap()));
+		assertEquals(1, CompatibleRelationGroup.groupNodeRelations(Arrays.asList(
+				nodeRelation("TABLE.VALUE=1"), nodeRelation("TABLE.VALUE=2"))).size());
+	}
+	
+	public void testConditionAndNoConditionOnLargeTableAreOneStatement() {
+		db.setTableStatistics(SQL.parseRelationName("TABLE"), new TableStatistics(
+				CompatibleRelationGroup.LARGE_TABLE_ROWS, Collections.<String,Long>emptyMap()));
+		assertEquals(1, CompatibleRelationGroup.groupNodeRelations(Arrays.asList(
+				nodeRelation("TABLE.VALUE=1"), nodeRelation(null))).size());
+	}
+	
+	private NodeRelation nodeRelation(String condition) {
+		Attribute id = SQL.parseAttribute("TABLE.ID");
+		db.setNullable(id, false);
+		RelationBuilder builder = new RelationBuilder(db);
+		builder.addProjection(id);
+		if (condition != null) {
+			builder.addCondition(condition);
+		}
+		return new NodeRelation(builder.buildRelation(), Collections.<Var,NodeMaker>singletonMap(
+				Var.alloc("x"), new TypedNodeMaker(TypedNodeMaker.PLAIN_LITERAL, new Column(id), true)));
+	}
 }
@@ -10,6 +10,8 @@ public class AllTests {
 				"Test for de.fuberlin.wiwiss.d2rq.dbschema");
 		//$JUnit-BEGIN$
 		suite.addTestSuite(ISWCSchemaTest.class);
+		suite.addTestSuite(SchemaCacheTest.class);
+		suite.addTestSuite(TableStatisticsTest.class);
 		//$JUnit-END$
 		return suite;
 	}
@@ -0,0 +1,171 @@
+package de.fuberlin.wiwiss.d2rq.dbschema;
+
+import java.io.File;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.RelationName;
+import de.fuberlin.wiwiss.d2rq.helpers.HSQLDatabase;
+import de.fuberlin.wiwiss.d2rq.map.Database;
+import de.fuberlin.wiwiss.d2rq.sql.ConnectedDB;
+import de.fuberlin.wiwiss.d2rq.sql.types.DataType.GenericType;
+
+public class SchemaCacheTest extends TestCase {
+	private final static Attribute T_ID = new Attribute(null, "T", "ID");
+	private final static Attribute T_NAME = new Attribute(null, "T", "NAME");
+	private final static Attribute U_ID = new Attribute(null, "U", "ID");
+	private HSQLDatabase db;
+	private ConnectedDB cdb;
+	private File file;
+
+	public void setUp() throws Exception {
+		db = new HSQLDatabase("schemacache");
+		db.executeSQL("CREATE TABLE T (ID INT PRIMARY KEY, NAME VARCHAR(50) NULL)");
+		db.executeSQL("CREATE TABLE U (ID INT PRIMARY KEY)");
+		db.executeSQL("CREATE TABLE K (A INT, B INT, PRIMARY KEY (B, A))");
+		db.executeSQL("CREATE TABLE N (ID INT)");
+		cdb = new ConnectedDB(db.getJdbcURL(), db.getUser(), db.getPassword());
+		file = File.createTempFile("d2rq-schema", ".cache");
+		file.delete();
+	}
+
+	public void tearDown() {
+		cdb.close();
+		db.close(true);
+		file.delete();
+	}
+
+	public void testBulkLoadsWholeSchemaOnFirstLookup() {
+		SchemaCache cache = new SchemaCache();
+		ColumnInfo info = cache.columnInfo(T_NAME, cdb.schemaInspector());
+		assertEquals(Types.VARCHAR, info.dataType());
+		assertTrue(info.isNullable());
+		assertEquals(6, cache.columnCount());
+		assertFalse(cache.columnInfo(U_ID, cdb.schemaInspector()).isNullable());
+	}
+
+	public void testWriteAndRead() throws Exception {
+		SchemaCache cache = new SchemaCache();
+		cache.columnInfo(T_ID, cdb.schemaInspector());
+		cache.uniqueKeyColumns(new RelationName(null, "T"), cdb.schemaInspector());
+		cache.primaryKeyColumns(new RelationName(null, "N"), cdb.schemaInspector());
+		String fingerprint = cdb.schemaInspector().schemaFingerprint();
+		cache.write(file, db.getJdbcURL(), fingerprint);
+		SchemaCache copy = SchemaCache.read(file, db.getJdbcURL(), fingerprint);
+		assertNotNull(copy);
+		assertTrue(copy.sameContents(cache));
+	}
+
+	public void testPrimaryKeysOfWholeSchemaAreLoadedAtOnce() {
+		SchemaCache cache = new SchemaCache();
+		assertEquals(Arrays.asList(new String[]{"B", "A"}),
+				cache.primaryKeyColumns(new RelationName(null, "K"), cdb.schemaInspector()));
+		db.executeSQL("DROP TABLE U");
+		assertEquals(Collections.singletonList("ID"),
+				cache.primaryKeyColumns(new RelationName(null, "U"), cdb.schemaInspector()));
+		assertTrue(cache.primaryKeyColumns(
+				new RelationName(null, "N"), cdb.schemaInspector()).isEmpty());
+	}
+
+	public void testUniqueKeysOfWholeSchemaAreLoadedAtOnce() {
+		SchemaCache cache = new SchemaCache();
+		assertEquals(Collections.singletonList(Collections.singletonList("ID")), new ArrayList<List<String>>(
+				cache.uniqueKeyColumns(new RelationName(null, "U"), cdb.schemaInspector()).values()));
+		db.executeSQL("CREATE UNIQUE INDEX N_ID ON N (ID)");
+		assertTrue(cache.uniqueKeyColumns(new RelationName(null, "N"), cdb.schemaInspector()).isEmpty());
+		assertEquals(Collections.singletonList(Arrays.asList(new String[]{"B", "A"})), new ArrayList<List<String>>(
+				cache.uniqueKeyColumns(new RelationName(null, "K"), cdb.schemaInspector()).values()));
+	}
+
+	public void testPrimaryKeysAreWrittenAndRead() throws Exception {
+		SchemaCache cache = new SchemaCache();
+		cache.primaryKeyColumns(new RelationName(null, "T"), cdb.schemaInspector());
+		String fingerprint = cdb.schemaInspector().schemaFingerprint();
+		cache.write(file, db.getJdbcURL(), fingerprint);
+		SchemaCache copy = SchemaCache.read(file, db.getJdbcURL(), fingerprint);
+		assertTrue(copy.sameContents(cache));
+		db.executeSQL("ALTER TABLE K DROP PRIMARY KEY");
+		assertEquals(Arrays.asList(new String[]{"B", "A"}),
+				copy.primaryKeyColumns(new RelationName(null, "K"), cdb.schemaInspector()));
+	}
+
+		public void testFileForOtherDatabaseOrSchemaIsIgnored() throws Exception {
+		String fingerprint = cdb.schemaInspector().schemaFingerprint();
+		new SchemaCache().write(file, db.getJdbcURL(), fingerprint);
+		assertNull(SchemaCache.read(file, "jdbc:hsqldb:mem:other", fingerprint));
+		db.executeSQL("CREATE TABLE V (ID INT)");
+		assertFalse(fingerprint.equals(cdb.schemaInspector().schemaFingerprint()));
+		assertNull(SchemaCache.read(file, db.getJdbcURL(), 
+				cdb.schemaInspector().schemaFingerprint()));
+	}
+
+	public void testFingerprintCoversColumns() {
+		String fingerprint = cdb.schemaInspector().schemaFingerprint();
+		db.executeSQL("ALTER TABLE T ALTER COLUMN NAME SET NOT NULL");
+		assertFalse(fingerprint.equals(cdb.schemaInspector().schemaFingerprint()));
+	}
+
+	public void testMissingFileIsIgnored() throws Exception {
+		assertNull(SchemaCache.read(file, db.getJdbcURL(), "x"));
+	}
+
+	public void testRefreshPicksUpChangedColumns() {
+		SchemaCache cache = new SchemaCache();
+		cache.columnInfo(T_NAME, cdb.schemaInspector());
+		db.executeSQL("ALTER TABLE T ALTER COLUMN NAME SET NOT NULL");
+		SchemaCache fresh = cache.refresh(cdb.schemaInspector());
+		assertFalse(fresh.sameContents(cache));
+		assertFalse(fresh.columnInfo(T_NAME, cdb.schemaInspector()).isNullable());
+	}
+
+	public void testConnectedDBUsesCacheFile() throws Exception {
+		Properties p = new Properties();
+		p.setProperty(ConnectedDB.SCHEMA_CACHE_FILE_PROPERTY, file.getPath());
+		ConnectedDB first = connectedDB(p);
+		assertFalse(first.isNullable(T_ID));
+		first.saveSchemaCache().get();
+		first.close();
+		assertTrue(file.exists());
+		// Changed columns make the file out of date
+		db.executeSQL("ALTER TABLE T ALTER COLUMN NAME SET NOT NULL");
+		ConnectedDB second = connectedDB(p);
+		assertFalse(second.isNullable(T_NAME));
+		assertTrue(second.getUniqueKeyColumns(new RelationName(null, "N")).isEmpty());
+		second.saveSchemaCache().get();
+		second.close();
+		// Indexes are not in the fingerprint; the file still matches
+		db.executeSQL("CREATE UNIQUE INDEX N_ID ON N (ID)");
+		ConnectedDB third = connectedDB(p);
+		assertTrue(third.getUniqueKeyColumns(new RelationName(null, "N")).isEmpty());
+		// Refreshing in the background makes the change visible
+		third.saveSchemaCache().get();
+		assertEquals(1, third.getUniqueKeyColumns(new RelationName(null, "N")).size());
+		third.close();
+	}
+
+	public void testSchemaIsRefreshedPeriodically() throws Exception {
+		Properties p = new Properties();
+		p.setProperty(ConnectedDB.SCHEMA_REFRESH_INTERVAL_PROPERTY, "1");
+		ConnectedDB refreshing = connectedDB(p);
+		assertTrue(refreshing.isNullable(T_NAME));
+		db.executeSQL("ALTER TABLE T ALTER COLUMN NAME SET NOT NULL");
+		long deadline = System.currentTimeMillis() + 5000;
+		while (refreshing.isNullable(T_NAME) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(100);
+		}
+		assertFalse(refreshing.isNullable(T_NAME));
+		refreshing.close();
+	}
+
+	private ConnectedDB connectedDB(Properties p) {
+		return new ConnectedDB(db.getJdbcURL(), db.getUser(), db.getPassword(),
+				Collections.<String,GenericType>emptyMap(),
+				Database.NO_LIMIT, Database.NO_FETCH_SIZE, p);
+	}
+}
@@ -0,0 +1,109 @@
+package de.fuberlin.wiwiss.d2rq.dbschema;
+
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.CardinalityEstimator;
+import de.fuberlin.wiwiss.d2rq.algebra.Relation;
+import de.fuberlin.wiwiss.d2rq.algebra.RelationName;
+import de.fuberlin.wiwiss.d2rq.expr.Equality;
+import de.fuberlin.wiwiss.d2rq.helpers.HSQLDatabase;
+import de.fuberlin.wiwiss.d2rq.map.Database;
+import de.fuberlin.wiwiss.d2rq.sql.ConnectedDB;
+import de.fuberlin.wiwiss.d2rq.sql.types.DataType.GenericType;
+
+public class TableStatisticsTest extends TestCase {
+	private final static RelationName T = new RelationName(null, "T");
+	private final static Attribute T_ID = new Attribute(null, "T", "ID");
+	private final static Attribute T_NAME = new Attribute(null, "T", "NAME");
+	private HSQLDatabase db;
+	private ConnectedDB cdb;
+
+	public void setUp() {
+		db = new HSQLDatabase("statistics");
+		db.executeSQL("CREATE TABLE T (ID INT PRIMARY KEY, NAME VARCHAR(50))");
+		for (int i = 1; i <= 20; i++) {
+			db.executeSQL("INSERT INTO T VALUES (" + i + ", 'name" + (i % 4) + "')");
+		}
+		Properties properties = new Properties();
+		properties.setProperty(ConnectedDB.STATISTICS_REFRESH_INTERVAL_PROPERTY, "0");
+		cdb = new ConnectedDB(db.getJdbcURL(), db.getUser(), db.getPassword(),
+				Collections.<String,GenericType>emptyMap(),
+				Database.NO_LIMIT, Database.NO_FETCH_SIZE, properties);
+	}
+
+	public void tearDown() {
+		cdb.close();
+		db.close(true);
+	}
+
+	public void testStatisticsAreDisabledByDefault() {
+		ConnectedDB plain = new ConnectedDB(db.getJdbcURL(), db.getUser(), db.getPassword());
+		try {
+			assertNull(plain.tableStatistics(T));
+		} finally {
+			plain.close();
+		}
+	}
+
+	public void testStatisticsAreReadInBackground() throws Exception {
+		assertNull(cdb.tableStatistics(T));
+		readStatistics();
+		assertEquals(20, cdb.tableStatistics(T).rows());
+		assertNull(cdb.requestStatistics(T));
+	}
+
+	public void testRowsAndDistinctValuesOfKey() throws Exception {
+		readStatistics();
+		TableStatistics statistics = cdb.tableStatistics(T);
+		assertEquals(20, statistics.rows());
+		assertEquals(20, statistics.distinctValues("ID"));
+		assertEquals(TableStatistics.UNKNOWN, statistics.distinctValues("NAME"));
+	}
+
+	public void testRefreshDoesNotCountRows() throws Exception {
+		// HSQLDB doesn't report row counts, so they were counted
+		readStatistics();
+		db.executeSQL("INSERT INTO T VALUES (21, 'name1')");
+		cdb.refreshStatistics();
+		assertEquals(20, cdb.tableStatistics(T).rows());
+	}
+
+	public void testEstimatedRows() throws Exception {
+		readStatistics();
+		Relation all = Relation.createSimpleRelation(cdb, new Attribute[]{T_ID, T_NAME});
+		assertEquals(20, CardinalityEstimator.estimateRows(all));
+		assertEquals(1, CardinalityEstimator.estimateRows(
+				all.select(Equality.createAttributeValue(T_ID, "5"))));
+		assertEquals(2, CardinalityEstimator.estimateRows(
+				all.select(Equality.createAttributeValue(T_NAME, "name1"))));
+		assertEquals(20, CardinalityEstimator.largestTable(all));
+	}
+
+	public void testUnknownUntilStatisticsHaveBeenRead() throws Exception {
+		Relation all = Relation.createSimpleRelation(cdb, new Attribute[]{T_ID});
+		assertEquals(TableStatistics.UNKNOWN, CardinalityEstimator.estimateRows(all));
+		readStatistics();
+		assertEquals(20, CardinalityEstimator.estimateRows(all));
+	}
+
+	public void testUnknownWithoutStatistics() {
+		ConnectedDB plain = new ConnectedDB(db.getJdbcURL(), db.getUser(), db.getPassword());
+		try {
+			assertEquals(TableStatistics.UNKNOWN, CardinalityEstimator.estimateRows(
+					Relation.createSimpleRelation(plain, new Attribute[]{T_ID})));
+		} finally {
+			plain.close();
+		}
+	}
+
+	private void readStatistics() throws Exception {
+		Future<?> pending = cdb.requestStatistics(T);
+		if (pending != null) {
+			pending.get();
+		}
+	}
+}
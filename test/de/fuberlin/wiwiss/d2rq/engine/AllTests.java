@@ -10,6 +10,16 @@ public class AllTests {
 				"Test for de.fuberlin.wiwiss.d2rq.engine");
 		//$JUnit-BEGIN$
 		suite.addTestSuite(GraphPatternTranslatorTest.class);
+		suite.addTestSuite(QueryIterConcatParallelTest.class);
+		suite.addTestSuite(QueryIterBindJoinSQLTest.class);
+		suite.addTestSuite(TransformOpSliceTest.class);
+		suite.addTestSuite(TransformOpOrderTest.class);
+		suite.addTestSuite(TransformOpGroupTest.class);
+		suite.addTestSuite(TransformOpLeftJoinTest.class);
+		suite.addTestSuite(TransformOpJoinTest.class);
+		suite.addTestSuite(TextMatchTest.class);
+		suite.addTestSuite(PlanCacheTest.class);
+		suite.addTestSuite(BindingMakerTest.class);
 		//$JUnit-END$
 		return suite;
 	}
@@ -0,0 +1,67 @@
+package de.fuberlin.wiwiss.d2rq.engine;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.binding.BindingHashMap;
+import com.hp.hpl.jena.sparql.engine.binding.BindingMap;
+
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.ProjectionSpec;
+import de.fuberlin.wiwiss.d2rq.helpers.Benchmark;
+import de.fuberlin.wiwiss.d2rq.nodes.NodeCache;
+import de.fuberlin.wiwiss.d2rq.nodes.NodeMaker;
+import de.fuberlin.wiwiss.d2rq.nodes.TypedNodeMaker;
+import de.fuberlin.wiwiss.d2rq.sql.ResultRow;
+import de.fuberlin.wiwiss.d2rq.sql.ResultRowMap;
+import de.fuberlin.wiwiss.d2rq.values.Column;
+
+/**
+ * Compares {@link BindingMaker#makeBinding(ResultRow)} with the map
+ * based bindings it used to make. Bindings are made from a row of three
+ * variables, whose node makers have node caches, so that node creation
+ * doesn't dominate the figures.
+ *
+ * Not part of the test suite. Run it with the test and library classes
+ * on the classpath:
+ *
+ * <pre>java -cp ... de.fuberlin.wiwiss.d2rq.engine.BindingMakerBenchmark</pre>
+ */
+public class BindingMakerBenchmark {
+	private final static int OPERATIONS = 1000000;
+
+	public static void main(String[] args) {
+		final Map<Var,NodeMaker> nodeMakers = new LinkedHashMap<Var,NodeMaker>();
+		Map<ProjectionSpec,String> values = new HashMap<ProjectionSpec,String>();
+		String[] names = {"a", "b", "c"};
+		for (int i = 0; i < names.length; i++) {
+			Attribute attribute = new Attribute(null, "T", names[i]);
+			nodeMakers.put(Var.alloc(names[i]), new TypedNodeMaker(
+					TypedNodeMaker.PLAIN_LITERAL, new Column(attribute), false,
+					new NodeCache(100)));
+			values.put(attribute, "value" + i);
+		}
+		final ResultRow row = new ResultRowMap(values);
+		final BindingMaker bindingMaker = new BindingMaker(nodeMakers, null);
+
+		new Benchmark("map bindings (before)") {
+			protected Object run() {
+				BindingMap result = new BindingHashMap();
+				for (Var v: nodeMakers.keySet()) {
+					Node node = nodeMakers.get(v).makeNode(row);
+					if (node == null) return null;
+					result.add(Var.alloc(v), node);
+				}
+				return result;
+			}
+		}.measure(OPERATIONS, System.out);
+		new Benchmark("BindingMaker") {
+			protected Object run() {
+				return bindingMaker.makeBinding(row);
+			}
+		}.measure(OPERATIONS, System.out);
+	}
+}
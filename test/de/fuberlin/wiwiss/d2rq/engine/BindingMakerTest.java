@@ -0,0 +1,86 @@
+package de.fuberlin.wiwiss.d2rq.engine;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingFactory;
+import com.hp.hpl.jena.sparql.engine.binding.BindingMap;
+
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.ProjectionSpec;
+import de.fuberlin.wiwiss.d2rq.nodes.FixedNodeMaker;
+import de.fuberlin.wiwiss.d2rq.nodes.NodeMaker;
+import de.fuberlin.wiwiss.d2rq.nodes.TypedNodeMaker;
+import de.fuberlin.wiwiss.d2rq.sql.ResultRow;
+import de.fuberlin.wiwiss.d2rq.sql.ResultRowMap;
+import de.fuberlin.wiwiss.d2rq.values.Column;
+
+public class BindingMakerTest extends TestCase {
+	private final static Var x = Var.alloc("x");
+	private final static Var y = Var.alloc("y");
+	private final static Attribute col = new Attribute(null, "table", "col");
+	private final static Node fixed = Node.createURI("http://example.org/x");
+
+	private Map<Var,NodeMaker> nodeMakers;
+
+	public void setUp() {
+		nodeMakers = new LinkedHashMap<Var,NodeMaker>();
+		nodeMakers.put(x, new FixedNodeMaker(fixed, false));
+		nodeMakers.put(y, new TypedNodeMaker(TypedNodeMaker.PLAIN_LITERAL, new Column(col), false));
+	}
+
+	public void testBindsAllVariables() {
+		Binding binding = new BindingMaker(nodeMakers, null).makeBinding(row("foo"));
+		assertEquals(2, binding.size());
+		assertEquals(fixed, binding.get(x));
+		assertEquals(Node.createLiteral("foo"), binding.get(Var.alloc("y")));
+		assertFalse(binding.contains(Var.alloc("z")));
+		assertNull(binding.get(Var.alloc("z")));
+		Set<Var> vars = new HashSet<Var>();
+		for (Iterator<Var> it = binding.vars(); it.hasNext(); ) {
+			vars.add(it.next());
+		}
+		assertEquals(nodeMakers.keySet(), vars);
+	}
+
+	public void testRejectsRowWithMissingValue() {
+		assertNull(new BindingMaker(nodeMakers, null).makeBinding(row(null)));
+	}
+
+	public void testLeavesOptionalVariableUnbound() {
+		Binding binding = new BindingMaker(nodeMakers, null, Collections.singleton(y)).makeBinding(row(null));
+		assertEquals(1, binding.size());
+		assertTrue(binding.contains(x));
+		assertFalse(binding.contains(y));
+		Iterator<Var> it = binding.vars();
+		assertEquals(x, it.next());
+		assertFalse(it.hasNext());
+	}
+
+	public void testEqualsHashMapBinding() {
+		BindingMap expected = BindingFactory.create();
+		expected.add(x, fixed);
+		expected.add(y, Node.createLiteral("foo"));
+		Binding binding = new BindingMaker(nodeMakers, null).makeBinding(row("foo"));
+		assertEquals(expected, binding);
+		assertEquals(expected.hashCode(), binding.hashCode());
+	}
+
+	private ResultRow row(String value) {
+		Map<ProjectionSpec,String> values = new HashMap<ProjectionSpec,String>();
+		if (value != null) {
+			values.put(col, value);
+		}
+		return new ResultRowMap(values);
+	}
+}
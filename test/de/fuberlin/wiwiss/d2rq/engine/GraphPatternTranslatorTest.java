@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Future;
 
 import junit.framework.TestCase;
 
@@ -19,6 +20,8 @@ import de.fuberlin.wiwiss.d2rq.algebra.RelationName;
 import de.fuberlin.wiwiss.d2rq.algebra.TripleRelation;
 import de.fuberlin.wiwiss.d2rq.expr.Equality;
 import de.fuberlin.wiwiss.d2rq.expr.Expression;
+import de.fuberlin.wiwiss.d2rq.helpers.MappingFixture;
+import de.fuberlin.wiwiss.d2rq.sql.ConnectedDB;
 import de.fuberlin.wiwiss.d2rq.sql.SQL;
 
 public class GraphPatternTranslatorTest extends TestCase {
@@ -29,6 +32,13 @@ public class GraphPatternTranslatorTest extends TestCase {
 	private final static Var foo = Var.alloc("foo");
 	private final static Var type = Var.alloc("type");
 	private final static Var x = Var.alloc("x");
+	private MappingFixture fixture = null;
+
+	public void tearDown() {
+		if (fixture != null) {
+			fixture.close();
+		}
+	}
 	
 
 	public void testEmptyGraphAndBGP() {
@@ -153,6 +163,80 @@ public class GraphPatternTranslatorTest extends TestCase {
 				r.condition());
 	}
 
+	public void testSmallerTableIsJoinedFirst() {
+		createJoinOrderFixture(true);
+		assertEquals(triplesToList("?x ex:small ?w . ?x ex:big ?v"),
+				joinOrder("?x ex:big ?v . ?x ex:small ?w"));
+		assertEquals(triplesToList("?x ex:small ?w . ?x ex:big ?v"),
+				joinOrder("?x ex:small ?w . ?x ex:big ?v"));
+	}
+
+	public void testPatternOrderIsKeptWithoutStatistics() {
+		createJoinOrderFixture(false);
+		assertEquals(triplesToList("?x ex:big ?v . ?x ex:small ?w"),
+				joinOrder("?x ex:big ?v . ?x ex:small ?w"));
+	}
+
+	public void testFewerCandidatesAreJoinedFirst() {
+		createJoinOrderFixture(true);
+		assertEquals(triplesToList("?x ex:big ?y . ?a ?p ?b"), 
+				joinOrder("?a ?p ?b . ?x ex:big ?y"));
+	}
+
+	public void testConnectedPatternIsJoinedBeforeUnconnected() {
+		createJoinOrderFixture(true);
+		// Sorted by rows, ?z would come second, but it shares no variable
+		assertEquals(triplesToList("?x ex:small ?y . ?x ?p ?o . ?z ex:big ?w"),
+				joinOrder("?z ex:big ?w . ?x ?p ?o . ?x ex:small ?y"));
+	}
+
+	public void testSortOrderIsKeptWithoutSharedVariables() {
+		createJoinOrderFixture(true);
+		assertEquals(triplesToList("?x ex:small ?y . ?z ex:big ?w . ?a ?p ?b"),
+				joinOrder("?a ?p ?b . ?z ex:big ?w . ?x ex:small ?y"));
+	}
+
+	/**
+	 * Creates a table BIG with 20 rows and a table SMALL with 3 rows,
+	 * mapped to the properties ex:big and ex:small of the same resources.
+	 * 
+	 * @param statistics Read the tables' statistics before returning?
+	 */
+	private void createJoinOrderFixture(boolean statistics) {
+		fixture = new MappingFixture("joinorder");
+		fixture.executeSQL("CREATE TABLE BIG (ID INT PRIMARY KEY, VAL INT)");
+		fixture.executeSQL("CREATE TABLE SMALL (ID INT PRIMARY KEY, VAL INT)");
+		for (int i = 1; i <= 20; i++) {
+			fixture.executeSQL("INSERT INTO BIG VALUES (" + i + ", " + i + ")");
+			if (i <= 3) {
+				fixture.executeSQL("INSERT INTO SMALL VALUES (" + i + ", " + i + ")");
+			}
+		}
+		if (statistics) {
+			fixture.database().setConnectionProperty(
+					ConnectedDB.STATISTICS_REFRESH_INTERVAL_PROPERTY, "0");
+		}
+		fixture.addPropertyBridge(fixture.addClassMap("bigs", "http://example.org/item/@@BIG.ID@@"),
+				"big", "BIG.VAL");
+		fixture.addPropertyBridge(fixture.addClassMap("smalls", "http://example.org/item/@@SMALL.ID@@"),
+				"small", "SMALL.VAL");
+		if (!statistics) return;
+		try {
+			for (String table: new String[]{"BIG", "SMALL"}) {
+				Future<?> pending = fixture.database().connectedDB().requestStatistics(
+						SQL.parseRelationName(table));
+				if (pending != null) pending.get();
+			}
+		} catch (Exception ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	private List<Triple> joinOrder(String pattern) {
+		return new GraphPatternTranslator(triplesToList(pattern),
+				fixture.mapping().compiledPropertyBridges(), true).joinOrder();
+	}
+
 	private NodeRelation translate1(String pattern, String mappingFile) {
 		return translate1(triplesToList(pattern), mappingFile);
 	}
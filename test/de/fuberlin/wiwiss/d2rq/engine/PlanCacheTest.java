@@ -0,0 +1,192 @@
+package de.fuberlin.wiwiss.d2rq.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.QueryExecutionFactory;
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.query.ResultSet;
+
+import de.fuberlin.wiwiss.d2rq.helpers.MappingFixture;
+import de.fuberlin.wiwiss.d2rq.jena.GraphD2RQ;
+import de.fuberlin.wiwiss.d2rq.jena.ModelD2RQ;
+import de.fuberlin.wiwiss.d2rq.map.ClassMap;
+import de.fuberlin.wiwiss.d2rq.map.Configuration;
+import de.fuberlin.wiwiss.d2rq.map.Mapping;
+import de.fuberlin.wiwiss.d2rq.metrics.Metrics;
+
+public class PlanCacheTest extends TestCase {
+	private MappingFixture fixture;
+	private Mapping mapping;
+	private ModelD2RQ model;
+
+	public void setUp() {
+		fixture = new MappingFixture("plancache");
+		fixture.executeSQL("CREATE TABLE DOCS (ID INT PRIMARY KEY, TITLE VARCHAR(50), AUTHOR VARCHAR(50))");
+		fixture.executeSQL("INSERT INTO DOCS VALUES (1, 'One', 'Alice')");
+		fixture.executeSQL("INSERT INTO DOCS VALUES (2, 'Two', 'Bob')");
+		mapping = fixture.mapping();
+		mapping.configuration().setPlanCacheSize(100);
+		ClassMap classMap = fixture.addClassMap("docs", "http://example.org/doc/@@DOCS.ID@@");
+		fixture.addPropertyBridge(classMap, "title", "DOCS.TITLE");
+		fixture.addPropertyBridge(classMap, "author", "DOCS.AUTHOR");
+	}
+
+	public void tearDown() {
+		if (model != null) {
+			model.close();
+		}
+		fixture.close();
+	}
+
+	public void testCacheIsOffByDefault() {
+		mapping.configuration().setPlanCacheSize(Configuration.DEFAULT_PLAN_CACHE_SIZE);
+		titles("<http://example.org/doc/1>");
+		assertEquals(0, planCache().size());
+	}
+
+	public void testQueriesDifferingInSubjectShareTranslation() {
+		long hits = Metrics.PLAN_CACHE_HITS.getCount();
+		assertEquals(list("One"), titles("<http://example.org/doc/1>"));
+		assertEquals(list("Two"), titles("<http://example.org/doc/2>"));
+		assertEquals(list(), titles("<http://example.org/doc/3>"));
+		assertEquals(list(), titles("<http://example.org/other/1>"));
+		assertEquals(1, planCache().size());
+		assertEquals(hits + 3, Metrics.PLAN_CACHE_HITS.getCount());
+	}
+
+	public void testLiteralObjectIsLifted() {
+		assertEquals(list("http://example.org/doc/2"), select(
+				"SELECT ?x { ?x <http://example.org/title> \"Two\" }"));
+		assertEquals(list(), select(
+				"SELECT ?x { ?x <http://example.org/title> \"Three\" }"));
+		assertEquals(1, planCache().size());
+	}
+
+	public void testEachConstantGetsItsOwnSlot() {
+		assertEquals(list("One"), select(
+				"SELECT ?t { ?x <http://example.org/title> \"One\" . " +
+				"<http://example.org/doc/1> <http://example.org/title> ?t }"));
+		assertEquals(list(), select(
+				"SELECT ?t { ?x <http://example.org/title> \"One\" . " +
+				"<http://example.org/doc/3> <http://example.org/title> ?t }"));
+		assertEquals(list("Two"), select(
+				"SELECT ?t { ?x <http://example.org/title> \"One\" . " +
+				"<http://example.org/doc/2> <http://example.org/title> ?t }"));
+		assertEquals(1, planCache().size());
+	}
+
+	public void testLeastRecentlyUsedTranslationIsEvicted() {
+		mapping.configuration().setPlanCacheSize(1);
+		titles("<http://example.org/doc/1>");
+		select("SELECT ?x { ?x <http://example.org/title> \"One\" }");
+		assertEquals(1, planCache().size());
+	}
+
+	public void testSizeZeroDisablesCache() {
+		mapping.configuration().setPlanCacheSize(0);
+		assertEquals(list("One"), titles("<http://example.org/doc/1>"));
+		assertEquals(0, planCache().size());
+	}
+
+	public void testConstantOnlyInOptionalKeepsRowsWithoutMatch() {
+		assertEquals(list("One Alice", "Two"), select(
+				"SELECT ?t ?a { ?x <http://example.org/title> ?t " +
+				"OPTIONAL { ?x <http://example.org/author> ?a . " +
+				"?x <http://example.org/author> \"Alice\" } } ORDER BY ?t"));
+		assertEquals(list("One", "Two Bob"), select(
+				"SELECT ?t ?a { ?x <http://example.org/title> ?t " +
+				"OPTIONAL { ?x <http://example.org/author> ?a . " +
+				"?x <http://example.org/author> \"Bob\" } } ORDER BY ?t"));
+		assertEquals(list("One", "Two"), select(
+				"SELECT ?t ?a { ?x <http://example.org/title> ?t " +
+				"OPTIONAL { ?x <http://example.org/author> ?a . " +
+				"?x <http://example.org/author> \"Carol\" } } ORDER BY ?t"));
+		assertEquals(1, planCache().size());
+	}
+
+	public void testOptionalFilterIsPartOfKey() {
+		assertEquals(list("One Alice", "Two Bob"), select(
+				"SELECT ?t ?a { ?x <http://example.org/title> ?t " +
+				"OPTIONAL { ?x <http://example.org/author> ?a } } ORDER BY ?t"));
+		assertEquals(list("One Alice", "Two"), select(
+				"SELECT ?t ?a { ?x <http://example.org/title> ?t " +
+				"OPTIONAL { ?x <http://example.org/author> ?a " +
+				"FILTER (?t = \"One\") } } ORDER BY ?t"));
+		assertEquals(2, planCache().size());
+	}
+
+	public void testConstantIsAppliedBeforeLimit() {
+		long hits = Metrics.PLAN_CACHE_HITS.getCount();
+		assertEquals(list("One"), select(
+				"SELECT ?t { ?x <http://example.org/title> ?t . " +
+				"?x <http://example.org/author> \"Alice\" } ORDER BY ?t LIMIT 1"));
+		assertEquals(list("Two"), select(
+				"SELECT ?t { ?x <http://example.org/title> ?t . " +
+				"?x <http://example.org/author> \"Bob\" } ORDER BY ?t LIMIT 1"));
+		assertEquals(list(), select(
+				"SELECT ?t { ?x <http://example.org/title> ?t . " +
+				"?x <http://example.org/author> \"Bob\" } ORDER BY ?t OFFSET 1 LIMIT 1"));
+		assertEquals(list(), select(
+				"SELECT ?t { ?x <http://example.org/title> ?t . " +
+				"?x <http://example.org/author> \"Alice\" } ORDER BY ?t OFFSET 1 LIMIT 1"));
+		assertEquals(2, planCache().size());
+		assertEquals(hits + 2, Metrics.PLAN_CACHE_HITS.getCount());
+	}
+
+	public void testConstantIsAppliedUnderOrderBy() {
+		assertEquals(list("Alice"), select(
+				"SELECT ?a { ?x <http://example.org/title> \"One\" . " +
+				"?x <http://example.org/author> ?a } ORDER BY DESC(?a)"));
+		assertEquals(list("Bob"), select(
+				"SELECT ?a { ?x <http://example.org/title> \"Two\" . " +
+				"?x <http://example.org/author> ?a } ORDER BY DESC(?a)"));
+		assertEquals(list(), select(
+				"SELECT ?a { ?x <http://example.org/title> \"Three\" . " +
+				"?x <http://example.org/author> ?a } ORDER BY DESC(?a)"));
+		assertEquals(1, planCache().size());
+	}
+
+	private List<String> titles(String subject) {
+		return select("SELECT ?t { " + subject + " <http://example.org/title> ?t }");
+	}
+
+	private List<String> select(String query) {
+		if (model == null) {
+			model = new ModelD2RQ(mapping);
+		}
+		List<String> result = new ArrayList<String>();
+		QueryExecution qe = QueryExecutionFactory.create(query, model);
+		try {
+			ResultSet rs = qe.execSelect();
+			while (rs.hasNext()) {
+				QuerySolution solution = rs.next();
+				StringBuilder row = new StringBuilder();
+				for (String var: rs.getResultVars()) {
+					if (!solution.contains(var)) continue;
+					if (row.length() > 0) row.append(' ');
+					row.append(solution.get(var).toString());
+				}
+				result.add(row.toString());
+			}
+		} finally {
+			qe.close();
+		}
+		return result;
+	}
+
+	private PlanCache planCache() {
+		return ((GraphD2RQ) model.getGraph()).getPlanCache();
+	}
+
+	private static List<String> list(String... values) {
+		List<String> result = new ArrayList<String>();
+		for (String value: values) {
+			result.add(value);
+		}
+		return result;
+	}
+}
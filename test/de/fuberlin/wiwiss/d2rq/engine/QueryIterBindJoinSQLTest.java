@@ -0,0 +1,102 @@
+package de.fuberlin.wiwiss.d2rq.engine;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.QueryIterator;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingFactory;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterPlainWrapper;
+
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.NodeRelation;
+import de.fuberlin.wiwiss.d2rq.algebra.Relation;
+import de.fuberlin.wiwiss.d2rq.helpers.HSQLDatabase;
+import de.fuberlin.wiwiss.d2rq.map.Database;
+import de.fuberlin.wiwiss.d2rq.nodes.NodeMaker;
+import de.fuberlin.wiwiss.d2rq.nodes.TypedNodeMaker;
+import de.fuberlin.wiwiss.d2rq.sql.ConnectedDB;
+import de.fuberlin.wiwiss.d2rq.sql.types.DataType.GenericType;
+import de.fuberlin.wiwiss.d2rq.values.Column;
+
+public class QueryIterBindJoinSQLTest extends TestCase {
+	private final static Var X = Var.alloc("x");
+	private final static Var Y = Var.alloc("y");
+	private HSQLDatabase db;
+	private ConnectedDB cdb;
+	private NodeRelation table;
+
+	public void setUp() {
+		db = new HSQLDatabase("bindjoin");
+		db.executeSQL("CREATE TABLE T (ID INT PRIMARY KEY)");
+		for (int i = 1; i <= 5; i++) {
+			db.executeSQL("INSERT INTO T VALUES (" + i + ")");
+		}
+		Properties p = new Properties();
+		p.setProperty(ConnectedDB.BIND_JOIN_BATCH_SIZE_PROPERTY, "2");
+		cdb = new ConnectedDB(db.getJdbcURL(), db.getUser(), db.getPassword(),
+				Collections.<String,GenericType>emptyMap(),
+				Database.NO_LIMIT, Database.NO_FETCH_SIZE, p);
+		Attribute id = new Attribute(null, "T", "ID");
+		Map<Var,NodeMaker> nodeMakers = new HashMap<Var,NodeMaker>();
+		nodeMakers.put(X, new TypedNodeMaker(TypedNodeMaker.PLAIN_LITERAL, new Column(id), true));
+		table = new NodeRelation(Relation.createSimpleRelation(cdb, new Attribute[]{id}), nodeMakers);
+	}
+
+	public void tearDown() {
+		cdb.close();
+		db.close(true);
+	}
+
+	public void testBatchSizeFromDatabase() {
+		assertEquals(2, QueryIterBindJoinSQL.batchSize(Collections.singleton(table)));
+	}
+
+	public void testNoBatchingForRelationsWithLimit() {
+		assertEquals(1, QueryIterBindJoinSQL.batchSize(
+				Collections.singleton(table.limit(10))));
+	}
+
+	public void testJoinsEachInputBindingWithItsRows() {
+		List<Binding> input = new ArrayList<Binding>();
+		input.add(BindingFactory.binding(X, Node.createLiteral("1")));
+		input.add(BindingFactory.binding(X, Node.createLiteral("7")));
+		input.add(BindingFactory.binding(
+				BindingFactory.binding(X, Node.createLiteral("3")),
+				Y, Node.createLiteral("a")));
+		input.add(BindingFactory.binding(Y, Node.createLiteral("b")));
+		input.add(BindingFactory.binding(X, Node.createLiteral("1")));
+		QueryIterator it = new QueryIterBindJoinSQL(
+				new QueryIterPlainWrapper(input.iterator()),
+				Collections.singleton(table), 2, null);
+		List<String> expected = new ArrayList<String>();
+		expected.add("1/-");
+		expected.add("3/a");
+		for (int i = 1; i <= 5; i++) {
+			expected.add(i + "/b");
+		}
+		expected.add("1/-");
+		Collections.sort(expected);
+		assertEquals(expected, values(it));
+	}
+
+	private List<String> values(QueryIterator it) {
+		List<String> result = new ArrayList<String>();
+		while (it.hasNext()) {
+			Binding b = it.nextBinding();
+			result.add(b.get(X).getLiteralLexicalForm() + "/" +
+					(b.contains(Y) ? b.get(Y).getLiteralLexicalForm() : "-"));
+		}
+		Collections.sort(result);
+		return result;
+	}
+}
@@ -0,0 +1,142 @@
+package de.fuberlin.wiwiss.d2rq.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.QueryIterator;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingFactory;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterPlainWrapper;
+
+import de.fuberlin.wiwiss.d2rq.D2RQException;
+import de.fuberlin.wiwiss.d2rq.helpers.HSQLDatabase;
+import de.fuberlin.wiwiss.d2rq.map.Database;
+import de.fuberlin.wiwiss.d2rq.sql.ConnectedDB;
+import de.fuberlin.wiwiss.d2rq.sql.types.DataType.GenericType;
+
+public class QueryIterConcatParallelTest extends TestCase {
+	private final static Var X = Var.alloc("x");
+
+	public void testOrderedMergeKeepsBranchOrder() {
+		QueryIterator it = new QueryIterConcatParallel(
+				branches(3, 50), 2, true, 4, null);
+		assertEquals(expected(3, 50), values(it));
+	}
+
+	public void testUnorderedMergeDeliversAllBindings() {
+		QueryIterator it = new QueryIterConcatParallel(
+				branches(5, 50), 3, false, 4, null);
+		List<String> actual = values(it);
+		Collections.sort(actual);
+		List<String> expected = expected(5, 50);
+		Collections.sort(expected);
+		assertEquals(expected, actual);
+	}
+
+	public void testEmptyBranches() {
+		QueryIterator it = new QueryIterConcatParallel(
+				branches(3, 0), 2, true, 4, null);
+		assertFalse(it.hasNext());
+	}
+
+	public void testBranchFailureIsRethrown() {
+		List<QueryIterator> branches = branches(2, 10);
+		branches.add(new QueryIterPlainWrapper(new Iterator<Binding>() {
+			public boolean hasNext() { throw new D2RQException("Branch failed"); }
+			public Binding next() { return null; }
+			public void remove() {}
+		}));
+		QueryIterator it = new QueryIterConcatParallel(branches, 3, true, 4, null);
+		try {
+			values(it);
+			fail("Expected exception");
+		} catch (D2RQException ex) {
+			assertTrue(ex.getMessage().startsWith("Branch failed"));
+		}
+	}
+
+	public void testCloseStopsAndClosesBranches() {
+		List<QueryIterator> branches = branches(3, 1000);
+		QueryIterator it = new QueryIterConcatParallel(branches, 3, true, 4, null);
+		assertTrue(it.hasNext());
+		it.next();
+		it.close();
+		for (QueryIterator branch: branches) {
+			assertFalse(branch.hasNext());
+		}
+	}
+
+	public void testBranchesRunOnConsumerThreadWithoutFreeConnections() throws InterruptedException {
+		HSQLDatabase db = new HSQLDatabase("concatparallel");
+		Properties p = new Properties();
+		p.setProperty(ConnectedDB.POOL_MAX_SIZE_PROPERTY, "1");
+		final ConnectedDB cdb = new ConnectedDB(db.getJdbcURL(), db.getUser(), db.getPassword(),
+				Collections.<String,GenericType>emptyMap(),
+				Database.NO_LIMIT, Database.NO_FETCH_SIZE, p);
+		try {
+			Thread other = new Thread() {
+				public void run() {
+					cdb.borrowConnection();
+				}
+			};
+			other.start();
+			other.join();
+			assertEquals(0, cdb.availableConnections());
+			final List<Thread> threads = new ArrayList<Thread>();
+			List<QueryIterator> branches = new ArrayList<QueryIterator>();
+			for (final QueryIterator branch: branches(3, 10)) {
+				branches.add(new QueryIterPlainWrapper(new Iterator<Binding>() {
+					public boolean hasNext() {
+						threads.add(Thread.currentThread());
+						return branch.hasNext();
+					}
+					public Binding next() { return branch.nextBinding(); }
+					public void remove() {}
+				}));
+			}
+			QueryIterator it = new QueryIterConcatParallel(branches, 3, true, 4, cdb, null);
+			assertEquals(expected(3, 10), values(it));
+			assertEquals(Collections.nCopies(threads.size(), Thread.currentThread()), threads);
+		} finally {
+			cdb.close();
+			db.close(true);
+		}
+	}
+
+	private List<QueryIterator> branches(int count, int size) {
+		List<QueryIterator> result = new ArrayList<QueryIterator>();
+		for (int i = 0; i < count; i++) {
+			List<Binding> bindings = new ArrayList<Binding>();
+			for (int j = 0; j < size; j++) {
+				bindings.add(BindingFactory.binding(X, Node.createLiteral(i + "-" + j)));
+			}
+			result.add(new QueryIterPlainWrapper(bindings.iterator()));
+		}
+		return result;
+	}
+
+	private List<String> expected(int count, int size) {
+		List<String> result = new ArrayList<String>();
+		for (int i = 0; i < count; i++) {
+			for (int j = 0; j < size; j++) {
+				result.add(i + "-" + j);
+			}
+		}
+		return result;
+	}
+
+	private List<String> values(QueryIterator it) {
+		List<String> result = new ArrayList<String>();
+		while (it.hasNext()) {
+			result.add(it.nextBinding().get(X).getLiteralLexicalForm());
+		}
+		return result;
+	}
+}
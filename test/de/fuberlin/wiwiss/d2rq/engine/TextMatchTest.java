@@ -0,0 +1,106 @@
+package de.fuberlin.wiwiss.d2rq.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.ResourceFactory;
+import com.hp.hpl.jena.sparql.algebra.Op;
+import com.hp.hpl.jena.sparql.algebra.op.OpBGP;
+import com.hp.hpl.jena.sparql.algebra.op.OpNull;
+import com.hp.hpl.jena.sparql.core.BasicPattern;
+import com.hp.hpl.jena.sparql.expr.ExprList;
+
+import de.fuberlin.wiwiss.d2rq.D2RQException;
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.helpers.MappingFixture;
+import de.fuberlin.wiwiss.d2rq.map.ClassMap;
+import de.fuberlin.wiwiss.d2rq.map.Mapping;
+import de.fuberlin.wiwiss.d2rq.map.PropertyBridge;
+import de.fuberlin.wiwiss.d2rq.vocab.D2RQ;
+
+public class TextMatchTest extends TestCase {
+	private final static Node S = Node.createVariable("s");
+	private final static Node O = Node.createVariable("o");
+	private final static Node TITLE = Node.createURI("http://example.org/title");
+	private final static Node BODY = Node.createURI("http://example.org/body");
+	private final static Node ABSTRACT = Node.createURI("http://example.org/abstract");
+	private MappingFixture fixture;
+	private Mapping mapping;
+
+	public void setUp() {
+		fixture = new MappingFixture("textmatch");
+		fixture.executeSQL("CREATE TABLE DOCS (ID INT PRIMARY KEY, TITLE VARCHAR(50), BODY VARCHAR(500))");
+		mapping = fixture.mapping();
+		ClassMap classMap = fixture.addClassMap("docs", "doc/@@DOCS.ID@@");
+		fixture.addPropertyBridge(classMap, "title", "DOCS.TITLE");
+		fixture.addPropertyBridge(classMap, "body", "DOCS.BODY").setFullTextIndex("english");
+	}
+
+	public void tearDown() {
+		fixture.close();
+	}
+
+	public void testFullTextIndexIsFound() {
+		mapping.compiledPropertyBridges();
+		ClassMap classMap = mapping.classMap(ResourceFactory.createResource("http://example.org/docs"));
+		assertEquals("english", mapping.fullTextIndex(classMap.database().connectedDB(), 
+				new Attribute(null, "DOCS", "BODY")));
+		assertNull(mapping.fullTextIndex(classMap.database().connectedDB(), 
+				new Attribute(null, "DOCS", "TITLE")));
+	}
+
+	public void testAliasedColumnIsResolved() {
+		ClassMap classMap = fixture.addClassMap("aliased", "aliased/@@D.ID@@");
+		classMap.addAlias("DOCS AS D");
+		fixture.addPropertyBridge(classMap, "abstract", "D.TITLE").setFullTextIndex("german");
+		assertEquals("german", mapping.fullTextIndex(classMap.database().connectedDB(), 
+				new Attribute(null, "DOCS", "TITLE")));
+		try {
+			translate(new Triple(S, ABSTRACT, O), new Triple(O, D2RQ.textMatch.asNode(), Node.createLiteral("web")));
+			fail("HSQLDB has no full-text search");
+		} catch (D2RQException ex) {
+			assertEquals(D2RQException.SQL_FULLTEXT_UNSUPPORTED, ex.errorCode());
+		}
+	}
+
+	public void testColumnWithoutIndexNeverMatches() {
+		Op op = translate(new Triple(S, TITLE, O), new Triple(O, D2RQ.textMatch.asNode(), Node.createLiteral("web")));
+		assertTrue(op instanceof OpNull);
+	}
+
+	public void testUnsupportedEngineIsReported() {
+		try {
+			translate(new Triple(S, BODY, O), new Triple(O, D2RQ.textMatch.asNode(), Node.createLiteral("web")));
+			fail("HSQLDB has no full-text search");
+		} catch (D2RQException ex) {
+			assertEquals(D2RQException.SQL_FULLTEXT_UNSUPPORTED, ex.errorCode());
+		}
+	}
+
+	public void testIndexWithoutColumnIsRejected() {
+		PropertyBridge bridge = new PropertyBridge(ResourceFactory.createResource("http://example.org/bad"));
+		bridge.setBelongsToClassMap(mapping.classMap(ResourceFactory.createResource("http://example.org/docs")));
+		bridge.addProperty(ResourceFactory.createProperty("http://example.org/bad"));
+		bridge.setPattern("@@DOCS.TITLE@@");
+		bridge.setFullTextIndex("english");
+		try {
+			bridge.validate();
+			fail("d2rq:fullTextIndex requires d2rq:column");
+		} catch (D2RQException ex) {
+			assertEquals(D2RQException.PROPERTYBRIDGE_FULLTEXTINDEX_WITHOUT_COLUMN, ex.errorCode());
+		}
+	}
+
+	private Op translate(Triple... triples) {
+		List<Triple> list = new ArrayList<Triple>();
+		for (Triple triple: triples) {
+			list.add(triple);
+		}
+		return new TransformOpBGP(mapping, false).createOpD2RQ(
+				new OpBGP(BasicPattern.wrap(list)), new ExprList());
+	}
+}
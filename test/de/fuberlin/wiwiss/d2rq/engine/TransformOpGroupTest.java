@@ -0,0 +1,190 @@
+package de.fuberlin.wiwiss.d2rq.engine;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.sparql.algebra.Op;
+import com.hp.hpl.jena.sparql.algebra.op.OpGroup;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.core.VarExprList;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.expr.ExprAggregator;
+import com.hp.hpl.jena.sparql.expr.ExprVar;
+import com.hp.hpl.jena.sparql.expr.aggregate.AggAvg;
+import com.hp.hpl.jena.sparql.expr.aggregate.AggCount;
+import com.hp.hpl.jena.sparql.expr.aggregate.AggCountVarDistinct;
+import com.hp.hpl.jena.sparql.expr.aggregate.AggGroupConcat;
+import com.hp.hpl.jena.sparql.expr.aggregate.AggMax;
+import com.hp.hpl.jena.sparql.expr.aggregate.AggMin;
+import com.hp.hpl.jena.sparql.expr.aggregate.AggSum;
+import com.hp.hpl.jena.sparql.expr.aggregate.Aggregator;
+
+import de.fuberlin.wiwiss.d2rq.algebra.AliasMap;
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.Join;
+import de.fuberlin.wiwiss.d2rq.algebra.NodeRelation;
+import de.fuberlin.wiwiss.d2rq.algebra.OrderSpec;
+import de.fuberlin.wiwiss.d2rq.algebra.ProjectionSpec;
+import de.fuberlin.wiwiss.d2rq.algebra.Relation;
+import de.fuberlin.wiwiss.d2rq.algebra.RelationImpl;
+import de.fuberlin.wiwiss.d2rq.expr.Expression;
+import de.fuberlin.wiwiss.d2rq.helpers.SQLOpFixture;
+import de.fuberlin.wiwiss.d2rq.nodes.NodeMaker;
+import de.fuberlin.wiwiss.d2rq.nodes.TypedNodeMaker;
+import de.fuberlin.wiwiss.d2rq.values.Column;
+
+public class TransformOpGroupTest extends TestCase {
+	private final static Var GRP = Var.alloc("grp");
+	private final static Var PRICE = Var.alloc("price");
+	private final static Var NAME = Var.alloc("name");
+	private final static Var RESULT = Var.alloc("result");
+	private SQLOpFixture fixture;
+
+	public void setUp() {
+		fixture = new SQLOpFixture("group");
+		fixture.executeSQL("CREATE TABLE T (ID INT PRIMARY KEY, GRP INT, PRICE INT, NAME VARCHAR(10))");
+		fixture.executeSQL("INSERT INTO T VALUES (1, 1, 10, 'a')");
+		fixture.executeSQL("INSERT INTO T VALUES (2, 1, 5, 'b')");
+		fixture.executeSQL("INSERT INTO T VALUES (3, 2, 3, 'c')");
+		fixture.executeSQL("INSERT INTO T VALUES (4, 2, 3, 'd')");
+		fixture.executeSQL("INSERT INTO T VALUES (5, 2, 3, 'e')");
+		fixture.executeSQL("CREATE TABLE U (ID INT PRIMARY KEY, GRP INT, PRICE INT, NAME VARCHAR(10))");
+		fixture.executeSQL("CREATE TABLE V (ID INT PRIMARY KEY, GRP INT, PRICE INT, NAME VARCHAR(10))");
+		fixture.executeSQL("INSERT INTO V VALUES (1, 1, 1, 'x')");
+		fixture.executeSQL("INSERT INTO V VALUES (2, 1, 1, 'X')");
+	}
+
+	public void tearDown() {
+		fixture.close();
+	}
+
+	public void testCountMovesIntoSQL() {
+		Op op = transform(group(table("T", true), null, new AggCount()));
+		assertTrue(op instanceof OpAggregateSQL);
+		assertEquals(Collections.singletonMap(null, integer(5)), eval(op));
+		assertTrue(fixture.sql().startsWith("SELECT COUNT(*) AS "));
+		assertFalse(fixture.sql().contains("GROUP BY"));
+	}
+
+	public void testGroupByKey() {
+		Op op = transform(group(table("T", true), GRP, new AggCount()));
+		Map<Node,Node> expected = new HashMap<Node,Node>();
+		expected.put(integer(1), integer(2));
+		expected.put(integer(2), integer(3));
+		assertEquals(expected, eval(op));
+		assertTrue(fixture.sql().endsWith(" GROUP BY \"T\".\"GRP\""));
+	}
+
+	public void testMinMaxSum() {
+		assertEquals(Collections.singletonMap(null, integer(3)),
+				eval(transform(group(table("T", false), null, new AggMin(new ExprVar(PRICE))))));
+		assertEquals(Collections.singletonMap(null, integer(10)),
+				eval(transform(group(table("T", false), null, new AggMax(new ExprVar(PRICE))))));
+		Map<Node,Node> expected = new HashMap<Node,Node>();
+		expected.put(integer(1), integer(15));
+		expected.put(integer(2), integer(9));
+		assertEquals(expected,
+				eval(transform(group(table("T", true), GRP, new AggSum(new ExprVar(PRICE))))));
+	}
+
+	public void testAverageIsComputedLikeARQ() {
+		Op op = transform(group(table("T", true), null, new AggAvg(new ExprVar(PRICE))));
+		Node avg = eval(op).get(null);
+		assertEquals(XSDDatatype.XSDdecimal.getURI(), avg.getLiteralDatatypeURI());
+		assertEquals("4.8", avg.getLiteralLexicalForm());
+	}
+
+	public void testCountDistinct() {
+		Op op = transform(group(table("T", false), null,
+				new AggCountVarDistinct(new ExprVar(PRICE))));
+		assertTrue(op instanceof OpAggregateSQL);
+		assertEquals(Collections.singletonMap(null, integer(3)), eval(op));
+		assertTrue(fixture.sql().contains("COUNT(DISTINCT \"T\".\"PRICE\")"));
+	}
+
+	public void testStringsAreNotComparedInSQL() {
+		// Case-insensitive collations would merge 'x' and 'X'
+		assertTrue(transform(group(table("V", true), NAME, new AggCount())) instanceof OpGroup);
+		assertTrue(transform(group(table("V", false), null,
+				new AggCountVarDistinct(new ExprVar(NAME)))) instanceof OpGroup);
+		Op op = transform(group(table("V", true), GRP, new AggCount()));
+		assertTrue(op instanceof OpAggregateSQL);
+		assertEquals(Collections.singletonMap(integer(1), integer(2)), eval(op));
+	}
+
+		public void testEmptyTableWithoutKeys() {
+		assertEquals(Collections.singletonMap(null, integer(0)),
+				eval(transform(group(table("U", true), null, new AggCount()))));
+		assertEquals(Collections.singletonMap(null, null),
+				eval(transform(group(table("U", true), null, new AggMin(new ExprVar(PRICE))))));
+	}
+
+	public void testCountNeedsUniqueRelation() {
+		assertTrue(transform(group(table("T", false), null, new AggCount())) instanceof OpGroup);
+	}
+
+	public void testUnsupportedAggregatesStayInARQ() {
+		assertTrue(transform(group(table("T", true), null,
+				new AggMin(new ExprVar(NAME)))) instanceof OpGroup);
+		assertTrue(transform(group(table("T", true), null,
+				new AggSum(new ExprVar(NAME)))) instanceof OpGroup);
+		assertTrue(transform(group(table("T", true), null,
+				new AggGroupConcat(new ExprVar(PRICE), ","))) instanceof OpGroup);
+	}
+
+	private Node integer(int i) {
+		return Node.createLiteral(Integer.toString(i), null, XSDDatatype.XSDinteger);
+	}
+
+	private NodeRelation table(String tableName, boolean unique) {
+		Attribute grp = new Attribute(null, tableName, "GRP");
+		Attribute price = new Attribute(null, tableName, "PRICE");
+		Attribute name = new Attribute(null, tableName, "NAME");
+		Map<Var,NodeMaker> nodeMakers = new HashMap<Var,NodeMaker>();
+		nodeMakers.put(GRP, new TypedNodeMaker(
+				TypedNodeMaker.typedLiteral(XSDDatatype.XSDinteger), new Column(grp), true));
+		nodeMakers.put(PRICE, new TypedNodeMaker(
+				TypedNodeMaker.typedLiteral(XSDDatatype.XSDinteger), new Column(price), true));
+		nodeMakers.put(NAME, new TypedNodeMaker(
+				TypedNodeMaker.PLAIN_LITERAL, new Column(name), true));
+		Relation relation = new RelationImpl(fixture.connectedDB(), AliasMap.NO_ALIASES,
+				Expression.TRUE, Expression.TRUE, Collections.<Join>emptySet(),
+				new HashSet<ProjectionSpec>(Arrays.asList(new ProjectionSpec[]{grp, price, name})),
+				unique, Collections.<OrderSpec>emptyList(), Relation.NO_LIMIT, Relation.NO_LIMIT);
+		return new NodeRelation(relation, nodeMakers);
+	}
+
+	/**
+	 * @param key The group key, or <code>null</code>
+	 */
+	private OpGroup group(NodeRelation table, Var key, Aggregator aggregator) {
+		VarExprList keys = new VarExprList();
+		if (key != null) {
+			keys.add(key);
+		}
+		return new OpGroup(OpUnionTableSQL.create(Collections.singleton(table)), keys,
+				Collections.singletonList(new ExprAggregator(RESULT, aggregator)));
+	}
+
+	private Op transform(Op op) {
+		return SQLOpFixture.transform(op, new TransformOpGroup());
+	}
+
+	/**
+	 * @return Map from group key to result
+	 */
+	private Map<Node,Node> eval(Op op) {
+		Map<Node,Node> result = new HashMap<Node,Node>();
+		for (Binding binding: fixture.eval(op)) {
+			result.put(binding.get(GRP), binding.get(RESULT));
+		}
+		return result;
+	}
+}
@@ -0,0 +1,134 @@
+package de.fuberlin.wiwiss.d2rq.engine;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import com.hp.hpl.jena.sparql.algebra.Op;
+import com.hp.hpl.jena.sparql.algebra.op.OpFilter;
+import com.hp.hpl.jena.sparql.algebra.op.OpJoin;
+import com.hp.hpl.jena.sparql.algebra.op.OpSequence;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.expr.E_Equals;
+import com.hp.hpl.jena.sparql.expr.E_Str;
+import com.hp.hpl.jena.sparql.expr.ExprVar;
+import com.hp.hpl.jena.sparql.expr.NodeValue;
+import com.hp.hpl.jena.sparql.sse.SSE;
+
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.NodeRelation;
+import de.fuberlin.wiwiss.d2rq.helpers.SQLOpFixture;
+import de.fuberlin.wiwiss.d2rq.map.Mapping;
+import de.fuberlin.wiwiss.d2rq.nodes.NodeMaker;
+import de.fuberlin.wiwiss.d2rq.nodes.TypedNodeMaker;
+
+public class TransformOpJoinTest extends TestCase {
+	private final static Var ID = Var.alloc("id");
+	private final static Var LABEL = Var.alloc("label");
+	private SQLOpFixture fixture;
+
+	public void setUp() {
+		fixture = new SQLOpFixture("join");
+		fixture.executeSQL("CREATE TABLE T (ID INT PRIMARY KEY)");
+		fixture.executeSQL("CREATE TABLE U (ID INT PRIMARY KEY, LABEL VARCHAR(10))");
+		for (int i = 1; i <= 3; i++) {
+			fixture.executeSQL("INSERT INTO T VALUES (" + i + ")");
+		}
+		fixture.executeSQL("INSERT INTO U VALUES (1, 'one')");
+		fixture.executeSQL("INSERT INTO U VALUES (3, 'three')");
+		fixture.executeSQL("INSERT INTO U VALUES (4, 'four')");
+	}
+
+	public void tearDown() {
+		fixture.close();
+	}
+
+	public void testJoinBecomesSingleStatement() {
+		Op op = transform(OpJoin.create(ids(), labels()));
+		assertTrue(op instanceof OpUnionTableSQL);
+		Map<Integer,String> expected = new HashMap<Integer,String>();
+		expected.put(1, "one");
+		expected.put(3, "three");
+		assertEquals(expected, eval(op));
+		assertEquals(1, fixture.trace().statements().size());
+	}
+
+	public void testSelfJoinRenamesTables() {
+		Op op = transform(OpJoin.create(labels(), labels()));
+		Map<Integer,String> expected = new HashMap<Integer,String>();
+		expected.put(1, "one");
+		expected.put(3, "three");
+		expected.put(4, "four");
+		assertEquals(expected, eval(op));
+		assertTrue(fixture.sql().contains("\"U\" AS \"T1_U\""));
+	}
+
+	public void testFilterIsAppliedAfterJoin() {
+		Op filtered = OpFilter.filter(new E_Equals(
+				new E_Str(new ExprVar(LABEL)), NodeValue.makeString("three")), labels());
+		Op op = transform(OpJoin.create(ids(), filtered));
+		assertTrue(op instanceof OpFilter);
+		assertTrue(((OpFilter) op).getSubOp() instanceof OpUnionTableSQL);
+	}
+
+	public void testSequenceIsMerged() {
+		OpSequence sequence = OpSequence.create();
+		sequence.add(ids());
+		sequence.add(labels());
+		Op op = transform(sequence);
+		assertTrue(op instanceof OpUnionTableSQL);
+		assertEquals(2, eval(op).size());
+	}
+
+	public void testLimitedRelationIsNotJoined() {
+		NodeRelation limited = ((OpUnionTableSQL) labels()).tableOps().get(0).table().limit(1);
+		Op op = transform(OpJoin.create(ids(),
+				OpUnionTableSQL.create(Collections.singleton(limited))));
+		assertTrue(op instanceof OpJoin);
+	}
+
+	public void testFilterInJoinSurvivesPushDown() {
+		Op op = SSE.parseOp("(join (filter (> ?x 3) (bgp (?s <p> ?x))) (bgp (?s <q> ?y)))");
+		assertEquals(op, PushDownOpFilterVisitor.transform(
+				SSE.parseOp("(join (filter (> ?x 3) (bgp (?s <p> ?x))) (bgp (?s <q> ?y)))")));
+	}
+
+	private Op ids() {
+		return SQLOpFixture.union(fixture.table(ID, new Attribute(null, "T", "ID"),
+				TypedNodeMaker.typedLiteral(XSDDatatype.XSDinteger)));
+	}
+
+	private Op labels() {
+		Attribute id = new Attribute(null, "U", "ID");
+		Attribute label = new Attribute(null, "U", "LABEL");
+		Map<Var,NodeMaker> nodeMakers = new HashMap<Var,NodeMaker>();
+		nodeMakers.put(ID, integers(id));
+		nodeMakers.put(LABEL, SQLOpFixture.nodeMaker(TypedNodeMaker.PLAIN_LITERAL, label));
+		return SQLOpFixture.union(fixture.table(nodeMakers, id, label));
+	}
+
+	private TypedNodeMaker integers(Attribute attribute) {
+		return SQLOpFixture.nodeMaker(
+				TypedNodeMaker.typedLiteral(XSDDatatype.XSDinteger), attribute);
+	}
+
+	private Op transform(Op op) {
+		return SQLOpFixture.transform(op, new TransformOpBGP(new Mapping(), false));
+	}
+
+	/**
+	 * @return Map from ?id to the lexical form of ?label
+	 */
+	private Map<Integer,String> eval(Op op) {
+		Map<Integer,String> result = new HashMap<Integer,String>();
+		for (Binding binding: fixture.eval(op)) {
+			result.put(Integer.valueOf(binding.get(ID).getLiteralLexicalForm()),
+					binding.get(LABEL).getLiteralLexicalForm());
+		}
+		return result;
+	}
+}
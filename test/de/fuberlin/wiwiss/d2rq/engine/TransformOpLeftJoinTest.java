@@ -0,0 +1,203 @@
+package de.fuberlin.wiwiss.d2rq.engine;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.SortCondition;
+import com.hp.hpl.jena.sparql.algebra.Op;
+import com.hp.hpl.jena.sparql.algebra.op.OpLeftJoin;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingFactory;
+import com.hp.hpl.jena.sparql.expr.E_GreaterThan;
+import com.hp.hpl.jena.sparql.expr.E_Str;
+import com.hp.hpl.jena.sparql.expr.E_StrLength;
+import com.hp.hpl.jena.sparql.expr.Expr;
+import com.hp.hpl.jena.sparql.expr.ExprVar;
+import com.hp.hpl.jena.sparql.expr.NodeValue;
+
+import de.fuberlin.wiwiss.d2rq.algebra.AliasMap;
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.Join;
+import de.fuberlin.wiwiss.d2rq.algebra.NodeRelation;
+import de.fuberlin.wiwiss.d2rq.algebra.OrderSpec;
+import de.fuberlin.wiwiss.d2rq.algebra.ProjectionSpec;
+import de.fuberlin.wiwiss.d2rq.algebra.Relation;
+import de.fuberlin.wiwiss.d2rq.algebra.RelationImpl;
+import de.fuberlin.wiwiss.d2rq.expr.Expression;
+import de.fuberlin.wiwiss.d2rq.helpers.SQLOpFixture;
+import de.fuberlin.wiwiss.d2rq.map.Mapping;
+import de.fuberlin.wiwiss.d2rq.nodes.NodeMaker;
+import de.fuberlin.wiwiss.d2rq.nodes.TypedNodeMaker;
+
+public class TransformOpLeftJoinTest extends TestCase {
+	private final static Var ID = Var.alloc("id");
+	private final static Var LABEL = Var.alloc("label");
+	private final static Var NOTE = Var.alloc("note");
+	private SQLOpFixture fixture;
+
+	public void setUp() {
+		fixture = new SQLOpFixture("leftjoin");
+		fixture.executeSQL("CREATE TABLE T (ID INT PRIMARY KEY)");
+		fixture.executeSQL("CREATE TABLE U (ID INT PRIMARY KEY, LABEL VARCHAR(10))");
+		fixture.executeSQL("CREATE TABLE V (ID INT PRIMARY KEY, NOTE VARCHAR(10))");
+		for (int i = 1; i <= 3; i++) {
+			fixture.executeSQL("INSERT INTO T VALUES (" + i + ")");
+		}
+		fixture.executeSQL("INSERT INTO U VALUES (1, 'one')");
+		fixture.executeSQL("INSERT INTO U VALUES (2, NULL)");
+		fixture.executeSQL("INSERT INTO U VALUES (3, 'three')");
+		fixture.executeSQL("INSERT INTO V VALUES (3, 'n3')");
+	}
+
+	public void tearDown() {
+		fixture.close();
+	}
+
+	public void testMissingValuesAreUnbound() {
+		Op op = transform(OpLeftJoin.create(ids(), labels(), (Expr) null));
+		assertTrue(op instanceof OpUnionTableSQL);
+		Map<Integer,String> expected = new HashMap<Integer,String>();
+		expected.put(1, "one");
+		expected.put(2, null);
+		expected.put(3, "three");
+		assertEquals(expected, eval(op, LABEL, BindingFactory.root()));
+		assertEquals(1, fixture.trace().statements().size());
+		assertTrue(fixture.sql().contains(" FROM \"T\" LEFT OUTER JOIN \"U\" ON "));
+	}
+
+	public void testFilterGoesIntoOnClause() {
+		Expr filter = new E_GreaterThan(new ExprVar(ID), NodeValue.makeInteger(1));
+		Op op = transform(OpLeftJoin.create(ids(), labels(), filter));
+		Map<Integer,String> expected = new HashMap<Integer,String>();
+		expected.put(1, null);
+		expected.put(2, null);
+		expected.put(3, "three");
+		assertEquals(expected, eval(op, LABEL, BindingFactory.root()));
+		assertFalse(fixture.sql().contains(" WHERE "));
+	}
+
+	public void testUntranslatableFilterStaysInARQ() {
+		Expr filter = new E_GreaterThan(
+				new E_StrLength(new E_Str(new ExprVar(LABEL))), NodeValue.makeInteger(3));
+		assertTrue(transform(OpLeftJoin.create(ids(), labels(), filter)) instanceof OpLeftJoin);
+	}
+
+	public void testChainedOptionals() {
+		Op op = transform(OpLeftJoin.create(
+				OpLeftJoin.create(ids(), labels(), (Expr) null), notes(), (Expr) null));
+		assertTrue(op instanceof OpUnionTableSQL);
+		Map<Integer,String> expected = new HashMap<Integer,String>();
+		expected.put(1, null);
+		expected.put(2, null);
+		expected.put(3, "n3");
+		assertEquals(expected, eval(op, NOTE, BindingFactory.root()));
+		assertEquals(1, fixture.trace().statements().size());
+	}
+
+	public void testOptionalSideWithSeveralTables() {
+		Attribute uId = new Attribute(null, "U", "ID");
+		Attribute vId = new Attribute(null, "V", "ID");
+		Attribute note = new Attribute(null, "V", "NOTE");
+		Map<Var,NodeMaker> nodeMakers = new HashMap<Var,NodeMaker>();
+		nodeMakers.put(ID, integers(uId));
+		nodeMakers.put(NOTE, SQLOpFixture.nodeMaker(TypedNodeMaker.PLAIN_LITERAL, note));
+		Relation relation = new RelationImpl(fixture.connectedDB(), AliasMap.NO_ALIASES, Expression.TRUE, Expression.TRUE,
+				Collections.singleton(new Join(uId, vId, Join.DIRECTION_UNDIRECTED)),
+				new HashSet<ProjectionSpec>(Arrays.asList(new ProjectionSpec[]{uId, note})),
+				false, Collections.<OrderSpec>emptyList(), Relation.NO_LIMIT, Relation.NO_LIMIT);
+		Op op = transform(OpLeftJoin.create(ids(),
+				OpUnionTableSQL.create(Collections.singleton(new NodeRelation(relation, nodeMakers))),
+				(Expr) null));
+		Map<Integer,String> expected = new HashMap<Integer,String>();
+		expected.put(1, null);
+		expected.put(2, null);
+		expected.put(3, "n3");
+		assertEquals(expected, eval(op, NOTE, BindingFactory.root()));
+		assertTrue(fixture.sql().contains(" LEFT OUTER JOIN (\"U\" CROSS JOIN \"V\") ON "));
+	}
+
+	public void testBoundOptionalVariableDropsConflictingRows() {
+		Op op = transform(OpLeftJoin.create(ids(), labels(), (Expr) null));
+		Node three = Node.createLiteral("three");
+		// Row 1 has a different label; row 2 has none, so it is compatible
+		Map<Integer,String> expected = new HashMap<Integer,String>();
+		expected.put(2, "three");
+		expected.put(3, "three");
+		assertEquals(expected, eval(op, LABEL, BindingFactory.binding(LABEL, three)));
+		assertTrue(fixture.sql().contains(" WHERE "));
+		assertTrue(fixture.sql().contains("'three'"));
+	}
+
+	public void testBoundOptionalVariableWithoutOptionalMatch() {
+		Op op = transform(OpLeftJoin.create(ids(), notes(), (Expr) null));
+		Map<Integer,String> expected = new HashMap<Integer,String>();
+		expected.put(1, "n1");
+		expected.put(2, "n1");
+		assertEquals(expected, eval(op, NOTE,
+				BindingFactory.binding(NOTE, Node.createLiteral("n1"))));
+	}
+
+	public void testOrderByOptionalVariableStaysInARQ() {
+		OpUnionTableSQL op = (OpUnionTableSQL) transform(OpLeftJoin.create(ids(), labels(), (Expr) null));
+		assertFalse(op.canOrderBy(Collections.singletonList(
+				new SortCondition(LABEL, Query.ORDER_ASCENDING))));
+		assertTrue(op.canOrderBy(Collections.singletonList(
+				new SortCondition(ID, Query.ORDER_ASCENDING))));
+	}
+
+	private TypedNodeMaker integers(Attribute attribute) {
+		return SQLOpFixture.nodeMaker(
+				TypedNodeMaker.typedLiteral(XSDDatatype.XSDinteger), attribute);
+	}
+
+	private Op ids() {
+		return SQLOpFixture.union(fixture.table(ID, new Attribute(null, "T", "ID"),
+				TypedNodeMaker.typedLiteral(XSDDatatype.XSDinteger)));
+	}
+
+	private Op labels() {
+		return table("U", "LABEL", LABEL);
+	}
+
+	private Op notes() {
+		return table("V", "NOTE", NOTE);
+	}
+
+	private Op table(String tableName, String columnName, Var var) {
+		Attribute id = new Attribute(null, tableName, "ID");
+		Attribute column = new Attribute(null, tableName, columnName);
+		Map<Var,NodeMaker> nodeMakers = new HashMap<Var,NodeMaker>();
+		nodeMakers.put(ID, integers(id));
+		nodeMakers.put(var, SQLOpFixture.nodeMaker(TypedNodeMaker.PLAIN_LITERAL, column));
+		return SQLOpFixture.union(fixture.table(nodeMakers, id, column));
+	}
+
+	private Op transform(Op op) {
+		return SQLOpFixture.transform(op, new TransformOpBGP(new Mapping(), false));
+	}
+
+	/**
+	 * @return Map from ?id to the lexical form of the variable's value, or null if unbound
+	 */
+	private Map<Integer,String> eval(Op op, Var var, Binding input) {
+		Map<Integer,String> result = new HashMap<Integer,String>();
+		Set<Integer> seen = new HashSet<Integer>();
+		for (Binding binding: fixture.eval(op, Collections.singletonList(input))) {
+			Integer id = Integer.valueOf(binding.get(ID).getLiteralLexicalForm());
+			assertTrue("Duplicate solution for " + id, seen.add(id));
+			Node value = binding.get(var);
+			result.put(id, value == null ? null : value.getLiteralLexicalForm());
+		}
+		return result;
+	}
+}
@@ -0,0 +1,131 @@
+package de.fuberlin.wiwiss.d2rq.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.SortCondition;
+import com.hp.hpl.jena.sparql.algebra.Op;
+import com.hp.hpl.jena.sparql.algebra.op.OpOrder;
+import com.hp.hpl.jena.sparql.algebra.op.OpProject;
+import com.hp.hpl.jena.sparql.algebra.op.OpSlice;
+import com.hp.hpl.jena.sparql.algebra.op.OpTopN;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.expr.E_Str;
+import com.hp.hpl.jena.sparql.expr.ExprVar;
+
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.NodeRelation;
+import de.fuberlin.wiwiss.d2rq.helpers.SQLOpFixture;
+import de.fuberlin.wiwiss.d2rq.nodes.TypedNodeMaker;
+import de.fuberlin.wiwiss.d2rq.nodes.TypedNodeMaker.NodeType;
+
+public class TransformOpOrderTest extends TestCase {
+	private final static Var X = Var.alloc("x");
+	private final static NodeType INTEGER = TypedNodeMaker.typedLiteral(XSDDatatype.XSDinteger);
+	private SQLOpFixture fixture;
+	private Attribute id;
+	private Attribute name;
+
+	public void setUp() {
+		fixture = new SQLOpFixture("order");
+		fixture.executeSQL("CREATE TABLE T (ID INT PRIMARY KEY, NAME VARCHAR(10))");
+		int[] ids = {4, 9, 1, 7, 3};
+		for (int i = 0; i < ids.length; i++) {
+			fixture.executeSQL("INSERT INTO T VALUES (" + ids[i] + ", 'n" + ids[i] + "')");
+		}
+		id = new Attribute(null, "T", "ID");
+		name = new Attribute(null, "T", "NAME");
+	}
+
+	public void tearDown() {
+		fixture.close();
+	}
+
+	public void testNumericOrderMovesIntoUnion() {
+		Op op = transform(new OpOrder(union(table(id, INTEGER)), descending()));
+		assertTrue(op instanceof OpUnionTableSQL);
+		assertTrue(((OpUnionTableSQL) op).isOrdered());
+	}
+
+	public void testStringOrderStaysInPlace() {
+		Op op = transform(new OpOrder(
+				union(table(name, TypedNodeMaker.PLAIN_LITERAL)), descending()));
+		assertTrue(op instanceof OpOrder);
+	}
+
+	public void testDatatypeMustMatchColumnType() {
+		Op op = transform(new OpOrder(
+				union(table(name, INTEGER)), descending()));
+		assertTrue(op instanceof OpOrder);
+	}
+
+	public void testExpressionOrderStaysInPlace() {
+		Op op = transform(new OpOrder(union(table(id, INTEGER)),
+				Collections.singletonList(new SortCondition(
+						new E_Str(new ExprVar(X)), Query.ORDER_ASCENDING))));
+		assertTrue(op instanceof OpOrder);
+	}
+
+	public void testMultipleTablesStayInPlace() {
+		Op op = transform(new OpOrder(
+				union(table(id, INTEGER), table(id, INTEGER)), descending()));
+		assertTrue(op instanceof OpOrder);
+	}
+
+	public void testOrderInSQL() {
+		List<String> values = eval(
+				transform(new OpOrder(union(table(id, INTEGER)), descending())));
+		assertEquals(Arrays.asList(new String[]{"9", "7", "4", "3", "1"}), values);
+		assertTrue(fixture.sql().endsWith(
+				" ORDER BY \"T\".\"ID\" DESC"));
+	}
+
+	public void testTopNInSQL() {
+		Op op = transform(new OpSlice(new OpProject(
+				new OpOrder(union(table(id, INTEGER)), descending()),
+				Collections.singletonList(X)), 1, 2));
+		List<String> values = eval(((OpProject) op).getSubOp());
+		assertEquals(Arrays.asList(new String[]{"7", "4"}), values);
+		assertTrue(fixture.sql().endsWith(
+				" ORDER BY \"T\".\"ID\" DESC LIMIT 2 OFFSET 1"));
+	}
+
+	public void testOpTopN() {
+		Op op = transform(new OpTopN(union(table(id, INTEGER)), 2, descending()));
+		assertTrue(((OpUnionTableSQL) op).isOrdered());
+		assertTrue(((OpUnionTableSQL) op).isSliced());
+		assertEquals(Arrays.asList(new String[]{"9", "7"}),
+				eval(op));
+	}
+
+	private List<SortCondition> descending() {
+		return Collections.singletonList(new SortCondition(X, Query.ORDER_DESCENDING));
+	}
+
+	private NodeRelation table(Attribute column, NodeType type) {
+		return fixture.table(X, column, type);
+	}
+
+	private Op union(NodeRelation... tables) {
+		return SQLOpFixture.union(tables);
+	}
+
+	private Op transform(Op op) {
+		return SQLOpFixture.transform(op, new TransformOpOrder(), new TransformOpSlice());
+	}
+
+	private List<String> eval(Op op) {
+		List<String> result = new ArrayList<String>();
+		for (Binding binding: fixture.eval(op)) {
+			result.add(binding.get(X).getLiteralLexicalForm());
+		}
+		return result;
+	}
+}
@@ -0,0 +1,129 @@
+package de.fuberlin.wiwiss.d2rq.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.sparql.algebra.Op;
+import com.hp.hpl.jena.sparql.algebra.op.OpProject;
+import com.hp.hpl.jena.sparql.algebra.op.OpSlice;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingFactory;
+
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.NodeRelation;
+import de.fuberlin.wiwiss.d2rq.helpers.SQLOpFixture;
+import de.fuberlin.wiwiss.d2rq.metrics.QueryTrace;
+import de.fuberlin.wiwiss.d2rq.nodes.TypedNodeMaker;
+import de.fuberlin.wiwiss.d2rq.nodes.TypedNodeMaker.NodeType;
+
+public class TransformOpSliceTest extends TestCase {
+	private final static Var X = Var.alloc("x");
+	private SQLOpFixture fixture;
+	private Attribute t;
+	private Attribute u;
+
+	public void setUp() {
+		fixture = new SQLOpFixture("slice");
+		fixture.executeSQL("CREATE TABLE T (ID INT PRIMARY KEY)");
+		fixture.executeSQL("CREATE TABLE U (ID INT PRIMARY KEY)");
+		for (int i = 1; i <= 10; i++) {
+			fixture.executeSQL("INSERT INTO T VALUES (" + i + ")");
+			fixture.executeSQL("INSERT INTO U VALUES (" + (i + 100) + ")");
+		}
+		t = new Attribute(null, "T", "ID");
+		u = new Attribute(null, "U", "ID");
+	}
+
+	public void tearDown() {
+		fixture.close();
+	}
+
+	public void testSliceMovesIntoUnion() {
+		Op union = SQLOpFixture.union(table(t, TypedNodeMaker.PLAIN_LITERAL));
+		Op op = transform(new OpSlice(union, 2, 3));
+		assertTrue(op instanceof OpUnionTableSQL);
+		assertTrue(((OpUnionTableSQL) op).isSliced());
+	}
+
+	public void testSliceMovesBelowProjection() {
+		Op union = SQLOpFixture.union(table(t, TypedNodeMaker.PLAIN_LITERAL));
+		Op op = transform(new OpSlice(
+				new OpProject(union, Collections.singletonList(X)), 2, 3));
+		assertTrue(op instanceof OpProject);
+		assertTrue(((OpUnionTableSQL) ((OpProject) op).getSubOp()).isSliced());
+	}
+
+	public void testOffsetWithoutLimitStaysInPlace() {
+		Op union = SQLOpFixture.union(table(t, TypedNodeMaker.PLAIN_LITERAL));
+		Op op = transform(new OpSlice(union, 2, Query.NOLIMIT));
+		assertTrue(op instanceof OpSlice);
+	}
+
+	public void testLimitAndOffsetGoIntoSQL() {
+		List<String> values = values(fixture.eval(
+				slice(2, 3, table(t, TypedNodeMaker.PLAIN_LITERAL))));
+		assertEquals(3, values.size());
+		assertEquals(3, new HashSet<String>(values).size());
+		assertEquals(1, fixture.trace().statements().size());
+		assertTrue(fixture.sql().endsWith(" LIMIT 3 OFFSET 2"));
+	}
+
+	public void testEachBranchIsLimitedToOffsetPlusLimit() {
+		List<String> values = values(fixture.eval(slice(2, 3,
+				table(t, TypedNodeMaker.PLAIN_LITERAL),
+				table(u, TypedNodeMaker.PLAIN_LITERAL))));
+		assertEquals(3, values.size());
+		for (QueryTrace.Statement statement: fixture.trace().statements()) {
+			assertTrue(statement.sql().endsWith(" LIMIT 5"));
+		}
+	}
+
+	public void testNoSQLLimitIfRowsMayBeRejected() {
+		// Only the row with ID 1 makes a valid xsd:boolean
+		List<String> values = values(fixture.eval(slice(Query.NOLIMIT, 1,
+				table(t, TypedNodeMaker.XSD_BOOLEAN))));
+		assertEquals(Collections.singletonList("true"), values);
+		assertFalse(fixture.sql().contains("LIMIT"));
+	}
+
+	public void testSliceAppliesAcrossAllInputBindings() {
+		List<Binding> input = new ArrayList<Binding>();
+		input.add(BindingFactory.binding(X, Node.createLiteral("1")));
+		input.add(BindingFactory.binding(X, Node.createLiteral("2")));
+		input.add(BindingFactory.binding(X, Node.createLiteral("3")));
+		assertEquals(Collections.singletonList("2"), values(fixture.eval(
+				slice(1, 1, table(t, TypedNodeMaker.PLAIN_LITERAL)), input)));
+	}
+
+	public void testZeroLimit() {
+		assertTrue(fixture.eval(slice(0, 0, table(t, TypedNodeMaker.PLAIN_LITERAL))).isEmpty());
+		assertTrue(fixture.trace().statements().isEmpty());
+	}
+
+	private NodeRelation table(Attribute column, NodeType type) {
+		return fixture.table(X, column, type);
+	}
+
+	private OpUnionTableSQL slice(long start, long length, NodeRelation... tables) {
+		return ((OpUnionTableSQL) SQLOpFixture.union(tables)).slice(start, length);
+	}
+
+	private Op transform(Op op) {
+		return SQLOpFixture.transform(op, new TransformOpSlice());
+	}
+
+	private List<String> values(List<Binding> bindings) {
+		List<String> result = new ArrayList<String>();
+		for (Binding binding: bindings) {
+			result.add(binding.get(X).getLiteralLexicalForm());
+		}
+		return result;
+	}
+}
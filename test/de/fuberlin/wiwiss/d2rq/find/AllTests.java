@@ -9,6 +9,7 @@ public class AllTests {
 		TestSuite suite = new TestSuite("Test for de.fuberlin.wiwiss.d2rq.find");
 		//$JUnit-BEGIN$
 		suite.addTestSuite(URIMakerRuleTest.class);
+		suite.addTestSuite(TripleRelationIndexTest.class);
 		//$JUnit-END$
 		return suite;
 	}
@@ -0,0 +1,111 @@
+package de.fuberlin.wiwiss.d2rq.find;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.sparql.vocabulary.FOAF;
+import com.hp.hpl.jena.vocabulary.RDF;
+
+import de.fuberlin.wiwiss.d2rq.algebra.AliasMap;
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.Join;
+import de.fuberlin.wiwiss.d2rq.algebra.OrderSpec;
+import de.fuberlin.wiwiss.d2rq.algebra.ProjectionSpec;
+import de.fuberlin.wiwiss.d2rq.algebra.Relation;
+import de.fuberlin.wiwiss.d2rq.algebra.RelationImpl;
+import de.fuberlin.wiwiss.d2rq.algebra.TripleRelation;
+import de.fuberlin.wiwiss.d2rq.expr.Expression;
+import de.fuberlin.wiwiss.d2rq.nodes.FixedNodeMaker;
+import de.fuberlin.wiwiss.d2rq.nodes.TypedNodeMaker;
+import de.fuberlin.wiwiss.d2rq.values.Column;
+import de.fuberlin.wiwiss.d2rq.values.Pattern;
+
+public class TripleRelationIndexTest extends TestCase {
+	private TripleRelation personType;
+	private TripleRelation knows;
+	private TripleRelation documentType;
+	private TripleRelation homepage;
+	private TripleRelationIndex index;
+
+	public void setUp() {
+		Relation base = new RelationImpl(null, AliasMap.NO_ALIASES, 
+				Expression.TRUE, Expression.TRUE, 
+				Collections.<Join>emptySet(), Collections.<ProjectionSpec>emptySet(), 
+				false, OrderSpec.NONE, Relation.NO_LIMIT, Relation.NO_LIMIT);
+		personType = new TripleRelation(base,
+				new TypedNodeMaker(TypedNodeMaker.URI, 
+						new Pattern("http://test/person@@employees.ID@@"), true),
+				new FixedNodeMaker(RDF.type.asNode(), false),
+				new FixedNodeMaker(FOAF.Person.asNode(), false));
+		knows = new TripleRelation(base,
+				new TypedNodeMaker(TypedNodeMaker.URI, 
+						new Pattern("http://test/person@@employees.ID@@"), true),
+				new FixedNodeMaker(FOAF.knows.asNode(), false),
+				new TypedNodeMaker(TypedNodeMaker.URI, 
+						new Pattern("http://test/person@@employees.manager@@"), true));
+		documentType = new TripleRelation(base,
+				new TypedNodeMaker(TypedNodeMaker.URI, 
+						new Column(new Attribute(null, "employees", "homepage")), false),
+				new FixedNodeMaker(RDF.type.asNode(), false),
+				new FixedNodeMaker(FOAF.Document.asNode(), false));
+		homepage = new TripleRelation(base,
+				new TypedNodeMaker(TypedNodeMaker.URI, 
+						new Pattern("http://test/person@@employees.ID@@"), true),
+				new FixedNodeMaker(FOAF.homepage.asNode(), false),
+				new TypedNodeMaker(TypedNodeMaker.URI, 
+						new Column(new Attribute(null, "employees", "homepage")), false));
+		index = new TripleRelationIndex(Arrays.asList(
+				new TripleRelation[]{documentType, personType, knows, homepage}));
+	}
+
+	public void testAnyPatternReturnsAllInOriginalOrder() {
+		assertEquals(list(documentType, personType, knows, homepage), 
+				index.candidates(Triple.ANY));
+	}
+
+	public void testFixedPredicate() {
+		assertEquals(list(knows), index.candidates(
+				Triple.create(Node.ANY, FOAF.knows.asNode(), Node.ANY)));
+		assertEquals(list(), index.candidates(
+				Triple.create(Node.ANY, FOAF.name.asNode(), Node.ANY)));
+	}
+
+	public void testFixedObject() {
+		// URI columns are not indexed
+		assertEquals(list(personType, homepage), index.candidates(
+				Triple.create(Node.ANY, Node.ANY, FOAF.Person.asNode())));
+	}
+
+	public void testSubjectURIPrefix() {
+		assertEquals(list(documentType, personType, knows, homepage), index.candidates(
+				Triple.create(Node.createURI("http://test/person1"), Node.ANY, Node.ANY)));
+		assertEquals(list(documentType), index.candidates(
+				Triple.create(Node.createURI("http://test/foobar"), Node.ANY, Node.ANY)));
+		assertEquals(list(knows, homepage), index.candidates(
+				Triple.create(Node.createURI("http://test/person1"), Node.ANY, 
+						Node.createURI("http://test/person2"))));
+	}
+
+	public void testLiteralCannotMatchURIPatterns() {
+		assertEquals(list(documentType), index.candidates(
+				Triple.create(Node.createLiteral("http://test/person1"), Node.ANY, Node.ANY)));
+		assertEquals(list(homepage), index.candidates(
+				Triple.create(Node.ANY, FOAF.homepage.asNode(), Node.createURI("http://example.org/"))));
+	}
+
+	public void testURIMakerOrder() {
+		assertEquals(list(knows, personType, homepage, documentType), 
+				index.candidatesInURIMakerOrder(Triple.ANY));
+		assertEquals(list(personType, documentType), index.candidatesInURIMakerOrder(
+				Triple.create(Node.ANY, RDF.type.asNode(), Node.ANY)));
+	}
+
+	private static List<TripleRelation> list(TripleRelation... relations) {
+		return Arrays.asList(relations);
+	}
+}
@@ -0,0 +1,80 @@
+package de.fuberlin.wiwiss.d2rq.helpers;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * A small harness for micro-benchmarks that are run from the command
+ * line, as JMH is not available to this build. Each benchmark runs its
+ * operation through warm-up rounds, so that the JIT has compiled it,
+ * and then through measured rounds. It reports the best average time
+ * per operation and, on JVMs that can report a thread's allocations
+ * (Oracle and OpenJDK 6u25 and later), the bytes allocated per operation.
+ *
+ * The figures are only meant for comparing two implementations on the
+ * same machine and JVM.
+ */
+public abstract class Benchmark {
+	private final String name;
+	// Keeps results reachable, so that the JIT can't drop the work
+	private int sink = 0;
+
+	protected Benchmark(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Runs the operation once.
+	 * @return Some result of the operation
+	 */
+	protected abstract Object run();
+
+	/**
+	 * Runs the benchmark and prints a line with its results.
+	 * @param operations Operations per round
+	 */
+	public void measure(int operations, PrintStream out) {
+		for (int round = 0; round < 5; round++) {
+			runRound(operations);
+		}
+		long bestNanos = Long.MAX_VALUE;
+		long bytes = -1;
+		for (int round = 0; round < 5; round++) {
+			long allocatedBefore = allocatedBytes();
+			long start = System.nanoTime();
+			runRound(operations);
+			bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+			long allocatedAfter = allocatedBytes();
+			if (allocatedBefore >= 0 && allocatedAfter >= 0) {
+				bytes = (allocatedAfter - allocatedBefore) / operations;
+			}
+		}
+		out.println(name + ": " +
+				String.format("%.1f", (double) bestNanos / operations) + " ns/op, " +
+				(bytes < 0 ? "?" : Long.toString(bytes)) + " bytes/op" +
+				(sink == 42 ? " " : ""));
+	}
+
+	private void runRound(int operations) {
+		for (int i = 0; i < operations; i++) {
+			Object result = run();
+			if (result != null) sink += result.hashCode();
+		}
+	}
+
+	/**
+	 * @return Bytes allocated by the current thread so far, or -1 if
+	 * 		the JVM doesn't report them
+	 */
+	private static long allocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) return -1;
+		com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+		if (!sunBean.isThreadAllocatedMemorySupported()) return -1;
+		if (!sunBean.isThreadAllocatedMemoryEnabled()) {
+			sunBean.setThreadAllocatedMemoryEnabled(true);
+		}
+		return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
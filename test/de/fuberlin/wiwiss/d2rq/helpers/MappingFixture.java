@@ -0,0 +1,81 @@
+package de.fuberlin.wiwiss.d2rq.helpers;
+
+import com.hp.hpl.jena.rdf.model.ResourceFactory;
+
+import de.fuberlin.wiwiss.d2rq.map.ClassMap;
+import de.fuberlin.wiwiss.d2rq.map.Database;
+import de.fuberlin.wiwiss.d2rq.map.Mapping;
+import de.fuberlin.wiwiss.d2rq.map.PropertyBridge;
+
+/**
+ * A HSQL in-memory database and a {@link Mapping} onto it that is
+ * built in code. Tests create tables, then add class maps and
+ * property bridges. All resources of the mapping are named in
+ * the <code>http://example.org/</code> namespace.
+ */
+public class MappingFixture {
+	public final static String NS = "http://example.org/";
+
+	private final HSQLDatabase db;
+	private final Mapping mapping;
+	private final Database database;
+
+	public MappingFixture(String databaseName) {
+		db = new HSQLDatabase(databaseName);
+		mapping = new Mapping();
+		database = new Database(ResourceFactory.createResource(NS + "db"));
+		database.setJDBCDSN(db.getJdbcURL());
+		database.setJDBCDriver(HSQLDatabase.HSQL_DRIVER_CLASS);
+		database.setUsername(db.getUser());
+		database.setPassword(db.getPassword());
+		mapping.addDatabase(database);
+	}
+
+	public void executeSQL(String sql) {
+		db.executeSQL(sql);
+	}
+
+	public Mapping mapping() {
+		return mapping;
+	}
+
+	public Database database() {
+		return database;
+	}
+
+	/**
+	 * Adds a class map for the database.
+	 *
+	 * @param name Local name of the class map
+	 */
+	public ClassMap addClassMap(String name, String uriPattern) {
+		ClassMap result = new ClassMap(ResourceFactory.createResource(NS + name));
+		result.setDatabase(database);
+		result.setURIPattern(uriPattern);
+		mapping.addClassMap(result);
+		return result;
+	}
+
+	/**
+	 * Adds a property bridge whose property has the same local name
+	 * as the bridge.
+	 *
+	 * @param name Local name of the bridge and of its property
+	 */
+	public PropertyBridge addPropertyBridge(ClassMap classMap, String name, String column) {
+		PropertyBridge result = new PropertyBridge(ResourceFactory.createResource(NS + name));
+		result.setBelongsToClassMap(classMap);
+		result.addProperty(ResourceFactory.createProperty(NS + name));
+		result.setColumn(column);
+		classMap.addPropertyBridge(result);
+		return result;
+	}
+
+	/**
+	 * Closes the mapping's connections and drops all tables.
+	 */
+	public void close() {
+		mapping.close();
+		db.close(true);
+	}
+}
@@ -0,0 +1,139 @@
+package de.fuberlin.wiwiss.d2rq.helpers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.hp.hpl.jena.sparql.algebra.Op;
+import com.hp.hpl.jena.sparql.algebra.Transform;
+import com.hp.hpl.jena.sparql.algebra.Transformer;
+import com.hp.hpl.jena.sparql.algebra.op.OpExt;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.QueryIterator;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingFactory;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterPlainWrapper;
+
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.NodeRelation;
+import de.fuberlin.wiwiss.d2rq.algebra.Relation;
+import de.fuberlin.wiwiss.d2rq.engine.OpUnionTableSQL;
+import de.fuberlin.wiwiss.d2rq.metrics.QueryTrace;
+import de.fuberlin.wiwiss.d2rq.metrics.SlowQueryLog;
+import de.fuberlin.wiwiss.d2rq.nodes.NodeMaker;
+import de.fuberlin.wiwiss.d2rq.nodes.TypedNodeMaker;
+import de.fuberlin.wiwiss.d2rq.nodes.TypedNodeMaker.NodeType;
+import de.fuberlin.wiwiss.d2rq.sql.ConnectedDB;
+import de.fuberlin.wiwiss.d2rq.values.Column;
+
+/**
+ * A HSQL in-memory database for testing the SQL operators of the
+ * engine. Tests create tables, build {@link NodeRelation}s over them,
+ * and evaluate operators while the SQL statements are recorded
+ * in a {@link QueryTrace}.
+ */
+public class SQLOpFixture {
+	private final HSQLDatabase db;
+	private final ConnectedDB cdb;
+	private final QueryTrace trace;
+
+	public SQLOpFixture(String databaseName) {
+		db = new HSQLDatabase(databaseName);
+		cdb = new ConnectedDB(db.getJdbcURL(), db.getUser(), db.getPassword());
+		trace = new SlowQueryLog(0, 0).startTrace("query");
+	}
+
+	public void executeSQL(String sql) {
+		db.executeSQL(sql);
+	}
+
+	public ConnectedDB connectedDB() {
+		return cdb;
+	}
+
+	/**
+	 * @return The trace that records the statements run by {@link #eval}
+	 */
+	public QueryTrace trace() {
+		return trace;
+	}
+
+	/**
+	 * @return The SQL of the last statement run by {@link #eval}
+	 */
+	public String sql() {
+		return trace.statements().get(trace.statements().size() - 1).sql();
+	}
+
+	/**
+	 * Closes the connection and drops all tables.
+	 */
+	public void close() {
+		cdb.close();
+		db.close(true);
+	}
+
+	public static TypedNodeMaker nodeMaker(NodeType type, Attribute column) {
+		return new TypedNodeMaker(type, new Column(column), true);
+	}
+
+	/**
+	 * @return A relation that selects the columns from their tables
+	 */
+	public NodeRelation table(Map<Var,NodeMaker> nodeMakers, Attribute... columns) {
+		return new NodeRelation(Relation.createSimpleRelation(cdb, columns), nodeMakers);
+	}
+
+	/**
+	 * @return A relation that binds the variable to the values of a column
+	 */
+	public NodeRelation table(Var var, Attribute column, NodeType type) {
+		return table(Collections.<Var,NodeMaker>singletonMap(var, nodeMaker(type, column)),
+				column);
+	}
+
+	public static Op union(NodeRelation... tables) {
+		return OpUnionTableSQL.create(Arrays.asList(tables));
+	}
+
+	/**
+	 * Applies each of the transforms in turn.
+	 */
+	public static Op transform(Op op, Transform... transforms) {
+		for (Transform transform: transforms) {
+			op = Transformer.transform(transform, op);
+		}
+		return op;
+	}
+
+	/**
+	 * Evaluates an operator on the empty input binding.
+	 */
+	public List<Binding> eval(Op op) {
+		return eval(op, Collections.singletonList(BindingFactory.root()));
+	}
+
+	/**
+	 * Evaluates an operator implemented by the engine, and records
+	 * the SQL statements in the fixture's trace.
+	 *
+	 * @param op An {@link OpExt}
+	 * @return All results
+	 */
+	public List<Binding> eval(Op op, List<Binding> input) {
+		QueryTrace previous = trace.enter();
+		try {
+			QueryIterator it = ((OpExt) op).eval(
+					new QueryIterPlainWrapper(input.iterator()), null);
+			List<Binding> result = new ArrayList<Binding>();
+			while (it.hasNext()) {
+				result.add(it.nextBinding());
+			}
+			return result;
+		} finally {
+			QueryTrace.exit(previous);
+		}
+	}
+}
@@ -15,6 +15,7 @@ public class AllTests {
 		//$JUnit-BEGIN$
 		suite.addTestSuite(CompileTest.class);
 		suite.addTestSuite(ConstantValueClassMapTest.class);
+		suite.addTestSuite(MappingSnapshotTest.class);
 		suite.addTestSuite(MappingTest.class);
 		suite.addTestSuite(TranslationTableTest.class);
 		//$JUnit-END$
@@ -1,19 +1,29 @@
 package de.fuberlin.wiwiss.d2rq.map;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import junit.framework.TestCase;
 
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.ResourceFactory;
 import com.hp.hpl.jena.vocabulary.RDF;
 
 import de.fuberlin.wiwiss.d2rq.algebra.AliasMap;
 import de.fuberlin.wiwiss.d2rq.algebra.AliasMap.Alias;
 import de.fuberlin.wiwiss.d2rq.algebra.Join;
 import de.fuberlin.wiwiss.d2rq.algebra.TripleRelation;
+import de.fuberlin.wiwiss.d2rq.find.TripleRelationIndex;
+import de.fuberlin.wiwiss.d2rq.helpers.MappingHelper;
+import de.fuberlin.wiwiss.d2rq.nodes.TypedNodeMaker;
 import de.fuberlin.wiwiss.d2rq.sql.DummyDB;
 import de.fuberlin.wiwiss.d2rq.sql.SQL;
 
@@ -108,6 +118,18 @@ public class CompileTest extends TestCase {
 				relation.baseRelation().aliases());
 	}
 	
+	public void testNodesAreNotCachedByDefault() {
+		TripleRelation relation = (TripleRelation) this.citiesNameBridge.toTripleRelations().iterator().next();
+		assertNull(((TypedNodeMaker) relation.nodeMaker(TripleRelation.SUBJECT)).nodeCache());
+		assertNull(((TypedNodeMaker) relation.nodeMaker(TripleRelation.OBJECT)).nodeCache());
+	}
+	
+	public void testNodeCacheSizeEnablesCache() {
+		this.managerBridge.setNodeCacheSize(100);
+		TripleRelation relation = (TripleRelation) this.managerBridge.toTripleRelations().iterator().next();
+		assertEquals(100, ((TypedNodeMaker) relation.nodeMaker(TripleRelation.OBJECT)).nodeCache().maxSize());
+	}
+	
 	public void testSimpleTypeBridgeContainsNoDuplicates() {
 		assertTrue(this.citiesTypeBridge.buildRelation().isUnique());
 	}
@@ -119,4 +141,76 @@ public class CompileTest extends TestCase {
 	public void testBridgeWithDuplicateClassMapContainsDuplicates() {
 		assertFalse(this.countriesTypeBridge.buildRelation().isUnique());
 	}
+	
+	public void testCouldMatchChecksPredicate() {
+		Node name = Node.createURI("http://terms.example.org/name");
+		assertTrue(cities.couldMatch(Triple.create(Node.ANY, name, Node.ANY)));
+		assertTrue(cities.couldMatch(Triple.create(Node.ANY, RDF.type.asNode(), Node.ANY)));
+		assertFalse(countries.couldMatch(Triple.create(Node.ANY, name, Node.ANY)));
+		assertTrue(countries.couldMatch(Triple.create(Node.ANY, Node.createVariable("p"), Node.ANY)));
+	}
+	
+	public void testCouldMatchChecksSubjectAgainstURIPattern() {
+		assertTrue(cities.couldMatch(Triple.create(
+				Node.createURI("http://test/city42"), Node.ANY, Node.ANY)));
+		assertFalse(cities.couldMatch(Triple.create(
+				Node.createURI("http://test/countries/DE"), Node.ANY, Node.ANY)));
+		assertFalse(cities.couldMatch(Triple.create(
+				Node.createAnon(), Node.ANY, Node.ANY)));
+		assertFalse(cities.couldMatch(Triple.create(
+				Node.createLiteral("city"), Node.ANY, Node.ANY)));
+	}
+	
+	public void testCompilationCollectsAllClassMapsInOrder() {
+		Collection<TripleRelation> all = mapping.compiledPropertyBridges();
+		List<TripleRelation> expected = new ArrayList<TripleRelation>();
+		for (Resource r: mapping.classMapResources()) {
+			assertTrue(mapping.classMap(r).isCompiled());
+			expected.addAll(mapping.classMap(r).compiledPropertyBridges());
+		}
+		assertEquals(expected, new ArrayList<TripleRelation>(all));
+	}
+	
+	public void testLazyCompilationOnlyCompilesMatchingClassMaps() {
+		Mapping lazy = MappingHelper.readFromTestFile("map/snapshot.ttl");
+		MappingHelper.connectToDummyDBs(lazy);
+		lazy.configuration().setCompileLazily(true);
+		ClassMap people = lazy.classMap(ResourceFactory.createResource("http://example.org/people"));
+		ClassMap addresses = lazy.classMap(ResourceFactory.createResource("http://example.org/addresses"));
+		Collection<TripleRelation> relations = lazy.compiledPropertyBridges(Triple.create(
+				Node.ANY, Node.createURI("http://example.org/name"), Node.ANY));
+		assertTrue(people.isCompiled());
+		assertFalse(addresses.isCompiled());
+		assertEquals(people.compiledPropertyBridges(), relations);
+		lazy.compiledPropertyBridges(Triple.create(
+				Node.ANY, Node.createURI("http://example.org/owner"), Node.ANY));
+		assertTrue(addresses.isCompiled());
+	}
+	
+	public void testLazyIndexIsReusedUntilMoreClassMapsAreCompiled() {
+		Mapping lazy = MappingHelper.readFromTestFile("map/snapshot.ttl");
+		MappingHelper.connectToDummyDBs(lazy);
+		lazy.configuration().setCompileLazily(true);
+		Triple name = Triple.create(Node.ANY, Node.createURI("http://example.org/name"), Node.ANY);
+		TripleRelationIndex index = lazy.tripleRelationIndex(name);
+		assertSame(index, lazy.tripleRelationIndex(name));
+		assertSame(index, lazy.tripleRelationIndex(Triple.create(
+				Node.ANY, Node.createURI("http://example.org/email"), Node.ANY)));
+		TripleRelationIndex full = lazy.tripleRelationIndex(Triple.create(
+				Node.ANY, Node.createURI("http://example.org/owner"), Node.ANY));
+		assertNotSame(index, full);
+		// All class maps are compiled now, so the mapping's own index is used
+		assertSame(lazy.tripleRelationIndex(), full);
+		assertSame(full, lazy.tripleRelationIndex(name));
+	}
+	
+	public void testLazyCompilationIsOffByDefault() {
+		Mapping m = MappingHelper.readFromTestFile("map/snapshot.ttl");
+		MappingHelper.connectToDummyDBs(m);
+		m.compiledPropertyBridges(Triple.create(
+				Node.ANY, Node.createURI("http://example.org/name"), Node.ANY));
+		for (Resource r: m.classMapResources()) {
+			assertTrue(m.classMap(r).isCompiled());
+		}
+	}
 }
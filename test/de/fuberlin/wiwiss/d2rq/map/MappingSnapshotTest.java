@@ -0,0 +1,157 @@
+package de.fuberlin.wiwiss.d2rq.map;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.vocabulary.RDF;
+import com.hp.hpl.jena.vocabulary.RDFS;
+
+import de.fuberlin.wiwiss.d2rq.D2RQTestSuite;
+import de.fuberlin.wiwiss.d2rq.algebra.TripleRelation;
+import de.fuberlin.wiwiss.d2rq.helpers.MappingHelper;
+import de.fuberlin.wiwiss.d2rq.parser.MapParser;
+
+public class MappingSnapshotTest extends TestCase {
+	private final static String MAPPING_FILE = "map/snapshot.ttl";
+	private File file;
+
+	public void setUp() throws IOException {
+		file = File.createTempFile("d2rq-mapping", ".snapshot");
+		file.delete();
+	}
+
+	public void tearDown() {
+		file.delete();
+	}
+
+	public void testFingerprintIsStable() {
+		Model model1 = D2RQTestSuite.loadTurtle(MAPPING_FILE);
+		Model model2 = D2RQTestSuite.loadTurtle(MAPPING_FILE);
+		assertEquals(MappingSnapshot.fingerprint(model1, "http://example.org/"),
+				MappingSnapshot.fingerprint(model2, "http://example.org/"));
+	}
+
+	public void testFingerprintChangesWithMapping() {
+		Model model = D2RQTestSuite.loadTurtle(MAPPING_FILE);
+		String before = MappingSnapshot.fingerprint(model, "http://example.org/");
+		model.getResource("http://example.org/people").addProperty(RDFS.label, "People");
+		assertFalse(before.equals(MappingSnapshot.fingerprint(model, "http://example.org/")));
+	}
+
+	public void testFingerprintChangesWithBlankNodeContents() {
+		Model model = D2RQTestSuite.loadTurtle(MAPPING_FILE);
+		String before = MappingSnapshot.fingerprint(model, "http://example.org/");
+		Resource translation = model.getResource("http://example.org/statusTable")
+				.getProperty(model.createProperty(
+						"http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#translation"))
+				.getResource();
+		translation.addProperty(RDFS.comment, "changed");
+		assertFalse(before.equals(MappingSnapshot.fingerprint(model, "http://example.org/")));
+	}
+
+	public void testRoundTrip() throws IOException {
+		Mapping original = mapping();
+		new MappingSnapshot(original).write(file, "fingerprint");
+		Mapping restored = mapping();
+		Map<Resource,Collection<TripleRelation>> snapshot =
+			new MappingSnapshot(restored).read(file, "fingerprint");
+		assertEquals(original.classMapResources(), snapshot.keySet());
+		for (Resource classMap: original.classMapResources()) {
+			assertEquals(
+					strings(original.classMap(classMap).compiledPropertyBridges()),
+					strings(snapshot.get(classMap)));
+		}
+	}
+
+	public void testRestoredRelationsUseCurrentDatabase() throws IOException {
+		new MappingSnapshot(mapping()).write(file, "fingerprint");
+		Mapping restored = mapping();
+		Map<Resource,Collection<TripleRelation>> snapshot =
+			new MappingSnapshot(restored).read(file, "fingerprint");
+		for (Collection<TripleRelation> relations: snapshot.values()) {
+			for (TripleRelation relation: relations) {
+				assertSame(restored.databases().iterator().next().connectedDB(),
+						relation.baseRelation().database());
+			}
+		}
+	}
+
+	public void testOtherFingerprintIsIgnored() throws IOException {
+		new MappingSnapshot(mapping()).write(file, "fingerprint");
+		assertNull(new MappingSnapshot(mapping()).read(file, "other"));
+	}
+
+	public void testMissingFileIsIgnored() throws IOException {
+		assertNull(new MappingSnapshot(mapping()).read(file, "fingerprint"));
+	}
+
+	public void testBlankNodeClassMapIsNotSerializable() throws IOException {
+		Mapping mapping = mapping();
+		ClassMap anonymous = new ClassMap(D2RQTestSuite.loadTurtle(MAPPING_FILE).createResource());
+		anonymous.setDatabase(mapping.databases().iterator().next());
+		anonymous.setURIPattern("http://example.org/@@People.ID@@");
+		anonymous.addClass(RDFS.Class);
+		mapping.addClassMap(anonymous);
+		try {
+			new MappingSnapshot(mapping).write(file, "fingerprint");
+			fail("Expected NotSerializableException");
+		} catch (NotSerializableException ex) {
+			// expected
+		}
+		assertFalse(file.exists());
+	}
+
+	public void testMappingWritesAndUsesSnapshot() {
+		Mapping first = mapping();
+		first.configuration().setMappingSnapshot(file.getPath());
+		first.setFingerprint("fingerprint");
+		List<String> compiled = strings(first.compiledPropertyBridges());
+		assertTrue(file.exists());
+
+		Mapping second = mapping();
+		second.configuration().setMappingSnapshot(file.getPath());
+		second.setFingerprint("fingerprint");
+		assertEquals(compiled.size(), second.compiledPropertyBridges().size());
+		assertTrue(compiled.containsAll(strings(second.compiledPropertyBridges())));
+	}
+
+	public void testParserComputesFingerprintOnlyIfSnapshotConfigured() {
+		assertNull(mapping().getFingerprint());
+		Model model = D2RQTestSuite.loadTurtle(MAPPING_FILE);
+		Resource configuration = model.createResource(
+				"http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#Configuration");
+		model.createResource("http://example.org/config")
+				.addProperty(RDF.type, configuration)
+				.addProperty(model.createProperty(
+						"http://www.wiwiss.fu-berlin.de/suhl/bizer/D2RQ/0.1#mappingSnapshot"),
+						file.getPath());
+		Mapping mapping = new MapParser(model, "http://example.org/").parse();
+		assertEquals(file.getPath(), mapping.configuration().getMappingSnapshot());
+		assertEquals(MappingSnapshot.fingerprint(model, "http://example.org/"),
+				mapping.getFingerprint());
+	}
+
+	private Mapping mapping() {
+		Mapping result = MappingHelper.readFromTestFile(MAPPING_FILE);
+		MappingHelper.connectToDummyDBs(result);
+		return result;
+	}
+
+	private List<String> strings(Collection<TripleRelation> relations) {
+		List<String> result = new ArrayList<String>();
+		for (TripleRelation relation: relations) {
+			// Translators have no toString(); ignore their identity hash codes
+			result.add(relation.toString().replaceAll("Translator@[0-9a-f]+", "Translator"));
+		}
+		return result;
+	}
+}
@@ -0,0 +1,18 @@
+package de.fuberlin.wiwiss.d2rq.metrics;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+public class AllTests {
+
+	public static Test suite() {
+		TestSuite suite = new TestSuite(
+				"Test for de.fuberlin.wiwiss.d2rq.metrics");
+		//$JUnit-BEGIN$
+		suite.addTestSuite(MetricsTest.class);
+		suite.addTestSuite(SlowQueryLogTest.class);
+		//$JUnit-END$
+		return suite;
+	}
+
+}
@@ -0,0 +1,60 @@
+package de.fuberlin.wiwiss.d2rq.metrics;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+
+import javax.management.ObjectName;
+
+import junit.framework.TestCase;
+
+public class MetricsTest extends TestCase {
+
+	public void testCounter() {
+		Counter c = new Counter("test");
+		c.increment();
+		c.add(41);
+		assertEquals(42, c.getCount());
+	}
+
+	public void testEmptyTimer() {
+		Timer t = new Timer("test");
+		assertEquals(0, t.getCount());
+		assertEquals(0.0, t.getMeanMillis(), 0);
+		assertEquals(0.0, t.get99thPercentileMillis(), 0);
+	}
+
+	public void testTimerTotalsAndMax() {
+		Timer t = new Timer("test");
+		t.record(1000000);
+		t.record(3000000);
+		assertEquals(2, t.getCount());
+		assertEquals(4.0, t.getTotalMillis(), 0.0001);
+		assertEquals(2.0, t.getMeanMillis(), 0.0001);
+		assertEquals(3.0, t.getMaxMillis(), 0.0001);
+	}
+
+	public void testPercentilesAreWithinFactorTwo() {
+		Timer t = new Timer("test");
+		for (int i = 1; i <= 100; i++) {
+			t.record(i * 1000000L);
+		}
+		double p50 = t.get50thPercentileMillis();
+		assertTrue(p50 >= 50 && p50 <= 100);
+		double p99 = t.get99thPercentileMillis();
+		assertTrue(p99 >= 99 && p99 <= 100);
+	}
+
+	public void testWriteIncludesAllMetrics() {
+		StringWriter s = new StringWriter();
+		Metrics.write(new PrintWriter(s));
+		assertTrue(s.toString().indexOf("d2rq_sql_queries ") != -1);
+		assertTrue(s.toString().indexOf("d2rq_sql_first_row_time_p95_ms ") != -1);
+	}
+
+	public void testRegisteredWithJMX() throws Exception {
+		Metrics.SQL_QUERIES.getCount();
+		assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(
+				new ObjectName(Metrics.JMX_DOMAIN + ":type=Counter,name=sql_queries")));
+	}
+}
@@ -0,0 +1,111 @@
+package de.fuberlin.wiwiss.d2rq.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.ProjectionSpec;
+import de.fuberlin.wiwiss.d2rq.helpers.HSQLDatabase;
+import de.fuberlin.wiwiss.d2rq.sql.ConnectedDB;
+import de.fuberlin.wiwiss.d2rq.sql.SQLIterator;
+
+public class SlowQueryLogTest extends TestCase {
+	private final static long MS = 1000000L;
+
+	public void testDisabledLogDoesNotTrace() {
+		assertFalse(SlowQueryLog.DISABLED.isEnabled());
+		assertNull(SlowQueryLog.DISABLED.startTrace("query"));
+	}
+
+	public void testQueryThreshold() {
+		SlowQueryLog log = new SlowQueryLog(100, SlowQueryLog.NO_THRESHOLD);
+		assertTrue(log.isEnabled());
+		QueryTrace trace = log.startTrace("query");
+		trace.addStatement("SELECT 1", 500 * MS, 1 * MS, 1);
+		assertFalse(log.isSlow(trace, 99 * MS));
+		assertTrue(log.isSlow(trace, 100 * MS));
+	}
+
+	public void testSQLThreshold() {
+		SlowQueryLog log = new SlowQueryLog(SlowQueryLog.NO_THRESHOLD, 100);
+		QueryTrace trace = log.startTrace("query");
+		trace.addStatement("SELECT 1", 10 * MS, 1 * MS, 1);
+		assertFalse(log.isSlow(trace, 1000 * MS));
+		trace.addStatement("SELECT 2", 150 * MS, 1 * MS, 1);
+		assertTrue(log.isSlow(trace, 1000 * MS));
+	}
+
+	public void testFormat() {
+		QueryTrace trace = new SlowQueryLog(0, 0).startTrace("SELECT * { ?s ?p ?o }");
+		trace.setTranslation("(table unit)");
+		trace.addStatement("SELECT A FROM T", 20 * MS, 5 * MS, 3);
+		trace.addStatement("SELECT B FROM T", 7 * MS, -1, 0);
+		assertEquals(
+				"Slow query (30 ms, 2 SQL statements):\n" +
+				"SELECT * { ?s ?p ?o }\n" +
+				"Translated to:\n" +
+				"(table unit)\n" +
+				"SQL (20 ms, first row after 5 ms, 3 rows): SELECT A FROM T\n" +
+				"SQL (7 ms, 0 rows): SELECT B FROM T\n",
+				SlowQueryLog.format(trace, 30 * MS));
+	}
+
+	public void testFinishReportsOnce() {
+		final List<QueryTrace> finished = new ArrayList<QueryTrace>();
+		SlowQueryLog log = new SlowQueryLog(0, 0) {
+			void finished(QueryTrace trace, long totalNanos) {
+				finished.add(trace);
+			}
+		};
+		QueryTrace trace = log.startTrace("query");
+		trace.finish();
+		trace.finish();
+		assertEquals(Collections.singletonList(trace), finished);
+	}
+
+	public void testEnterAndExitRestorePreviousTrace() {
+		SlowQueryLog log = new SlowQueryLog(0, 0);
+		QueryTrace outer = log.startTrace("outer");
+		QueryTrace inner = log.startTrace("inner");
+		assertNull(QueryTrace.current());
+		QueryTrace previousOuter = outer.enter();
+		QueryTrace previousInner = inner.enter();
+		assertSame(inner, QueryTrace.current());
+		QueryTrace.exit(previousInner);
+		assertSame(outer, QueryTrace.current());
+		QueryTrace.exit(previousOuter);
+		assertNull(QueryTrace.current());
+	}
+
+	public void testSQLIteratorReportsToCurrentTrace() {
+		HSQLDatabase db = new HSQLDatabase("slowquerylog");
+		ConnectedDB cdb = new ConnectedDB(db.getJdbcURL(), db.getUser(), db.getPassword());
+		try {
+			db.executeSQL("CREATE TABLE T (ID INT PRIMARY KEY)");
+			db.executeSQL("INSERT INTO T VALUES (1)");
+			db.executeSQL("INSERT INTO T VALUES (2)");
+			QueryTrace trace = new SlowQueryLog(0, 0).startTrace("query");
+			QueryTrace previous = trace.enter();
+			SQLIterator it;
+			try {
+				it = new SQLIterator("SELECT \"T\".\"ID\" FROM \"T\"",
+						Collections.<ProjectionSpec>singletonList(
+								new Attribute(null, "T", "ID")), cdb);
+			} finally {
+				QueryTrace.exit(previous);
+			}
+			while (it.hasNext()) it.next();
+			assertEquals(1, trace.statements().size());
+			QueryTrace.Statement statement = trace.statements().get(0);
+			assertEquals("SELECT \"T\".\"ID\" FROM \"T\"", statement.sql());
+			assertEquals(2, statement.rows());
+			assertTrue(statement.firstRowNanos() >= 0);
+			assertTrue(statement.totalNanos() >= statement.firstRowNanos());
+		} finally {
+			cdb.close();
+			db.close(true);
+		}
+	}
+}
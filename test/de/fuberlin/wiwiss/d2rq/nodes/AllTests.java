@@ -11,6 +11,8 @@ public class AllTests {
 		//$JUnit-BEGIN$
 		suite.addTestSuite(NodeSetTest.class);
 		suite.addTestSuite(NodeMakerTest.class);
+		suite.addTestSuite(URIRouterTest.class);
+		suite.addTestSuite(NodeCacheTest.class);
 		//$JUnit-END$
 		return suite;
 	}
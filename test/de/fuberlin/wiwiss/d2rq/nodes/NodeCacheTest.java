@@ -0,0 +1,77 @@
+package de.fuberlin.wiwiss.d2rq.nodes;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.graph.Node;
+
+import de.fuberlin.wiwiss.d2rq.algebra.AliasMap;
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.ProjectionSpec;
+import de.fuberlin.wiwiss.d2rq.algebra.RelationName;
+import de.fuberlin.wiwiss.d2rq.sql.ResultRow;
+import de.fuberlin.wiwiss.d2rq.sql.ResultRowMap;
+import de.fuberlin.wiwiss.d2rq.values.BlankNodeID;
+import de.fuberlin.wiwiss.d2rq.values.Pattern;
+
+public class NodeCacheTest extends TestCase {
+	private final static Attribute table_col1 = new Attribute(null, "table", "col1");
+	private final static Attribute table_col2 = new Attribute(null, "table", "col2");
+
+	public void testRepeatedValueReturnsCachedNode() {
+		NodeCache cache = new NodeCache(10);
+		TypedNodeMaker maker = new TypedNodeMaker(TypedNodeMaker.URI,
+				new Pattern("http://example.org/@@table.col1@@"), false, cache);
+		Node first = maker.makeNode(row(table_col1, "1"));
+		assertEquals(Node.createURI("http://example.org/1"), first);
+		assertSame(first, maker.makeNode(row(table_col1, "1")));
+		assertEquals(Node.createURI("http://example.org/2"), maker.makeNode(row(table_col1, "2")));
+		assertEquals(2, cache.size());
+	}
+
+	public void testLeastRecentlyUsedNodeIsEvicted() {
+		NodeCache cache = new NodeCache(2);
+		cache.put("a", Node.createURI("http://example.org/a"));
+		cache.put("b", Node.createURI("http://example.org/b"));
+		cache.get("a");
+		cache.put("c", Node.createURI("http://example.org/c"));
+		assertEquals(2, cache.size());
+		assertNotNull(cache.get("a"));
+		assertNull(cache.get("b"));
+	}
+
+	public void testNullValuesAreNotCached() {
+		NodeCache cache = new NodeCache(10);
+		TypedNodeMaker maker = new TypedNodeMaker(TypedNodeMaker.URI,
+				new Pattern("http://example.org/@@table.col1@@"), false, cache);
+		assertNull(maker.makeNode(ResultRow.NO_ATTRIBUTES));
+		assertEquals(0, cache.size());
+	}
+
+	public void testMultiColumnValuesAreNotCached() {
+		TypedNodeMaker maker = new TypedNodeMaker(TypedNodeMaker.BLANK,
+				new BlankNodeID("cm", Arrays.asList(new Attribute[]{table_col1, table_col2})),
+				false, new NodeCache(10));
+		assertNull(maker.nodeCache());
+	}
+
+	public void testRenamedNodeMakerSharesCache() {
+		NodeCache cache = new NodeCache(10);
+		TypedNodeMaker maker = new TypedNodeMaker(TypedNodeMaker.URI,
+				new Pattern("http://example.org/@@table.col1@@"), false, cache);
+		AliasMap aliases = AliasMap.create1(new RelationName(null, "table"), new RelationName(null, "alias"));
+		TypedNodeMaker renamed = (TypedNodeMaker) maker.renameAttributes(aliases);
+		assertSame(cache, renamed.nodeCache());
+		Node node = renamed.makeNode(row(new Attribute(null, "alias", "col1"), "1"));
+		assertSame(node, maker.makeNode(row(table_col1, "1")));
+	}
+
+	private ResultRow row(Attribute column, String value) {
+		Map<ProjectionSpec,String> values = new HashMap<ProjectionSpec,String>();
+		values.put(column, value);
+		return new ResultRowMap(values);
+	}
+}
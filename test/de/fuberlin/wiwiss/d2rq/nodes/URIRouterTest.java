@@ -0,0 +1,79 @@
+package de.fuberlin.wiwiss.d2rq.nodes;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.graph.Node;
+
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.values.Column;
+import de.fuberlin.wiwiss.d2rq.values.Pattern;
+
+public class URIRouterTest extends TestCase {
+	private Map<String,NodeMaker> nodeMakers;
+
+	public void setUp() {
+		nodeMakers = new LinkedHashMap<String,NodeMaker>();
+	}
+
+	public void testRoutesByPattern() {
+		nodeMakers.put("person", uriPattern("http://example.org/person/@@people.id@@"));
+		nodeMakers.put("paper", uriPattern("http://example.org/paper/@@papers.id@@"));
+		URIRouter<String> router = new URIRouter<String>(nodeMakers);
+		assertEquals(Collections.singletonList("person"),
+				router.route(uri("http://example.org/person/1")));
+		assertEquals(Collections.singletonList("paper"),
+				router.route(uri("http://example.org/paper/1")));
+		assertEquals(Collections.emptyList(),
+				router.route(uri("http://example.org/")));
+	}
+
+	public void testPrefixMatchIsNotEnough() {
+		nodeMakers.put("person", uriPattern("http://example.org/person/@@people.id@@.html"));
+		URIRouter<String> router = new URIRouter<String>(nodeMakers);
+		assertEquals(Collections.emptyList(),
+				router.route(uri("http://example.org/person/1.rdf")));
+	}
+
+	public void testRoutesFixedURIs() {
+		nodeMakers.put("home", new FixedNodeMaker(uri("http://example.org/"), false));
+		URIRouter<String> router = new URIRouter<String>(nodeMakers);
+		assertEquals(Collections.singletonList("home"),
+				router.route(uri("http://example.org/")));
+		assertEquals(Collections.emptyList(),
+				router.route(uri("http://example.org/x")));
+	}
+
+	public void testURIColumnMatchesAnyURI() {
+		nodeMakers.put("link", new TypedNodeMaker(TypedNodeMaker.URI,
+				new Column(new Attribute(null, "links", "url")), false));
+		URIRouter<String> router = new URIRouter<String>(nodeMakers);
+		assertEquals(Collections.singletonList("link"),
+				router.route(uri("http://example.com/")));
+		assertEquals(Collections.emptyList(),
+				router.route(Node.createLiteral("http://example.com/")));
+	}
+
+	public void testResultsAreInOriginalOrder() {
+		nodeMakers.put("specific", uriPattern("http://example.org/person/@@people.id@@"));
+		nodeMakers.put("link", new TypedNodeMaker(TypedNodeMaker.URI,
+				new Column(new Attribute(null, "links", "url")), false));
+		nodeMakers.put("general", uriPattern("http://example.org/@@things.id@@"));
+		nodeMakers.put("fixed", new FixedNodeMaker(uri("http://example.org/person/1"), false));
+		URIRouter<String> router = new URIRouter<String>(nodeMakers);
+		assertEquals(Arrays.asList(new String[]{"specific", "link", "general", "fixed"}),
+				router.route(uri("http://example.org/person/1")));
+	}
+
+	private NodeMaker uriPattern(String pattern) {
+		return new TypedNodeMaker(TypedNodeMaker.URI, new Pattern(pattern), false);
+	}
+
+	private Node uri(String uri) {
+		return Node.createURI(uri);
+	}
+}
@@ -0,0 +1,146 @@
+package de.fuberlin.wiwiss.d2rq.optimizer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.expr.E_Regex;
+import com.hp.hpl.jena.sparql.expr.E_Str;
+import com.hp.hpl.jena.sparql.expr.E_StrContains;
+import com.hp.hpl.jena.sparql.expr.E_StrEndsWith;
+import com.hp.hpl.jena.sparql.expr.E_StrStartsWith;
+import com.hp.hpl.jena.sparql.expr.ExprVar;
+import com.hp.hpl.jena.sparql.expr.NodeValue;
+
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.NodeRelation;
+import de.fuberlin.wiwiss.d2rq.algebra.Relation;
+import de.fuberlin.wiwiss.d2rq.expr.AttributeExpr;
+import de.fuberlin.wiwiss.d2rq.expr.Like;
+import de.fuberlin.wiwiss.d2rq.expr.RegexMatch;
+import de.fuberlin.wiwiss.d2rq.helpers.HSQLDatabase;
+import de.fuberlin.wiwiss.d2rq.nodes.NodeMaker;
+import de.fuberlin.wiwiss.d2rq.nodes.TypedNodeMaker;
+import de.fuberlin.wiwiss.d2rq.optimizer.expr.TransformExprToSQLApplyer;
+import de.fuberlin.wiwiss.d2rq.optimizer.expr.XPathRegex;
+import de.fuberlin.wiwiss.d2rq.sql.ConnectedDB;
+import de.fuberlin.wiwiss.d2rq.values.Column;
+import de.fuberlin.wiwiss.d2rq.values.Pattern;
+
+public class StringFilterTest extends TestCase {
+	private final static Attribute name = new Attribute(null, "T", "NAME");
+	private final static Attribute code = new Attribute(null, "T", "CODE");
+	private final static ExprVar NAME = new ExprVar("name");
+	private final static ExprVar CODE = new ExprVar("code");
+	private final static ExprVar TYPED = new ExprVar("typed");
+	private final static ExprVar URI = new ExprVar("uri");
+	private HSQLDatabase db;
+	private ConnectedDB cdb;
+	private NodeRelation relation;
+
+	public void setUp() {
+		db = new HSQLDatabase("strings");
+		db.executeSQL("CREATE TABLE T (NAME VARCHAR(20), CODE CHAR(5))");
+		cdb = new ConnectedDB(db.getJdbcURL(), db.getUser(), db.getPassword());
+		Map<Var,NodeMaker> nodeMakers = new HashMap<Var,NodeMaker>();
+		nodeMakers.put(NAME.asVar(), new TypedNodeMaker(TypedNodeMaker.PLAIN_LITERAL, new Column(name), true));
+		nodeMakers.put(CODE.asVar(), new TypedNodeMaker(TypedNodeMaker.PLAIN_LITERAL, new Column(code), true));
+		nodeMakers.put(TYPED.asVar(), new TypedNodeMaker(
+				TypedNodeMaker.typedLiteral(XSDDatatype.XSDstring), new Column(name), true));
+		nodeMakers.put(URI.asVar(), new TypedNodeMaker(TypedNodeMaker.URI,
+				new Pattern("http://example.org/@@T.NAME@@"), true));
+		relation = new NodeRelation(Relation.createSimpleRelation(cdb,
+				new Attribute[]{name, code}), nodeMakers);
+	}
+
+	public void tearDown() {
+		cdb.close();
+		db.close(true);
+	}
+
+	public void testStringFunctionsBecomeLike() {
+		assertEquals(like("Smi%", false), TransformExprToSQLApplyer.convert(
+				new E_StrStartsWith(NAME, NodeValue.makeString("Smi")), relation));
+		assertEquals(like("%th", false), TransformExprToSQLApplyer.convert(
+				new E_StrEndsWith(NAME, NodeValue.makeString("th")), relation));
+		assertEquals(like("%mit%", false), TransformExprToSQLApplyer.convert(
+				new E_StrContains(TYPED, NodeValue.makeString("mit")), relation));
+	}
+
+	public void testLikeWildcardsAreNotPushed() {
+		assertNull(TransformExprToSQLApplyer.convert(
+				new E_StrContains(NAME, NodeValue.makeString("100%")), relation));
+		assertNull(TransformExprToSQLApplyer.convert(
+				new E_StrStartsWith(NAME, NodeValue.makeString("a_b")), relation));
+	}
+
+	public void testFixedLengthAndPatternColumnsAreNotPushed() {
+		assertNull(TransformExprToSQLApplyer.convert(
+				new E_StrStartsWith(CODE, NodeValue.makeString("A")), relation));
+		assertNull(TransformExprToSQLApplyer.convert(
+				new E_StrStartsWith(new E_Str(URI), NodeValue.makeString("http:")), relation));
+	}
+
+	public void testAnchoredRegexBecomesLike() {
+		assertEquals(like("Smi%", false), regex("^Smi", ""));
+		assertEquals(like("%th", false), regex("th$", ""));
+		assertEquals(like("Smith", false), regex("^Smith$", ""));
+		assertEquals(like("%a.b%", false), regex("a\\.b", ""));
+		assertEquals(like("smi%", true), regex("^smi", "i"));
+	}
+
+	public void testGeneralRegexUsesVendorSyntax() {
+		assertEquals(new RegexMatch(new AttributeExpr(name), "^(Sm|Sch)i", true),
+				regex("^(Sm|Sch)i", "i"));
+	}
+
+	public void testUnsupportedRegexesAreNotPushed() {
+		assertNull(regex("^S.ith", ""));
+		assertNull(regex("[^a]", ""));
+		assertNull(regex("\\d+", ""));
+		assertNull(regex("^Smi", "s"));
+		assertNull(regex("^M\u00fcller", "i"));
+	}
+
+	public void testLikePatternOfRegex() {
+		assertEquals("%abc%", XPathRegex.toLikePattern("abc"));
+		assertEquals("abc", XPathRegex.toLikePattern("^abc$"));
+		assertEquals("%a$%", XPathRegex.toLikePattern("a\\$"));
+		assertEquals("%", XPathRegex.toLikePattern("^"));
+		assertNull(XPathRegex.toLikePattern("a*"));
+		assertNull(XPathRegex.toLikePattern("a\\\\"));
+		assertNull(XPathRegex.toLikePattern("a\\d"));
+		assertNull(XPathRegex.toLikePattern("a_"));
+	}
+
+	public void testPortableRegexes() {
+		assertTrue(XPathRegex.isPortable("^(ab|c)+d?"));
+		assertTrue(XPathRegex.isPortable("[a-zA-Z0-9]{2,3}x{4}y{1,}"));
+		assertTrue(XPathRegex.isPortable("a\\.b\\(c"));
+		assertFalse(XPathRegex.isPortable(""));
+		assertFalse(XPathRegex.isPortable("a.b"));
+		assertFalse(XPathRegex.isPortable("ab$"));
+		assertFalse(XPathRegex.isPortable("a**"));
+		assertFalse(XPathRegex.isPortable("a*?"));
+		assertFalse(XPathRegex.isPortable("(?:a)"));
+		assertFalse(XPathRegex.isPortable("a||b"));
+		assertFalse(XPathRegex.isPortable("(a"));
+		assertFalse(XPathRegex.isPortable("[a-]"));
+		assertFalse(XPathRegex.isPortable("[A-z]"));
+		assertFalse(XPathRegex.isPortable("a{3,2}"));
+		assertFalse(XPathRegex.isPortable("a{1000}"));
+		assertFalse(XPathRegex.isPortable("\\w"));
+		assertFalse(XPathRegex.isPortable("\u00e4"));
+	}
+
+	private Like like(String pattern, boolean caseInsensitive) {
+		return new Like(new AttributeExpr(name), pattern, caseInsensitive);
+	}
+
+	private Object regex(String regex, String flags) {
+		return TransformExprToSQLApplyer.convert(new E_Regex(NAME, regex, flags), relation);
+	}
+}
@@ -12,6 +12,8 @@ public class AllTests {
 		suite.addTestSuite(ResultRowTest.class);
 		suite.addTestSuite(SQLSyntaxTest.class);
 		suite.addTestSuite(HSQLDBDatatypeTest.class);
+		suite.addTestSuite(ConnectionPoolTest.class);
+		suite.addTestSuite(SQLIteratorPrefetchTest.class);
 // TODO: MySQL tests are just too bloody slow
 //		suite.addTestSuite(MySQLDatatypeTest.class);
 		//$JUnit-END$
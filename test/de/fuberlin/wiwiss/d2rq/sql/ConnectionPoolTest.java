@@ -0,0 +1,228 @@
+package de.fuberlin.wiwiss.d2rq.sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.QueryExecutionFactory;
+import com.hp.hpl.jena.query.ResultSet;
+
+import de.fuberlin.wiwiss.d2rq.D2RQException;
+import de.fuberlin.wiwiss.d2rq.algebra.ProjectionSpec;
+import de.fuberlin.wiwiss.d2rq.helpers.HSQLDatabase;
+import de.fuberlin.wiwiss.d2rq.helpers.MappingFixture;
+import de.fuberlin.wiwiss.d2rq.jena.ModelD2RQ;
+import de.fuberlin.wiwiss.d2rq.map.ClassMap;
+import de.fuberlin.wiwiss.d2rq.map.Database;
+import de.fuberlin.wiwiss.d2rq.sql.types.DataType.GenericType;
+
+public class ConnectionPoolTest extends TestCase {
+	private HSQLDatabase db;
+	private ConnectedDB cdb;
+
+	public void setUp() {
+		db = new HSQLDatabase("pooltest");
+		db.executeSQL("CREATE TABLE T (ID INT PRIMARY KEY)");
+		db.executeSQL("INSERT INTO T VALUES (1)");
+		db.executeSQL("INSERT INTO T VALUES (2)");
+	}
+
+	public void tearDown() {
+		if (cdb != null) cdb.close();
+		db.close(true);
+	}
+
+	public void testBorrowedConnectionsAreDistinct() {
+		cdb = connect(new Properties());
+		Connection c1 = cdb.borrowConnection();
+		Connection c2 = cdb.borrowConnection();
+		assertNotSame(c1, c2);
+		assertNotSame(cdb.connection(), c1);
+		cdb.returnConnection(c1);
+		cdb.returnConnection(c2);
+	}
+
+	public void testReturnedConnectionIsReused() {
+		cdb = connect(new Properties());
+		Connection c1 = cdb.borrowConnection();
+		cdb.returnConnection(c1);
+		assertSame(c1, cdb.borrowConnection());
+	}
+
+	public void testBorrowTimesOutWhenPoolExhausted() throws InterruptedException {
+		Properties p = new Properties();
+		p.setProperty(ConnectedDB.POOL_MAX_SIZE_PROPERTY, "1");
+		p.setProperty(ConnectedDB.POOL_MAX_WAIT_PROPERTY, "10");
+		cdb = connect(p);
+		Thread other = new Thread() {
+			public void run() {
+				cdb.borrowConnection();
+			}
+		};
+		other.start();
+		other.join();
+		try {
+			cdb.borrowConnection();
+			fail("Expected timeout");
+		} catch (D2RQException ex) {
+			assertEquals(D2RQException.D2RQ_DB_CONNECTION_FAILED, ex.errorCode());
+		}
+	}
+
+	public void testIteratorReturnsConnectionWhenExhausted() {
+		Properties p = new Properties();
+		p.setProperty(ConnectedDB.POOL_MAX_SIZE_PROPERTY, "1");
+		p.setProperty(ConnectedDB.POOL_MAX_WAIT_PROPERTY, "10");
+		cdb = connect(p);
+		for (int i = 0; i < 3; i++) {
+			SQLIterator it = new SQLIterator("SELECT ID FROM T",
+					Collections.<ProjectionSpec>emptyList(), cdb);
+			assertTrue(it.hasNext());
+			it.next();
+			it.next();
+			assertFalse(it.hasNext());
+		}
+	}
+
+	public void testIteratorReturnsConnectionWhenClosed() {
+		Properties p = new Properties();
+		p.setProperty(ConnectedDB.POOL_MAX_SIZE_PROPERTY, "1");
+		p.setProperty(ConnectedDB.POOL_MAX_WAIT_PROPERTY, "10");
+		cdb = connect(p);
+		for (int i = 0; i < 3; i++) {
+			SQLIterator it = new SQLIterator("SELECT ID FROM T",
+					Collections.<ProjectionSpec>emptyList(), cdb);
+			assertTrue(it.hasNext());
+			it.close();
+		}
+	}
+
+	public void testPreparedStatementsAreCachedPerConnection() throws SQLException {
+		Properties p = new Properties();
+		p.setProperty(ConnectedDB.STATEMENT_CACHE_SIZE_PROPERTY, "10");
+		cdb = connect(p);
+		assertTrue(cdb.useParameterizedQueries());
+		Connection c = cdb.borrowConnection();
+		PreparedStatement s = cdb.prepareStatement(c, "SELECT ID FROM T WHERE ID = ?");
+		assertSame(s, cdb.prepareStatement(c, "SELECT ID FROM T WHERE ID = ?"));
+		cdb.returnConnection(c);
+	}
+	
+	public void testParameterizedIterator() {
+		Properties p = new Properties();
+		p.setProperty(ConnectedDB.STATEMENT_CACHE_SIZE_PROPERTY, "10");
+		cdb = connect(p);
+		for (int i = 1; i <= 2; i++) {
+			SQLIterator it = new SQLIterator("SELECT ID FROM T WHERE ID = ?",
+					Collections.singletonList(new SQLParameter(
+							Integer.toString(i), GenericType.NUMERIC.dataTypeFor(cdb.vendor()))),
+					Collections.<ProjectionSpec>emptyList(), cdb);
+			assertTrue(it.hasNext());
+			it.next();
+			assertFalse(it.hasNext());
+		}
+	}
+
+	public void testSameThreadGetsSharedConnectionWhenPoolExhausted() {
+		Properties p = new Properties();
+		p.setProperty(ConnectedDB.POOL_MAX_SIZE_PROPERTY, "1");
+		p.setProperty(ConnectedDB.POOL_MAX_WAIT_PROPERTY, "10");
+		cdb = connect(p);
+		Connection leased = cdb.borrowConnection();
+		Connection shared = cdb.borrowConnection();
+		assertNotSame(leased, shared);
+		assertSame(cdb.connection(), shared);
+		assertFalse(cdb.cachesStatements(shared));
+		cdb.returnConnection(shared);
+		cdb.returnConnection(leased);
+		assertSame(leased, cdb.borrowConnection());
+	}
+
+	public void testSameThreadDoesNotWaitForItsOwnLease() {
+		Properties p = new Properties();
+		p.setProperty(ConnectedDB.POOL_MAX_SIZE_PROPERTY, "1");
+		p.setProperty(ConnectedDB.POOL_MAX_WAIT_PROPERTY, "10");
+		cdb = connect(p);
+		SQLIterator outer = new SQLIterator("SELECT ID FROM T",
+				Collections.<ProjectionSpec>emptyList(), cdb);
+		assertTrue(outer.hasNext());
+		for (int i = 0; i < 2; i++) {
+			SQLIterator inner = new SQLIterator("SELECT ID FROM T",
+					Collections.<ProjectionSpec>emptyList(), cdb);
+			assertTrue(inner.hasNext());
+			inner.next();
+			inner.next();
+			assertFalse(inner.hasNext());
+		}
+		outer.next();
+		outer.next();
+		assertFalse(outer.hasNext());
+	}
+
+	public void testNestedOptionalQueryWithSingleConnection() {
+		MappingFixture fixture = new MappingFixture("poolnested");
+		try {
+			fixture.executeSQL("CREATE TABLE DOCS (ID INT PRIMARY KEY, TITLE VARCHAR(50), AUTHOR VARCHAR(50))");
+			fixture.executeSQL("INSERT INTO DOCS VALUES (1, 'One', 'Alice')");
+			fixture.executeSQL("INSERT INTO DOCS VALUES (2, 'Two', 'Alice')");
+			fixture.executeSQL("INSERT INTO DOCS VALUES (3, 'Three', NULL)");
+			fixture.database().setConnectionProperty(ConnectedDB.POOL_MAX_SIZE_PROPERTY, "1");
+			fixture.database().setConnectionProperty(ConnectedDB.POOL_MAX_WAIT_PROPERTY, "10");
+			ClassMap classMap = fixture.addClassMap("docs", "http://example.org/doc/@@DOCS.ID@@");
+			fixture.addPropertyBridge(classMap, "title", "DOCS.TITLE");
+			fixture.addPropertyBridge(classMap, "author", "DOCS.AUTHOR");
+			ModelD2RQ model = new ModelD2RQ(fixture.mapping());
+			// NOT EXISTS is evaluated once per row, while the outer query is open
+			QueryExecution qe = QueryExecutionFactory.create(
+					"SELECT ?t ?a { ?x <http://example.org/title> ?t " +
+					"OPTIONAL { ?x <http://example.org/author> ?a " +
+					"FILTER NOT EXISTS { ?y <http://example.org/author> ?a . " +
+					"?y <http://example.org/title> \"Two\" } } }", model);
+			int rows = 0;
+			try {
+				ResultSet rs = qe.execSelect();
+				while (rs.hasNext()) {
+					assertFalse(rs.next().contains("a"));
+					rows++;
+				}
+			} finally {
+				qe.close();
+			}
+			assertEquals(3, rows);
+		} finally {
+			fixture.close();
+		}
+	}
+
+	public void testD2RQPropertiesAreNotPassedToDriver() {
+		String[] d2rqProperties = {ConnectedDB.POOL_MIN_IDLE_PROPERTY,
+				ConnectedDB.POOL_MAX_SIZE_PROPERTY, ConnectedDB.POOL_MAX_WAIT_PROPERTY,
+				ConnectedDB.STATEMENT_CACHE_SIZE_PROPERTY, ConnectedDB.PARALLEL_QUERIES_PROPERTY,
+				ConnectedDB.PARALLEL_QUERIES_ORDERED_PROPERTY, ConnectedDB.PREFETCH_BUFFER_SIZE_PROPERTY,
+				ConnectedDB.PREFETCH_TIMEOUT_PROPERTY, ConnectedDB.BIND_JOIN_BATCH_SIZE_PROPERTY,
+				ConnectedDB.SCHEMA_CACHE_FILE_PROPERTY, ConnectedDB.SCHEMA_REFRESH_INTERVAL_PROPERTY,
+				ConnectedDB.STATISTICS_REFRESH_INTERVAL_PROPERTY};
+		Properties p = new Properties();
+		for (String property: d2rqProperties) {
+			p.setProperty(property, "1");
+		}
+		p.setProperty("shutdown", "true");
+		cdb = connect(p);
+		Properties driverProperties = cdb.getConnectionProperties();
+		for (String property: d2rqProperties) {
+			assertFalse(property, driverProperties.containsKey(property));
+		}
+		assertEquals("true", driverProperties.getProperty("shutdown"));
+	}
+
+	private ConnectedDB connect(Properties properties) {
+		return new ConnectedDB(db.getJdbcURL(), db.getUser(), db.getPassword(),
+				Collections.<String,GenericType>emptyMap(),
+				Database.NO_LIMIT, Database.NO_FETCH_SIZE, properties);
+	}
+}
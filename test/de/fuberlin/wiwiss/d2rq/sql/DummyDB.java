@@ -4,6 +4,8 @@ import java.util.HashMap;
 import java.util.Map;
 
 import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.RelationName;
+import de.fuberlin.wiwiss.d2rq.dbschema.TableStatistics;
 import de.fuberlin.wiwiss.d2rq.map.Database;
 import de.fuberlin.wiwiss.d2rq.sql.types.DataType.GenericType;
 import de.fuberlin.wiwiss.d2rq.sql.vendor.Vendor;
@@ -12,6 +14,7 @@ public class DummyDB extends ConnectedDB {
 	private final Vendor vendor;
 	private int limit = Database.NO_LIMIT;
 	private Map<Attribute,Boolean> nullability = new HashMap<Attribute,Boolean>();
+	private Map<RelationName,TableStatistics> statistics = new HashMap<RelationName,TableStatistics>();
 	
 	public DummyDB() {
 		this(Vendor.SQL92);
@@ -35,6 +38,10 @@ public class DummyDB extends ConnectedDB {
 		nullability.put(column, flag);
 	}
 	
+	public void setTableStatistics(RelationName table, TableStatistics tableStatistics) {
+		statistics.put(table, tableStatistics);
+	}
+	
 	@Override
 	public Vendor vendor() {
 		return vendor;
@@ -51,6 +58,11 @@ public class DummyDB extends ConnectedDB {
 		return nullability.get(column);
 	}
 	
+	@Override
+	public TableStatistics tableStatistics(RelationName table) {
+		return statistics.get(table);
+	}
+	
 	public boolean equals(Object other) {
 		return other instanceof DummyDB;
 	}
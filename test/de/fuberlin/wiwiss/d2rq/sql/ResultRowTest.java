@@ -40,4 +40,23 @@ public class ResultRowTest extends TestCase {
 		// columns sorted alphabetically
 		assertEquals("{@@foo.col1@@ => 'value1', @@foo.col2@@ => 'value2'}", new ResultRowMap(m).toString());
 	}
+
+	public void testArrayRowGetColumnReturnsValue() {
+		Map<ProjectionSpec,Integer> indexes = new HashMap<ProjectionSpec,Integer>();
+		indexes.put(col1, 0);
+		indexes.put(col2, 1);
+		ResultRow r = new ResultRowArray(indexes, new String[]{"value1", null});
+		assertEquals("value1", r.get(col1));
+		assertNull(r.get(col2));
+		assertNull(r.get(new Attribute(null, "foo", "col3")));
+	}
+	
+	public void testArrayRowToString() {
+		Map<ProjectionSpec,Integer> indexes = new HashMap<ProjectionSpec,Integer>();
+		indexes.put(col2, 0);
+		indexes.put(col1, 1);
+		// columns sorted alphabetically
+		assertEquals("{@@foo.col1@@ => 'value1', @@foo.col2@@ => 'value2'}", 
+				new ResultRowArray(indexes, new String[]{"value2", "value1"}).toString());
+	}
 }
@@ -1,9 +1,20 @@
 package de.fuberlin.wiwiss.d2rq.sql;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
 import junit.framework.TestCase;
+import de.fuberlin.wiwiss.d2rq.algebra.AliasMap;
 import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.Join;
+import de.fuberlin.wiwiss.d2rq.algebra.OrderSpec;
+import de.fuberlin.wiwiss.d2rq.algebra.ProjectionSpec;
 import de.fuberlin.wiwiss.d2rq.algebra.Relation;
+import de.fuberlin.wiwiss.d2rq.algebra.RelationImpl;
 import de.fuberlin.wiwiss.d2rq.algebra.RelationName;
+import de.fuberlin.wiwiss.d2rq.expr.Equality;
+import de.fuberlin.wiwiss.d2rq.expr.Expression;
 import de.fuberlin.wiwiss.d2rq.sql.vendor.Vendor;
 
 /**
@@ -11,6 +22,9 @@ import de.fuberlin.wiwiss.d2rq.sql.vendor.Vendor;
  */
 public class SQLBuildingTest extends TestCase {
 	private final static Attribute foo = new Attribute(null, "table", "foo");
+	private final static Attribute bar = new Attribute(null, "table", "bar");
+	private final static Attribute a = new Attribute(null, "a", "x");
+	private final static Attribute z = new Attribute(null, "z", "x");
 	
 	public void testSingleQuoteEscapeMySQL() {
 		Vendor vendor = Vendor.MySQL;
@@ -124,4 +138,98 @@ public class SQLBuildingTest extends TestCase {
 		assertEquals("SELECT DISTINCT \"table\".\"foo\" FROM \"table\" WHERE (ROWNUM <= 100)",
 				new SelectStatementBuilder(r).getSQLStatement());
 	}
+
+	public void testLimitAndOffsetStandard() {
+		DummyDB db = new DummyDB();
+		db.setLimit(10);
+		Relation r = Relation.createSimpleRelation(db, new Attribute[]{foo});
+		assertEquals("SELECT DISTINCT \"table\".\"foo\" FROM \"table\" LIMIT 10 OFFSET 20",
+				new SelectStatementBuilder(r, 20).getSQLStatement());
+	}
+	
+	public void testZeroOffsetIsOmitted() {
+		DummyDB db = new DummyDB(Vendor.Oracle);
+		db.setLimit(10);
+		Relation r = Relation.createSimpleRelation(db, new Attribute[]{foo});
+		assertEquals("SELECT DISTINCT \"table\".\"foo\" FROM \"table\" WHERE (ROWNUM <= 10)",
+				new SelectStatementBuilder(r, 0).getSQLStatement());
+	}
+	
+	public void testNoOffsetOracle() {
+		DummyDB db = new DummyDB(Vendor.Oracle);
+		db.setLimit(10);
+		Relation r = Relation.createSimpleRelation(db, new Attribute[]{foo});
+		try {
+			new SelectStatementBuilder(r, 20);
+			fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException ex) {
+			// expected
+		}
+	}
+
+	public void testLikeExpressions() {
+		assertEquals("x LIKE 'a%'", Vendor.SQL92.getLikeExpression("x", "a%", false));
+		assertEquals("LOWER(x) LIKE 'a%'", Vendor.SQL92.getLikeExpression("x", "A%", true));
+		assertEquals("x LIKE BINARY 'a%'", Vendor.MySQL.getLikeExpression("x", "a%", false));
+		assertNull(Vendor.MySQL.getLikeExpression("x", "\u00e4%", false));
+		assertEquals("LOWER(x) LIKE BINARY 'a%'", Vendor.MySQL.getLikeExpression("x", "A%", true));
+		assertNull(Vendor.MySQL.getLikeExpression("x", "\u00e4%", true));
+		assertEquals("x ILIKE 'A%'", Vendor.PostgreSQL.getLikeExpression("x", "A%", true));
+		assertNull(Vendor.SQLServer.getLikeExpression("x", "a%", false));
+	}
+
+	public void testRegexMatchExpressions() {
+		assertNull(Vendor.SQL92.getRegexMatchExpression("x", "a+", false));
+		assertEquals("x REGEXP BINARY 'a\\\\.'", Vendor.MySQL.getRegexMatchExpression("x", "a\\.", false));
+		assertEquals("x ~* E'a\\\\.'", Vendor.PostgreSQL.getRegexMatchExpression("x", "a\\.", true));
+		assertEquals("REGEXP_LIKE(x, 'a+', 'c')", Vendor.Oracle.getRegexMatchExpression("x", "a+", false));
+		assertEquals("REGEXP_MATCHES(LOWER(x), '(?s).*(?:a+).*')", 
+				Vendor.HSQLDB.getRegexMatchExpression("x", "A+", true));
+	}
+
+	public void testFullTextMatchExpressions() {
+		assertNull(Vendor.SQL92.getFullTextMatchExpression("x", "a b", "english"));
+		assertNull(Vendor.HSQLDB.getFullTextMatchExpression("x", "a b", "english"));
+		assertEquals("MATCH (x) AGAINST ('a b')", 
+				Vendor.MySQL.getFullTextMatchExpression("x", "a b", "english"));
+		assertEquals("to_tsvector('english', x) @@ plainto_tsquery('english', 'Joe''s')", 
+				Vendor.PostgreSQL.getFullTextMatchExpression("x", "Joe's", "english"));
+	}
+
+	public void testParameterizedConstant() {
+		Relation r = selectWhere(new DummyDB(), Equality.createAttributeValue(bar, "Joe's"));
+		SelectStatementBuilder builder = new SelectStatementBuilder(r);
+		assertEquals("SELECT DISTINCT \"table\".\"foo\" FROM \"table\" WHERE \"table\".\"bar\" = 'Joe''s'",
+				builder.getSQLStatement());
+		assertEquals("SELECT DISTINCT \"table\".\"foo\" FROM \"table\" WHERE \"table\".\"bar\" = ?",
+				builder.getParameterizedSQLStatement());
+		assertEquals(1, builder.getParameters().size());
+		assertEquals("Joe's", builder.getParameters().get(0).value());
+	}
+	
+	public void testParametersFollowPlaceholderOrder() {
+		Relation r = selectWhere(new DummyDB(), 
+				Equality.createAttributeValue(foo, "1").and(Equality.createAttributeValue(bar, "2")));
+		SelectStatementBuilder builder = new SelectStatementBuilder(r);
+		assertEquals("SELECT DISTINCT \"table\".\"foo\" FROM \"table\" " +
+				"WHERE (\"table\".\"bar\" = ? AND \"table\".\"foo\" = ?)",
+				builder.getParameterizedSQLStatement());
+		assertEquals("2", builder.getParameters().get(0).value());
+		assertEquals("1", builder.getParameters().get(1).value());
+	}
+	
+	public void testTablesInFromClauseAreSorted() {
+		ConnectedDB db = new DummyDB();
+		assertTrue(new SelectStatementBuilder(Relation.createSimpleRelation(db, new Attribute[]{a, z}))
+				.getSQLStatement().endsWith(" FROM \"a\", \"z\""));
+		assertTrue(new SelectStatementBuilder(Relation.createSimpleRelation(db, new Attribute[]{z, a}))
+				.getSQLStatement().endsWith(" FROM \"a\", \"z\""));
+	}
+	
+	private Relation selectWhere(ConnectedDB db, Expression condition) {
+		return new RelationImpl(db, AliasMap.NO_ALIASES, condition, Expression.TRUE,
+				Collections.<Join>emptySet(), 
+				new HashSet<ProjectionSpec>(Arrays.asList(new ProjectionSpec[]{foo})), 
+				false, Collections.<OrderSpec>emptyList(), -1, -1);
+	}
 }
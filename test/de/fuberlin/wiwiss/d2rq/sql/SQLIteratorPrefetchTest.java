@@ -0,0 +1,129 @@
+package de.fuberlin.wiwiss.d2rq.sql;
+
+import java.util.Collections;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.query.QueryCancelledException;
+
+import de.fuberlin.wiwiss.d2rq.D2RQException;
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.ProjectionSpec;
+import de.fuberlin.wiwiss.d2rq.helpers.HSQLDatabase;
+import de.fuberlin.wiwiss.d2rq.map.Database;
+import de.fuberlin.wiwiss.d2rq.sql.types.DataType.GenericType;
+
+public class SQLIteratorPrefetchTest extends TestCase {
+	private final static Attribute ID = new Attribute(null, "T", "ID");
+	private HSQLDatabase db;
+	private ConnectedDB cdb;
+
+	public void setUp() {
+		db = new HSQLDatabase("prefetchtest");
+		db.executeSQL("CREATE TABLE T (ID INT PRIMARY KEY)");
+		for (int i = 1; i <= 100; i++) {
+			db.executeSQL("INSERT INTO T VALUES (" + i + ")");
+		}
+		cdb = connect(new Properties());
+	}
+
+	public void tearDown() {
+		cdb.close();
+		db.close(true);
+	}
+
+	public void testDeliversAllRowsInOrder() {
+		SQLIterator it = iterator();
+		for (int i = 1; i <= 100; i++) {
+			assertTrue(it.hasNext());
+			assertEquals(Integer.toString(i), it.next().get(ID));
+		}
+		assertFalse(it.hasNext());
+		assertFalse(it.hasNext());
+	}
+
+	public void testReturnsConnectionWhenExhausted() {
+		for (int i = 0; i < 3; i++) {
+			SQLIterator it = iterator();
+			while (it.hasNext()) it.next();
+		}
+	}
+
+	public void testReturnsConnectionWhenClosedEarly() {
+		for (int i = 0; i < 3; i++) {
+			SQLIterator it = iterator();
+			assertTrue(it.hasNext());
+			it.next();
+			it.close();
+			assertFalse(it.hasNext());
+		}
+	}
+
+	public void testCancel() {
+		SQLIterator it = iterator();
+		assertTrue(it.hasNext());
+		it.cancel();
+		try {
+			while (it.hasNext()) it.next();
+			fail("Expected cancellation");
+		} catch (QueryCancelledException ex) {
+			// expected
+		}
+		it.close();
+	}
+
+	public void testErrorInQueryIsReported() {
+		SQLIterator it = new SQLIterator("SELECT NO_SUCH_COLUMN FROM T",
+				Collections.<ProjectionSpec>emptyList(), cdb);
+		try {
+			it.hasNext();
+			fail("Expected exception");
+		} catch (D2RQException ex) {
+			// expected
+		}
+	}
+
+	public void testAbandonedIteratorReturnsConnection() throws InterruptedException {
+		cdb.close();
+		Properties p = new Properties();
+		p.setProperty(ConnectedDB.PREFETCH_TIMEOUT_PROPERTY, "200");
+		cdb = connect(p);
+		SQLIterator it = iterator();
+		assertTrue(it.hasNext());
+		assertEquals(0, cdb.availableConnections());
+		long deadline = System.currentTimeMillis() + 5000;
+		while (cdb.availableConnections() == 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+		assertEquals(1, cdb.availableConnections());
+		try {
+			while (it.hasNext()) it.next();
+			fail("Expected exception");
+		} catch (D2RQException ex) {
+			// expected
+		}
+		it.close();
+		SQLIterator it2 = iterator();
+		int count = 0;
+		while (it2.hasNext()) {
+			it2.next();
+			count++;
+		}
+		assertEquals(100, count);
+	}
+
+	private ConnectedDB connect(Properties p) {
+		p.setProperty(ConnectedDB.PREFETCH_BUFFER_SIZE_PROPERTY, "16");
+		p.setProperty(ConnectedDB.POOL_MAX_SIZE_PROPERTY, "1");
+		p.setProperty(ConnectedDB.POOL_MAX_WAIT_PROPERTY, "1000");
+		return new ConnectedDB(db.getJdbcURL(), db.getUser(), db.getPassword(),
+				Collections.<String,GenericType>emptyMap(),
+				Database.NO_LIMIT, Database.NO_FETCH_SIZE, p);
+	}
+
+	private SQLIterator iterator() {
+		return new SQLIterator("SELECT \"T\".\"ID\" FROM \"T\" ORDER BY \"T\".\"ID\"",
+				Collections.<ProjectionSpec>singletonList(ID), cdb);
+	}
+}
@@ -1,5 +1,6 @@
 package de.fuberlin.wiwiss.d2rq.values;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -189,6 +190,32 @@ public class PatternTest extends TestCase {
 		assertPatternValues(p, "foobazbarfoo", map);
 	}
 
+	public void testColumnValuesBacktracksOverRepeatedLiterals() {
+		Pattern p = new Pattern("a@@table.col1@@-@@table.col2@@-b");
+		assertEquals(Arrays.asList(new String[]{"x", "y-z"}),
+				Arrays.asList(p.columnValues("ax-y-z-b")));
+		assertNull(p.columnValues("ax-yb"));
+	}
+
+	public void testColumnValuesAdjacentColumns() {
+		Pattern p = new Pattern("a@@table.col1@@@@table.col2@@");
+		assertEquals(Arrays.asList(new String[]{"", "xy"}),
+				Arrays.asList(p.columnValues("axy")));
+	}
+
+	public void testColumnValuesWithoutColumns() {
+		Pattern p = new Pattern("aaa");
+		assertEquals(0, p.columnValues("aaa").length);
+		assertNull(p.columnValues("aab"));
+	}
+
+	public void testColumnValuesDecodesAfterMatching() {
+		Pattern p = new Pattern("a@@table.col1|urlencode@@b");
+		assertEquals(Arrays.asList(new String[]{"x y"}),
+				Arrays.asList(p.columnValues("ax+yb")));
+		assertNull(p.columnValues("a%b"));
+	}
+
 	public void testPartsIteratorSingleLiteral() {
 		Iterator<Object> it = new Pattern("foo").partsIterator();
 		assertTrue(it.hasNext());
@@ -357,6 +384,14 @@ public class PatternTest extends TestCase {
 		assertPatternValues(p, "aaax%5Fybbb", Collections.singletonMap("table.col1", "x_y"));
 	}
 	
+	public void testSafeValuesAreNotEncoded() {
+		assertPattern("aaa0.9-Xbbb", "aaa@@table.col1|urlencode@@bbb", "0.9-X");
+		assertPattern("aaa0.9-Xbbb", "aaa@@table.col1|urlify@@bbb", "0.9-X");
+		assertPattern("aaa0.9-X_bbb", "aaa@@table.col1|encode@@bbb", "0.9-X_");
+		assertPattern("aaa0.9-X_bbb", "aaa@@table.col1|urlencode@@bbb", "0.9-X_");
+		assertPattern("aaa0.9-X%5Fbbb", "aaa@@table.col1|urlify@@bbb", "0.9-X_");
+	}
+
 	public void testTrivialPatternFirstPart() {
 		assertEquals("aaa", new Pattern("aaa").firstLiteralPart());
 	}
@@ -382,6 +417,10 @@ public class PatternTest extends TestCase {
 		Pattern p = new Pattern(pattern);
 		assertEquals(expected, p.makeValue(this.row));
 	}
+
+	private void assertPattern(String expected, String pattern, String rowSpec) {
+		assertEquals(expected, new Pattern(pattern).makeValue(row(rowSpec)));
+	}
 	
 	private void assertPatternValues(Pattern pattern, String value, Map<String,String> expectedValues) {
 		assertTrue(matches(pattern, value));
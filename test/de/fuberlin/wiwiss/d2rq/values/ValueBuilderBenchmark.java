@@ -0,0 +1,100 @@
+package de.fuberlin.wiwiss.d2rq.values;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.fuberlin.wiwiss.d2rq.algebra.Attribute;
+import de.fuberlin.wiwiss.d2rq.algebra.ProjectionSpec;
+import de.fuberlin.wiwiss.d2rq.helpers.Benchmark;
+import de.fuberlin.wiwiss.d2rq.mapgen.IRIEncoder;
+import de.fuberlin.wiwiss.d2rq.sql.ResultRow;
+import de.fuberlin.wiwiss.d2rq.sql.ResultRowMap;
+
+/**
+ * Compares the values made by {@link Pattern} and {@link BlankNodeID},
+ * which are built in a {@link ValueBuilder}, with the StringBuffer
+ * based values they used to make. The interesting figure is the bytes
+ * allocated per value.
+ *
+ * Not part of the test suite. Run it with the test and library classes
+ * on the classpath:
+ *
+ * <pre>java -cp ... de.fuberlin.wiwiss.d2rq.values.ValueBuilderBenchmark</pre>
+ */
+public class ValueBuilderBenchmark {
+	private final static int OPERATIONS = 1000000;
+
+	public static void main(String[] args) {
+		final Attribute id = new Attribute(null, "T", "ID");
+		final Attribute name = new Attribute(null, "T", "NAME");
+		Map<ProjectionSpec,String> values = new HashMap<ProjectionSpec,String>();
+		values.put(id, "4711");
+		values.put(name, "Smith");
+		final ResultRow row = new ResultRowMap(values);
+
+		final Pattern oneColumn = new Pattern("http://example.org/person/@@T.ID@@");
+		new Benchmark("uriPattern with one column (before)") {
+			protected Object run() {
+				StringBuffer result = new StringBuffer("http://example.org/person/");
+				String value = row.get(id);
+				if (value == null) return null;
+				result.append(value);
+				return result.toString();
+			}
+		}.measure(OPERATIONS, System.out);
+		new Benchmark("uriPattern with one column") {
+			protected Object run() {
+				return oneColumn.makeValue(row);
+			}
+		}.measure(OPERATIONS, System.out);
+
+		final Pattern twoColumns = new Pattern(
+				"http://example.org/person/@@T.NAME|urlencode@@/@@T.ID|encode@@");
+		new Benchmark("urlencode + encode, two columns (before)") {
+			protected Object run() {
+				StringBuffer result = new StringBuffer("http://example.org/person/");
+				String value = row.get(name);
+				if (value == null) return null;
+				try {
+					result.append(URLEncoder.encode(value, "utf-8"));
+				} catch (UnsupportedEncodingException ex) {
+					throw new RuntimeException(ex);
+				}
+				result.append("/");
+				value = row.get(id);
+				if (value == null) return null;
+				result.append(IRIEncoder.encode(value));
+				return result.toString();
+			}
+		}.measure(OPERATIONS, System.out);
+		new Benchmark("urlencode + encode, two columns") {
+			protected Object run() {
+				return twoColumns.makeValue(row);
+			}
+		}.measure(OPERATIONS, System.out);
+
+		final List<Attribute> attributes = Arrays.asList(id, name);
+		final BlankNodeID blankNodeID = new BlankNodeID("map:Person", attributes);
+		new Benchmark("BlankNodeID with two columns (before)") {
+			protected Object run() {
+				StringBuffer result = new StringBuffer("map:Person");
+				for (Attribute attribute: attributes) {
+					String value = row.get(attribute);
+					if (value == null) return null;
+					result.append("@@");
+					result.append(value);
+				}
+				return result.toString();
+			}
+		}.measure(OPERATIONS, System.out);
+		new Benchmark("BlankNodeID with two columns") {
+			protected Object run() {
+				return blankNodeID.makeValue(row);
+			}
+		}.measure(OPERATIONS, System.out);
+	}
+}